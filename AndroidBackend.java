@@ -0,0 +1,221 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import android.database.AbstractWindowedCursor;
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+import android.database.CursorWindow;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteProgram;
+import android.database.sqlite.SQLiteQuery;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+
+/**
+ * The AndroidBackend opens databases with the SQLiteDatabase class of the Android platform.  It is the backend DataAccessObject 
+ * uses unless another is set.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public class AndroidBackend implements DatabaseBackend {
+
+	public DatabaseConnection open(String path) {
+		return new AndroidConnection(SQLiteDatabase.openDatabase(path, null, SQLiteDatabase.CREATE_IF_NECESSARY));
+	}
+
+	public DatabaseConnection openReadOnly(String path) {
+		return new AndroidConnection(SQLiteDatabase.openDatabase(path, null, SQLiteDatabase.OPEN_READONLY));
+	}
+
+	static class AndroidConnection implements DatabaseConnection {
+		private final SQLiteDatabase aDatabase;
+
+		AndroidConnection(SQLiteDatabase aDatabase) {
+			this.aDatabase = aDatabase;
+		}
+
+		public void execSQL(String SQL) {
+			aDatabase.execSQL(SQL);
+		}
+
+		public CompiledStatement compileStatement(String SQL) {
+			return new AndroidStatement(aDatabase.compileStatement(SQL));
+		}
+
+		public RowCursor query(String SQL, ParameterBuffer parameters, int fetchWindowBytes) {
+			Cursor aCursor = null;
+			if(parameters == null || parameters.size() == 0){
+				aCursor = aDatabase.rawQuery(SQL, null);
+			}
+			else{
+				/*
+				 * rawQuery only binds text so the parameters are bound with their own types by the factory that creates the 
+				 * cursor.  The query is not run until the cursor is first moved, after they have been bound.
+				 */
+				aCursor = aDatabase.rawQueryWithFactory(new BindingCursorFactory(parameters), SQL, null, null);
+			}
+			//windows of a chosen size can only be created on Android 9 and later
+			if(fetchWindowBytes > 0 && aCursor instanceof AbstractWindowedCursor && Build.VERSION.SDK_INT >= 28){
+				((AbstractWindowedCursor)aCursor).setWindow(new CursorWindow(null, fetchWindowBytes));
+			}
+			return new AndroidCursor(aCursor);
+		}
+
+		public void beginTransaction() {
+			aDatabase.beginTransaction();
+		}
+
+		public void setTransactionSuccessful() {
+			aDatabase.setTransactionSuccessful();
+		}
+
+		public void endTransaction() {
+			aDatabase.endTransaction();
+		}
+
+		public boolean enableWriteAheadLogging() {
+			return aDatabase.enableWriteAheadLogging();
+		}
+
+		public void close() {
+			aDatabase.close();
+		}
+	}
+
+	static class BindingCursorFactory implements SQLiteDatabase.CursorFactory {
+		private final ParameterBuffer parameters;
+
+		BindingCursorFactory(ParameterBuffer parameters) {
+			this.parameters = parameters;
+		}
+
+		public Cursor newCursor(SQLiteDatabase aDatabase, SQLiteCursorDriver aDriver, String editTable, SQLiteQuery aQuery) {
+			parameters.bindQueryTo(new AndroidStatement(aQuery));
+			return new SQLiteCursor(aDriver, editTable, aQuery);
+		}
+	}
+	/*
+	 * Binds the parameters of a compiled statement or of a query.  Only statements created by compileStatement are executed.
+	 */
+	static class AndroidStatement implements CompiledStatement {
+		private final SQLiteProgram aStatement;
+
+		AndroidStatement(SQLiteProgram aStatement) {
+			this.aStatement = aStatement;
+		}
+
+		public void bindNull(int index) {
+			aStatement.bindNull(index);
+		}
+
+		public void bindLong(int index, long value) {
+			aStatement.bindLong(index, value);
+		}
+
+		public void bindDouble(int index, double value) {
+			aStatement.bindDouble(index, value);
+		}
+
+		public void bindString(int index, String value) {
+			aStatement.bindString(index, value);
+		}
+
+		public void bindBlob(int index, byte[] value) {
+			aStatement.bindBlob(index, value);
+		}
+
+		public void clearBindings() {
+			aStatement.clearBindings();
+		}
+
+		public void execute() {
+			((SQLiteStatement)aStatement).execute();
+		}
+
+		public void close() {
+			aStatement.close();
+		}
+	}
+
+	static class AndroidCursor implements RowCursor {
+		private final Cursor aCursor;
+		private CharArrayBuffer aTextBuffer;
+
+		AndroidCursor(Cursor aCursor) {
+			this.aCursor = aCursor;
+		}
+
+		public String[] getColumnNames() {
+			return aCursor.getColumnNames();
+		}
+
+		public boolean moveToNext() {
+			return aCursor.moveToNext();
+		}
+		/*
+		 * the Cursor FIELD_TYPE_ constants have the same values as the ColumnarResult TYPE_ constants.
+		 */
+		public int getType(int column) {
+			return aCursor.getType(column);
+		}
+
+		public boolean isNull(int column) {
+			return aCursor.isNull(column);
+		}
+
+		public long getLong(int column) {
+			return aCursor.getLong(column);
+		}
+
+		public double getDouble(int column) {
+			return aCursor.getDouble(column);
+		}
+
+		public String getString(int column) {
+			return aCursor.getString(column);
+		}
+
+		/*
+		 * the cursor copies the text straight from its window into the buffer, growing it only when a value does not fit.
+		 */
+		public void appendString(int column, StringBuilder aBuilder) {
+			if(aTextBuffer == null){
+				aTextBuffer = new CharArrayBuffer(128);
+			}
+			aCursor.copyStringToBuffer(column, aTextBuffer);
+			aBuilder.append(aTextBuffer.data, 0, aTextBuffer.sizeCopied);
+		}
+
+		public byte[] getBlob(int column) {
+			return aCursor.getBlob(column);
+		}
+
+		public void close() {
+			aCursor.close();
+		}
+	}
+}
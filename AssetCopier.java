@@ -0,0 +1,166 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.zip.CRC32;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+
+/*
+ * Copies database files bundled in the assets directory of the application to the directory databases are opened from.  
+ * Uncompressed assets are copied by the kernel with a channel transfer.  Compressed assets are copied through a large buffer.  
+ * The copy is written to a temporary file and renamed into place so an interrupted copy never leaves a partial database behind.
+ */
+class AssetCopier {
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	private AssetCopier(){}
+	/*
+	 * Makes sure the database file exists, copying it from the assets if needed.  An existing file is only replaced when 
+	 * verification is turned on and the file does not match the asset.
+	 * @return - true if the file was copied.
+	 */
+	static boolean ensureCopied(Context aContext, String databaseName, File dbFile, int verification) throws IOException{
+		if(dbFile.exists()){
+			if(verification == DataAccessObject.VERIFY_NONE || matchesAsset(aContext, databaseName, dbFile, verification)){
+				return false;
+			}
+		}
+		File tempFile = new File(dbFile.getPath()+".copying");
+		FileOutputStream out = new FileOutputStream(tempFile);
+		try{
+			FileChannel outChannel = out.getChannel();
+			AssetFileDescriptor anAssetDescriptor = openFd(aContext, databaseName);
+			if(anAssetDescriptor != null){
+				try{
+					FileInputStream in = new FileInputStream(anAssetDescriptor.getFileDescriptor());
+					try{
+						FileChannel inChannel = in.getChannel();
+						long position = anAssetDescriptor.getStartOffset();
+						long remaining = anAssetDescriptor.getLength();
+						while(remaining > 0){
+							long transferred = inChannel.transferTo(position, remaining, outChannel);
+							if(transferred <= 0){
+								throw new IOException("unable to copy the asset "+databaseName);
+							}
+							position += transferred;
+							remaining -= transferred;
+						}
+					}
+					finally{
+						in.close();
+					}
+				}
+				finally{
+					anAssetDescriptor.close();
+				}
+			}
+			else{
+				ReadableByteChannel inChannel = Channels.newChannel(aContext.getAssets().open(databaseName));
+				try{
+					ByteBuffer aBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+					while(inChannel.read(aBuffer) >= 0){
+						aBuffer.flip();
+						while(aBuffer.hasRemaining()){
+							outChannel.write(aBuffer);
+						}
+						aBuffer.clear();
+					}
+				}
+				finally{
+					inChannel.close();
+				}
+			}
+			out.getFD().sync();
+		}
+		catch(IOException e){
+			out.close();
+			tempFile.delete();
+			throw e;
+		}
+		out.close();
+		if(!tempFile.renameTo(dbFile)){
+			dbFile.delete();
+			if(!tempFile.renameTo(dbFile)){
+				tempFile.delete();
+				throw new IOException("unable to move the copy of "+databaseName+" into place");
+			}
+		}
+		return true;
+	}
+
+	private static boolean matchesAsset(Context aContext, String databaseName, File dbFile, int verification) throws IOException{
+		AssetFileDescriptor anAssetDescriptor = openFd(aContext, databaseName);
+		if(anAssetDescriptor != null){
+			try{
+				if(anAssetDescriptor.getLength() != dbFile.length()){
+					return false;
+				}
+			}
+			finally{
+				anAssetDescriptor.close();
+			}
+			if(verification == DataAccessObject.VERIFY_SIZE){
+				return true;
+			}
+		}
+		//compressed assets have no known length so they are compared by checksum
+		return checksum(aContext.getAssets().open(databaseName)) == checksum(new FileInputStream(dbFile));
+	}
+
+	private static long checksum(InputStream in) throws IOException{
+		try{
+			CRC32 aChecksum = new CRC32();
+			byte[] buf = new byte[BUFFER_SIZE];
+			int len;
+			while((len = in.read(buf)) > 0){
+				aChecksum.update(buf, 0, len);
+			}
+			return aChecksum.getValue();
+		}
+		finally{
+			in.close();
+		}
+	}
+	/*
+	 * Compressed assets can not be opened as file descriptors.
+	 */
+	private static AssetFileDescriptor openFd(Context aContext, String databaseName){
+		try{
+			return aContext.getAssets().openFd(databaseName);
+		}
+		catch(IOException e){
+			return null;
+		}
+	}
+}
@@ -0,0 +1,296 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.content.Context;
+
+/**
+ * The AsyncDataAccessObject class runs DataAccessObject calls on a bounded pool of threads so the calling thread is never blocked.  
+ * Each method returns a CompletableFuture that is completed with the DataAccessResult of the call or completed exceptionally 
+ * with the DataAccessException the call threw.
+ * <br/>
+ * By default the pool has one thread per processor and a queue of 256 waiting calls.  When the queue is full the call is not run 
+ * and its future is completed exceptionally with a RejectedExecutionException.  A different pool or rejection policy can be set 
+ * with the setExecutor method.  A pool with a ThreadPoolExecutor.CallerRunsPolicy slows callers down to the rate the database can 
+ * keep up with, but it runs the call on the calling thread when its queue is full so it should not be used by UI threads.  
+ * When the Java runtime has virtual threads each call runs on a virtual thread of its own and waiting calls are parked rather 
+ * than queued, with the same limits on running and waiting calls.
+ * <br/>
+ * Cancelling the future of a query that is running stops the query and closes its cursor.  Cancelling any call that has not 
+ * started yet keeps it from running.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public class AsyncDataAccessObject {
+	private static ExecutorService executor = null;
+
+	/*
+	 * A private constructor so no one accidentally instantiates an object of this type.
+	 */
+	private AsyncDataAccessObject(){}
+	/**
+	 * This method sets the pool used to run all asynchronous calls.  A pool that was previously set is not shut down.
+	 * @param anExecutor - the ExecutorService to run calls on or null to go back to the default pool.
+	 */
+	public synchronized static void setExecutor(ExecutorService anExecutor){
+		executor = anExecutor;
+	}
+	/**
+	 * This method creates a pool that runs a fixed number of calls at once with a bounded number of waiting calls.  When the Java 
+	 * runtime has virtual threads each call gets a virtual thread of its own instead of a pooled thread and waiting calls are 
+	 * parked on their threads.  Only the ThreadPoolExecutor CallerRunsPolicy, DiscardPolicy and AbortPolicy are followed then, and 
+	 * any other policy is treated as an AbortPolicy.
+	 * @param numThreads - the number of calls that run at once.
+	 * @param queueCapacity - the number of calls that can wait to run.
+	 * @param rejectionPolicy - what to do with a call when the queue is full, for example a ThreadPoolExecutor.AbortPolicy to fail 
+	 * the call's future with a RejectedExecutionException or a ThreadPoolExecutor.CallerRunsPolicy to slow callers down by running 
+	 * the call on the calling thread.
+	 * @return - the new pool.
+	 */
+	public static ExecutorService newBoundedExecutor(int numThreads, int queueCapacity, RejectedExecutionHandler rejectionPolicy){
+		ExecutorService aVirtualPool = BoundedVirtualThreadExecutor.create(numThreads, queueCapacity, rejectionPolicy);
+		if(aVirtualPool != null){
+			return aVirtualPool;
+		}
+		ThreadPoolExecutor aPool = new ThreadPoolExecutor(numThreads, numThreads, 30, TimeUnit.SECONDS, 
+				new ArrayBlockingQueue<Runnable>(queueCapacity), threadFactory(), rejectionPolicy);
+		aPool.allowCoreThreadTimeOut(true);
+		return aPool;
+	}
+	/**
+	 * This method is the asynchronous version of DataAccessObject transact.  Statements are told apart from queries, and 
+	 * queries use the result cache, the same way transact does them.
+	 * 
+	 * @param aContextRef - The Context with which the database is associated.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @param SQL - An SQL string for a standard SQL statement or a prepared statement
+	 * @param parameters - An array of Objects to be bound to the ? characters in the SQL string if it is a prepared statement.  If the 
+	 * SQL string is not to be used for a prepared statement this parameter should be null.
+	 * @return - A CompletableFuture for the DataAccessResult of the call.
+	 */
+	public static CompletableFuture<DataAccessResult> transactAsync(final WeakReference<Context> aContextRef, final String databaseName, 
+			final String SQL, final Object[] parameters){
+		final CompletableFuture<DataAccessResult> aFuture = new CompletableFuture<DataAccessResult>();
+		submit(aFuture, new Runnable(){
+			public void run() {
+				try{
+					if(DataAccessObject.isSelect(SQL)){
+						//a cancelled future stops the query and closes its cursor between rows
+						aFuture.complete(DataAccessObject.query(aContextRef, databaseName, SQL, ParameterBuffer.of(parameters), aFuture));
+					}
+					else{
+						aFuture.complete(DataAccessObject.transact(aContextRef, databaseName, SQL, parameters));
+					}
+				}
+				catch(Throwable e){
+					aFuture.completeExceptionally(e);
+				}
+			}
+		});
+		return aFuture;
+	}
+	/**
+	 * This method is the asynchronous version of DataAccessObject transactBatch.
+	 * 
+	 * @param aContextRef - The Context with which the database is associated.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @param SQL - An SQL string for a prepared statement used to modify the database
+	 * @param parameterSets - A List of arrays of Objects.  Each array is bound to the ? characters in the SQL string and executed.
+	 * @param chunkSize - the number of parameter sets executed in each transaction.  A value of 0 executes all of them in one transaction.
+	 * @return - A CompletableFuture for the BatchResult of the call.
+	 */
+	public static CompletableFuture<BatchResult> transactBatchAsync(final WeakReference<Context> aContextRef, final String databaseName, 
+			final String SQL, final List<Object[]> parameterSets, final int chunkSize){
+		final CompletableFuture<BatchResult> aFuture = new CompletableFuture<BatchResult>();
+		submit(aFuture, new Runnable(){
+			public void run() {
+				try{
+					aFuture.complete(DataAccessObject.transactBatch(aContextRef, databaseName, SQL, parameterSets.iterator(), chunkSize));
+				}
+				catch(Throwable e){
+					aFuture.completeExceptionally(e);
+				}
+			}
+		});
+		return aFuture;
+	}
+	/**
+	 * This method is the asynchronous version of DataAccessObject query.
+	 * 
+	 * @param aContextRef - The Context with which the database is associated.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @param SQL - An SQL string for a standard SQL query or a prepared statement used to query the database
+	 * @param parameters - An array of Objects to be bound to the ? characters in the SQL string or null.
+	 * @param type - the class, or record, to create for each row.
+	 * @return - A CompletableFuture for the List of objects.
+	 */
+	public static <T> CompletableFuture<List<T>> queryAsync(final WeakReference<Context> aContextRef, final String databaseName, 
+			final String SQL, final Object[] parameters, final Class<T> type){
+		final CompletableFuture<List<T>> aFuture = new CompletableFuture<List<T>>();
+		submit(aFuture, new Runnable(){
+			public void run() {
+				try{
+					aFuture.complete(DataAccessObject.query(aContextRef, databaseName, SQL, parameters, type));
+				}
+				catch(Throwable e){
+					aFuture.completeExceptionally(e);
+				}
+			}
+		});
+		return aFuture;
+	}
+	/**
+	 * This method is the asynchronous version of DataAccessObject page.
+	 * 
+	 * @param aContextRef - The Context with which the database is associated.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @param baseSQL - An SQL string for the query being paged through.
+	 * @param parameters - An array of Objects to be bound to the ? characters in the SQL string or null.
+	 * @param keyColumn - the name of the result column the rows are ordered and paged by.
+	 * @param descending - <b>true</b> to page from the largest key to the smallest.
+	 * @param pageSize - the number of rows in each page.
+	 * @param continuationToken - the continuation token of the previous page or null to read the first page.
+	 * @param prefetch - <b>true</b> to start reading each following page as soon as a page has been read.
+	 * @return - A CompletableFuture for the Page.
+	 */
+	public static CompletableFuture<Page> pageAsync(final WeakReference<Context> aContextRef, final String databaseName, final String baseSQL, 
+			final Object[] parameters, final String keyColumn, final boolean descending, final int pageSize, final String continuationToken, 
+			final boolean prefetch){
+		return loadPageAsync(aContextRef, databaseName, baseSQL, parameters, keyColumn, descending, pageSize, continuationToken, prefetch, true);
+	}
+
+	static CompletableFuture<Page> loadPageAsync(final WeakReference<Context> aContextRef, final String databaseName, final String baseSQL, 
+			final Object[] parameters, final String keyColumn, final boolean descending, final int pageSize, final String continuationToken, 
+			final boolean prefetch, final boolean startPrefetch){
+		final CompletableFuture<Page> aFuture = new CompletableFuture<Page>();
+		submit(aFuture, new Runnable(){
+			public void run() {
+				try{
+					Page aPage = Page.load(aContextRef, databaseName, baseSQL, parameters, keyColumn, descending, pageSize, 
+							continuationToken, prefetch);
+					aFuture.complete(startPrefetch ? aPage.startPrefetch() : aPage);
+				}
+				catch(Throwable e){
+					aFuture.completeExceptionally(e);
+				}
+			}
+		});
+		return aFuture;
+	}
+	/**
+	 * This method runs a unit of work inside a single transaction on one of the pool's threads.  The transaction is committed 
+	 * if the work returns normally and rolled back if it throws, in which case the future is completed exceptionally.  Cancelling 
+	 * the future while the work is running rolls the transaction back when the work returns.
+	 * 
+	 * @param aContextRef - The Context with which the database is associated.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @param work - the TransactionWork to execute.
+	 * @return - A CompletableFuture for the DataAccessResult returned by the work.
+	 */
+	public static CompletableFuture<DataAccessResult> inTransactionAsync(final WeakReference<Context> aContextRef, final String databaseName, 
+			final TransactionWork work){
+		final CompletableFuture<DataAccessResult> aFuture = new CompletableFuture<DataAccessResult>();
+		submit(aFuture, new Runnable(){
+			public void run() {
+				try{
+					DataAccessObject.startTransaction(aContextRef, databaseName);
+				}
+				catch(Throwable e){
+					aFuture.completeExceptionally(e);
+					return;
+				}
+				boolean successful = false;
+				DataAccessResult aResult = null;
+				try{
+					aResult = work.execute(aContextRef, databaseName);
+					successful = !aFuture.isCancelled();
+				}
+				catch(Throwable e){
+					aFuture.completeExceptionally(e);
+				}
+				try{
+					DataAccessObject.endTransaction(aContextRef, databaseName, successful);
+					if(successful){
+						aFuture.complete(aResult);
+					}
+				}
+				catch(Throwable e){
+					aFuture.completeExceptionally(e);
+				}
+			}
+		});
+		return aFuture;
+	}
+	private static void submit(CompletableFuture<?> aFuture, final Runnable aCall){
+		final CompletableFuture<?> theFuture = aFuture;
+		try{
+			executor().execute(new Runnable(){
+				public void run() {
+					//calls cancelled while they waited in the queue are never run.
+					if(!theFuture.isDone()){
+						aCall.run();
+					}
+				}
+			});
+		}
+		catch(RejectedExecutionException e){
+			aFuture.completeExceptionally(e);
+		}
+	}
+
+	private synchronized static ExecutorService executor(){
+		if(executor == null){
+			executor = newBoundedExecutor(Runtime.getRuntime().availableProcessors(), 256, new ThreadPoolExecutor.AbortPolicy());
+		}
+		return executor;
+	}
+	/*
+	 * Platform threads for runtimes, such as Android, that do not have virtual threads.
+	 */
+	private static ThreadFactory threadFactory(){
+		final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+		final AtomicInteger threadCount = new AtomicInteger();
+		return new ThreadFactory(){
+			public Thread newThread(Runnable aRunnable) {
+				Thread aThread = defaultFactory.newThread(aRunnable);
+				aThread.setName("qcdbaccess-"+threadCount.getAndIncrement());
+				aThread.setDaemon(true);
+				return aThread;
+			}
+		};
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class is a container, JavaBean, for information regarding the execution of a DataAccessObject transactBatch method call.  
+ * In addition to the information held by a DataAccessResult it reports how many parameter sets were executed successfully and 
+ * describes the failure of each parameter set that could not be executed.
+ * @author Lee S. Barney
+ *
+ */
+public class BatchResult extends DataAccessResult {
+	private static final long serialVersionUID = 1L;
+	/**
+	 * The descriptions of the failed parameter sets keyed by the zero based position of the parameter set in the batch.
+	 */
+	private TreeMap<Integer,String> rowErrors = new TreeMap<Integer,String>();
+	private int successCount = 0;
+
+	public BatchResult() {
+	}
+	/**
+	 * Accessor for the failures of individual parameter sets.
+	 * @return - A Map from the zero based position of each failed parameter set to a description of its failure.  The map 
+	 * is empty if every parameter set was executed.
+	 */
+	public Map<Integer,String> getRowErrors() {
+		return rowErrors;
+	}
+
+	void addRowError(int row, String errorDescription) {
+		rowErrors.put(row, errorDescription.replaceAll("\"", "'"));
+	}
+	/**
+	 * Accessor for the number of parameter sets that were executed successfully.
+	 * @return - the number of successful parameter sets.
+	 */
+	public int getSuccessCount() {
+		return successCount;
+	}
+
+	void addSuccess() {
+		successCount++;
+	}
+
+	void addSuccesses(int count) {
+		successCount += count;
+	}
+
+	public int getFailureCount() {
+		return rowErrors.size();
+	}
+}
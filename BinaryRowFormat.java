@@ -0,0 +1,234 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads and writes the compact binary row format of BulkTransfer and of query results spilled to disk.  A file starts with 
+ * the four bytes QCR1, the number of columns and the UTF-8 name of each column.  The rows follow in blocks so a reader can 
+ * hand whole blocks to other threads to decode without looking inside them.  Each block starts with its length in bytes and 
+ * its number of rows as four byte big endian integers and a block length of 0 ends the file.  Each value of a row is a type 
+ * byte, one of the ColumnarResult TYPE_ constants, followed by nothing for NULL, a zigzag varint for an integer, the eight 
+ * byte IEEE 754 bits of a real, or a varint length followed by the bytes of a UTF-8 string or a blob.  Varints are seven bits 
+ * per byte, low bits first.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+class BinaryRowFormat {
+	static final byte[] MAGIC = {'Q','C','R','1'};
+	static final int BLOCK_BYTES = 64 * 1024;
+	static final int BLOCK_HEADER_BYTES = 8;
+
+	private BinaryRowFormat(){}
+
+	static void writeHeader(TransferBuffer aBuffer, String[] columnNames){
+		aBuffer.put(MAGIC, 0, MAGIC.length);
+		aBuffer.putVarint(columnNames.length);
+		for(int i = 0; i < columnNames.length; i++){
+			aBuffer.putVarint(TransferBuffer.utf8Length(columnNames[i]));
+			aBuffer.putUtf8(columnNames[i], 0, columnNames[i].length());
+		}
+	}
+
+	static void writeRow(TransferBuffer aBlock, DataAccessRow aRow, StringBuilder text){
+		int numColumns = aRow.getColumnCount();
+		for(int i = 0; i < numColumns; i++){
+			int type = aRow.getType(i);
+			switch(type){
+				case ColumnarResult.TYPE_NULL:
+					aBlock.put((byte)type);
+					break;
+				case ColumnarResult.TYPE_LONG:
+					long value = aRow.getLong(i);
+					aBlock.put((byte)type);
+					aBlock.putVarint((value << 1) ^ (value >> 63));
+					break;
+				case ColumnarResult.TYPE_DOUBLE:
+					aBlock.put((byte)type);
+					aBlock.putLong(Double.doubleToRawLongBits(aRow.getDouble(i)));
+					break;
+				case ColumnarResult.TYPE_BLOB:
+					byte[] aBlob = aRow.getBlob(i);
+					aBlock.put((byte)type);
+					aBlock.putVarint(aBlob.length);
+					aBlock.put(aBlob, 0, aBlob.length);
+					break;
+				default:
+					text.setLength(0);
+					aRow.appendString(i, text);
+					aBlock.put((byte)ColumnarResult.TYPE_STRING);
+					aBlock.putVarint(TransferBuffer.utf8Length(text));
+					aBlock.putUtf8(text, 0, text.length());
+			}
+		}
+	}
+	static void writeRow(TransferBuffer aBlock, ColumnarResult aResult, int row){
+		int numColumns = aResult.getColumnCount();
+		for(int i = 0; i < numColumns; i++){
+			int type = aResult.getType(row, i);
+			switch(type){
+				case ColumnarResult.TYPE_NULL:
+					aBlock.put((byte)type);
+					break;
+				case ColumnarResult.TYPE_LONG:
+					long value = aResult.getLong(row, i);
+					aBlock.put((byte)type);
+					aBlock.putVarint((value << 1) ^ (value >> 63));
+					break;
+				case ColumnarResult.TYPE_DOUBLE:
+					aBlock.put((byte)type);
+					aBlock.putLong(Double.doubleToRawLongBits(aResult.getDouble(row, i)));
+					break;
+				case ColumnarResult.TYPE_BLOB:
+					byte[] aBlob = aResult.getBlob(row, i);
+					aBlock.put((byte)type);
+					aBlock.putVarint(aBlob.length);
+					aBlock.put(aBlob, 0, aBlob.length);
+					break;
+				default:
+					String text = aResult.getString(row, i);
+					aBlock.put((byte)ColumnarResult.TYPE_STRING);
+					aBlock.putVarint(TransferBuffer.utf8Length(text));
+					aBlock.putUtf8(text, 0, text.length());
+			}
+		}
+	}
+	/*
+	 * Leaves room at the start of an empty buffer for the length and row count of a block.
+	 */
+	static void startBlock(TransferBuffer aBlock){
+		aBlock.putInt(0);
+		aBlock.putInt(0);
+	}
+	/*
+	 * Fills in the length and row count of the block started in the buffer.  A block with no rows ends the file.
+	 */
+	static void endBlock(TransferBuffer aBlock, int rowCount){
+		aBlock.setInt(0, aBlock.size() - BLOCK_HEADER_BYTES);
+		aBlock.setInt(4, rowCount);
+	}
+	/*
+	 * Reads the column names at the start of a file and leaves the channel at the first block.
+	 */
+	static String[] readHeader(FileChannel aChannel) throws IOException{
+		ByteBuffer aBuffer = ByteBuffer.allocate(MAGIC.length);
+		readFully(aChannel, aBuffer);
+		for(int i = 0; i < MAGIC.length; i++){
+			if(aBuffer.get(i) != MAGIC[i]){
+				throw new IOException("the file is not in the QCR1 binary row format");
+			}
+		}
+		String[] columnNames = new String[(int)readVarint(aChannel)];
+		for(int i = 0; i < columnNames.length; i++){
+			ByteBuffer aName = ByteBuffer.allocate((int)readVarint(aChannel));
+			readFully(aChannel, aName);
+			columnNames[i] = new String(aName.array(), StandardCharsets.UTF_8);
+		}
+		return columnNames;
+	}
+	/*
+	 * Decodes the rows of a block.  Integers are decoded as Longs, reals as Doubles, strings as Strings and blobs as QCBlobs.
+	 */
+	static BulkTransfer.RowBlock decode(byte[] block, int rowCount, int numColumns) throws IOException{
+		Object[][] rows = new Object[rowCount][];
+		int position = 0;
+		try{
+			for(int row = 0; row < rowCount; row++){
+				Object[] values = new Object[numColumns];
+				for(int i = 0; i < numColumns; i++){
+					int type = block[position++];
+					if(type == ColumnarResult.TYPE_NULL){
+						continue;
+					}
+					if(type == ColumnarResult.TYPE_DOUBLE){
+						long bits = 0;
+						for(int j = 0; j < 8; j++){
+							bits = (bits << 8) | (block[position++] & 0xff);
+						}
+						values[i] = Double.longBitsToDouble(bits);
+						continue;
+					}
+					long value = 0;
+					int shift = 0;
+					byte aByte;
+					do{
+						aByte = block[position++];
+						value |= (long)(aByte & 0x7f) << shift;
+						shift += 7;
+					}while((aByte & 0x80) != 0);
+					if(type == ColumnarResult.TYPE_LONG){
+						values[i] = (value >>> 1) ^ -(value & 1);
+					}
+					else if(type == ColumnarResult.TYPE_STRING){
+						values[i] = new String(block, position, (int)value, StandardCharsets.UTF_8);
+						position += (int)value;
+					}
+					else if(type == ColumnarResult.TYPE_BLOB){
+						byte[] aBlob = new byte[(int)value];
+						System.arraycopy(block, position, aBlob, 0, aBlob.length);
+						values[i] = new QCBlob(aBlob);
+						position += aBlob.length;
+					}
+					else{
+						throw new IOException("unknown value type "+type+" in row "+row+" of a block");
+					}
+				}
+				rows[row] = values;
+			}
+		}
+		catch(ArrayIndexOutOfBoundsException e){
+			throw new IOException("a block ends in the middle of a row");
+		}
+		return new BulkTransfer.RowBlock(rows, null, block.length + BLOCK_HEADER_BYTES);
+	}
+
+	static void readFully(FileChannel aChannel, ByteBuffer aBuffer) throws IOException{
+		while(aBuffer.hasRemaining()){
+			if(aChannel.read(aBuffer) < 0){
+				throw new EOFException("the file ends in the middle of a block");
+			}
+		}
+	}
+
+	private static long readVarint(FileChannel aChannel) throws IOException{
+		ByteBuffer aByte = ByteBuffer.allocate(1);
+		long value = 0;
+		int shift = 0;
+		while(true){
+			aByte.clear();
+			readFully(aChannel, aByte);
+			byte b = aByte.get(0);
+			value |= (long)(b & 0x7f) << shift;
+			if((b & 0x80) == 0){
+				return value;
+			}
+			shift += 7;
+		}
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * An OutputStream that collects the bytes of a blob in memory until there are more of them than the QCBlob memory threshold 
+ * and then moves them to a temporary file.  It refuses to hold more than maxBytes.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+class BlobSink extends OutputStream {
+	private final long maxBytes;
+	private byte[] memory = new byte[1024];
+	private File aFile;
+	private OutputStream fileOut;
+	private long length;
+
+	BlobSink(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[]{(byte)b}, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if(length + len > maxBytes){
+			discard();
+			throw new IOException("the blob is larger than the limit of "+maxBytes+" bytes");
+		}
+		if(fileOut == null && length + len > QCBlob.memoryThreshold()){
+			aFile = File.createTempFile("qcblob", ".tmp", QCBlob.spillDirectory());
+			fileOut = new FileOutputStream(aFile);
+			fileOut.write(memory, 0, (int)length);
+			memory = null;
+		}
+		if(fileOut != null){
+			fileOut.write(b, off, len);
+		}
+		else{
+			if(length + len > memory.length){
+				memory = Arrays.copyOf(memory, (int)Math.max(length + len, Math.min(memory.length * 2L, QCBlob.memoryThreshold())));
+			}
+			System.arraycopy(b, off, memory, (int)length, len);
+		}
+		length += len;
+	}
+	/*
+	 * Finishes the blob.  The sink may not be written to afterwards.
+	 */
+	QCBlob toBlob() throws IOException {
+		if(fileOut != null){
+			fileOut.close();
+			fileOut = null;
+			return new QCBlob(aFile, true);
+		}
+		return new QCBlob(memory.length == length ? memory : Arrays.copyOf(memory, (int)length));
+	}
+	/*
+	 * Throws away what has been written, deleting the temporary file if there is one.
+	 */
+	void discard() {
+		if(fileOut != null){
+			try{
+				fileOut.close();
+			}
+			catch(IOException e){
+				e.printStackTrace();
+			}
+			fileOut = null;
+		}
+		if(aFile != null){
+			aFile.delete();
+			aFile = null;
+		}
+		memory = new byte[0];
+		length = 0;
+	}
+}
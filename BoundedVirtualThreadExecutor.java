@@ -0,0 +1,141 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs each call on a virtual thread of its own, with the same limits as a ThreadPoolExecutor with a fixed number of threads 
+ * and a bounded queue.  At most numThreads calls run at once and at most queueCapacity more wait, parked on their own virtual 
+ * threads rather than held in a queue.  A call that would go over those limits is handed to the rejection policy.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+class BoundedVirtualThreadExecutor extends AbstractExecutorService {
+	private final ExecutorService threads;
+	private final Semaphore admitted;
+	private final Semaphore running;
+	private final RejectedExecutionHandler rejectionPolicy;
+
+	private BoundedVirtualThreadExecutor(ExecutorService threads, int numThreads, int queueCapacity, RejectedExecutionHandler rejectionPolicy) {
+		this.threads = threads;
+		this.admitted = new Semaphore(numThreads + queueCapacity);
+		this.running = new Semaphore(numThreads);
+		this.rejectionPolicy = rejectionPolicy;
+	}
+	/*
+	 * Returns null when the runtime has no virtual threads.  Executors newThreadPerTaskExecutor is looked up by reflection so 
+	 * the library still runs on runtimes, such as Android, that do not have it.
+	 */
+	static ExecutorService create(int numThreads, int queueCapacity, RejectedExecutionHandler rejectionPolicy){
+		ExecutorService threads = null;
+		try{
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Object aBuilder = Thread.class.getMethod("ofVirtual").invoke(null);
+			aBuilder = builderClass.getMethod("name", String.class, long.class).invoke(aBuilder, "qcdbaccess-", 0L);
+			Object aFactory = builderClass.getMethod("factory").invoke(aBuilder);
+			threads = (ExecutorService)Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, aFactory);
+		}
+		catch(Exception e){
+			return null;
+		}
+		return new BoundedVirtualThreadExecutor(threads, numThreads, queueCapacity, rejectionPolicy);
+	}
+
+	public void execute(final Runnable aCall) {
+		if(isShutdown() || !admitted.tryAcquire()){
+			reject(aCall);
+			return;
+		}
+		try{
+			threads.execute(new Runnable(){
+				public void run() {
+					try{
+						running.acquire();
+					}
+					catch(InterruptedException e){
+						//only shutdownNow interrupts a call that has not started
+						admitted.release();
+						return;
+					}
+					try{
+						aCall.run();
+					}
+					finally{
+						running.release();
+						admitted.release();
+					}
+				}
+			});
+		}
+		catch(RejectedExecutionException e){
+			admitted.release();
+			reject(aCall);
+		}
+	}
+	/*
+	 * There is no ThreadPoolExecutor to hand a policy so the standard policies are followed here.  Any policy other than 
+	 * CallerRunsPolicy and DiscardPolicy is treated as an AbortPolicy.
+	 */
+	private void reject(Runnable aCall){
+		if(rejectionPolicy instanceof ThreadPoolExecutor.CallerRunsPolicy){
+			if(!isShutdown()){
+				aCall.run();
+			}
+		}
+		else if(!(rejectionPolicy instanceof ThreadPoolExecutor.DiscardPolicy)){
+			throw new RejectedExecutionException("the call was rejected because "+(isShutdown() ? "the executor has been shut down" 
+					: "too many calls are waiting"));
+		}
+	}
+
+	public void shutdown() {
+		threads.shutdown();
+	}
+
+	public List<Runnable> shutdownNow() {
+		return threads.shutdownNow();
+	}
+
+	public boolean isShutdown() {
+		return threads.isShutdown();
+	}
+
+	public boolean isTerminated() {
+		return threads.isTerminated();
+	}
+
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return threads.awaitTermination(timeout, unit);
+	}
+}
@@ -0,0 +1,635 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.content.Context;
+
+/**
+ * The BulkTransfer class loads whole files into a table and dumps the results of queries to files.  Two file formats are 
+ * supported, the comma separated values of RFC 4180 and a compact binary row format that keeps the type of every value.
+ * <br/>
+ * An import reads the file on one thread, cutting it into blocks of whole records, and decodes the blocks on several worker 
+ * threads.  The decoded blocks are handed in file order through a bounded queue to the calling thread, which inserts them 
+ * with DataAccessObject transactBatch using one compiled statement and one transaction per setRowsPerTransaction rows.  Reading, 
+ * decoding and inserting overlap so an import runs as fast as the single SQLite writer allows.
+ * <br/>
+ * An export streams the rows of a query straight into a buffer that is written to a FileChannel, so the rows are never all in 
+ * memory.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public class BulkTransfer {
+	private static final int CSV_BLOCK_BYTES = 1024 * 1024;
+	private static final int EXPORT_BUFFER_BYTES = 256 * 1024;
+	private static final Future<RowBlock> END_OF_FILE = new FutureTask<RowBlock>(new Callable<RowBlock>(){
+		public RowBlock call() {
+			return null;
+		}
+	});
+	private static volatile int workerThreads = 0;
+	private static volatile int rowsPerTransaction = 10000;
+	private static volatile int progressInterval = 10000;
+	private static final AtomicInteger threadCount = new AtomicInteger();
+
+	static{
+		((FutureTask<RowBlock>)END_OF_FILE).run();
+	}
+	/*
+	 * A private constructor so no one accidentally instantiates an object of this type.
+	 */
+	private BulkTransfer(){}
+	/**
+	 * This method sets the number of threads that decode the blocks of a file being imported.  The default, 0, uses one fewer 
+	 * than the number of processors so the thread doing the inserts has a processor of its own.
+	 * @param numThreads - the number of worker threads for each import or 0 for the default.
+	 */
+	public static void setWorkerThreads(int numThreads){
+		workerThreads = Math.max(0, numThreads);
+	}
+	/**
+	 * This method sets how many rows an import inserts in each transaction.  The default is 10000.
+	 * @param numRows - the number of rows in each transaction or 0 to import a whole file in one transaction.
+	 */
+	public static void setRowsPerTransaction(int numRows){
+		rowsPerTransaction = Math.max(0, numRows);
+	}
+	/**
+	 * This method sets how often a TransferListener is told about the progress of a transfer.  The default is every 10000 rows.
+	 * @param numRows - the number of rows between calls to the TransferListener.
+	 */
+	public static void setProgressInterval(int numRows){
+		progressInterval = Math.max(1, numRows);
+	}
+	/**
+	 * This method inserts the records of a comma separated values file into a table.  Every field is bound as a String, or as 
+	 * NULL if it is empty and not quoted, so SQLite converts numbers according to the affinity of each column.  Blank lines are 
+	 * skipped.  A record with the wrong number of fields is reported in the row errors of the result and not inserted.
+	 * 
+	 * @param aContextRef - The Context with which the database is associated.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @param table - the name of the table to insert into.
+	 * @param csvFile - the UTF-8 file to read.
+	 * @param hasHeaderRow - <b>true</b> if the first record of the file holds the names of the columns.
+	 * @param columns - the names of the columns the fields are inserted into, in the order of the fields.  If this is null the 
+	 * names in the header row are used.
+	 * @param aListener - the TransferListener to tell about the progress of the import or null.
+	 * @return - A TransferResult that contains the number of rows inserted, the failure of each record that could not be inserted, 
+	 * and information regarding any other errors generated during the import.
+	 * @throws DataAccessException - if the file can not be opened or its header row can not be read.
+	 */
+	public static TransferResult importCsv(WeakReference<Context> aContextRef, String databaseName, String table, File csvFile, 
+			boolean hasHeaderRow, String[] columns, TransferListener aListener) throws DataAccessException{
+		if(columns == null && !hasHeaderRow){
+			throw new DataAccessException("Error: unable to import "+csvFile+".  No column names were given and the file has no header row.");
+		}
+		long start = System.nanoTime();
+		FileInputStream anInput = null;
+		try{
+			anInput = new FileInputStream(csvFile);
+			final FileChannel aChannel = anInput.getChannel();
+			long dataStart = 0;
+			byte[] aHead = new byte[(int)Math.min(64 * 1024, Math.max(aChannel.size(), 3))];
+			int headLength = Math.max(0, aChannel.read(ByteBuffer.wrap(aHead)));
+			if(headLength >= 3 && (aHead[0] & 0xff) == 0xef && (aHead[1] & 0xff) == 0xbb && (aHead[2] & 0xff) == 0xbf){
+				dataStart = 3;
+			}
+			if(hasHeaderRow){
+				int headerEnd = CsvFormat.firstRecordEnd(aHead, (int)dataStart, headLength);
+				if(headerEnd < 0){
+					headerEnd = headLength;
+				}
+				if(columns == null){
+					Object[][] aHeader = CsvFormat.parse(aHead, (int)dataStart, headerEnd, -1).rows;
+					if(aHeader.length == 0 || aHeader[0] == null){
+						throw new IOException("the header row could not be read");
+					}
+					columns = new String[aHeader[0].length];
+					for(int i = 0; i < columns.length; i++){
+						columns[i] = aHeader[0][i] == null ? "" : aHeader[0][i].toString();
+					}
+				}
+				dataStart = headerEnd;
+			}
+			aChannel.position(dataStart);
+			final int numColumns = columns.length;
+			final ImportPipeline aPipeline = new ImportPipeline(dataStart, aListener, start);
+			aPipeline.start(new Callable<RowBlock>(){
+				public RowBlock call() throws Exception {
+					readCsvBlocks(aChannel, numColumns, aPipeline);
+					return null;
+				}
+			});
+			return aPipeline.insert(aContextRef, databaseName, insertStatement(table, columns));
+		}
+		catch(IOException e){
+			throw new DataAccessException("Error: unable to import "+csvFile+". "+e.getLocalizedMessage());
+		}
+		finally{
+			close(anInput);
+		}
+	}
+	/**
+	 * This method inserts the rows of a file in the BulkTransfer binary row format into a table.  Each value is bound with the 
+	 * type it was exported with.  The file's column names are used as the names of the columns to insert into.
+	 * 
+	 * @param aContextRef - The Context with which the database is associated.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @param table - the name of the table to insert into.
+	 * @param binaryFile - the file to read.
+	 * @param aListener - the TransferListener to tell about the progress of the import or null.
+	 * @return - A TransferResult that contains the number of rows inserted, the failure of each row that could not be inserted, 
+	 * and information regarding any other errors generated during the import.
+	 * @throws DataAccessException - if the file can not be opened or is not in the binary row format.
+	 */
+	public static TransferResult importBinary(WeakReference<Context> aContextRef, String databaseName, String table, File binaryFile, 
+			TransferListener aListener) throws DataAccessException{
+		long start = System.nanoTime();
+		FileInputStream anInput = null;
+		try{
+			anInput = new FileInputStream(binaryFile);
+			final FileChannel aChannel = anInput.getChannel();
+			String[] columns = BinaryRowFormat.readHeader(aChannel);
+			final int numColumns = columns.length;
+			final ImportPipeline aPipeline = new ImportPipeline(aChannel.position(), aListener, start);
+			aPipeline.start(new Callable<RowBlock>(){
+				public RowBlock call() throws Exception {
+					readBinaryBlocks(aChannel, numColumns, aPipeline);
+					return null;
+				}
+			});
+			return aPipeline.insert(aContextRef, databaseName, insertStatement(table, columns));
+		}
+		catch(IOException e){
+			throw new DataAccessException("Error: unable to import "+binaryFile+". "+e.getLocalizedMessage());
+		}
+		finally{
+			close(anInput);
+		}
+	}
+	/**
+	 * This method writes the rows of a query to a comma separated values file encoded as UTF-8.  Fields that contain commas, 
+	 * quotes or line breaks, and empty strings, are quoted.  NULL values are written as empty fields and blobs as base64 text.
+	 * 
+	 * @param aContextRef - The Context with which the database is associated.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @param SQL - An SQL string for a standard SQL query or a prepared statement used to query the database
+	 * @param parameters - An array of Objects to be bound to the ? characters in the SQL string if it is a prepared statement.  If the 
+	 * SQL string is not to be used for a prepared statement this parameter should be null.
+	 * @param csvFile - the file to write.  An existing file is replaced.
+	 * @param writeHeaderRow - <b>true</b> to write the names of the query's columns as the first record.
+	 * @param aListener - the TransferListener to tell about the progress of the export or null.
+	 * @return - A TransferResult that contains the number of rows written and information regarding any errors generated during 
+	 * the export.
+	 * @throws DataAccessException - if the file can not be created.
+	 */
+	public static TransferResult exportCsv(WeakReference<Context> aContextRef, String databaseName, String SQL, Object[] parameters, 
+			File csvFile, boolean writeHeaderRow, TransferListener aListener) throws DataAccessException{
+		return export(aContextRef, databaseName, SQL, parameters, csvFile, false, writeHeaderRow, aListener);
+	}
+	/**
+	 * This method writes the rows of a query to a file in the BulkTransfer binary row format.  The file holds the names of the 
+	 * query's columns and the type of every value so importBinary recreates the rows exactly.
+	 * 
+	 * @param aContextRef - The Context with which the database is associated.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @param SQL - An SQL string for a standard SQL query or a prepared statement used to query the database
+	 * @param parameters - An array of Objects to be bound to the ? characters in the SQL string if it is a prepared statement.  If the 
+	 * SQL string is not to be used for a prepared statement this parameter should be null.
+	 * @param binaryFile - the file to write.  An existing file is replaced.
+	 * @param aListener - the TransferListener to tell about the progress of the export or null.
+	 * @return - A TransferResult that contains the number of rows written and information regarding any errors generated during 
+	 * the export.
+	 * @throws DataAccessException - if the file can not be created.
+	 */
+	public static TransferResult exportBinary(WeakReference<Context> aContextRef, String databaseName, String SQL, Object[] parameters, 
+			File binaryFile, TransferListener aListener) throws DataAccessException{
+		return export(aContextRef, databaseName, SQL, parameters, binaryFile, true, true, aListener);
+	}
+
+	private static TransferResult export(WeakReference<Context> aContextRef, String databaseName, String SQL, Object[] parameters, 
+			File aFile, final boolean binary, final boolean writeHeader, final TransferListener aListener) throws DataAccessException{
+		final long start = System.nanoTime();
+		final TransferResult aResult = new TransferResult();
+		FileOutputStream anOutput = null;
+		try{
+			anOutput = new FileOutputStream(aFile);
+			final FileChannel aChannel = anOutput.getChannel();
+			final TransferBuffer aBuffer = new TransferBuffer(binary ? BinaryRowFormat.BLOCK_BYTES + 4096 : EXPORT_BUFFER_BYTES + 4096);
+			final StringBuilder text = new StringBuilder();
+			final long[] counts = new long[3];//rows, bytes written, rows in the current block
+			DataAccessResult aQueryResult = DataAccessObject.stream(aContextRef, databaseName, SQL, parameters, new RowVisitor(){
+				public boolean visitRow(DataAccessRow aRow) throws Exception {
+					if(counts[0] == 0){
+						counts[1] += writeHeader(aChannel, aBuffer, aRow.getColumnNames(), binary, writeHeader);
+					}
+					if(binary){
+						BinaryRowFormat.writeRow(aBuffer, aRow, text);
+						counts[2]++;
+						if(aBuffer.size() >= BinaryRowFormat.BLOCK_BYTES){
+							BinaryRowFormat.endBlock(aBuffer, (int)counts[2]);
+							counts[1] += aBuffer.size();
+							aBuffer.writeTo(aChannel);
+							BinaryRowFormat.startBlock(aBuffer);
+							counts[2] = 0;
+						}
+					}
+					else{
+						CsvFormat.writeRow(aBuffer, aRow, text);
+						if(aBuffer.size() >= EXPORT_BUFFER_BYTES){
+							counts[1] += aBuffer.size();
+							aBuffer.writeTo(aChannel);
+						}
+					}
+					counts[0]++;
+					if(aListener != null && counts[0] % progressInterval == 0){
+						aListener.progress(counts[0], counts[1], counts[0] * 1e9 / Math.max(1, System.nanoTime() - start));
+					}
+					return true;
+				}
+			});
+			if(aQueryResult == null){
+				return null;
+			}
+			if(counts[0] == 0){
+				counts[1] += writeHeader(aChannel, aBuffer, aQueryResult.getColumnNames(), binary, writeHeader);
+			}
+			if(binary){
+				if(counts[2] > 0){
+					BinaryRowFormat.endBlock(aBuffer, (int)counts[2]);
+					counts[1] += aBuffer.size();
+					aBuffer.writeTo(aChannel);
+					BinaryRowFormat.startBlock(aBuffer);
+				}
+				BinaryRowFormat.endBlock(aBuffer, 0);
+			}
+			counts[1] += aBuffer.size();
+			aBuffer.writeTo(aChannel);
+			aResult.setErrorDescription(aQueryResult.getErrorDescription());
+			aResult.setColumnNames(aQueryResult.getColumnNames());
+			aResult.addSuccesses((int)counts[0]);
+			aResult.setBytesTransferred(counts[1]);
+			aResult.setElapsedNanos(System.nanoTime() - start);
+			if(aListener != null){
+				aListener.progress(counts[0], counts[1], aResult.getRowsPerSecond());
+			}
+		}
+		catch(IOException e){
+			throw new DataAccessException("Error: unable to export to "+aFile+". "+e.getLocalizedMessage());
+		}
+		finally{
+			close(anOutput);
+		}
+		return aResult;
+	}
+	/*
+	 * Writes the header of an export, leaving the buffer ready for the first row, and returns the number of bytes written.
+	 */
+	private static long writeHeader(FileChannel aChannel, TransferBuffer aBuffer, String[] columnNames, boolean binary, boolean writeHeader) throws IOException{
+		long numBytes = 0;
+		if(binary){
+			BinaryRowFormat.writeHeader(aBuffer, columnNames);
+			numBytes = aBuffer.size();
+			aBuffer.writeTo(aChannel);
+			BinaryRowFormat.startBlock(aBuffer);
+		}
+		else if(writeHeader){
+			CsvFormat.writeHeader(aBuffer, columnNames);
+		}
+		return numBytes;
+	}
+	/*
+	 * Cuts a comma separated values file into blocks of whole records and queues a task to parse each one.  A block is never 
+	 * smaller than CSV_BLOCK_BYTES unless it is the last one and grows to hold a record larger than that.
+	 */
+	private static void readCsvBlocks(FileChannel aChannel, final int numColumns, ImportPipeline aPipeline) throws IOException, InterruptedException{
+		byte[] aCarry = null;
+		int carryStart = 0;
+		int carryLength = 0;
+		boolean endOfFile = false;
+		while(!endOfFile){
+			final byte[] aBlock = new byte[Math.max(CSV_BLOCK_BYTES, carryLength * 2)];
+			if(carryLength > 0){
+				System.arraycopy(aCarry, carryStart, aBlock, 0, carryLength);
+			}
+			ByteBuffer aBuffer = ByteBuffer.wrap(aBlock, carryLength, aBlock.length - carryLength);
+			while(aBuffer.hasRemaining()){
+				if(aChannel.read(aBuffer) < 0){
+					endOfFile = true;
+					break;
+				}
+			}
+			int length = aBuffer.position();
+			final int end = endOfFile ? length : CsvFormat.lastRecordEnd(aBlock, length);
+			if(end < 0){
+				/*
+				 * a record longer than the block.  The next block is twice as big.
+				 */
+				aCarry = aBlock;
+				carryStart = 0;
+				carryLength = length;
+				continue;
+			}
+			aCarry = aBlock;
+			carryStart = end;
+			carryLength = length - end;
+			if(end > 0){
+				aPipeline.submit(new Callable<RowBlock>(){
+					public RowBlock call() {
+						return CsvFormat.parse(aBlock, 0, end, numColumns);
+					}
+				});
+			}
+		}
+	}
+	/*
+	 * Reads the blocks of a binary row file and queues a task to decode each one.
+	 */
+	private static void readBinaryBlocks(FileChannel aChannel, final int numColumns, ImportPipeline aPipeline) throws IOException, InterruptedException{
+		ByteBuffer aHeader = ByteBuffer.allocate(BinaryRowFormat.BLOCK_HEADER_BYTES);
+		while(true){
+			aHeader.clear();
+			BinaryRowFormat.readFully(aChannel, aHeader);
+			int length = aHeader.getInt(0);
+			final int rowCount = aHeader.getInt(4);
+			if(length == 0){
+				aPipeline.addBytesRead(BinaryRowFormat.BLOCK_HEADER_BYTES);
+				return;
+			}
+			final byte[] aBlock = new byte[length];
+			BinaryRowFormat.readFully(aChannel, ByteBuffer.wrap(aBlock));
+			aPipeline.submit(new Callable<RowBlock>(){
+				public RowBlock call() throws Exception {
+					return BinaryRowFormat.decode(aBlock, rowCount, numColumns);
+				}
+			});
+		}
+	}
+
+	private static String insertStatement(String table, String[] columns){
+		StringBuilder aStatement = new StringBuilder("INSERT INTO ").append(DataAccessObject.quoteIdentifier(table)).append(" (");
+		for(int i = 0; i < columns.length; i++){
+			if(i > 0){
+				aStatement.append(", ");
+			}
+			aStatement.append(DataAccessObject.quoteIdentifier(columns[i]));
+		}
+		aStatement.append(") VALUES (");
+		for(int i = 0; i < columns.length; i++){
+			aStatement.append(i == 0 ? "?" : ", ?");
+		}
+		return aStatement.append(")").toString();
+	}
+
+	private static void close(java.io.Closeable aCloseable){
+		if(aCloseable != null){
+			try{
+				aCloseable.close();
+			}
+			catch(IOException e){
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private static ExecutorService newWorkerPool(int numThreads){
+		return Executors.newFixedThreadPool(numThreads, new ThreadFactory(){
+			public Thread newThread(Runnable aRunnable) {
+				Thread aThread = new Thread(aRunnable, "qcdbaccess-bulk-"+threadCount.getAndIncrement());
+				aThread.setDaemon(true);
+				return aThread;
+			}
+		});
+	}
+	/*
+	 * The decoded rows of one block of a file.  A record that could not be decoded has a null row and a description in errors.
+	 */
+	static class RowBlock {
+		final Object[][] rows;
+		final String[] errors;
+		final long numBytes;
+
+		RowBlock(Object[][] rows, String[] errors, long numBytes) {
+			this.rows = rows;
+			this.errors = errors;
+			this.numBytes = numBytes;
+		}
+	}
+	/*
+	 * Connects the thread reading a file, the workers decoding its blocks and the thread inserting the rows.  The futures of the 
+	 * blocks are queued in file order as the blocks are read, so the inserting thread sees the rows in file order no matter which 
+	 * worker finishes first, and the reader waits when the queue is full so no more than a few blocks are ever in memory.
+	 */
+	private static class ImportPipeline implements Iterator<Object[]> {
+		private final ExecutorService workers;
+		private final ArrayBlockingQueue<Future<RowBlock>> blocks;
+		private final TransferListener listener;
+		private final long start;
+		private final TreeMap<Integer,String> skippedRecords = new TreeMap<Integer,String>();
+		private Object[][] rows;
+		private String[] errors;
+		private int index;
+		private int record = 0;
+		private long rowsDelivered = 0;
+		private long bytesRead;
+		private boolean finished = false;
+		private final AtomicLong extraBytes = new AtomicLong();
+
+		ImportPipeline(long bytesBeforeData, TransferListener listener, long start) {
+			int numWorkers = workerThreads > 0 ? workerThreads : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+			/*
+			 * one more thread than there are workers for the reader.
+			 */
+			this.workers = newWorkerPool(numWorkers + 1);
+			this.blocks = new ArrayBlockingQueue<Future<RowBlock>>(numWorkers * 2);
+			this.listener = listener;
+			this.start = start;
+			this.bytesRead = bytesBeforeData;
+		}
+		/*
+		 * Runs the reader.  The end of the file, or the exception that stopped the reader, is queued after its last block.
+		 */
+		void start(final Callable<RowBlock> aReader){
+			workers.submit(new Runnable(){
+				public void run() {
+					Future<RowBlock> anEnd = END_OF_FILE;
+					try{
+						aReader.call();
+					}
+					catch(InterruptedException e){
+						return;
+					}
+					catch(final Exception e){
+						FutureTask<RowBlock> aFailure = new FutureTask<RowBlock>(new Callable<RowBlock>(){
+							public RowBlock call() throws Exception {
+								throw e;
+							}
+						});
+						aFailure.run();
+						anEnd = aFailure;
+					}
+					try{
+						blocks.put(anEnd);
+					}
+					catch(InterruptedException e){
+						return;
+					}
+				}
+			});
+		}
+
+		/*
+		 * Counts bytes the reader skipped without queuing a block for them.  Only called before the reader queues the end of the file.
+		 */
+		void addBytesRead(long numBytes){
+			extraBytes.addAndGet(numBytes);
+		}
+
+		void submit(Callable<RowBlock> aTask) throws InterruptedException{
+			blocks.put(workers.submit(aTask));
+		}
+		/*
+		 * Inserts all of the rows on the calling thread and stops the reader and workers once the inserts are done or have failed.
+		 */
+		TransferResult insert(WeakReference<Context> aContextRef, String databaseName, String SQL) throws DataAccessException{
+			TransferResult aResult = new TransferResult();
+			BatchResult aBatchResult = null;
+			try{
+				aBatchResult = DataAccessObject.transactBatch(aContextRef, databaseName, SQL, this, rowsPerTransaction);
+			}
+			finally{
+				workers.shutdownNow();
+			}
+			if(aBatchResult == null){
+				return null;
+			}
+			aResult.setErrorDescription(aBatchResult.getErrorDescription());
+			aResult.addSuccesses(aBatchResult.getSuccessCount());
+			/*
+			 * the batch numbers rows by the order they were inserted in.  Records skipped before they got to the batch are added 
+			 * back in to get the position of each row in the file.
+			 */
+			Iterator<Map.Entry<Integer,String>> errorIt = aBatchResult.getRowErrors().entrySet().iterator();
+			while(errorIt.hasNext()){
+				Map.Entry<Integer,String> anError = errorIt.next();
+				int aRecord = anError.getKey();
+				Iterator<Integer> skippedIt = skippedRecords.keySet().iterator();
+				while(skippedIt.hasNext() && skippedIt.next() <= aRecord){
+					aRecord++;
+				}
+				aResult.addRowError(aRecord, anError.getValue());
+			}
+			Iterator<Map.Entry<Integer,String>> skippedIt = skippedRecords.entrySet().iterator();
+			while(skippedIt.hasNext()){
+				Map.Entry<Integer,String> aSkipped = skippedIt.next();
+				aResult.addRowError(aSkipped.getKey(), aSkipped.getValue());
+			}
+			aResult.setBytesTransferred(bytesRead);
+			aResult.setElapsedNanos(System.nanoTime() - start);
+			if(listener != null){
+				listener.progress(rowsDelivered, bytesRead, aResult.getRowsPerSecond());
+			}
+			return aResult;
+		}
+
+		public boolean hasNext() {
+			while(true){
+				while(rows != null && index < rows.length){
+					if(rows[index] != null){
+						return true;
+					}
+					skippedRecords.put(record++, errors[index++]);
+				}
+				if(finished || !nextBlock()){
+					return false;
+				}
+			}
+		}
+
+		public Object[] next() {
+			if(!hasNext()){
+				throw new NoSuchElementException();
+			}
+			record++;
+			rowsDelivered++;
+			if(listener != null && rowsDelivered % progressInterval == 0){
+				listener.progress(rowsDelivered, bytesRead, rowsDelivered * 1e9 / Math.max(1, System.nanoTime() - start));
+			}
+			return rows[index++];
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+		/*
+		 * Waits for the next block in file order.  A failure of the reader or of a worker stops the import.
+		 */
+		private boolean nextBlock(){
+			try{
+				Future<RowBlock> aFuture = blocks.take();
+				RowBlock aBlock = aFuture.get();
+				if(aBlock == null){
+					finished = true;
+					bytesRead += extraBytes.get();
+					rows = null;
+					return false;
+				}
+				rows = aBlock.rows;
+				errors = aBlock.errors;
+				index = 0;
+				bytesRead += aBlock.numBytes;
+				return true;
+			}
+			catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("the import was interrupted");
+			}
+			catch(ExecutionException e){
+				finished = true;
+				throw new IllegalStateException("unable to read the file. "+e.getCause());
+			}
+		}
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+/**
+ * A CheckpointPolicy decides when the write ahead log of a database is copied back into the database file.  It is used by 
+ * DataAccessObject for databases opened while write ahead logging is turned on.<br/>
+ * 
+ * SQLite checkpoints automatically once the log holds a number of pages, 1000 by default, on whichever connection happens to 
+ * commit at that moment.  A policy can change that number or turn automatic checkpoints off and instead checkpoint after a chosen 
+ * number of committed transactions, when the database is closed, or when the DataAccessObject checkpoint method is called.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public class CheckpointPolicy {
+	/**
+	 * Copies as much of the log as possible without waiting for readers or the writer.
+	 */
+	public static final int PASSIVE = 0;
+	/**
+	 * Waits for the writer and then copies the whole log, waiting for readers of old pages to finish.
+	 */
+	public static final int FULL = 1;
+	/**
+	 * Does a FULL checkpoint and then waits for readers so the next writer starts the log from its beginning.
+	 */
+	public static final int RESTART = 2;
+	/**
+	 * Does a RESTART checkpoint and then truncates the log file to zero bytes.
+	 */
+	public static final int TRUNCATE = 3;
+	/**
+	 * Leaves the automatic checkpoint at SQLite's default and truncates the log when the database is closed.
+	 */
+	public static final CheckpointPolicy DEFAULT = new CheckpointPolicy(PASSIVE, -1, 0, -1, true);
+
+	private static final String[] MODE_NAMES = {"PASSIVE", "FULL", "RESTART", "TRUNCATE"};
+
+	private final int mode;
+	private final int autoCheckpointPages;
+	private final int commitsBetweenCheckpoints;
+	private final long journalSizeLimitBytes;
+	private final boolean checkpointOnClose;
+	/**
+	 * Creates a policy.
+	 * @param mode - PASSIVE, FULL, RESTART or TRUNCATE.  The mode of the checkpoints done after commits.
+	 * @param autoCheckpointPages - the number of log pages that triggers an automatic checkpoint, 0 to turn automatic 
+	 * checkpoints off, or -1 to leave SQLite's default.
+	 * @param commitsBetweenCheckpoints - the number of committed transactions after which a checkpoint is done, or 0 for none.
+	 * @param journalSizeLimitBytes - the size the log file is truncated to after a checkpoint, or -1 to leave it as it is.
+	 * @param checkpointOnClose - <b>true</b> to do a TRUNCATE checkpoint when the database is closed.
+	 */
+	public CheckpointPolicy(int mode, int autoCheckpointPages, int commitsBetweenCheckpoints, long journalSizeLimitBytes, boolean checkpointOnClose) {
+		if(mode < PASSIVE || mode > TRUNCATE){
+			throw new IllegalArgumentException("unknown checkpoint mode "+mode);
+		}
+		this.mode = mode;
+		this.autoCheckpointPages = autoCheckpointPages;
+		this.commitsBetweenCheckpoints = commitsBetweenCheckpoints;
+		this.journalSizeLimitBytes = journalSizeLimitBytes;
+		this.checkpointOnClose = checkpointOnClose;
+	}
+
+	public int getMode() {
+		return mode;
+	}
+
+	public int getAutoCheckpointPages() {
+		return autoCheckpointPages;
+	}
+
+	public int getCommitsBetweenCheckpoints() {
+		return commitsBetweenCheckpoints;
+	}
+
+	public long getJournalSizeLimitBytes() {
+		return journalSizeLimitBytes;
+	}
+
+	public boolean isCheckpointOnClose() {
+		return checkpointOnClose;
+	}
+
+	static String modeName(int mode){
+		return MODE_NAMES[mode];
+	}
+}
@@ -0,0 +1,677 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * This class holds the resultant table of a query column by column using the native type of each column.  Integer columns
+ * are kept in long arrays, floating point columns in double arrays, text columns as indexes into a dictionary of their
+ * distinct values, and blob columns as slices of a single byte array.  Nulls are tracked with a bit per cell.  A column
+ * whose values have more than one type, other than a mix of integers and floating point values, keeps its values as objects.
+ * <br/>
+ * Values can be read with the accessor that matches their type without any parsing.  The String based accessors are
+ * provided for compatibility with code written against DataAccessResult getResults.
+ *
+ * @author Lee S. Barney
+ *
+ */
+public class ColumnarResult implements Serializable {
+	private static final long serialVersionUID = 1L;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final MathContext SIGNIFICANT_DIGITS = new MathContext(15, RoundingMode.HALF_UP);
+
+	public static final int TYPE_NULL = 0;
+	public static final int TYPE_LONG = 1;
+	public static final int TYPE_DOUBLE = 2;
+	public static final int TYPE_STRING = 3;
+	public static final int TYPE_BLOB = 4;
+	/*
+	 * used internally for columns that hold values of more than one type.
+	 */
+	static final int TYPE_MIXED = 5;
+
+	private String[] columnNames;
+	private Column[] columns;
+	private int rowCount;
+	private transient long blobBytes;
+	private transient long materializedBytes;
+
+	ColumnarResult(String[] columnNames) {
+		this.columnNames = columnNames;
+		this.columns = new Column[columnNames.length];
+		for(int i = 0; i < columns.length; i++){
+			columns[i] = new Column();
+		}
+	}
+	/*
+	 * Appends the current row of the cursor reading each value with the getter that matches its type.
+	 */
+	void appendRow(RowCursor aCursor){
+		int numColumns = columns.length;
+		for(int i = 0; i < numColumns; i++){
+			Column aColumn = columns[i];
+			switch(aCursor.getType(i)){
+			case TYPE_LONG:
+				aColumn.addLong(rowCount, aCursor.getLong(i));
+				materializedBytes += 8;
+				break;
+			case TYPE_DOUBLE:
+				aColumn.addDouble(rowCount, aCursor.getDouble(i));
+				materializedBytes += 8;
+				break;
+			case TYPE_STRING:
+				String aString = aCursor.getString(i);
+				materializedBytes += aColumn.addString(rowCount, aString) ? 44 + 2L * aString.length() : 4;
+				break;
+			case TYPE_BLOB:
+				byte[] aBlob = aCursor.getBlob(i);
+				blobBytes += aBlob.length;
+				materializedBytes += 4 + aBlob.length;
+				aColumn.addBlob(rowCount, aBlob);
+				break;
+			default:
+				aColumn.addNull(rowCount);
+			}
+		}
+		rowCount++;
+	}
+	/*
+	 * Appends a row of another result that has the same columns, keeping the type of each value.
+	 */
+	void appendRow(ColumnarResult aSource, int row){
+		int numColumns = columns.length;
+		for(int i = 0; i < numColumns; i++){
+			Column aColumn = columns[i];
+			switch(aSource.getType(row, i)){
+			case TYPE_LONG:
+				aColumn.addLong(rowCount, aSource.getLong(row, i));
+				break;
+			case TYPE_DOUBLE:
+				aColumn.addDouble(rowCount, aSource.getDouble(row, i));
+				break;
+			case TYPE_STRING:
+				aColumn.addString(rowCount, aSource.getString(row, i));
+				break;
+			case TYPE_BLOB:
+				aColumn.addBlob(rowCount, aSource.getBlob(row, i));
+				break;
+			default:
+				aColumn.addNull(rowCount);
+			}
+		}
+		rowCount++;
+	}
+	/*
+	 * Appends a row of Longs, Doubles, Strings, byte arrays and nulls.  Other Numbers are added as Longs and anything else as text.
+	 */
+	void appendValues(Object[] values){
+		int numColumns = columns.length;
+		for(int i = 0; i < numColumns; i++){
+			Column aColumn = columns[i];
+			Object value = values[i];
+			if(value == null){
+				aColumn.addNull(rowCount);
+			}
+			else if(value instanceof Double || value instanceof Float){
+				aColumn.addDouble(rowCount, ((Number)value).doubleValue());
+			}
+			else if(value instanceof Number){
+				aColumn.addLong(rowCount, ((Number)value).longValue());
+			}
+			else if(value instanceof byte[]){
+				aColumn.addBlob(rowCount, (byte[])value);
+			}
+			else{
+				aColumn.addString(rowCount, value.toString());
+			}
+		}
+		rowCount++;
+	}
+	/*
+	 * The value at a row and column as a Long, Double, String or byte array, or null.
+	 */
+	Object valueAt(int row, int column){
+		Column aColumn = columns[column];
+		return aColumn.isNull(row) ? null : aColumn.valueAt(row);
+	}
+	/*
+	 * A running estimate of the memory taken by the rows appended from cursors.  It is kept as the rows are read so it costs 
+	 * less than estimatedSize, which walks every column.
+	 */
+	long materializedBytes(){
+		return materializedBytes;
+	}
+	/*
+	 * The number of blob bytes read from the cursor while the result was filled.
+	 */
+	long blobBytes(){
+		return blobBytes;
+	}
+	/*
+	 * Releases the spare capacity and the lookup tables used while the result was being read.
+	 */
+	void finish(){
+		for(int i = 0; i < columns.length; i++){
+			columns[i].trim(rowCount);
+		}
+	}
+	/**
+	 * Accessor for the field names of the resultant table of a query.
+	 * @return - An array of Strings containing all the field names.
+	 */
+	public String[] getColumnNames() {
+		return columnNames;
+	}
+
+	public int getColumnCount() {
+		return columns.length;
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+	/**
+	 * Accessor for the type used to store a column.
+	 * @param column - the zero based index of the column.
+	 * @return - TYPE_LONG, TYPE_DOUBLE, TYPE_STRING or TYPE_BLOB if every non-null value of the column has that type,
+	 * TYPE_NULL if all of the values are null, TYPE_DOUBLE for columns of integers mixed with floating point values, and 
+	 * TYPE_STRING for other columns of mixed types.  Use getType to find the type of each value of a mixed column.
+	 */
+	public int getColumnType(int column) {
+		Column aColumn = columns[column];
+		if(aColumn.type == TYPE_MIXED){
+			return aColumn.mixedNumbers ? TYPE_DOUBLE : TYPE_STRING;
+		}
+		return aColumn.type;
+	}
+	/**
+	 * Accessor for the type of a single value.
+	 * @param row - the zero based index of the row.
+	 * @param column - the zero based index of the column.
+	 * @return - one of the TYPE_ constants of this class.
+	 */
+	public int getType(int row, int column) {
+		Column aColumn = columns[column];
+		if(aColumn.isNull(row)){
+			return TYPE_NULL;
+		}
+		if(aColumn.type != TYPE_MIXED){
+			return aColumn.type;
+		}
+		Object value = aColumn.objects[row];
+		if(value instanceof Long){
+			return TYPE_LONG;
+		}
+		if(value instanceof Double){
+			return TYPE_DOUBLE;
+		}
+		if(value instanceof byte[]){
+			return TYPE_BLOB;
+		}
+		return TYPE_STRING;
+	}
+
+	public boolean isNull(int row, int column) {
+		return columns[column].isNull(row);
+	}
+	/**
+	 * Accessor for a value as a long.  Floating point values are truncated and text is parsed.
+	 * @return - the value or 0 if it is null or can not be converted.
+	 */
+	public long getLong(int row, int column) {
+		Column aColumn = columns[column];
+		if(aColumn.isNull(row)){
+			return 0;
+		}
+		switch(aColumn.type){
+		case TYPE_LONG:
+			return aColumn.longs[row];
+		case TYPE_DOUBLE:
+			return (long)aColumn.doubles[row];
+		default:
+			Object value = aColumn.valueAt(row);
+			if(value instanceof Number){
+				return ((Number)value).longValue();
+			}
+			try{
+				return (long)Double.parseDouble(String.valueOf(value));
+			}
+			catch(NumberFormatException e){
+				return 0;
+			}
+		}
+	}
+	/**
+	 * Accessor for a value as a double.  Text is parsed.
+	 * @return - the value or 0 if it is null or can not be converted.
+	 */
+	public double getDouble(int row, int column) {
+		Column aColumn = columns[column];
+		if(aColumn.isNull(row)){
+			return 0;
+		}
+		switch(aColumn.type){
+		case TYPE_LONG:
+			return aColumn.longs[row];
+		case TYPE_DOUBLE:
+			return aColumn.doubles[row];
+		default:
+			Object value = aColumn.valueAt(row);
+			if(value instanceof Number){
+				return ((Number)value).doubleValue();
+			}
+			try{
+				return Double.parseDouble(String.valueOf(value));
+			}
+			catch(NumberFormatException e){
+				return 0;
+			}
+		}
+	}
+	/**
+	 * Accessor for a value as a String.  Numbers are converted to Strings and blobs are decoded as UTF-8 text.
+	 * @return - the value or null if it is null.
+	 */
+	public String getString(int row, int column) {
+		Column aColumn = columns[column];
+		if(aColumn.isNull(row)){
+			return null;
+		}
+		switch(aColumn.type){
+		case TYPE_LONG:
+			return Long.toString(aColumn.longs[row]);
+		case TYPE_DOUBLE:
+			return formatDouble(aColumn.doubles[row]);
+		case TYPE_STRING:
+			return aColumn.dictionary.get(aColumn.codes[row]);
+		default:
+			Object value = aColumn.valueAt(row);
+			if(value instanceof byte[]){
+				return new String((byte[])value, UTF8);
+			}
+			if(value instanceof Double){
+				return formatDouble((Double)value);
+			}
+			return String.valueOf(value);
+		}
+	}
+	/*
+	 * Formats a floating point value the way SQLite converts one to text, with the printf format %!.15g, so the String 
+	 * based accessors give the same text the Android Cursor getString method does.  For example 0.1 + 0.2 is "0.3", 100 is 
+	 * "100.0" and 1e20 is "1.0e+20".
+	 */
+	static String formatDouble(double value){
+		if(Double.isNaN(value)){
+			return "NaN";
+		}
+		if(Double.isInfinite(value)){
+			return value > 0 ? "Inf" : "-Inf";
+		}
+		StringBuilder aBuilder = new StringBuilder(24);
+		if(value < 0){
+			aBuilder.append('-');
+			value = -value;
+		}
+		BigDecimal rounded = new BigDecimal(value).round(SIGNIFICANT_DIGITS);
+		String digits = rounded.unscaledValue().toString();
+		int exponent = digits.length() - 1 - rounded.scale();
+		int end = digits.length();
+		while(end > 1 && digits.charAt(end - 1) == '0'){
+			end--;
+		}
+		digits = digits.substring(0, end);
+		if(value == 0){
+			exponent = 0;
+		}
+		if(exponent < -4 || exponent > 14){
+			aBuilder.append(digits.charAt(0)).append('.');
+			aBuilder.append(digits.length() > 1 ? digits.substring(1) : "0");
+			aBuilder.append(exponent < 0 ? "e-" : "e+");
+			int magnitude = Math.abs(exponent);
+			if(magnitude < 10){
+				aBuilder.append('0');
+			}
+			aBuilder.append(magnitude);
+		}
+		else if(exponent < 0){
+			aBuilder.append("0.");
+			for(int i = -1; i > exponent; i--){
+				aBuilder.append('0');
+			}
+			aBuilder.append(digits);
+		}
+		else{
+			int numWhole = exponent + 1;
+			if(digits.length() > numWhole){
+				aBuilder.append(digits, 0, numWhole).append('.').append(digits, numWhole, digits.length());
+			}
+			else{
+				aBuilder.append(digits);
+				for(int i = digits.length(); i < numWhole; i++){
+					aBuilder.append('0');
+				}
+				aBuilder.append(".0");
+			}
+		}
+		return aBuilder.toString();
+	}
+	/**
+	 * Accessor for a blob value.  Values that are not blobs are returned as their UTF-8 encoded text.
+	 * @return - a copy of the bytes of the value or null if it is null.
+	 */
+	public byte[] getBlob(int row, int column) {
+		Column aColumn = columns[column];
+		if(aColumn.isNull(row)){
+			return null;
+		}
+		Object value = aColumn.valueAt(row);
+		if(value instanceof byte[]){
+			return aColumn.type == TYPE_MIXED ? ((byte[])value).clone() : (byte[])value;
+		}
+		return getString(row, column).getBytes(UTF8);
+	}
+	/**
+	 * Builds the String based table used by DataAccessResult getResults.
+	 * @return - An ArrayList of ArrayLists of Strings, one per row.
+	 */
+	public ArrayList<ArrayList<String>> toStringRows() {
+		ArrayList<ArrayList<String>> rows = new ArrayList<ArrayList<String>>(rowCount);
+		int numColumns = columns.length;
+		for(int row = 0; row < rowCount; row++){
+			ArrayList<String> aRow = new ArrayList<String>(numColumns);
+			for(int column = 0; column < numColumns; column++){
+				aRow.add(getString(row, column));
+			}
+			rows.add(aRow);
+		}
+		return rows;
+	}
+	/**
+	 * An estimate of the heap used by the values of this result.
+	 * @return - the estimated number of bytes.
+	 */
+	public long estimatedSize() {
+		long size = 0;
+		for(int i = 0; i < columns.length; i++){
+			size += columns[i].estimatedSize();
+		}
+		return size;
+	}
+
+	private static class Column implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		int type = TYPE_NULL;
+		long[] nulls = new long[1];
+		long[] longs;
+		double[] doubles;
+		int[] codes;
+		ArrayList<String> dictionary;
+		transient HashMap<String,Integer> dictionaryIndex;
+		byte[] blobData;
+		int[] blobEnds;
+		int blobLength;
+		Object[] objects;
+		//true while every value of a mixed column is an integer or floating point number
+		boolean mixedNumbers;
+
+		boolean isNull(int row){
+			int word = row >>> 6;
+			return word < nulls.length && (nulls[word] & (1L << row)) != 0;
+		}
+
+		void addNull(int row){
+			int word = row >>> 6;
+			if(word >= nulls.length){
+				nulls = Arrays.copyOf(nulls, Math.max(word + 1, nulls.length * 2));
+			}
+			nulls[word] |= 1L << row;
+			/*
+			 * keep the value arrays in step with the rows so a later value lands at its own index.
+			 */
+			switch(type){
+			case TYPE_LONG:
+				longs = ensure(longs, row);
+				break;
+			case TYPE_DOUBLE:
+				doubles = ensure(doubles, row);
+				break;
+			case TYPE_STRING:
+				codes = ensure(codes, row);
+				break;
+			case TYPE_BLOB:
+				blobEnds = ensure(blobEnds, row);
+				blobEnds[row] = blobLength;
+				break;
+			case TYPE_MIXED:
+				objects = ensure(objects, row);
+				break;
+			}
+		}
+
+		void addLong(int row, long value){
+			if(type == TYPE_NULL){
+				type = TYPE_LONG;
+				longs = new long[Math.max(16, row + 1)];
+			}
+			else if(type != TYPE_LONG){
+				addObject(row, Long.valueOf(value));
+				return;
+			}
+			longs = ensure(longs, row);
+			longs[row] = value;
+		}
+
+		void addDouble(int row, double value){
+			if(type == TYPE_NULL){
+				type = TYPE_DOUBLE;
+				doubles = new double[Math.max(16, row + 1)];
+			}
+			else if(type != TYPE_DOUBLE){
+				/*
+				 * integers mixed with floating point values are kept as they were read rather than widened to doubles, which 
+				 * would change how they are formatted and lose the precision of integers larger than 2^53.
+				 */
+				addObject(row, Double.valueOf(value));
+				return;
+			}
+			doubles = ensure(doubles, row);
+			doubles[row] = value;
+		}
+
+		/*
+		 * Returns true if the value was not already in the column's dictionary.
+		 */
+		boolean addString(int row, String value){
+			if(type == TYPE_NULL){
+				type = TYPE_STRING;
+				codes = new int[Math.max(16, row + 1)];
+				dictionary = new ArrayList<String>();
+				dictionaryIndex = new HashMap<String,Integer>();
+			}
+			else if(type != TYPE_STRING){
+				addObject(row, value);
+				return true;
+			}
+			Integer code = dictionaryIndex.get(value);
+			boolean added = code == null;
+			if(added){
+				code = dictionary.size();
+				dictionary.add(value);
+				dictionaryIndex.put(value, code);
+			}
+			codes = ensure(codes, row);
+			codes[row] = code;
+			return added;
+		}
+
+		void addBlob(int row, byte[] value){
+			if(type == TYPE_NULL){
+				type = TYPE_BLOB;
+				blobData = new byte[Math.max(256, value.length)];
+				blobEnds = new int[Math.max(16, row + 1)];
+			}
+			else if(type != TYPE_BLOB){
+				addObject(row, value);
+				return;
+			}
+			if(blobLength + value.length > blobData.length){
+				blobData = Arrays.copyOf(blobData, Math.max(blobLength + value.length, blobData.length * 2));
+			}
+			System.arraycopy(value, 0, blobData, blobLength, value.length);
+			blobLength += value.length;
+			blobEnds = ensure(blobEnds, row);
+			blobEnds[row] = blobLength;
+		}
+
+		private void addObject(int row, Object value){
+			if(type != TYPE_MIXED){
+				mixedNumbers = type == TYPE_LONG || type == TYPE_DOUBLE;
+				Object[] converted = new Object[Math.max(16, row + 1)];
+				for(int i = 0; i < row; i++){
+					if(!isNull(i)){
+						converted[i] = valueAt(i);
+					}
+				}
+				type = TYPE_MIXED;
+				objects = converted;
+				longs = null;
+				doubles = null;
+				codes = null;
+				dictionary = null;
+				dictionaryIndex = null;
+				blobData = null;
+				blobEnds = null;
+			}
+			mixedNumbers &= value instanceof Number;
+			objects = ensure(objects, row);
+			objects[row] = value;
+		}
+
+		Object valueAt(int row){
+			switch(type){
+			case TYPE_LONG:
+				return Long.valueOf(longs[row]);
+			case TYPE_DOUBLE:
+				return Double.valueOf(doubles[row]);
+			case TYPE_STRING:
+				return dictionary.get(codes[row]);
+			case TYPE_BLOB:
+				int start = row == 0 ? 0 : blobEnds[row - 1];
+				return Arrays.copyOfRange(blobData, start, blobEnds[row]);
+			case TYPE_MIXED:
+				return objects[row];
+			default:
+				return null;
+			}
+		}
+
+		void trim(int rowCount){
+			int words = Math.max(1, (rowCount + 63) >>> 6);
+			if(nulls.length > words){
+				nulls = Arrays.copyOf(nulls, words);
+			}
+			switch(type){
+			case TYPE_LONG:
+				longs = Arrays.copyOf(longs, rowCount);
+				break;
+			case TYPE_DOUBLE:
+				doubles = Arrays.copyOf(doubles, rowCount);
+				break;
+			case TYPE_STRING:
+				codes = Arrays.copyOf(codes, rowCount);
+				dictionary.trimToSize();
+				dictionaryIndex = null;
+				break;
+			case TYPE_BLOB:
+				blobEnds = Arrays.copyOf(blobEnds, rowCount);
+				blobData = Arrays.copyOf(blobData, blobLength);
+				break;
+			case TYPE_MIXED:
+				objects = Arrays.copyOf(objects, rowCount);
+				break;
+			}
+		}
+
+		long estimatedSize(){
+			long size = 8L * nulls.length;
+			switch(type){
+			case TYPE_LONG:
+				size += 8L * longs.length;
+				break;
+			case TYPE_DOUBLE:
+				size += 8L * doubles.length;
+				break;
+			case TYPE_STRING:
+				size += 4L * codes.length;
+				for(int i = 0; i < dictionary.size(); i++){
+					size += 40 + 2L * dictionary.get(i).length();
+				}
+				break;
+			case TYPE_BLOB:
+				size += 4L * blobEnds.length + blobData.length;
+				break;
+			case TYPE_MIXED:
+				size += 4L * objects.length;
+				for(int i = 0; i < objects.length; i++){
+					Object value = objects[i];
+					if(value instanceof String){
+						size += 40 + 2L * ((String)value).length();
+					}
+					else if(value instanceof byte[]){
+						size += 16 + ((byte[])value).length;
+					}
+					else if(value != null){
+						size += 16;
+					}
+				}
+				break;
+			}
+			return size;
+		}
+
+		private static long[] ensure(long[] values, int row){
+			return row < values.length ? values : Arrays.copyOf(values, Math.max(row + 1, values.length + (values.length >> 1)));
+		}
+
+		private static double[] ensure(double[] values, int row){
+			return row < values.length ? values : Arrays.copyOf(values, Math.max(row + 1, values.length + (values.length >> 1)));
+		}
+
+		private static int[] ensure(int[] values, int row){
+			return row < values.length ? values : Arrays.copyOf(values, Math.max(row + 1, values.length + (values.length >> 1)));
+		}
+
+		private static Object[] ensure(Object[] values, int row){
+			return row < values.length ? values : Arrays.copyOf(values, Math.max(row + 1, values.length + (values.length >> 1)));
+		}
+	}
+}
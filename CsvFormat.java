@@ -0,0 +1,252 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * Reads and writes the comma separated values format of RFC 4180 for BulkTransfer.  Fields containing commas, quotes or line 
+ * breaks are enclosed in quotes and quotes inside them are doubled.  An empty field without quotes is NULL and an empty field 
+ * in quotes is an empty string.  Blobs are written as base64 text.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+class CsvFormat {
+
+	private CsvFormat(){}
+	/*
+	 * Returns the position just past the line break that ends the last complete record in the bytes from 0 up to length, or -1 if 
+	 * the bytes do not hold a complete record.  The bytes must begin at the start of a record.  Line breaks inside quotes are part 
+	 * of a field.  This only counts quotes so the reader thread can cut a file into blocks quickly and leave the parsing to the 
+	 * worker threads.
+	 */
+	static int lastRecordEnd(byte[] data, int length){
+		boolean quoted = false;
+		int lastEnd = -1;
+		for(int i = 0; i < length; i++){
+			byte aByte = data[i];
+			if(aByte == '"'){
+				quoted = !quoted;
+			}
+			else if(aByte == '\n' && !quoted){
+				lastEnd = i + 1;
+			}
+		}
+		return lastEnd;
+	}
+	/*
+	 * Returns the position just past the line break that ends the first record starting at start, or -1 if there is none before end.
+	 */
+	static int firstRecordEnd(byte[] data, int start, int end){
+		boolean quoted = false;
+		for(int i = start; i < end; i++){
+			byte aByte = data[i];
+			if(aByte == '"'){
+				quoted = !quoted;
+			}
+			else if(aByte == '\n' && !quoted){
+				return i + 1;
+			}
+		}
+		return -1;
+	}
+	/*
+	 * Parses the records from start up to end.  Blank lines are skipped.  A record without numColumns fields, or 
+	 * with any number of fields if numColumns is less than 0, is reported in the errors of the block instead of being added to its rows.
+	 */
+	static BulkTransfer.RowBlock parse(byte[] data, int start, int end, int numColumns){
+		ArrayList<Object[]> rows = new ArrayList<Object[]>();
+		ArrayList<String> errors = null;
+		ArrayList<Object> fields = new ArrayList<Object>(Math.max(numColumns, 8));
+		byte[] scratch = null;
+		int position = start;
+		while(position < end){
+			if(data[position] == '\n' || (data[position] == '\r' && position + 1 < end && data[position + 1] == '\n')){
+				position += data[position] == '\n' ? 1 : 2;
+				continue;
+			}
+			fields.clear();
+			String anError = null;
+			boolean endOfRecord = false;
+			while(!endOfRecord){
+				if(position < end && data[position] == '"'){
+					int fieldStart = ++position;
+					int escapes = 0;
+					while(true){
+						if(position >= end){
+							anError = "a quoted field is not closed";
+							break;
+						}
+						if(data[position] == '"'){
+							if(position + 1 < end && data[position + 1] == '"'){
+								escapes++;
+								position += 2;
+								continue;
+							}
+							break;
+						}
+						position++;
+					}
+					if(anError != null){
+						position = end;
+						break;
+					}
+					int fieldEnd = position++;
+					if(escapes == 0){
+						fields.add(new String(data, fieldStart, fieldEnd - fieldStart, StandardCharsets.UTF_8));
+					}
+					else{
+						if(scratch == null || scratch.length < fieldEnd - fieldStart){
+							scratch = new byte[Math.max(fieldEnd - fieldStart, 256)];
+						}
+						int length = 0;
+						for(int i = fieldStart; i < fieldEnd; i++){
+							scratch[length++] = data[i];
+							if(data[i] == '"'){
+								i++;
+							}
+						}
+						fields.add(new String(scratch, 0, length, StandardCharsets.UTF_8));
+					}
+					if(position < end && data[position] != ',' && data[position] != '\n' && data[position] != '\r'){
+						anError = "unexpected characters after a quoted field";
+						while(position < end && data[position] != '\n'){
+							position++;
+						}
+					}
+				}
+				else{
+					int fieldStart = position;
+					while(position < end && data[position] != ',' && data[position] != '\n'){
+						position++;
+					}
+					int fieldEnd = position;
+					if(fieldEnd > fieldStart && data[fieldEnd - 1] == '\r' && (position == end || data[position] == '\n')){
+						fieldEnd--;
+					}
+					fields.add(fieldEnd == fieldStart ? null : new String(data, fieldStart, fieldEnd - fieldStart, StandardCharsets.UTF_8));
+				}
+				if(position < end && data[position] == ','){
+					position++;
+				}
+				else{
+					if(position < end && data[position] == '\r'){
+						position++;
+					}
+					if(position < end && data[position] == '\n'){
+						position++;
+					}
+					endOfRecord = true;
+				}
+			}
+			if(anError == null && numColumns >= 0 && fields.size() != numColumns){
+				anError = "the record has "+fields.size()+" fields instead of "+numColumns;
+			}
+			if(anError != null){
+				if(errors == null){
+					errors = new ArrayList<String>();
+					for(int i = 0; i < rows.size(); i++){
+						errors.add(null);
+					}
+				}
+				rows.add(null);
+				errors.add(anError);
+			}
+			else{
+				rows.add(fields.toArray());
+				if(errors != null){
+					errors.add(null);
+				}
+			}
+		}
+		return new BulkTransfer.RowBlock(rows.toArray(new Object[rows.size()][]), 
+				errors == null ? null : errors.toArray(new String[errors.size()]), end - start);
+	}
+
+	static void writeRow(TransferBuffer aBuffer, DataAccessRow aRow, StringBuilder text){
+		int numColumns = aRow.getColumnCount();
+		for(int i = 0; i < numColumns; i++){
+			if(i > 0){
+				aBuffer.put((byte)',');
+			}
+			switch(aRow.getType(i)){
+				case ColumnarResult.TYPE_NULL:
+					break;
+				case ColumnarResult.TYPE_LONG:
+					text.setLength(0);
+					text.append(aRow.getLong(i));
+					aBuffer.putUtf8(text, 0, text.length());
+					break;
+				case ColumnarResult.TYPE_DOUBLE:
+					text.setLength(0);
+					text.append(aRow.getDouble(i));
+					aBuffer.putUtf8(text, 0, text.length());
+					break;
+				case ColumnarResult.TYPE_BLOB:
+					aBuffer.putBase64(aRow.getBlob(i));
+					break;
+				default:
+					text.setLength(0);
+					aRow.appendString(i, text);
+					writeText(aBuffer, text);
+			}
+		}
+		aBuffer.put((byte)'\n');
+	}
+
+	static void writeHeader(TransferBuffer aBuffer, String[] columnNames){
+		for(int i = 0; i < columnNames.length; i++){
+			if(i > 0){
+				aBuffer.put((byte)',');
+			}
+			writeText(aBuffer, columnNames[i]);
+		}
+		aBuffer.put((byte)'\n');
+	}
+
+	private static void writeText(TransferBuffer aBuffer, CharSequence text){
+		int length = text.length();
+		boolean needsQuotes = length == 0;
+		for(int i = 0; i < length && !needsQuotes; i++){
+			char aChar = text.charAt(i);
+			needsQuotes = aChar == ',' || aChar == '"' || aChar == '\n' || aChar == '\r';
+		}
+		if(!needsQuotes){
+			aBuffer.putUtf8(text, 0, length);
+			return;
+		}
+		aBuffer.put((byte)'"');
+		int segmentStart = 0;
+		for(int i = 0; i < length; i++){
+			if(text.charAt(i) == '"'){
+				aBuffer.putUtf8(text, segmentStart, i + 1);
+				aBuffer.put((byte)'"');
+				segmentStart = i + 1;
+			}
+		}
+		aBuffer.putUtf8(text, segmentStart, length);
+		aBuffer.put((byte)'"');
+	}
+}
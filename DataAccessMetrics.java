@@ -0,0 +1,248 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The DataAccessMetrics class collects timings of the work done by the DataAccessObject.  For each database it keeps latency 
+ * histograms of queries, writes, lock waits and transactions along with counts of rows returned and blob bytes moved.  For each 
+ * distinct SQL statement it keeps a latency histogram.  Every operation is also handed to the registered MetricsListeners so the 
+ * numbers can be exported elsewhere.<br/>
+ * 
+ * Metrics are off by default.  While they and the SlowQueryProfiler are off the DataAccessObject does not read the clock or 
+ * touch any of these structures so they cost a single volatile read per operation.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public class DataAccessMetrics {
+	public static final int QUERY = 0;
+	public static final int WRITE = 1;
+	public static final int BATCH = 2;
+	/*
+	 * statements beyond this many are counted together so an application that builds SQL strings with literal values in them 
+	 * can not grow the map without bound.
+	 */
+	private static final int MAX_STATEMENTS = 256;
+	private static final String OTHER_STATEMENTS = "(other statements)";
+
+	static volatile boolean enabled = false;
+	/*
+	 * whether operations are timed, which they are while either metrics or the SlowQueryProfiler are on.
+	 */
+	static volatile boolean timed = false;
+	private static ConcurrentHashMap<String,DatabaseMetrics> databaseMetrics = new ConcurrentHashMap<String,DatabaseMetrics>();
+	private static ConcurrentHashMap<String,LatencyHistogram> statementLatencies = new ConcurrentHashMap<String,LatencyHistogram>();
+	private static CopyOnWriteArrayList<MetricsListener> listeners = new CopyOnWriteArrayList<MetricsListener>();
+	/*
+	 * the start time and lock wait of each outermost transaction the current thread has open, by database.
+	 */
+	private static final ThreadLocal<HashMap<String,long[]>> openTransactions = new ThreadLocal<HashMap<String,long[]>>(){
+		@Override
+		protected HashMap<String,long[]> initialValue() {
+			return new HashMap<String,long[]>();
+		}
+	};
+	/*
+	 * A private constructor so no one accidentally instantiates an object of this type.
+	 */
+	private DataAccessMetrics(){}
+	/**
+	 * This method turns on collection of metrics.
+	 */
+	public static void enable(){
+		enabled = true;
+		updateTiming();
+	}
+	/**
+	 * This method turns off collection of metrics.  Metrics already collected are kept until reset is called.
+	 */
+	public static void disable(){
+		enabled = false;
+		updateTiming();
+	}
+
+	static void updateTiming(){
+		timed = enabled || SlowQueryProfiler.enabled;
+	}
+
+	public static boolean isEnabled(){
+		return enabled;
+	}
+	/**
+	 * This method discards all of the metrics collected so far.
+	 */
+	public static void reset(){
+		databaseMetrics.clear();
+		statementLatencies.clear();
+	}
+	/**
+	 * Accessor for the metrics of a database.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @return - the DatabaseMetrics of the database or null if nothing has been recorded for it.
+	 */
+	public static DatabaseMetrics getDatabaseMetrics(String databaseName){
+		return databaseMetrics.get(databaseName);
+	}
+	/**
+	 * Accessor for the metrics of all databases.
+	 * @return - an unmodifiable Map of database names to their DatabaseMetrics.
+	 */
+	public static Map<String,DatabaseMetrics> getAllDatabaseMetrics(){
+		return Collections.unmodifiableMap(databaseMetrics);
+	}
+	/**
+	 * Accessor for the latency of each distinct SQL statement.  Once 256 distinct statements have been seen any others are 
+	 * counted together under the key "(other statements)".
+	 * @return - an unmodifiable Map of SQL strings to their LatencyHistograms.
+	 */
+	public static Map<String,LatencyHistogram> getStatementLatencies(){
+		return Collections.unmodifiableMap(statementLatencies);
+	}
+
+	public static void addListener(MetricsListener aListener){
+		listeners.addIfAbsent(aListener);
+	}
+
+	public static void removeListener(MetricsListener aListener){
+		listeners.remove(aListener);
+	}
+
+	static long now(){
+		return timed ? System.nanoTime() : 0;
+	}
+
+	static void recordOperation(String databaseName, String SQL, int kind, long durationNanos, long lockWaitNanos, long rows, long blobBytes){
+		recordOperation(databaseName, SQL, null, kind, durationNanos, lockWaitNanos, rows, blobBytes);
+	}
+	/*
+	 * Records an operation that was timed.  The parameters are only looked at if the operation was slow enough for the 
+	 * SlowQueryProfiler to keep.
+	 */
+	static void recordOperation(String databaseName, String SQL, ParameterBuffer parameters, int kind, long durationNanos, long lockWaitNanos, 
+			long rows, long blobBytes){
+		if(SlowQueryProfiler.enabled){
+			SlowQueryProfiler.operationCompleted(databaseName, SQL, parameters, kind, durationNanos, lockWaitNanos, rows);
+		}
+		if(!enabled){
+			return;
+		}
+		DatabaseMetrics aMetrics = metricsFor(databaseName);
+		if(kind == QUERY){
+			aMetrics.getQueryLatency().record(durationNanos);
+			aMetrics.addRows(rows);
+			aMetrics.addBlobBytes(blobBytes, 0);
+		}
+		else{
+			aMetrics.getWriteLatency().record(durationNanos);
+			aMetrics.addBlobBytes(0, blobBytes);
+		}
+		statementLatencyFor(SQL).record(durationNanos);
+		for(MetricsListener aListener : listeners){
+			try{
+				aListener.operationCompleted(databaseName, SQL, kind, durationNanos, lockWaitNanos, rows, blobBytes);
+			}
+			catch(RuntimeException e){
+				e.printStackTrace();
+			}
+		}
+	}
+
+	static void recordLockWait(String databaseName, long lockWaitNanos){
+		if(enabled){
+			metricsFor(databaseName).getLockWait().record(lockWaitNanos);
+		}
+	}
+	/*
+	 * Called once the write lock of an outermost transaction has been acquired.
+	 */
+	static void transactionStarted(String databaseName, long startNanos, long lockWaitNanos){
+		recordLockWait(databaseName, lockWaitNanos);
+		openTransactions.get().put(databaseName, new long[]{startNanos, lockWaitNanos});
+	}
+	/*
+	 * The time the current thread waited for the write lock of its open transaction on the database.
+	 */
+	static long transactionLockWait(String databaseName){
+		long[] aTransaction = openTransactions.get().get(databaseName);
+		return aTransaction == null ? 0 : aTransaction[1];
+	}
+	/*
+	 * Called as an outermost transaction ends.  A transaction started while operations were not timed is not recorded.
+	 */
+	static void transactionEnded(String databaseName, boolean committed){
+		long[] aTransaction = openTransactions.get().remove(databaseName);
+		if(aTransaction == null){
+			return;
+		}
+		if(!enabled){
+			return;
+		}
+		long duration = System.nanoTime() - aTransaction[0];
+		DatabaseMetrics aMetrics = metricsFor(databaseName);
+		aMetrics.getTransactionDuration().record(duration);
+		if(!committed){
+			aMetrics.addRollback();
+		}
+		for(MetricsListener aListener : listeners){
+			try{
+				aListener.transactionCompleted(databaseName, duration, committed);
+			}
+			catch(RuntimeException e){
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private static DatabaseMetrics metricsFor(String databaseName){
+		DatabaseMetrics aMetrics = databaseMetrics.get(databaseName);
+		if(aMetrics == null){
+			aMetrics = new DatabaseMetrics(databaseName);
+			DatabaseMetrics existing = databaseMetrics.putIfAbsent(databaseName, aMetrics);
+			if(existing != null){
+				aMetrics = existing;
+			}
+		}
+		return aMetrics;
+	}
+
+	private static LatencyHistogram statementLatencyFor(String SQL){
+		LatencyHistogram aHistogram = statementLatencies.get(SQL);
+		if(aHistogram == null){
+			if(statementLatencies.size() >= MAX_STATEMENTS){
+				SQL = OTHER_STATEMENTS;
+			}
+			aHistogram = new LatencyHistogram();
+			LatencyHistogram existing = statementLatencies.putIfAbsent(SQL, aHistogram);
+			if(existing != null){
+				aHistogram = existing;
+			}
+		}
+		return aHistogram;
+	}
+}
@@ -23,22 +23,25 @@
 package org.quickconnectfamily.dbaccess;
 
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.ref.WeakReference;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.HashMap;
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.concurrent.Semaphore;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 import android.app.Activity;
 import android.content.Context;
-import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
-import android.database.sqlite.SQLiteStatement;
 /**
  * The DataAccessObject class is a wrapper created to ease the use of SQLite databases available in Android Applications.  
  * It supports the use of multiple databases per application, database transactions, and all transactions, queries, insertions 
@@ -50,6 +53,7 @@ import android.database.sqlite.SQLiteStatement;
  * <br/>
  * Transactions are started and stopped using the DataAccessObject startTransaction and endTransaction methods.  If the endTransaction 
  * method is passed <b>false</b> as the third parameter then a roll back of the changes done as part of the transaction will be executed.  
+ * A transaction belongs to the thread that started it and only blocks access to its own database.
  * <br/>
  * If your database is not going to be used any longer you can use the DataAccessObject close method to free the resources.  Only close 
  * databases if you will no longer be using them during the run of your application or you need to free resources for memory reasons.
@@ -60,83 +64,419 @@ import android.database.sqlite.SQLiteStatement;
  *
  */
 public class DataAccessObject {
-	private static String databaseDirectory = null;
-	private static HashMap<String,SQLiteDatabase> databases;
-	private static boolean inTransaction = false;
-	private static Semaphore writeBlockingSemaphore;
-	static{
-		if(databases == null){
-			databases = new HashMap<String,SQLiteDatabase>();
-			/*
-			 * create a semaphore that uses 'fair' access and allows the maximum number of claims.  This means that 
-			 * there will be no claim hopping.  Claims will be queued in the order they were requested if 
-			 * there aren't open claims.  A transaction or write will claim all of the available claims.  A read will
-			 * claim only one.
-			 */
-			writeBlockingSemaphore = new Semaphore(Integer.MAX_VALUE, true);
+	public static final int VERIFY_NONE = 0;
+	public static final int VERIFY_SIZE = 1;
+	public static final int VERIFY_CHECKSUM = 2;
+	/**
+	 * A query whose result goes over its memory budget fails with a DataAccessException.
+	 */
+	public static final int RESULT_OVERFLOW_FAIL = 0;
+	/**
+	 * A query whose result goes over its memory budget has its rows moved to a temporary file.  See DataAccessResult getSpilledResults.
+	 */
+	public static final int RESULT_OVERFLOW_SPILL = 1;
+
+	private static volatile String databaseDirectory = null;
+	private static volatile DatabaseBackend backend = new AndroidBackend();
+	private static ConcurrentHashMap<String,DatabaseConnection> databases = new ConcurrentHashMap<String,DatabaseConnection>();
+	private static HashMap<String,Object> openLocks = new HashMap<String,Object>();
+	private static volatile int bundledDatabaseVerification = VERIFY_NONE;
+	private static volatile QueryResultCache resultCache = null;
+	private static volatile int readConnectionsPerDatabase = 0;
+	private static volatile CheckpointPolicy checkpointPolicy = CheckpointPolicy.DEFAULT;
+	private static ConcurrentHashMap<String,ReadConnectionPool> readPools = new ConcurrentHashMap<String,ReadConnectionPool>();
+	private static ConcurrentHashMap<String,ReentrantReadWriteLock> databaseLocks = new ConcurrentHashMap<String,ReentrantReadWriteLock>();
+	private static final Function<String,ReentrantReadWriteLock> newDatabaseLock = new Function<String,ReentrantReadWriteLock>(){
+		public ReentrantReadWriteLock apply(String databaseName) {
+			return new ReentrantReadWriteLock(true);
 		}
-	}
+	};
+	private static ConcurrentHashMap<String,StatementCache> statementCaches = new ConcurrentHashMap<String,StatementCache>();
+	private static volatile int statementCacheSize = 40;
+	private static ConcurrentHashMap<String,GroupCommitWriter> groupCommitWriters = new ConcurrentHashMap<String,GroupCommitWriter>();
+	private static volatile int groupCommitMaxWrites = 0;
+	private static volatile long groupCommitMaxDelayMillis = 0;
+	private static final Function<String,GroupCommitWriter> newGroupCommitWriter = new Function<String,GroupCommitWriter>(){
+		public GroupCommitWriter apply(String databaseName) {
+			synchronized(DataAccessObject.class){
+				return groupCommitMaxWrites > 0 ? new GroupCommitWriter(databaseName, groupCommitMaxWrites, groupCommitMaxDelayMillis) : null;
+			}
+		}
+	};
+	private static final ThreadLocal<JsonResultWriter> jsonWriters = new ThreadLocal<JsonResultWriter>(){
+		@Override
+		protected JsonResultWriter initialValue() {
+			return new JsonResultWriter();
+		}
+	};
+	/*
+	 * well under the 2 megabyte cursor window Android reads rows into, which a larger value would not fit in.
+	 */
+	private static final int BLOB_CHUNK_BYTES = 512 * 1024;
+	static final AtomicLong statementCacheHits = new AtomicLong();
+	static final AtomicLong statementCacheMisses = new AtomicLong();
 	/*
 	 * A private constructor so no one accidentally instantiates an object of this type.
 	 */
 	private DataAccessObject(){}
 
-	private synchronized static SQLiteDatabase generateDataAccessObject(WeakReference<Context> aContextRef, String databaseName) throws DataAccessException {
-		SQLiteDatabase retVal = null;
-		if(aContextRef == null || databaseName == null){
+	static DatabaseConnection generateDataAccessObject(WeakReference<Context> aContextRef, String databaseName) throws DataAccessException {
+		return generateDataAccessObject(aContextRef, databaseName, null);
+	}
+	/*
+	 * Copies the database from the assets directory if needed and opens it.  Only the database being opened is locked, so 
+	 * several databases can be copied and opened at the same time and threads using databases that are already open never wait.
+	 */
+	static DatabaseConnection generateDataAccessObject(WeakReference<Context> aContextRef, String databaseName, StartupReport aReport) throws DataAccessException {
+		if(databaseName == null || (aContextRef == null && databaseDirectory == null)){
 			throw new DataAccessException("Error: unable to access the database "+databaseName+" for the activity "+aContextRef);
 		}
-		
-		
-		if(databaseDirectory == null){
-			Context aContext = aContextRef.get();
-			if(aContext == null){
+		DatabaseConnection retVal = databases.get(databaseName);
+		if(retVal != null){
+			return alreadyOpen(databaseName, retVal, aReport);
+		}
+		synchronized(openLockFor(databaseName)){
+			retVal = databases.get(databaseName);
+			if(retVal != null){
+				return alreadyOpen(databaseName, retVal, aReport);
+			}
+			String aDirectory = databaseDirectory(aContextRef);
+			if(aDirectory == null){
 				return null;
 			}
-			databaseDirectory = "/data/data/"+aContext.getPackageName()+"/databases/";
+			try {
+				long start = System.nanoTime();
+				File dbFile = new File(aDirectory+databaseName);
+				/*
+				 * without a Context there are no assets to copy from so a missing database is created empty.
+				 */
+				if(aContextRef != null && (!dbFile.exists() || bundledDatabaseVerification != VERIFY_NONE)){
+					Context aContext = aContextRef.get();
+					if(aContext == null){
+						return null;
+					}
+					AssetCopier.ensureCopied(aContext, databaseName, dbFile, bundledDatabaseVerification);
+				}
+				if(aReport != null){
+					aReport.record(databaseName, StartupReport.PHASE_COPY, System.nanoTime() - start);
+				}
+				start = System.nanoTime();
+				retVal = backend.open(aDirectory+databaseName);
+				if(readConnectionsPerDatabase > 0){
+					startWriteAheadLogging(databaseName, aDirectory+databaseName, retVal);
+				}
+				databases.put(databaseName,retVal);
+				if(aReport != null){
+					aReport.record(databaseName, StartupReport.PHASE_OPEN, System.nanoTime() - start);
+				}
+			} catch (IOException e) { 
+				e.printStackTrace();
+				if(aReport != null){
+					aReport.recordError(databaseName, e.toString());
+				}
+			}
 		}
-		File dbDir = new File(databaseDirectory);
-		if (!dbDir.exists()){
-			dbDir.mkdir();
+		return retVal;
+	}
+
+	/*
+	 * A database that is already open needed neither a copy nor an open.
+	 */
+	private static DatabaseConnection alreadyOpen(String databaseName, DatabaseConnection aDatabase, StartupReport aReport){
+		if(aReport != null){
+			aReport.record(databaseName, StartupReport.PHASE_COPY, 0);
+			aReport.record(databaseName, StartupReport.PHASE_OPEN, 0);
 		}
-		
-		
-		try {
-			File dbFile = new File(databaseDirectory+databaseName);
-			if(!dbFile.exists()){
-				Context aContext = aContextRef.get();
+		return aDatabase;
+	}
+
+	private static String databaseDirectory(WeakReference<Context> aContextRef){
+		synchronized(openLocks){
+			if(databaseDirectory == null){
+				Context aContext = aContextRef == null ? null : aContextRef.get();
 				if(aContext == null){
 					return null;
 				}
-				InputStream in = aContext.getAssets().open(databaseName); 
-				// Open the output file 
-				OutputStream out = new FileOutputStream(databaseDirectory+databaseName); 
-				// Transfer bytes from the input file to the output file 
-				byte[] buf = new byte[1024]; 
-				int len; 
-				while ((len = in.read(buf)) > 0) { 
-					out.write(buf, 0, len); 
-				} 
-				// Close the streams 
-				out.close(); 
-				in.close(); 
+				databaseDirectory = "/data/data/"+aContext.getPackageName()+"/databases/";
+				File dbDir = new File(databaseDirectory);
+				if (!dbDir.exists()){
+					dbDir.mkdir();
+				}
+			}
+			return databaseDirectory;
+		}
+	}
 
+	/*
+	 * Switches a newly opened database to write ahead logging, applies the checkpoint policy and creates its pool of read only 
+	 * connections.  A database that can not use write ahead logging, such as an in memory database, keeps using its one connection.
+	 */
+	private static void startWriteAheadLogging(String databaseName, String path, DatabaseConnection aDatabase){
+		if(!aDatabase.enableWriteAheadLogging()){
+			return;
+		}
+		CheckpointPolicy aPolicy = checkpointPolicy;
+		if(aPolicy.getAutoCheckpointPages() >= 0){
+			runPragma(aDatabase, "PRAGMA wal_autocheckpoint="+aPolicy.getAutoCheckpointPages());
+		}
+		if(aPolicy.getJournalSizeLimitBytes() >= 0){
+			runPragma(aDatabase, "PRAGMA journal_size_limit="+aPolicy.getJournalSizeLimitBytes());
+		}
+		readPools.put(databaseName, new ReadConnectionPool(backend, path, readConnectionsPerDatabase, aPolicy));
+	}
+	/*
+	 * Runs a PRAGMA, which may return a row, and returns the first column of that row or -1 if there was none.
+	 */
+	private static long runPragma(DatabaseConnection aDatabase, String SQL){
+		RowCursor aCursor = aDatabase.query(SQL, null, 0);
+		try{
+			return aCursor.moveToNext() && !aCursor.isNull(0) ? aCursor.getLong(0) : -1;
+		}
+		finally{
+			aCursor.close();
+		}
+	}
+	/*
+	 * Runs a query for the library's own use on a database that is already open.  The query is not timed, cached or counted 
+	 * against the result memory limits.  Returns null if the database is not open.
+	 */
+	static ColumnarResult queryOpenDatabase(String databaseName, String SQL, ParameterBuffer parameters) throws InterruptedException{
+		DatabaseConnection aDatabase = databases.get(databaseName);
+		if(aDatabase == null){
+			return null;
+		}
+		ReentrantReadWriteLock.ReadLock aReadLock = lockFor(databaseName).readLock();
+		aReadLock.lockInterruptibly();
+		try{
+			RowCursor aCursor = openCursor(aDatabase, SQL, parameters, 0);
+			try{
+				ColumnarResult results = new ColumnarResult(aCursor.getColumnNames());
+				while(aCursor.moveToNext()){
+					results.appendRow(aCursor);
+				}
+				results.finish();
+				return results;
 			}
-			retVal = databases.get(databaseName);
-			//Log.d(QuickConnectActivity.LOG_TAG, "found database: "+databaseName+" retVal: "+retVal);
-			if (retVal == null) {
-				//Log.d(QuickConnectActivity.LOG_TAG, "opening database");
-				
-				retVal = SQLiteDatabase.openDatabase(databaseDirectory+databaseName, 
-						null, SQLiteDatabase.CREATE_IF_NECESSARY);
-				
-				databases.put(databaseName,retVal);
+			finally{
+				aCursor.close();
 			}
+		}
+		finally{
+			aReadLock.unlock();
+		}
+	}
+	/*
+	 * The pool of read only connections a statement should be run on, or null if it should be run on the database's own 
+	 * connection under its read lock.  Only queries go to the pool, and a thread in a transaction reads on the transaction's 
+	 * connection so it sees its own changes.
+	 */
+	private static ReadConnectionPool readPoolFor(String databaseName, String SQL){
+		if(readPools.isEmpty()){
+			return null;
+		}
+		ReadConnectionPool aPool = readPools.get(databaseName);
+		if(aPool == null || isInTransaction(databaseName) || !SqlTables.isQuery(SQL)){
+			return null;
+		}
+		return aPool;
+	}
 
-		} catch (IOException e) { 
-			e.printStackTrace();
+	private static Object openLockFor(String databaseName){
+		synchronized(openLocks){
+			Object anOpenLock = openLocks.get(databaseName);
+			if(anOpenLock == null){
+				anOpenLock = new Object();
+				openLocks.put(databaseName, anOpenLock);
+			}
+			return anOpenLock;
+		}
+	}
+	/*
+	 * Reads the database file so the operating system caches its pages and compiles the given statements into the 
+	 * database's statement cache.
+	 */
+	static void warmUp(WeakReference<Context> aContextRef, String databaseName, String[] statements, boolean warmPageCache, StartupReport aReport) throws DataAccessException, IOException {
+		DatabaseConnection aDatabase = generateDataAccessObject(aContextRef, databaseName);
+		if(aDatabase == null){
+			return;
+		}
+		if(warmPageCache){
+			long start = System.nanoTime();
+			FileChannel aChannel = new FileInputStream(databaseDirectory+databaseName).getChannel();
+			try{
+				ByteBuffer aBuffer = ByteBuffer.allocateDirect(256 * 1024);
+				while(aChannel.read(aBuffer) > 0){
+					aBuffer.clear();
+				}
+			}
+			finally{
+				aChannel.close();
+			}
+			aReport.record(databaseName, StartupReport.PHASE_WARM_PAGE_CACHE, System.nanoTime() - start);
+		}
+		if(statements != null){
+			long start = System.nanoTime();
+			StatementCache aStatementCache = statementCacheFor(databaseName, aDatabase);
+			/*
+			 * cached statements may only be touched while holding the database's write lock.
+			 */
+			ReentrantReadWriteLock.WriteLock aWriteLock = lockFor(databaseName).writeLock();
+			aWriteLock.lock();
+			try{
+				for(int i = 0; i < statements.length; i++){
+					aStatementCache.release(statements[i], aStatementCache.acquire(statements[i]));
+				}
+			}
+			finally{
+				aWriteLock.unlock();
+			}
+			aReport.record(databaseName, StartupReport.PHASE_WARM_STATEMENTS, System.nanoTime() - start);
+		}
+	}
+	/**
+	 * This method sets the DatabaseBackend used to open databases.  The default is the AndroidBackend.  It must be called before 
+	 * any database is opened.
+	 * @param aBackend - the DatabaseBackend to use.
+	 */
+	public static void setBackend(DatabaseBackend aBackend){
+		backend = aBackend;
+	}
+	/**
+	 * This method sets the directory database files are opened from.  By default it is the databases directory of the Android 
+	 * application.  When it is set, databases whose files already exist can be used without a Context, for example on a Java 
+	 * virtual machine with the JdbcBackend.
+	 * @param aDirectory - the path of the directory.
+	 */
+	public static void setDatabaseDirectory(String aDirectory){
+		synchronized(openLocks){
+			databaseDirectory = aDirectory.endsWith(File.separator) ? aDirectory : aDirectory+File.separator;
+			new File(databaseDirectory).mkdirs();
+		}
+	}
+	/**
+	 * This method turns on write ahead logging for databases opened after it is called.  Each database is given one connection 
+	 * that does all of its writes and transactions and a pool of read only connections.  Queries that are not part of the calling 
+	 * thread's transaction are run on the pool so they run at the same time as each other and as the writer, seeing the data as 
+	 * of the last commit.  The log is copied back into the database file as the CheckpointPolicy directs.
+	 * @param readConnections - the most read only connections to open for each database.  0 turns write ahead logging off for 
+	 * databases opened afterwards.
+	 * @param aPolicy - the CheckpointPolicy to use or null for CheckpointPolicy.DEFAULT.
+	 */
+	public static void setWriteAheadLogging(int readConnections, CheckpointPolicy aPolicy){
+		checkpointPolicy = aPolicy == null ? CheckpointPolicy.DEFAULT : aPolicy;
+		readConnectionsPerDatabase = Math.max(0, readConnections);
+	}
+	/**
+	 * This method sets the memory budgets for the results of getData and transact queries, which read all of their rows into 
+	 * memory.  A query's rows are counted against its own budget and the global budget as they are read.  A query gives its 
+	 * share of the global budget back once all of its rows have been read, so the global budget limits the rows of the queries 
+	 * running at once rather than the results the application keeps.  Reading spilled rows back into memory with 
+	 * DataAccessResult getColumnarResults or getResults is counted the same way but fails under either policy.  Queries run 
+	 * with stream, iterate and page are not counted since they never hold all of their rows.
+	 * @param perQueryBytes - the most memory the rows of one query may use or 0 for no limit.
+	 * @param globalBytes - the most memory the rows of all results may use together or 0 for no limit.
+	 * @param overflowPolicy - RESULT_OVERFLOW_FAIL to throw a DataAccessException from a query that goes over a budget or 
+	 * RESULT_OVERFLOW_SPILL to move its rows to a temporary file.
+	 */
+	public static void setResultMemoryLimits(long perQueryBytes, long globalBytes, int overflowPolicy){
+		ResultMemory.overflowPolicy = overflowPolicy;
+		ResultMemory.globalLimit = Math.max(0, globalBytes);
+		ResultMemory.perQueryLimit = Math.max(0, perQueryBytes);
+	}
+	/**
+	 * Accessor for an estimate of the memory used by the rows of the queries that are being read.  It is only kept while a 
+	 * result memory limit is set.
+	 * @return - the number of bytes in use.
+	 */
+	public static long getResultMemoryInUse(){
+		return ResultMemory.inUse();
+	}
+	/**
+	 * Accessor for the most memory the rows of results have used at once while a result memory limit was set.
+	 * @return - the highest number of bytes in use.
+	 */
+	public static long getResultMemoryPeak(){
+		return ResultMemory.peak();
+	}
+	/**
+	 * Accessor for the number of query results that were moved to temporary files because they went over their memory budget.
+	 * @return - the number of spilled results since the application started.
+	 */
+	public static long getSpilledResultCount(){
+		return ResultMemory.spilledResults();
+	}
+	/**
+	 * This method turns group commit on or off for all databases.  In group commit mode setData and transact calls that change a 
+	 * database and are not part of the calling thread's own transaction are handed to a single writer thread for the database.  
+	 * The writer executes all of the writes that arrive within a window in one transaction so many writes share one commit and 
+	 * one sync of the journal.  Each calling thread waits until the transaction its write was part of has been committed and is 
+	 * then handed the DataAccessResult of its own write.  A write that fails does not undo the other writes of its group.
+	 * <br/>
+	 * Writes that were already waiting are committed before a change of settings takes effect.
+	 * @param maxWrites - the most writes committed in one transaction.  0 turns group commit off.
+	 * @param maxDelayMillis - how long the writer waits, after the first write of a group arrives, for more writes to join the group.  
+	 * 0 groups only the writes that are already waiting.
+	 */
+	public static void setGroupCommit(int maxWrites, long maxDelayMillis){
+		synchronized(DataAccessObject.class){
+			groupCommitMaxWrites = Math.max(0, maxWrites);
+			groupCommitMaxDelayMillis = Math.max(0, maxDelayMillis);
+		}
+		stopGroupCommitWriters();
+	}
+	/*
+	 * Stops every group commit writer after its queued writes are committed.  New writers are started as they are needed.
+	 */
+	private static void stopGroupCommitWriters(){
+		Iterator<String> databaseIt = groupCommitWriters.keySet().iterator();
+		while(databaseIt.hasNext()){
+			GroupCommitWriter aWriter = groupCommitWriters.remove(databaseIt.next());
+			if(aWriter != null){
+				aWriter.shutdown();
+			}
+		}
+	}
+	/**
+	 * This method copies the write ahead log of a database back into the database file.  It waits for any transaction of another 
+	 * thread on the database to end.  It does nothing for a database that is not using write ahead logging.
+	 * @param aContext - The Activity object with which the database is associated.  This is usually the main, or first, Activity of 
+	 * the application.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @param mode - CheckpointPolicy.PASSIVE, FULL, RESTART or TRUNCATE.
+	 * @return - <b>true</b> if the checkpoint was completed, <b>false</b> if readers or a writer kept it from finishing.
+	 * @throws DataAccessException
+	 */
+	public static boolean checkpoint(WeakReference<Context> aContextRef, String databaseName, int mode) throws DataAccessException{
+		DatabaseConnection aDatabase = generateDataAccessObject(aContextRef, databaseName);
+		if(aDatabase == null || !readPools.containsKey(databaseName)){
+			return true;
+		}
+		ReentrantReadWriteLock.WriteLock aWriteLock = lockFor(databaseName).writeLock();
+		try{
+			aWriteLock.lockInterruptibly();
+		}
+		catch(InterruptedException e){
+			throw new DataAccessException("Error: unable to checkpoint "+databaseName+". "+e.getLocalizedMessage());
+		}
+		try{
+			return runPragma(aDatabase, "PRAGMA wal_checkpoint("+CheckpointPolicy.modeName(mode)+")") == 0;
+		}
+		catch(RuntimeException e){
+			throw new DataAccessException("Error: unable to checkpoint "+databaseName+". "+e.getLocalizedMessage());
+		}
+		finally{
+			aWriteLock.unlock();
 		}
-		return retVal;
+	}
+	/**
+	 * This method sets how a database file that has already been copied from the assets directory is checked against the asset 
+	 * before it is opened.  With VERIFY_NONE, the default, an existing file is always used.  With VERIFY_SIZE or VERIFY_CHECKSUM the 
+	 * file is copied again if its size, or its size and CRC32 checksum, do not match the asset.  Only turn verification on for 
+	 * read only databases since copying the asset again replaces any changes made to the file.
+	 * @param verification - VERIFY_NONE, VERIFY_SIZE, or VERIFY_CHECKSUM.
+	 */
+	public static void setBundledDatabaseVerification(int verification){
+		bundledDatabaseVerification = verification;
 	}
 	/**
 	 * This method is used to execute standard SQL query statements and matching prepared statements against any SQLite database file included in 
@@ -155,7 +495,7 @@ public class DataAccessObject {
 	 * @throws DataAccessException
 	 */
 	public static DataAccessResult getData(WeakReference<Context> aContextRef, String databaseName, String SQL, Object[] parameters) throws DataAccessException{
-		return dbAccess(aContextRef, databaseName, SQL, parameters, false);
+		return dbAccess(aContextRef, databaseName, SQL, ParameterBuffer.of(parameters), false);
 	}
 	/**
 	 * This method is used to execute standard insert, update, etc. SQL statements and matching prepared statements against any SQLite database file included in 
@@ -175,7 +515,7 @@ public class DataAccessObject {
 	 * @throws DataAccessException
 	 */
 	public static DataAccessResult setData(WeakReference<Context> aContextRef, String databaseName, String SQL, Object[] parameters) throws DataAccessException{
-		return dbAccess(aContextRef, databaseName, SQL, parameters, true);
+		return dbAccess(aContextRef, databaseName, SQL, ParameterBuffer.of(parameters), true);
 	}
 	/**
 	 * This method is used to execute standard select, insert, update, etc. SQL statements and matching prepared statements against any SQLite database file included in 
@@ -192,208 +532,1243 @@ public class DataAccessObject {
 	 * @throws DataAccessException
 	 */
 	public static DataAccessResult transact(WeakReference<Context> aContextRef, String databaseName, String SQL, Object[] parameters) throws DataAccessException{
-		boolean isChangeData = true;
-		if(SQL.toLowerCase().startsWith("select")){
-			System.out.println("starts with select");
-			isChangeData = false;
-		}
-		System.out.println("SQL: "+SQL+" isChanging: "+isChangeData);
-		return dbAccess(aContextRef, databaseName, SQL, parameters, isChangeData);
+		return transactBound(aContextRef, databaseName, SQL, ParameterBuffer.of(parameters));
+	}
+	/**
+	 * This method is used to execute standard select, insert, update, etc. SQL statements with parameters held in a ParameterBuffer.  
+	 * Each parameter is bound with the bind method for its type, for queries as well as for changes, so numbers are never boxed 
+	 * or turned into text.  A ParameterBuffer refilled for each call lets a loop of calls bind its parameters without creating 
+	 * garbage.
+	 * 
+	 * @param aContext - The Activity object with which the database is associated.  This is usually the main, or first, Activity of 
+	 * the application.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @param SQL - An SQL string for a standard SQL statement or a prepared statement used to query the database
+	 * @param parameters - the values bound to the ? characters in the SQL string.  It may be null if the SQL has no parameters.  
+	 * It must not be changed until the call returns.
+	 * @return - A DataAccessResult object that contains information regarding any database errors generated during execution
+	 *  and other helpful pieces of information.
+	 * @throws DataAccessException
+	 */
+	public static DataAccessResult transactBound(WeakReference<Context> aContextRef, String databaseName, String SQL, ParameterBuffer parameters) throws DataAccessException{
+		return dbAccess(aContextRef, databaseName, SQL, parameters, !isSelect(SQL));
+	}
+	/*
+	 * The test transact uses to tell queries from changes.
+	 */
+	static boolean isSelect(String SQL){
+		return SQL.regionMatches(true, 0, "select", 0, 6);
 	}
 
-	private static DataAccessResult dbAccess(WeakReference<Context> aContextRef, String databaseName, String SQL, Object[] parameters, boolean treatAsChangeData) throws DataAccessException{
-		if(databaseName == null){
+	/**
+	 * This method is used to execute a query and hand each row of the result to a RowVisitor as it is read instead of keeping 
+	 * all of the rows in memory.  The database's read lock is only held while the query is open.  The RowVisitor must not write 
+	 * to the same database, since the write would wait for the read lock to be released.  Such a write fails with a 
+	 * DataAccessException.
+	 * 
+	 * @param aContext - The Activity object with which the database is associated.  This is usually the main, or first, Activity of 
+	 * the application.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @param SQL - An SQL string for a standard SQL query or a prepared statement used to query the database
+	 * @param parameters - An array of Objects to be bound to the ? characters in the SQL string if it is a prepared statement.  If the 
+	 * SQL string is not to be used for a prepared statement this parameter should be null.
+	 * @param visitor - the RowVisitor that is handed each row.  The query stops early if it returns <b>false</b>.
+	 * @return - A DataAccessResult object that contains the field names of the query and information regarding any database errors 
+	 * generated during execution.  It contains no rows.
+	 * @throws DataAccessException
+	 */
+	public static DataAccessResult stream(WeakReference<Context> aContextRef, String databaseName, String SQL, Object[] parameters, RowVisitor visitor) throws DataAccessException{
+		return stream(aContextRef, databaseName, SQL, parameters, visitor, 0);
+	}
+	/**
+	 * This method is used to execute a query and hand each row of the result to a RowVisitor as it is read instead of keeping 
+	 * all of the rows in memory.  The database's read lock is only held while the query is open.  The RowVisitor must not write 
+	 * to the same database, since the write would wait for the read lock to be released.  Such a write fails with a 
+	 * DataAccessException.
+	 * 
+	 * @param aContext - The Activity object with which the database is associated.  This is usually the main, or first, Activity of 
+	 * the application.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @param SQL - An SQL string for a standard SQL query or a prepared statement used to query the database
+	 * @param parameters - An array of Objects to be bound to the ? characters in the SQL string if it is a prepared statement.  If the 
+	 * SQL string is not to be used for a prepared statement this parameter should be null.
+	 * @param visitor - the RowVisitor that is handed each row.  The query stops early if it returns <b>false</b>.
+	 * @param fetchWindowBytes - the size in bytes of the window of rows the cursor reads from the database at a time.  A value 
+	 * of 0 uses the platform default.  Setting the size requires Android 9 or later and is ignored on earlier versions.
+	 * @return - A DataAccessResult object that contains the field names of the query and information regarding any database errors 
+	 * generated during execution.  It contains no rows.
+	 * @throws DataAccessException
+	 */
+	public static DataAccessResult stream(WeakReference<Context> aContextRef, String databaseName, String SQL, Object[] parameters, RowVisitor visitor, int fetchWindowBytes) throws DataAccessException{
+		return streamBound(aContextRef, databaseName, SQL, ParameterBuffer.of(parameters), visitor, fetchWindowBytes);
+	}
+	/**
+	 * This method is used to execute a query with parameters held in a ParameterBuffer and hand each row of the result to a 
+	 * RowVisitor as it is read.  See the stream method that takes an array of Objects.
+	 * 
+	 * @param aContext - The Activity object with which the database is associated.  This is usually the main, or first, Activity of 
+	 * the application.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @param SQL - An SQL string for a standard SQL query or a prepared statement used to query the database
+	 * @param parameters - the values bound to the ? characters in the SQL string, each with the bind method for its type.  It may 
+	 * be null if the SQL has no parameters.
+	 * @param visitor - the RowVisitor that is handed each row.  The query stops early if it returns <b>false</b>.
+	 * @param fetchWindowBytes - the size in bytes of the window of rows the cursor reads from the database at a time.  A value 
+	 * of 0 uses the platform default.
+	 * @return - A DataAccessResult object that contains the field names of the query and information regarding any database errors 
+	 * generated during execution.  It contains no rows.
+	 * @throws DataAccessException
+	 */
+	public static DataAccessResult streamBound(WeakReference<Context> aContextRef, String databaseName, String SQL, ParameterBuffer parameters, RowVisitor visitor, int fetchWindowBytes) throws DataAccessException{
+		if(databaseName == null || visitor == null){
 			return null;
 		}
-		if(parameters == null){
-			parameters = new Object[0];
-		}
-		boolean startedLocalTransaction = false;
-		//System.out.println("getting to database "+databaseName+" with "+SQL);
-		SQLiteDatabase aDatabase = generateDataAccessObject(aContextRef, databaseName);
-
+		long start = DataAccessMetrics.now();
+		DatabaseConnection aDatabase = generateDataAccessObject(aContextRef, databaseName);
 		DataAccessResult aRetResult = new DataAccessResult();
+		ReentrantReadWriteLock.ReadLock aReadLock = lockFor(databaseName).readLock();
+		ReadConnectionPool aPool = readPoolFor(databaseName, SQL);
+		DatabaseConnection aReader = null;
+		RowCursor aCursor = null;
+		DataAccessRow aRow = null;
+		long lockWait = 0;
+		boolean locked = false;
 		try {
-			System.out.println("after getting to database. Is changing: "+treatAsChangeData);
-
-			if(treatAsChangeData){
-				if(DataAccessObject.inTransaction == false){
-					DataAccessObject.startTransaction(aContextRef, databaseName);
-					startedLocalTransaction = true;
-				}
-				//System.out.println("changing data with SQL: "+SQL);
-				if(parameters.length > 0){
-					
-					SQLiteStatement aPreparedStatement = aDatabase.compileStatement(SQL);
-					int numParams = parameters.length;
-					for (int i = 0; i < numParams; i++){
-						if(parameters[i] == null){
-							aPreparedStatement.bindNull(i);
-							continue;
-						}
-						Class<?> type = parameters[i].getClass();
-						if(String.class.isAssignableFrom(type)){
-							aPreparedStatement.bindString(i+1, (String)parameters[i]);
-						}
-						else if(Double.class.isAssignableFrom(type)){
-							aPreparedStatement.bindDouble(i+1, (Double)parameters[i]);
-						}
-						else if(Integer.class.isAssignableFrom(type) || Long.class.isAssignableFrom(type)){
-							aPreparedStatement.bindLong(i+1, (Integer)parameters[i]);
-						}
-
-						else if(QCBlob.class.isAssignableFrom(type)){
-							aPreparedStatement.bindBlob(i+1, ((QCBlob)parameters[i]).bytes());
-						}
-						else{
-							Exception unknownParamType = new Exception("Parameter "+i+ "is anknown Parameter type: "
-									+type.getCanonicalName()
-									+".  Use only Strings, Doubles, Integers, or QCBlobs as parameters.");
-							throw unknownParamType;
-						}
-					}
-					aPreparedStatement.execute();
-					aPreparedStatement.close();
-					
-				}
-				else{
-					aDatabase.execSQL(SQL);
-				}
-				//System.out.println("local trans? "+startedLocalTransaction);
-				if (startedLocalTransaction) {
-					//System.out.println("ending local transaction");
-					DataAccessObject.endTransaction(aContextRef, databaseName, true);
-				}
-				////Log.d(QuickConnectActivity.LOG_TAG, "statement executed");
+			if(aPool != null){
+				long waitStart = DataAccessMetrics.now();
+				aReader = aPool.acquire();
+				lockWait = waitStart == 0 ? 0 : System.nanoTime() - waitStart;
 			}
 			else{
-				System.out.println("not changing data with this call: "+SQL);
-				try {
-					String[] parametersAsStrings = new String[parameters.length];
-					for(int i = 0; i < parametersAsStrings.length; i++){
-						parametersAsStrings[i] = parameters[i].toString();
-					}
-					System.out.println("Aquiring semaphore");
-					DataAccessObject.writeBlockingSemaphore.acquire();
-					System.out.println("Got semaphore");
-					Cursor aCursor = aDatabase.rawQuery(SQL, (String[])parametersAsStrings);
-					//System.out.println("got cursor");
-					String[] columnNames = aCursor.getColumnNames();
-					aRetResult.setColumnNames(columnNames);
-					////Log.d(QuickConnectActivity.LOG_TAG, "column names set");
-					ArrayList<ArrayList<String>> results = new ArrayList<ArrayList<String>>();
-					//System.out.println("Query results: "+results);
-					aRetResult.setResults(results);
-					int numColumns = columnNames.length;
-					while(aCursor.moveToNext()){
-						ArrayList<String> row = new ArrayList<String>();
-						results.add(row);
-
-						for(int i = 0; i < numColumns; i++){
-							row.add(aCursor.getString(i));
-						}
-					}
-					aCursor.close();
-					DataAccessObject.writeBlockingSemaphore.release();
-				} catch (Exception e) {
-					//System.out.println("error: "+e.getLocalizedMessage());
-					aRetResult.setErrorDescription(e.getLocalizedMessage()+" cause: "+e.getCause());
-					if (startedLocalTransaction) {
-						DataAccessObject.endTransaction(aContextRef, databaseName, false);
-					}
+				lockWait = lockTimed(aReadLock);
+				locked = true;
+			}
+			aCursor = openCursor(aReader == null ? aDatabase : aReader, SQL, parameters, fetchWindowBytes);
+			aRow = new DataAccessRow(aCursor);
+			aRetResult.setColumnNames(aRow.getColumnNames());
+			while(aCursor.moveToNext()){
+				aRow.advance();
+				if(!visitor.visitRow(aRow)){
+					break;
 				}
 			}
+		} catch (Exception e) {
+			aRetResult.setErrorDescription(e.getLocalizedMessage()+" cause: "+e.getCause());
 		}
-		catch(Exception ex){
-			ex.printStackTrace();
-			aRetResult.setErrorDescription(ex.toString());
-			endTransaction(aContextRef, databaseName, false);
+		finally{
+			if(aCursor != null){
+				aCursor.close();
+			}
+			if(aReader != null){
+				aPool.release(aReader);
+			}
+			if(locked){
+				aReadLock.unlock();
+			}
+		}
+		if(start != 0){
+			DataAccessMetrics.recordLockWait(databaseName, lockWait);
+			DataAccessMetrics.recordOperation(databaseName, SQL, parameters, DataAccessMetrics.QUERY, System.nanoTime() - start, lockWait, 
+					aRow == null ? 0 : aRow.getRowNumber() + 1, aRow == null ? 0 : aRow.blobBytes());
 		}
-		//System.out.println("about to return.");
 		return aRetResult;
 	}
 	/**
-	 * This method is used as the beginning boundary of a database transaction.  After this call then any calls to setData or getData will be executed 
-	 * as part of a transaction
+	 * This method is used to execute a query and write its result as UTF-8 JSON to a stream in one pass as the rows are read.  The 
+	 * JSON has the same shape as a DataAccessResult, {"columnNames":[...],"results":[[...],...],"errorDescription":"..."}, but numbers 
+	 * are written as JSON numbers and blobs as base64 text.  See JsonResultWriter.  The database's read lock is held while the rows 
+	 * are written so the stream should not be slow to accept them.
+	 * 
 	 * @param aContext - The Activity object with which the database is associated.  This is usually the main, or first, Activity of 
 	 * the application.
 	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
-	 * @throws DataAccessException
+	 * @param SQL - An SQL string for a standard SQL query or a prepared statement used to query the database
+	 * @param parameters - An array of Objects to be bound to the ? characters in the SQL string if it is a prepared statement.  If the 
+	 * SQL string is not to be used for a prepared statement this parameter should be null.
+	 * @param out - the OutputStream the JSON is written to.  It is flushed but not closed.
+	 * @return - A DataAccessResult object that contains the field names of the query and information regarding any database errors 
+	 * generated during execution.  It contains no rows.
+	 * @throws DataAccessException - if the JSON can not be written.
 	 */
-	public static void startTransaction(WeakReference<Context> aContextRef, String databaseName) throws DataAccessException{
-		try{
-			generateDataAccessObject(aContextRef,databaseName);
-			System.out.println("claiming entire semaphore");
-			DataAccessObject.writeBlockingSemaphore.acquire(Integer.MAX_VALUE);
-			System.out.println("claimed");
-		}
-		catch(Exception e){
-			throw new DataAccessException("Error: unable to start transaction.  "+e.getLocalizedMessage());
-		}
-		databases.get(databaseName).beginTransaction();
-		DataAccessObject.inTransaction = true;
-
+	public static DataAccessResult streamJson(WeakReference<Context> aContextRef, String databaseName, String SQL, Object[] parameters, OutputStream out) throws DataAccessException{
+		return streamJson(aContextRef, databaseName, SQL, parameters, jsonWriters.get().reset(out));
 	}
-
-	//if false is passed as the value of the successful boolean
-	//the transaction is rolled back.
 	/**
-	 * This method is used as the ending boundary of a database transaction.  Any setData or getData calls made after the startTransaction method and 
-	 * before a call to this method are treated in such a way that they can be rolled back.
+	 * This method is used to execute a query and write its result as UTF-8 JSON into a ByteBuffer in one pass as the rows are read.  
+	 * See the streamJson method that writes to an OutputStream.
+	 * 
 	 * @param aContext - The Activity object with which the database is associated.  This is usually the main, or first, Activity of 
 	 * the application.
 	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
-	 * @param successful - a boolean value indicating if a roll back of all statements in the transaction should be done.  A value of 
-	 * <b>true</b> causes a roll back, <b>false</b> does not.
-	 * @throws DataAccessException
+	 * @param SQL - An SQL string for a standard SQL query or a prepared statement used to query the database
+	 * @param parameters - An array of Objects to be bound to the ? characters in the SQL string if it is a prepared statement.  If the 
+	 * SQL string is not to be used for a prepared statement this parameter should be null.
+	 * @param out - the ByteBuffer the JSON is written into starting at its position.
+	 * @return - A DataAccessResult object that contains the field names of the query and information regarding any database errors 
+	 * generated during execution.  It contains no rows.
+	 * @throws DataAccessException - if the JSON can not be written, for example because it does not fit in the ByteBuffer.
 	 */
-	public static  void endTransaction(WeakReference<Context> aContextRef, String databaseName, boolean successful) throws DataAccessException{
-		//System.out.println("ending transaction");
-		DataAccessObject.inTransaction = false;
-		if(databaseName != null){
-			try {
-				generateDataAccessObject(aContextRef, databaseName);
-			} catch (DataAccessException e) {
-				throw new DataAccessException("Error: unable to complete the transaction. "+e.getLocalizedMessage());
-			}
-			if(successful){
-				databases.get(databaseName).setTransactionSuccessful();
-			}
-			databases.get(databaseName).endTransaction();
-			System.out.println("releasing entire semaphore");
-			DataAccessObject.writeBlockingSemaphore.release(Integer.MAX_VALUE);
-			System.out.println("released");
-		}
+	public static DataAccessResult streamJson(WeakReference<Context> aContextRef, String databaseName, String SQL, Object[] parameters, ByteBuffer out) throws DataAccessException{
+		return streamJson(aContextRef, databaseName, SQL, parameters, jsonWriters.get().reset(out));
 	}
 	/**
-	 * This method is used to free up resources required to access a specific SQLite database file.  This method should be used sparingly.  
-	 * Do NOT close a database after each use and then reopen it again using a getData or setData call unless you must for memory reasons 
-	 * since this will slow down the execution of your application.
+	 * This method is used to execute a query and write its result as UTF-8 JSON with a JsonResultWriter that the caller has reset 
+	 * with the OutputStream or ByteBuffer to write to.  See the streamJson method that writes to an OutputStream.
+	 * 
 	 * @param aContext - The Activity object with which the database is associated.  This is usually the main, or first, Activity of 
 	 * the application.
 	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
-	 * @throws DataAccessException
+	 * @param SQL - An SQL string for a standard SQL query or a prepared statement used to query the database
+	 * @param parameters - An array of Objects to be bound to the ? characters in the SQL string if it is a prepared statement.  If the 
+	 * SQL string is not to be used for a prepared statement this parameter should be null.
+	 * @param aWriter - the JsonResultWriter to write with.
+	 * @return - A DataAccessResult object that contains the field names of the query and information regarding any database errors 
+	 * generated during execution.  It contains no rows.
+	 * @throws DataAccessException - if the JSON can not be written.
 	 */
-	public static  void close(WeakReference<Context> aContextRef, String databaseName) throws DataAccessException{
-		try {
-			generateDataAccessObject(aContextRef, databaseName);
-		} catch (DataAccessException e) {
-			throw new DataAccessException("Error: unable to close database "+databaseName+". "+e.getLocalizedMessage());
-		}
-		databases.get(databaseName).close();
+	public static DataAccessResult streamJson(WeakReference<Context> aContextRef, String databaseName, String SQL, Object[] parameters, final JsonResultWriter aWriter) throws DataAccessException{
+		DataAccessResult aResult = stream(aContextRef, databaseName, SQL, parameters, new RowVisitor(){
+			public boolean visitRow(DataAccessRow aRow) throws Exception {
+				if(!aWriter.hasBegun()){
+					aWriter.begin(aRow.getColumnNames());
+				}
+				aWriter.writeRow(aRow.cursor(), aRow.getColumnCount());
+				return true;
+			}
+		});
+		if(aResult == null){
+			return null;
+		}
+		try{
+			if(!aWriter.hasBegun()){
+				aWriter.begin(aResult.getColumnNames());
+			}
+			aWriter.end(aResult.getErrorDescription());
+		}
+		catch(IOException e){
+			throw new DataAccessException("Error: unable to write the JSON result of a query of "+databaseName+". "+e.getLocalizedMessage());
+		}
+		return aResult;
+	}
+	/**
+	 * This method is used to execute a query and create an object of a class for each row.  Each value is read with the cursor 
+	 * getter of its type and set on the object by a mapper that RowMappers generates once for the class and the columns of the 
+	 * query.  See RowMappers for how columns are matched to properties.
+	 * 
+	 * @param aContext - The Activity object with which the database is associated.  This is usually the main, or first, Activity of 
+	 * the application.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @param SQL - An SQL string for a standard SQL query or a prepared statement used to query the database
+	 * @param parameters - An array of Objects to be bound to the ? characters in the SQL string if it is a prepared statement.  If the 
+	 * SQL string is not to be used for a prepared statement this parameter should be null.
+	 * @param type - the class, or record, to create for each row.
+	 * @return - a List with an object for each row.
+	 * @throws DataAccessException - if the query fails or its rows can not be mapped to the class.
+	 */
+	public static <T> List<T> query(WeakReference<Context> aContextRef, String databaseName, String SQL, Object[] parameters, final Class<T> type) throws DataAccessException{
+		return query(aContextRef, databaseName, SQL, parameters, new RowMapper<T>(){
+			private RowMapper<T> aMapper;
+
+			public T mapRow(DataAccessRow aRow) throws Exception {
+				if(aMapper == null){
+					aMapper = RowMappers.forClass(type, aRow.getColumnNames());
+				}
+				return aMapper.mapRow(aRow);
+			}
+		});
+	}
+	/**
+	 * This method is used to execute a query and create an object for each row with a RowMapper.
+	 * 
+	 * @param aContext - The Activity object with which the database is associated.  This is usually the main, or first, Activity of 
+	 * the application.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @param SQL - An SQL string for a standard SQL query or a prepared statement used to query the database
+	 * @param parameters - An array of Objects to be bound to the ? characters in the SQL string if it is a prepared statement.  If the 
+	 * SQL string is not to be used for a prepared statement this parameter should be null.
+	 * @param aMapper - the RowMapper that creates the object for each row.
+	 * @return - a List with an object for each row.
+	 * @throws DataAccessException - if the query or the mapper fails.
+	 */
+	public static <T> List<T> query(WeakReference<Context> aContextRef, String databaseName, String SQL, Object[] parameters, final RowMapper<T> aMapper) throws DataAccessException{
+		final ArrayList<T> objects = new ArrayList<T>();
+		DataAccessResult aResult = stream(aContextRef, databaseName, SQL, parameters, new RowVisitor(){
+			public boolean visitRow(DataAccessRow aRow) throws Exception {
+				objects.add(aMapper.mapRow(aRow));
+				return true;
+			}
+		});
+		if(aResult == null){
+			return null;
+		}
+		if(aResult.getColumnNames() == null || !"not an error".equals(aResult.getErrorDescription())){
+			throw new DataAccessException("Error: unable to query "+databaseName+". "+aResult.getErrorDescription());
+		}
+		return objects;
+	}
+	/**
+	 * This method is used to execute a query and step through its rows with an Iterator instead of keeping all of the rows in memory.  
+	 * The database's read lock is held until the RowIterator is closed or its last row has been read.  The iterator must be used and 
+	 * closed by the calling thread, which must not write to the same database until then.  Such a write fails with a 
+	 * DataAccessException.
+	 * 
+	 * @param aContext - The Activity object with which the database is associated.  This is usually the main, or first, Activity of 
+	 * the application.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @param SQL - An SQL string for a standard SQL query or a prepared statement used to query the database
+	 * @param parameters - An array of Objects to be bound to the ? characters in the SQL string if it is a prepared statement.  If the 
+	 * SQL string is not to be used for a prepared statement this parameter should be null.
+	 * @param fetchWindowBytes - the size in bytes of the window of rows the cursor reads from the database at a time.  A value 
+	 * of 0 uses the platform default.
+	 * @return - a RowIterator positioned before the first row of the query.
+	 * @throws DataAccessException
+	 */
+	public static RowIterator iterate(WeakReference<Context> aContextRef, String databaseName, String SQL, Object[] parameters, int fetchWindowBytes) throws DataAccessException{
+		return iterateBound(aContextRef, databaseName, SQL, ParameterBuffer.of(parameters), fetchWindowBytes);
+	}
+	/**
+	 * This method is used to execute a query with parameters held in a ParameterBuffer and step through its rows with an Iterator.  
+	 * See the iterate method that takes an array of Objects, including the restriction on writing while the iterator is open.  The 
+	 * ParameterBuffer may be refilled as soon as this method returns.
+	 * 
+	 * @param aContext - The Activity object with which the database is associated.  This is usually the main, or first, Activity of 
+	 * the application.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @param SQL - An SQL string for a standard SQL query or a prepared statement used to query the database
+	 * @param parameters - the values bound to the ? characters in the SQL string, each with the bind method for its type.  It may 
+	 * be null if the SQL has no parameters.
+	 * @param fetchWindowBytes - the size in bytes of the window of rows the cursor reads from the database at a time.  A value 
+	 * of 0 uses the platform default.
+	 * @return - a RowIterator positioned before the first row of the query.
+	 * @throws DataAccessException
+	 */
+	public static RowIterator iterateBound(WeakReference<Context> aContextRef, String databaseName, String SQL, ParameterBuffer parameters, int fetchWindowBytes) throws DataAccessException{
+		DatabaseConnection aDatabase = generateDataAccessObject(aContextRef, databaseName);
+		ReadConnectionPool aPool = readPoolFor(databaseName, SQL);
+		if(aPool != null){
+			DatabaseConnection aReader = null;
+			try {
+				long waitStart = DataAccessMetrics.now();
+				aReader = aPool.acquire();
+				if(waitStart != 0){
+					DataAccessMetrics.recordLockWait(databaseName, System.nanoTime() - waitStart);
+				}
+				return new RowIterator(openCursor(aReader, SQL, parameters, fetchWindowBytes), aPool, aReader);
+			} catch (Exception e) {
+				if(aReader != null){
+					aPool.release(aReader);
+				}
+				throw new DataAccessException("Error: unable to query "+databaseName+". "+e.getLocalizedMessage());
+			}
+		}
+		ReentrantReadWriteLock.ReadLock aReadLock = lockFor(databaseName).readLock();
+		try {
+			long lockWait = lockTimed(aReadLock);
+			if(DataAccessMetrics.enabled){
+				DataAccessMetrics.recordLockWait(databaseName, lockWait);
+			}
+		} catch (InterruptedException e) {
+			throw new DataAccessException("Error: unable to query "+databaseName+". "+e.getLocalizedMessage());
+		}
+		try {
+			return new RowIterator(openCursor(aDatabase, SQL, parameters, fetchWindowBytes), aReadLock);
+		} catch (RuntimeException e) {
+			aReadLock.unlock();
+			throw new DataAccessException("Error: unable to query "+databaseName+". "+e.getLocalizedMessage());
+		}
+	}
+
+	/**
+	 * This method reads one page of a query using keyset pagination.  The rows of the query are ordered by a key column and each 
+	 * page after the first starts just past the key of the last row of the page before, so every page is an indexed seek and the 
+	 * last page is read as quickly as the first.  The key must be unique, never null, hold numbers or text, and should be indexed.  
+	 * The base query must not have an ORDER BY or LIMIT of its own.
+	 * 
+	 * @param aContext - The Activity object with which the database is associated.  This is usually the main, or first, Activity of 
+	 * the application.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @param baseSQL - An SQL string for the query being paged through.
+	 * @param parameters - An array of Objects to be bound to the ? characters in the SQL string if it is a prepared statement.  If the 
+	 * SQL string is not to be used for a prepared statement this parameter should be null.
+	 * @param keyColumn - the name of the result column the rows are ordered and paged by.
+	 * @param pageSize - the number of rows in each page.
+	 * @param continuationToken - the continuation token of the previous page or null to read the first page.
+	 * @return - the Page.
+	 * @throws DataAccessException
+	 */
+	public static Page page(WeakReference<Context> aContextRef, String databaseName, String baseSQL, Object[] parameters, String keyColumn, int pageSize, String continuationToken) throws DataAccessException{
+		return Page.load(aContextRef, databaseName, baseSQL, parameters, keyColumn, false, pageSize, continuationToken, false);
+	}
+	/**
+	 * This method reads one page of a query using keyset pagination.  The rows of the query are ordered by a key column and each 
+	 * page after the first starts just past the key of the last row of the page before, so every page is an indexed seek and the 
+	 * last page is read as quickly as the first.  The key must be unique, never null, hold numbers or text, and should be indexed.  
+	 * The base query must not have an ORDER BY or LIMIT of its own.
+	 * 
+	 * @param aContext - The Activity object with which the database is associated.  This is usually the main, or first, Activity of 
+	 * the application.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @param baseSQL - An SQL string for the query being paged through.
+	 * @param parameters - An array of Objects to be bound to the ? characters in the SQL string if it is a prepared statement.  If the 
+	 * SQL string is not to be used for a prepared statement this parameter should be null.
+	 * @param keyColumn - the name of the result column the rows are ordered and paged by.
+	 * @param descending - <b>true</b> to page from the largest key to the smallest.
+	 * @param pageSize - the number of rows in each page.
+	 * @param continuationToken - the continuation token of the previous page or null to read the first page.
+	 * @param prefetch - <b>true</b> to start reading each following page on the AsyncDataAccessObject pool as soon as a page has been 
+	 * read.  The Page next method then returns the prefetched page.
+	 * @return - the Page.
+	 * @throws DataAccessException
+	 */
+	public static Page page(WeakReference<Context> aContextRef, String databaseName, String baseSQL, Object[] parameters, String keyColumn, boolean descending, int pageSize, String continuationToken, boolean prefetch) throws DataAccessException{
+		return Page.load(aContextRef, databaseName, baseSQL, parameters, keyColumn, descending, pageSize, continuationToken, prefetch).startPrefetch();
+	}
+	/**
+	 * This method reads a single blob value in chunks so a blob of any size can be read, even one larger than the Android cursor 
+	 * window, without holding more than one chunk of it in the heap.  The value is kept in memory if it is small and otherwise 
+	 * spilled to a temporary file.  See the QCBlob setMemoryThreshold method.
+	 * 
+	 * @param aContext - The Activity object with which the database is associated.  This is usually the main, or first, Activity of 
+	 * the application.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @param table - the name of the table holding the blob.
+	 * @param column - the name of the blob column.
+	 * @param whereClause - an SQL condition, which may contain ? characters, that selects the row holding the blob.  If it selects 
+	 * more than one row the first is read.
+	 * @param parameters - An array of Objects to be bound to the ? characters of the where clause or null.
+	 * @param maxBytes - the largest blob that may be read.
+	 * @return - a QCBlob that the caller should close when done with it or null if no row was selected or the value is null.
+	 * @throws DataAccessException - if the blob can not be read or is larger than maxBytes.
+	 */
+	public static QCBlob readBlob(WeakReference<Context> aContextRef, String databaseName, String table, String column, String whereClause, Object[] parameters, long maxBytes) throws DataAccessException{
+		BlobSink aSink = new BlobSink(maxBytes);
+		try{
+			if(readBlob(aContextRef, databaseName, table, column, whereClause, parameters, aSink) < 0){
+				return null;
+			}
+			return aSink.toBlob();
+		}
+		catch(IOException e){
+			aSink.discard();
+			throw new DataAccessException("Error: unable to read the blob "+table+"."+column+" of "+databaseName+". "+e.getLocalizedMessage());
+		}
+		catch(DataAccessException e){
+			aSink.discard();
+			throw e;
+		}
+	}
+	/**
+	 * This method reads a single blob value in chunks and writes each chunk to a stream as it is read.  All of the chunks are read 
+	 * from the same state of the database.
+	 * 
+	 * @param aContext - The Activity object with which the database is associated.  This is usually the main, or first, Activity of 
+	 * the application.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @param table - the name of the table holding the blob.
+	 * @param column - the name of the blob column.
+	 * @param whereClause - an SQL condition, which may contain ? characters, that selects the row holding the blob.  If it selects 
+	 * more than one row the first is read.
+	 * @param parameters - An array of Objects to be bound to the ? characters of the where clause or null.
+	 * @param out - the OutputStream the blob is written to.  It is not closed.
+	 * @return - the number of bytes written or -1 if no row was selected or the value is null.
+	 * @throws DataAccessException
+	 */
+	public static long readBlob(WeakReference<Context> aContextRef, String databaseName, String table, String column, String whereClause, Object[] parameters, OutputStream out) throws DataAccessException{
+		if(parameters == null){
+			parameters = new Object[0];
+		}
+		String from = " FROM "+quoteIdentifier(table)+(whereClause == null ? "" : " WHERE "+whereClause)+" LIMIT 1";
+		String lengthSQL = "SELECT length("+quoteIdentifier(column)+")"+from;
+		String chunkSQL = "SELECT substr("+quoteIdentifier(column)+", ?, ?)"+from;
+		ParameterBuffer lengthParameters = ParameterBuffer.of(parameters);
+		ParameterBuffer chunkParameters = new ParameterBuffer(parameters.length + 2);
+		for(int i = 0; i < parameters.length; i++){
+			chunkParameters.set(i + 2, parameters[i]);
+		}
+		long start = DataAccessMetrics.now();
+		DatabaseConnection aDatabase = generateDataAccessObject(aContextRef, databaseName);
+		ReentrantReadWriteLock.ReadLock aReadLock = lockFor(databaseName).readLock();
+		long lockWait = 0;
+		long length = -1;
+		boolean locked = false;
+		try{
+			/*
+			 * the read lock is held for every chunk so none of them can see a later write.  The read only connections of write 
+			 * ahead logging mode are not used since they can not begin a transaction to hold one snapshot across the chunks.
+			 */
+			lockWait = lockTimed(aReadLock);
+			locked = true;
+			RowCursor aCursor = openCursor(aDatabase, lengthSQL, lengthParameters, 0);
+			try{
+				if(aCursor.moveToNext() && !aCursor.isNull(0)){
+					length = aCursor.getLong(0);
+				}
+			}
+			finally{
+				aCursor.close();
+			}
+			for(long offset = 0; offset < length; offset += BLOB_CHUNK_BYTES){
+				//substr counts from 1
+				chunkParameters.setLong(0, offset + 1);
+				chunkParameters.setLong(1, BLOB_CHUNK_BYTES);
+				aCursor = openCursor(aDatabase, chunkSQL, chunkParameters, 0);
+				try{
+					if(!aCursor.moveToNext()){
+						throw new DataAccessException("Error: the row holding the blob "+table+"."+column+" of "+databaseName+" is gone.");
+					}
+					out.write(aCursor.getBlob(0));
+				}
+				finally{
+					aCursor.close();
+				}
+			}
+		}
+		catch(DataAccessException e){
+			throw e;
+		}
+		catch(Exception e){
+			throw new DataAccessException("Error: unable to read the blob "+table+"."+column+" of "+databaseName+". "+e.getLocalizedMessage());
+		}
+		finally{
+			if(locked){
+				aReadLock.unlock();
+			}
+		}
+		if(start != 0){
+			DataAccessMetrics.recordLockWait(databaseName, lockWait);
+			DataAccessMetrics.recordOperation(databaseName, chunkSQL, chunkParameters, DataAccessMetrics.QUERY, System.nanoTime() - start, lockWait, 
+					length < 0 ? 0 : 1, Math.max(0, length));
+		}
+		return length;
+	}
+
+	static String quoteIdentifier(String identifier){
+		return "\""+identifier.replace("\"", "\"\"")+"\"";
+	}
+	/**
+	 * This method is used to execute one insert, update, etc. SQL statement once for each of many sets of parameters.  The statement 
+	 * is compiled once and all of the parameter sets are executed as part of a single transaction.  A parameter set that fails is 
+	 * reported in the BatchResult and does not stop the rest of the batch.
+	 * 
+	 * @param aContext - The Activity object with which the database is associated.  This is usually the main, or first, Activity of 
+	 * the application.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @param SQL - An SQL string for a prepared statement used to modify the database
+	 * @param parameterSets - A List of arrays of Objects.  Each array is bound to the ? characters in the SQL string and executed.
+	 * @return - A BatchResult object that contains the number of successful parameter sets, the failure of each parameter set that 
+	 * failed, and information regarding any other database errors generated during execution.
+	 * @throws DataAccessException
+	 */
+	public static BatchResult transactBatch(WeakReference<Context> aContextRef, String databaseName, String SQL, List<Object[]> parameterSets) throws DataAccessException{
+		return transactBatch(aContextRef, databaseName, SQL, parameterSets.iterator(), 0);
+	}
+	/**
+	 * This method is used to execute one insert, update, etc. SQL statement once for each of many sets of parameters.  The statement 
+	 * is compiled once and the parameter sets are executed in transactions of chunkSize parameter sets each.  Other threads may use 
+	 * the database between chunks.  If the calling thread has already started a transaction on the database the whole batch is 
+	 * executed as part of that transaction and chunkSize is ignored.  A parameter set that fails is reported in the BatchResult and 
+	 * does not stop the rest of the batch.
+	 * 
+	 * @param aContext - The Activity object with which the database is associated.  This is usually the main, or first, Activity of 
+	 * the application.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @param SQL - An SQL string for a prepared statement used to modify the database
+	 * @param parameterSets - An Iterator of arrays of Objects.  Each array is bound to the ? characters in the SQL string and executed.  
+	 * The parameter sets are read one at a time so they may be produced as the batch runs.
+	 * @param chunkSize - the number of parameter sets executed in each transaction.  A value of 0 executes all of them in one transaction.
+	 * @return - A BatchResult object that contains the number of successful parameter sets, the failure of each parameter set that 
+	 * failed, and information regarding any other database errors generated during execution.
+	 * @throws DataAccessException
+	 */
+	public static BatchResult transactBatch(WeakReference<Context> aContextRef, String databaseName, String SQL, Iterator<Object[]> parameterSets, int chunkSize) throws DataAccessException{
+		return executeBatch(aContextRef, databaseName, SQL, parameterSets, chunkSize);
+	}
+	/**
+	 * This method is used to execute one insert, update, etc. SQL statement once for each of many ParameterBuffers.  It works the same 
+	 * way as the transactBatch method that takes an Iterator of arrays of Objects, but each parameter is bound with the bind method 
+	 * for its type.  The Iterator may return the same ParameterBuffer, refilled, every time next is called so that binding the 
+	 * batch creates no garbage.
+	 * 
+	 * @param aContext - The Activity object with which the database is associated.  This is usually the main, or first, Activity of 
+	 * the application.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @param SQL - An SQL string for a prepared statement used to modify the database
+	 * @param parameterSets - An Iterator of ParameterBuffers.  Each one is bound to the ? characters in the SQL string and executed 
+	 * before the next one is read.
+	 * @param chunkSize - the number of parameter sets executed in each transaction.  A value of 0 executes all of them in one transaction.
+	 * @return - A BatchResult object that contains the number of successful parameter sets, the failure of each parameter set that 
+	 * failed, and information regarding any other database errors generated during execution.
+	 * @throws DataAccessException
+	 */
+	public static BatchResult transactBatchBound(WeakReference<Context> aContextRef, String databaseName, String SQL, Iterator<ParameterBuffer> parameterSets, int chunkSize) throws DataAccessException{
+		return executeBatch(aContextRef, databaseName, SQL, parameterSets, chunkSize);
+	}
+	/*
+	 * Executes a batch of arrays of Objects or of ParameterBuffers.  Arrays are copied into a single ParameterBuffer that is 
+	 * reused for the whole batch.
+	 */
+	private static BatchResult executeBatch(WeakReference<Context> aContextRef, String databaseName, String SQL, Iterator<?> parameterSets, int chunkSize) throws DataAccessException{
+		if(databaseName == null || parameterSets == null){
+			return null;
+		}
+		long start = DataAccessMetrics.now();
+		long lockWait = 0;
+		long blobBytes = 0;
+		DatabaseConnection aDatabase = generateDataAccessObject(aContextRef, databaseName);
+		StatementCache aStatementCache = statementCacheFor(databaseName, aDatabase);
+		boolean useLocalTransactions = !isInTransaction(databaseName);
+		boolean inLocalTransaction = false;
+		BatchResult aRetResult = new BatchResult();
+		CompiledStatement aPreparedStatement = null;
+		ParameterBuffer converted = null;
+		int row = 0;
+		int rowsInChunk = 0;
+		try{
+			while(parameterSets.hasNext()){
+				Object aParameterSet = parameterSets.next();
+				ParameterBuffer parameters = null;
+				if(aParameterSet instanceof ParameterBuffer){
+					parameters = (ParameterBuffer)aParameterSet;
+				}
+				else{
+					if(converted == null){
+						converted = new ParameterBuffer();
+					}
+					parameters = converted.fill((Object[])aParameterSet);
+				}
+				if(aPreparedStatement == null){
+					if(useLocalTransactions){
+						startTransaction(aContextRef, databaseName);
+						inLocalTransaction = true;
+						if(start != 0){
+							lockWait += DataAccessMetrics.transactionLockWait(databaseName);
+						}
+					}
+					TableChangeTracker.recordWrite(databaseName, SQL);
+					aPreparedStatement = aStatementCache.acquire(SQL);
+				}
+				try{
+					parameters.bindTo(aPreparedStatement);
+					aPreparedStatement.execute();
+					aRetResult.addSuccess();
+					if(start != 0){
+						blobBytes += parameters.blobBytes();
+					}
+				}
+				catch(Exception e){
+					aRetResult.addRowError(row, e.toString());
+				}
+				aPreparedStatement.clearBindings();
+				row++;
+				rowsInChunk++;
+				if(useLocalTransactions && chunkSize > 0 && rowsInChunk >= chunkSize){
+					/*
+					 * hand the statement back before the write lock is released so no other thread can be using it 
+					 * when it is evicted from the cache.
+					 */
+					aStatementCache.release(SQL, aPreparedStatement);
+					aPreparedStatement = null;
+					rowsInChunk = 0;
+					inLocalTransaction = false;
+					endTransaction(aContextRef, databaseName, true);
+				}
+			}
+			if(aPreparedStatement != null){
+				aStatementCache.release(SQL, aPreparedStatement);
+				aPreparedStatement = null;
+			}
+			if(inLocalTransaction){
+				inLocalTransaction = false;
+				endTransaction(aContextRef, databaseName, true);
+			}
+		}
+		catch(Exception ex){
+			ex.printStackTrace();
+			aRetResult.setErrorDescription(ex.toString());
+			if(aPreparedStatement != null){
+				aStatementCache.release(SQL, aPreparedStatement);
+			}
+			if(inLocalTransaction){
+				endTransaction(aContextRef, databaseName, false);
+			}
+		}
+		if(start != 0){
+			DataAccessMetrics.recordOperation(databaseName, SQL, DataAccessMetrics.BATCH, System.nanoTime() - start, lockWait, row, blobBytes);
+		}
+		return aRetResult;
+	}
+
+	private static RowCursor openCursor(DatabaseConnection aDatabase, String SQL, ParameterBuffer parameters, int fetchWindowBytes){
+		return aDatabase.query(SQL, parameters, fetchWindowBytes);
+	}
+
+	static DataAccessResult dbAccess(WeakReference<Context> aContextRef, String databaseName, String SQL, ParameterBuffer parameters, boolean treatAsChangeData) throws DataAccessException{
+		if(databaseName == null){
+			return null;
+		}
+		if(parameters == null){
+			parameters = new ParameterBuffer(0);
+		}
+		if(!treatAsChangeData){
+			return query(aContextRef, databaseName, SQL, parameters, null);
+		}
+		if(groupCommitMaxWrites > 0 && !isInTransaction(databaseName)){
+			//the writer thread would wait for this thread's read lock while this thread waits for the writer
+			checkNotReading(databaseName);
+			/*
+			 * a null result means group commit was turned off after the writer was found.
+			 */
+			GroupCommitWriter aWriter = groupCommitWriterFor(databaseName);
+			DataAccessResult aGroupResult = aWriter == null ? null : aWriter.write(aContextRef, SQL, parameters);
+			if(aGroupResult != null){
+				return aGroupResult;
+			}
+		}
+		boolean startedLocalTransaction = false;
+		long start = DataAccessMetrics.now();
+		long lockWait = 0;
+		DatabaseConnection aDatabase = generateDataAccessObject(aContextRef, databaseName);
+
+		DataAccessResult aRetResult = new DataAccessResult();
+		try {
+			if(!isInTransaction(databaseName)){
+				DataAccessObject.startTransaction(aContextRef, databaseName);
+				startedLocalTransaction = true;
+				if(start != 0){
+					lockWait = DataAccessMetrics.transactionLockWait(databaseName);
+				}
+			}
+			if(parameters.size() > 0){
+				
+				StatementCache aStatementCache = statementCacheFor(databaseName, aDatabase);
+				CompiledStatement aPreparedStatement = aStatementCache.acquire(SQL);
+				try{
+					parameters.bindTo(aPreparedStatement);
+					aPreparedStatement.execute();
+				}
+				finally{
+					aStatementCache.release(SQL, aPreparedStatement);
+				}
+				
+			}
+			else{
+				aDatabase.execSQL(SQL);
+			}
+			TableChangeTracker.recordWrite(databaseName, SQL);
+			if (startedLocalTransaction) {
+				startedLocalTransaction = false;
+				DataAccessObject.endTransaction(aContextRef, databaseName, true);
+			}
+			if(start != 0){
+				DataAccessMetrics.recordOperation(databaseName, SQL, parameters, DataAccessMetrics.WRITE, System.nanoTime() - start, lockWait, 
+						0, parameters.blobBytes());
+			}
+		}
+		catch(Exception ex){
+			ex.printStackTrace();
+			aRetResult.setErrorDescription(ex.toString());
+			/*
+			 * only roll back a transaction this call started.  A transaction started by the caller is ended by the caller.
+			 */
+			if(startedLocalTransaction){
+				endTransaction(aContextRef, databaseName, false);
+			}
+		}
+		return aRetResult;
+	}
+	/*
+	 * Reads all of the rows of a query into a result for transact, getData and AsyncDataAccessObject.  A thread reading inside 
+	 * its own transaction may see changes that are not committed yet so those reads are neither served from nor added to the 
+	 * result cache.  The query stops between rows once aCancellation, which may be null, is cancelled, and a result cut short 
+	 * that way is not cached.
+	 */
+	static DataAccessResult query(WeakReference<Context> aContextRef, String databaseName, String SQL, ParameterBuffer parameters, 
+			Future<?> aCancellation) throws DataAccessException{
+		long start = DataAccessMetrics.now();
+		long lockWait = 0;
+		DataAccessException overBudget = null;
+		DatabaseConnection aDatabase = generateDataAccessObject(aContextRef, databaseName);
+		DataAccessResult aRetResult = new DataAccessResult();
+		QueryResultCache aResultCache = resultCache;
+		long cacheGeneration = 0;
+		if(aResultCache != null && !isInTransaction(databaseName) && SqlTables.isQuery(SQL)){
+			DataAccessResult aCachedResult = aResultCache.get(databaseName, SQL, parameters);
+			if(aCachedResult != null){
+				if(start != 0){
+					DataAccessMetrics.recordOperation(databaseName, SQL, parameters, DataAccessMetrics.QUERY, System.nanoTime() - start, 0, 
+							aCachedResult.getColumnarResults() == null ? 0 : aCachedResult.getColumnarResults().getRowCount(), 0);
+				}
+				return aCachedResult;
+			}
+			cacheGeneration = aResultCache.generation(databaseName);
+		}
+		else{
+			aResultCache = null;
+		}
+		ReentrantReadWriteLock.ReadLock aReadLock = lockFor(databaseName).readLock();
+		ReadConnectionPool aPool = readPoolFor(databaseName, SQL);
+		DatabaseConnection aReader = null;
+		RowCursor aCursor = null;
+		ColumnarResult results = null;
+		boolean locked = false;
+		try {
+			if(aPool != null){
+				long waitStart = DataAccessMetrics.now();
+				aReader = aPool.acquire();
+				lockWait = waitStart == 0 ? 0 : System.nanoTime() - waitStart;
+			}
+			else{
+				lockWait = lockTimed(aReadLock);
+				locked = true;
+			}
+			aCursor = openCursor(aReader == null ? aDatabase : aReader, SQL, parameters, 0);
+			aRetResult.setColumnNames(aCursor.getColumnNames());
+			results = ResultMemory.materialize(aCursor, aRetResult, databaseName, SQL, aCancellation);
+			if(results != null){
+				aRetResult.setColumnarResults(results);
+			}
+			else{
+				/*
+				 * spilled results are too big for the result cache.
+				 */
+				aResultCache = null;
+			}
+			if(aResultCache != null && (aCancellation == null || !aCancellation.isCancelled())){
+				aResultCache.put(databaseName, SQL, parameters, aRetResult, cacheGeneration, aReader == null ? aDatabase : aReader);
+			}
+		} catch (DataAccessException e) {
+			overBudget = e;
+		} catch (Exception e) {
+			aRetResult.setErrorDescription(e.getLocalizedMessage()+" cause: "+e.getCause());
+		}
+		finally{
+			if(aCursor != null){
+				aCursor.close();
+			}
+			if(aReader != null){
+				aPool.release(aReader);
+			}
+			if(locked){
+				aReadLock.unlock();
+			}
+		}
+		if(start != 0){
+			SpilledResult aSpilledResult = aRetResult.getSpilledResults();
+			DataAccessMetrics.recordLockWait(databaseName, lockWait);
+			DataAccessMetrics.recordOperation(databaseName, SQL, parameters, DataAccessMetrics.QUERY, System.nanoTime() - start, lockWait, 
+					results != null ? results.getRowCount() : (aSpilledResult == null ? 0 : aSpilledResult.getRowCount()), 
+					results == null ? 0 : results.blobBytes());
+		}
+		if(overBudget != null){
+			throw overBudget;
+		}
+		return aRetResult;
+	}
+	/**
+	 * This method is used as the beginning boundary of a database transaction.  After this call then any calls to setData or getData made 
+	 * by the same thread against the same database will be executed as part of a transaction.  While the transaction is open all other 
+	 * threads wait to read or modify this database.  Other databases are not affected.
+	 * @param aContext - The Activity object with which the database is associated.  This is usually the main, or first, Activity of 
+	 * the application.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @throws DataAccessException
+	 */
+	public static void startTransaction(WeakReference<Context> aContextRef, String databaseName) throws DataAccessException{
+		DatabaseConnection aDatabase = null;
+		ReentrantReadWriteLock.WriteLock aWriteLock = lockFor(databaseName).writeLock();
+		checkNotReading(databaseName);
+		long start = DataAccessMetrics.now();
+		long lockWait = 0;
+		try{
+			aDatabase = generateDataAccessObject(aContextRef,databaseName);
+			lockWait = lockTimed(aWriteLock);
+		}
+		catch(Exception e){
+			throw new DataAccessException("Error: unable to start transaction.  "+e.getLocalizedMessage());
+		}
+		try{
+			aDatabase.beginTransaction();
+		}
+		catch(RuntimeException e){
+			aWriteLock.unlock();
+			throw new DataAccessException("Error: unable to start transaction.  "+e.getLocalizedMessage());
+		}
+		if(start != 0 && aWriteLock.getHoldCount() == 1){
+			DataAccessMetrics.transactionStarted(databaseName, start, lockWait);
+		}
+	}
+
+	//if false is passed as the value of the successful boolean
+	//the transaction is rolled back.
+	/**
+	 * This method is used as the ending boundary of a database transaction.  Any setData or getData calls made after the startTransaction method and 
+	 * before a call to this method are treated in such a way that they can be rolled back.  It must be called by the thread that 
+	 * started the transaction.
+	 * @param aContext - The Activity object with which the database is associated.  This is usually the main, or first, Activity of 
+	 * the application.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @param successful - a boolean value indicating if a roll back of all statements in the transaction should be done.  A value of 
+	 * <b>true</b> causes a roll back, <b>false</b> does not.
+	 * @throws DataAccessException
+	 */
+	public static  void endTransaction(WeakReference<Context> aContextRef, String databaseName, boolean successful) throws DataAccessException{
+		if(databaseName != null){
+			ReentrantReadWriteLock.WriteLock aWriteLock = lockFor(databaseName).writeLock();
+			if(!aWriteLock.isHeldByCurrentThread()){
+				throw new DataAccessException("Error: unable to complete the transaction. No transaction was started by this thread for "+databaseName);
+			}
+			boolean committed = false;
+			try {
+				DatabaseConnection aDatabase = generateDataAccessObject(aContextRef, databaseName);
+				if(successful){
+					aDatabase.setTransactionSuccessful();
+				}
+				aDatabase.endTransaction();
+				committed = successful;
+				if(committed && aWriteLock.getHoldCount() == 1 && !readPools.isEmpty()){
+					checkpointAfterCommit(databaseName, aDatabase);
+				}
+			} catch (DataAccessException e) {
+				throw new DataAccessException("Error: unable to complete the transaction. "+e.getLocalizedMessage());
+			}
+			finally{
+				/*
+				 * changed tables are reported when the outermost transaction ends and before the write lock is released 
+				 * so no other thread can read the changes before the listeners, such as the result cache, know about them.
+				 */
+				try{
+					if(aWriteLock.getHoldCount() == 1){
+						if(DataAccessMetrics.timed){
+							DataAccessMetrics.transactionEnded(databaseName, committed);
+						}
+						TableChangeTracker.transactionEnded(databaseName, committed);
+					}
+				}
+				finally{
+					aWriteLock.unlock();
+				}
+			}
+		}
+	}
+	/*
+	 * Does the checkpoint a database's CheckpointPolicy calls for after a commit.  The caller holds the write lock so the writer 
+	 * connection is free.  A checkpoint that fails is retried after the next commit that is due one.
+	 */
+	private static void checkpointAfterCommit(String databaseName, DatabaseConnection aDatabase){
+		ReadConnectionPool aPool = readPools.get(databaseName);
+		if(aPool != null && aPool.commitCheckpointDue()){
+			try{
+				runPragma(aDatabase, "PRAGMA wal_checkpoint("+CheckpointPolicy.modeName(aPool.policy().getMode())+")");
+			}
+			catch(RuntimeException e){
+				e.printStackTrace();
+			}
+		}
+	}
+	/**
+	 * This method reports whether the calling thread has started a transaction against a database that it has not yet ended.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @return - <b>true</b> if the calling thread has an open transaction on the database, <b>false</b> otherwise.
+	 */
+	public static boolean isInTransaction(String databaseName){
+		return lockFor(databaseName).isWriteLockedByCurrentThread();
+	}
+	/*
+	 * A thread that holds a database's read lock, for example while a RowVisitor or RowIterator is reading a query, can never get 
+	 * its write lock.  The read lock can not be upgraded so the write fails rather than waiting forever.  A thread reading inside 
+	 * its own transaction already holds the write lock.
+	 */
+	private static void checkNotReading(String databaseName) throws DataAccessException{
+		ReentrantReadWriteLock aLock = lockFor(databaseName);
+		if(aLock.getReadHoldCount() > 0 && !aLock.isWriteLockedByCurrentThread()){
+			throw new DataAccessException("Error: unable to write to "+databaseName+" while the calling thread is reading from it.  "
+					+"Finish the stream or close the RowIterator first.");
+		}
+	}
+	/*
+	 * Acquires a lock and returns how long the calling thread waited for it.  The clock is only read while operations are timed.
+	 */
+	private static long lockTimed(Lock aLock) throws InterruptedException{
+		if(!DataAccessMetrics.timed){
+			aLock.lockInterruptibly();
+			return 0;
+		}
+		long start = System.nanoTime();
+		aLock.lockInterruptibly();
+		return System.nanoTime() - start;
+	}
+	/*
+	 * Each database has its own 'fair' read/write lock.  Claims are granted in the order they were requested so there is no 
+	 * claim hopping.  A transaction or write claims the write lock of its database.  A read claims only the read lock so 
+	 * reads of a database run together and reads and writes of different databases never wait for each other.  The write 
+	 * lock belongs to the thread that started the transaction.
+	 */
+	/*
+	 * Every call on every database looks up its lock here so the lookup must not itself be a lock shared by all databases.  
+	 * The get keeps the common case from locking a bin of the map.
+	 */
+	private static ReentrantReadWriteLock lockFor(String databaseName){
+		ReentrantReadWriteLock aLock = databaseLocks.get(databaseName);
+		if(aLock == null){
+			aLock = databaseLocks.computeIfAbsent(databaseName, newDatabaseLock);
+		}
+		return aLock;
+	}
+	/**
+	 * This method is used to free up resources required to access a specific SQLite database file.  This method should be used sparingly.  
+	 * Do NOT close a database after each use and then reopen it again using a getData or setData call unless you must for memory reasons 
+	 * since this will slow down the execution of your application.  The database is closed once any transaction another thread has 
+	 * open on it has ended.
+	 * @param aContext - The Activity object with which the database is associated.  This is usually the main, or first, Activity of 
+	 * the application.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @throws DataAccessException - if the calling thread is reading from, or has a transaction open on, the database.
+	 */
+	public static  void close(WeakReference<Context> aContextRef, String databaseName) throws DataAccessException{
+		try {
+			generateDataAccessObject(aContextRef, databaseName);
+		} catch (DataAccessException e) {
+			throw new DataAccessException("Error: unable to close database "+databaseName+". "+e.getLocalizedMessage());
+		}
+		checkCanClose(databaseName);
+		//the writer's thread needs the write lock to commit the writes it has queued
+		GroupCommitWriter aWriter = groupCommitWriters.remove(databaseName);
+		if(aWriter != null){
+			aWriter.shutdown();
+		}
+		ReentrantReadWriteLock.WriteLock aWriteLock = lockFor(databaseName).writeLock();
+		aWriteLock.lock();
+		try{
+			closeLocked(databaseName);
+			QueryResultCache aResultCache = resultCache;
+			if(aResultCache != null){
+				aResultCache.invalidate(databaseName, null);
+			}
+		}
+		finally{
+			aWriteLock.unlock();
+		}
 	}
 	/**
 	 * This method is used to free up resources required to access all open SQLite database files.  This method should be used sparingly.  
 	 * Do NOT close a databases after each use and then reopen them again using a getData or setData call unless you must for memory reasons 
-	 * since this will slow down the execution of your application.
+	 * since this will slow down the execution of your application.  Each database is closed once any transaction another thread has 
+	 * open on it has ended.
+	 * @throws IllegalStateException - if the calling thread is reading from, or has a transaction open on, any of the databases.  
+	 * No database is closed.
 	 */
 	public static void closeAll(){
-		Collection<SQLiteDatabase> allDatabases = databases.values();
-		Iterator<SQLiteDatabase> dbIt = allDatabases.iterator();
-		while (dbIt.hasNext()) {
-			SQLiteDatabase aDB = dbIt.next();
-			aDB.close();
+		ArrayList<String> databaseNames = new ArrayList<String>(databases.keySet());
+		for(int i = 0; i < databaseNames.size(); i++){
+			try{
+				checkCanClose(databaseNames.get(i));
+			}
+			catch(DataAccessException e){
+				throw new IllegalStateException(e.getMessage());
+			}
+		}
+		stopGroupCommitWriters();
+		for(int i = 0; i < databaseNames.size(); i++){
+			ReentrantReadWriteLock.WriteLock aWriteLock = lockFor(databaseNames.get(i)).writeLock();
+			aWriteLock.lock();
+			try{
+				closeLocked(databaseNames.get(i));
+			}
+			finally{
+				aWriteLock.unlock();
+			}
+		}
+		QueryResultCache aResultCache = resultCache;
+		if(aResultCache != null){
+			aResultCache.clear();
+		}
+	}
+	/*
+	 * A database can not be closed by a thread that is reading from it, since it could never get the write lock, or that has 
+	 * its own transaction open on it, since the transaction would be cut short.
+	 */
+	private static void checkCanClose(String databaseName) throws DataAccessException{
+		checkNotReading(databaseName);
+		if(isInTransaction(databaseName)){
+			throw new DataAccessException("Error: unable to close "+databaseName+" while the calling thread has a transaction open on it.  "
+					+"End the transaction first.");
+		}
+	}
+	/*
+	 * Removes and closes a database's connection, statement cache and read pool.  The caller holds the database's write lock so 
+	 * no transaction of another thread is using them.
+	 */
+	private static void closeLocked(String databaseName){
+		DatabaseConnection aDatabase = null;
+		ReadConnectionPool aPool = null;
+		synchronized(openLockFor(databaseName)){
+			StatementCache aStatementCache = statementCaches.remove(databaseName);
+			if(aStatementCache != null){
+				aStatementCache.clear();
+			}
+			aDatabase = databases.remove(databaseName);
+			aPool = readPools.remove(databaseName);
+		}
+		if(aPool != null){
+			aPool.close();
+			if(aDatabase != null){
+				checkpointOnClose(aDatabase, aPool);
+			}
+		}
+		if(aDatabase != null){
+			aDatabase.close();
+		}
+	}
+	private static void checkpointOnClose(DatabaseConnection aDatabase, ReadConnectionPool aPool){
+		if(aPool.policy().isCheckpointOnClose()){
+			try{
+				runPragma(aDatabase, "PRAGMA wal_checkpoint(TRUNCATE)");
+			}
+			catch(RuntimeException e){
+				e.printStackTrace();
+			}
+		}
+	}
+	/**
+	 * This method turns on caching of query results.  Queries run with transact or getData that are not part of a transaction 
+	 * are answered from the cache when the same query has been run with the same parameters before and none of the tables it 
+	 * reads from have been changed by a committed write or transaction since.  Queries that read from no table or that call 
+	 * functions such as random() or datetime() are never cached.  Calling this method again replaces the cache.
+	 * @param maxBytes - the estimated number of bytes of results the cache may hold.  The least recently used results are 
+	 * discarded to stay within this size.
+	 * @param timeToLiveMillis - the number of milliseconds a result may be used for or 0 to keep results until they are discarded 
+	 * for some other reason.
+	 * @return - the QueryResultCache, which reports the hits, misses and evictions of the cache.
+	 */
+	public static QueryResultCache enableResultCache(long maxBytes, long timeToLiveMillis){
+		QueryResultCache aResultCache = new QueryResultCache(maxBytes, timeToLiveMillis);
+		disableResultCache();
+		TableChangeTracker.setResultCache(aResultCache);
+		resultCache = aResultCache;
+		return aResultCache;
+	}
+	/**
+	 * This method turns off caching of query results and discards all cached results.
+	 */
+	public static void disableResultCache(){
+		QueryResultCache aResultCache = resultCache;
+		resultCache = null;
+		if(aResultCache != null){
+			TableChangeTracker.setResultCache(null);
+			aResultCache.clear();
+		}
+	}
+	/**
+	 * Accessor for the query result cache.
+	 * @return - the QueryResultCache or null if result caching is turned off.
+	 */
+	public static QueryResultCache getResultCache(){
+		return resultCache;
+	}
+	/**
+	 * This method registers a listener that is told which tables of a database were changed each time a write or transaction 
+	 * made through this class is committed.
+	 * @param aListener - the TableChangeListener to add.
+	 */
+	public static void addTableChangeListener(TableChangeListener aListener){
+		TableChangeTracker.addListener(aListener);
+	}
+
+	public static void removeTableChangeListener(TableChangeListener aListener){
+		TableChangeTracker.removeListener(aListener);
+	}
+	/**
+	 * This method creates a LiveQuery, a query that publishes the changes to its results.  The query is run when the first
+	 * subscriber subscribes and then again only after a write or transaction made through this class that changed one of the
+	 * tables it reads from has been committed.  Subscribers are sent the rows that were added and removed.  Changes committed
+	 * within 50 milliseconds of each other are handled by one run of the query.
+	 *
+	 * @param aContext - The Activity object with which the database is associated.  This is usually the main, or first, Activity of
+	 * the application.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @param SQL - An SQL string for a standard SQL query or a prepared statement used to query the database
+	 * @param parameters - An array of Objects to be bound to the ? characters in the SQL string if it is a prepared statement.  If the
+	 * SQL string is not to be used for a prepared statement this parameter should be null.
+	 * @return - the LiveQuery, which is a Flow.Publisher of QueryChanges.
+	 * @throws DataAccessException
+	 */
+	public static LiveQuery observe(WeakReference<Context> aContextRef, String databaseName, String SQL, Object[] parameters) throws DataAccessException{
+		return LiveQuery.create(aContextRef, databaseName, SQL, parameters, null, 50);
+	}
+	/**
+	 * This method creates a LiveQuery, a query that publishes the changes to its results.  The query is run when the first
+	 * subscriber subscribes and then again only after a write or transaction made through this class that changed one of the
+	 * tables it reads from has been committed.  Subscribers are sent the rows that were added, changed and removed.
+	 *
+	 * @param aContext - The Activity object with which the database is associated.  This is usually the main, or first, Activity of
+	 * the application.
+	 * @param databaseName - A string that matches the name of the SQLite file included in the assets directory of the Android application.
+	 * @param SQL - An SQL string for a standard SQL query or a prepared statement used to query the database
+	 * @param parameters - An array of Objects to be bound to the ? characters in the SQL string if it is a prepared statement.  If the
+	 * SQL string is not to be used for a prepared statement this parameter should be null.
+	 * @param keyColumn - the name of a result column whose values are unique, used to report a row whose other values changed as
+	 * changed rather than as removed and added, or null if the rows have no key.
+	 * @param debounceMillis - the number of milliseconds to wait after a change before running the query again.  Changes committed
+	 * during the wait are handled by the same run.
+	 * @return - the LiveQuery, which is a Flow.Publisher of QueryChanges.
+	 * @throws DataAccessException
+	 */
+	public static LiveQuery observe(WeakReference<Context> aContextRef, String databaseName, String SQL, Object[] parameters, String keyColumn, long debounceMillis) throws DataAccessException{
+		return LiveQuery.create(aContextRef, databaseName, SQL, parameters, keyColumn, debounceMillis);
+	}
+	/**
+	 * This method sets the maximum number of compiled statements kept for each open database.  Compiled statements are reused 
+	 * by setData and transact calls that have parameters so the SQL is only parsed and planned once.  The least recently used 
+	 * statements are discarded when a database's cache is full.  A size of 0 turns statement caching off.  The default is 40.
+	 * @param maxStatementsPerDatabase - the number of compiled statements to keep for each database.
+	 */
+	public static void setStatementCacheSize(int maxStatementsPerDatabase){
+		statementCacheSize = Math.max(0, maxStatementsPerDatabase);
+		Iterator<StatementCache> cacheIt = statementCaches.values().iterator();
+		while (cacheIt.hasNext()) {
+			cacheIt.next().setMaxSize(statementCacheSize);
+		}
+	}
+	/**
+	 * Accessor for the number of times a compiled statement was found in a statement cache and reused.
+	 * @return - the number of statement cache hits since the application started.
+	 */
+	public static long getStatementCacheHits(){
+		return statementCacheHits.get();
+	}
+	/**
+	 * Accessor for the number of times a statement had to be compiled because it was not found in a statement cache.
+	 * @return - the number of statement cache misses since the application started.
+	 */
+	public static long getStatementCacheMisses(){
+		return statementCacheMisses.get();
+	}
+
+	/*
+	 * Returns null if group commit is off.  No writer is created for a database while group commit is off since the function 
+	 * adds nothing to the map when it returns null.
+	 */
+	private static GroupCommitWriter groupCommitWriterFor(String databaseName){
+		GroupCommitWriter aWriter = groupCommitWriters.get(databaseName);
+		if(aWriter == null){
+			aWriter = groupCommitWriters.computeIfAbsent(databaseName, newGroupCommitWriter);
+		}
+		return aWriter;
+	}
+
+	/*
+	 * Like lockFor this is called for every parameterized write on every database so it takes no lock shared by all databases.
+	 */
+	private static StatementCache statementCacheFor(String databaseName, final DatabaseConnection aDatabase){
+		StatementCache aStatementCache = statementCaches.get(databaseName);
+		if(aStatementCache == null){
+			aStatementCache = statementCaches.computeIfAbsent(databaseName, new Function<String,StatementCache>(){
+				public StatementCache apply(String databaseName) {
+					return new StatementCache(aDatabase, statementCacheSize);
+				}
+			});
 		}
+		return aStatementCache;
 	}
 
 }
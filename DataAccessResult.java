@@ -42,9 +42,17 @@ public class DataAccessResult implements Serializable {
 
 	/**
 	 * An ArrayList of ArrayLists of Strings containing the resultant data of a query.  All values in this 'table' are Strings regardless 
-	 * of their underlying type.
+	 * of their underlying type.  It is built from the columnar results the first time it is requested.
 	 */
-	private ArrayList<ArrayList<String>> results = new ArrayList<ArrayList<String>>();
+	private ArrayList<ArrayList<String>> results;
+	/**
+	 * The resultant data of a query stored column by column using the native type of each column.
+	 */
+	private ColumnarResult columnarResults;
+	/**
+	 * The rows of a query that went over its memory budget and were moved to a temporary file.  They are not serialized.
+	 */
+	private transient SpilledResult spilledResults;
 	/**
 	 * A String describing any database error that occurred as part of a DataAccessObject getData or setData call.  If no error occured 
 	 * then this attribute is null. 
@@ -66,16 +74,60 @@ public class DataAccessResult implements Serializable {
 		this.columnNames = columnNames;
 	}
 	/**
-	 * Accessor for the data 'table' that is the result of executing a query against a database. 
+	 * Accessor for the data 'table' that is the result of executing a query against a database.  For typed access that avoids 
+	 * creating a String for every value use getColumnarResults.
 	 * @return - An ArrayList of ArrayLists of Strings that is the resultant 'table'
 	 */
-	public ArrayList<ArrayList<String>> getResults() {
+	public synchronized ArrayList<ArrayList<String>> getResults() {
+		if(results == null){
+			ColumnarResult someResults = getColumnarResults();
+			results = someResults != null ? someResults.toStringRows() : new ArrayList<ArrayList<String>>();
+		}
 		return results;
 	}
 
-	public void setResults(ArrayList<ArrayList<String>> results) {
+	public synchronized void setResults(ArrayList<ArrayList<String>> results) {
 		this.results = results;
 	}
+	/**
+	 * Accessor for the data 'table' that is the result of executing a query against a database stored column by column 
+	 * with the native type of each column.
+	 * If the rows were spilled to a file they are all read back into memory the first time this is called, counting them 
+	 * against the result memory budgets set with DataAccessObject setResultMemoryLimits.  Use getSpilledResults to read 
+	 * spilled rows that do not fit.
+	 * @return - the columnar results or null if the call was not a query.
+	 * @throws IllegalStateException - if spilled rows go over a result memory budget or can not be read.
+	 */
+	public synchronized ColumnarResult getColumnarResults() {
+		if(columnarResults == null && spilledResults != null){
+			try{
+				columnarResults = spilledResults.load();
+			}
+			catch(DataAccessException e){
+				throw new IllegalStateException(e.getLocalizedMessage());
+			}
+		}
+		return columnarResults;
+	}
+	/**
+	 * Accessor for the rows of a query that went over its memory budget under the DataAccessObject RESULT_OVERFLOW_SPILL policy.  
+	 * Iterating over them keeps only one block of rows in memory at a time.
+	 * @return - the spilled rows or null if the rows were kept in memory.
+	 */
+	public SpilledResult getSpilledResults() {
+		return spilledResults;
+	}
+
+	synchronized void setSpilledResults(SpilledResult spilledResults) {
+		this.spilledResults = spilledResults;
+		this.columnarResults = null;
+		this.results = null;
+	}
+
+	public synchronized void setColumnarResults(ColumnarResult columnarResults) {
+		this.columnarResults = columnarResults;
+		this.results = null;
+	}
 	/**
 	 * Accessor for any error that may have occurred as a result of a call to the DataAccessObject getData or setData methods.
 	 * @return - a String describing the error or null if there was no error.
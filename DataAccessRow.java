@@ -0,0 +1,114 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+/**
+ * This class gives access to the current row of a query being streamed by the DataAccessObject stream or iterate methods.  
+ * A single DataAccessRow is reused for every row of a query so its values are only valid until the next row is read.  
+ * Values are read directly from the underlying cursor using the getter that matches their type.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public class DataAccessRow {
+	private RowCursor aCursor;
+	private String[] columnNames;
+	private int rowNumber = -1;
+	private long blobBytes;
+
+	DataAccessRow(RowCursor aCursor) {
+		this.aCursor = aCursor;
+		this.columnNames = aCursor.getColumnNames();
+	}
+
+	void advance(){
+		rowNumber++;
+	}
+	/**
+	 * Accessor for the field names of the query.
+	 * @return - An array of Strings containing all the field names.
+	 */
+	public String[] getColumnNames() {
+		return columnNames;
+	}
+
+	public int getColumnCount() {
+		return columnNames.length;
+	}
+	/**
+	 * Accessor for the position of the current row in the query's results.
+	 * @return - the zero based index of the current row.
+	 */
+	public int getRowNumber() {
+		return rowNumber;
+	}
+	/**
+	 * Accessor for the type of a value in the current row.
+	 * @param column - the zero based index of the column.
+	 * @return - one of the ColumnarResult TYPE_ constants.
+	 */
+	public int getType(int column) {
+		return aCursor.getType(column);
+	}
+
+	public boolean isNull(int column) {
+		return aCursor.isNull(column);
+	}
+
+	public long getLong(int column) {
+		return aCursor.getLong(column);
+	}
+
+	public double getDouble(int column) {
+		return aCursor.getDouble(column);
+	}
+
+	public String getString(int column) {
+		return aCursor.getString(column);
+	}
+
+	/**
+	 * Appends a value as text to a StringBuilder without creating a String for it where the backend allows it.
+	 * @param column - the zero based index of the column.
+	 * @param aBuilder - the StringBuilder to append to.
+	 */
+	public void appendString(int column, StringBuilder aBuilder) {
+		aCursor.appendString(column, aBuilder);
+	}
+
+	public byte[] getBlob(int column) {
+		byte[] aBlob = aCursor.getBlob(column);
+		if(aBlob != null){
+			blobBytes += aBlob.length;
+		}
+		return aBlob;
+	}
+
+	long blobBytes() {
+		return blobBytes;
+	}
+
+	RowCursor cursor() {
+		return aCursor;
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+/**
+ * A DatabaseBackend opens the SQLite database files used by DataAccessObject.  The backend used by default is the AndroidBackend.  
+ * Other backends, such as the JdbcBackend, let the library run on any Java virtual machine, for example to measure it with 
+ * benchmarks off of a device.  A backend is chosen with the DataAccessObject setBackend method before any database is opened.
+ * <br/>
+ * Backends report database errors by throwing runtime exceptions, just as the Android database classes do.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public interface DatabaseBackend {
+	/**
+	 * Opens a database file for reading and writing, creating it if it does not exist.
+	 * @param path - the full path of the database file.
+	 * @return - a connection to the database.
+	 */
+	public DatabaseConnection open(String path);
+	/**
+	 * Opens an existing database file for reading only.  DataAccessObject opens a pool of these for each database when write ahead 
+	 * logging is turned on so queries can run at the same time as each other and as the writer.
+	 * @param path - the full path of the database file.
+	 * @return - a connection to the database that can only be queried.
+	 */
+	public DatabaseConnection openReadOnly(String path);
+}
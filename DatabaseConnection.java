@@ -0,0 +1,68 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+/**
+ * A DatabaseConnection is an open SQLite database created by a DatabaseBackend.  DataAccessObject guarantees that a connection is 
+ * only written to by one thread at a time and that transactions begin and end on the same thread.  Transactions may be nested.  
+ * The changes of a nested transaction are only committed if every level of the transaction was marked successful.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public interface DatabaseConnection {
+	/**
+	 * Executes an SQL statement that has no parameters and returns no rows.
+	 */
+	public void execSQL(String SQL);
+	/**
+	 * Compiles an SQL statement so it can be bound and executed many times.
+	 */
+	public CompiledStatement compileStatement(String SQL);
+	/**
+	 * Runs a query.
+	 * @param SQL - the SQL of the query.
+	 * @param parameters - the values bound to the ? characters of the SQL, each with the bind method for its type.  null if the 
+	 * SQL has no parameters.
+	 * @param fetchWindowBytes - a hint for the number of bytes of rows to read from the database at a time.  0 uses the backend's default.
+	 * @return - a RowCursor positioned before the first row.
+	 */
+	public RowCursor query(String SQL, ParameterBuffer parameters, int fetchWindowBytes);
+
+	public void beginTransaction();
+	/**
+	 * Marks the current level of the transaction as successful.  Levels that end without being marked are rolled back.
+	 */
+	public void setTransactionSuccessful();
+
+	public void endTransaction();
+
+	/**
+	 * Switches the database file to write ahead logging so readers on other connections see the last committed state while a 
+	 * transaction is being written.  The mode is stored in the file so connections opened later use it as well.
+	 * @return - <b>true</b> if the database is now using write ahead logging.
+	 */
+	public boolean enableWriteAheadLogging();
+
+	public void close();
+}
@@ -0,0 +1,115 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class holds the metrics DataAccessMetrics collects for one database.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public class DatabaseMetrics {
+	private final String databaseName;
+	private final LatencyHistogram queryLatency = new LatencyHistogram();
+	private final LatencyHistogram writeLatency = new LatencyHistogram();
+	private final LatencyHistogram lockWait = new LatencyHistogram();
+	private final LatencyHistogram transactionDuration = new LatencyHistogram();
+	private final AtomicLong rowsReturned = new AtomicLong();
+	private final AtomicLong blobBytesRead = new AtomicLong();
+	private final AtomicLong blobBytesWritten = new AtomicLong();
+	private final AtomicLong rollbacks = new AtomicLong();
+
+	DatabaseMetrics(String databaseName) {
+		this.databaseName = databaseName;
+	}
+
+	public String getDatabaseName() {
+		return databaseName;
+	}
+	/**
+	 * Accessor for the time taken by queries, from the call until the last row was read, including lock waits.
+	 */
+	public LatencyHistogram getQueryLatency() {
+		return queryLatency;
+	}
+	/**
+	 * Accessor for the time taken by writes and batches, including lock waits and the commit of any transaction the call started.
+	 */
+	public LatencyHistogram getWriteLatency() {
+		return writeLatency;
+	}
+	/**
+	 * Accessor for the time spent waiting for the database's read or write lock.
+	 */
+	public LatencyHistogram getLockWait() {
+		return lockWait;
+	}
+	/**
+	 * Accessor for the time from the start of each outermost transaction to its end.
+	 */
+	public LatencyHistogram getTransactionDuration() {
+		return transactionDuration;
+	}
+
+	public long getRowsReturned() {
+		return rowsReturned.get();
+	}
+
+	public long getBlobBytesRead() {
+		return blobBytesRead.get();
+	}
+
+	public long getBlobBytesWritten() {
+		return blobBytesWritten.get();
+	}
+
+	public long getRollbacks() {
+		return rollbacks.get();
+	}
+
+	void addRows(long rows) {
+		rowsReturned.addAndGet(rows);
+	}
+
+	void addBlobBytes(long bytesRead, long bytesWritten) {
+		if(bytesRead > 0){
+			blobBytesRead.addAndGet(bytesRead);
+		}
+		if(bytesWritten > 0){
+			blobBytesWritten.addAndGet(bytesWritten);
+		}
+	}
+
+	void addRollback() {
+		rollbacks.incrementAndGet();
+	}
+
+	@Override
+	public String toString() {
+		return databaseName+" queries: "+queryLatency+" writes: "+writeLatency+" lock wait: "+lockWait
+				+" transactions: "+transactionDuration+" rows: "+getRowsReturned()+" blob bytes read: "+getBlobBytesRead()
+				+" blob bytes written: "+getBlobBytesWritten()+" rollbacks: "+getRollbacks();
+	}
+}
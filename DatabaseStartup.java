@@ -0,0 +1,143 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import android.content.Context;
+
+/**
+ * The DatabaseStartup class prepares several databases at once when an application starts instead of each one being copied 
+ * and opened by the first query that uses it.  Databases are copied from the assets directory if needed and opened in parallel.  
+ * Each database can then be warmed up, in the background if desired, by reading its file so its pages are in the operating 
+ * system's page cache and by compiling the statements it will be used with so they are in its statement cache.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public class DatabaseStartup {
+	/*
+	 * A private constructor so no one accidentally instantiates an object of this type.
+	 */
+	private DatabaseStartup(){}
+	/**
+	 * This method copies, if needed, and opens several databases in parallel and waits for them to be ready.
+	 * @param aContextRef - The Context with which the databases are associated.
+	 * @param databaseNames - the names of SQLite files included in the assets directory of the Android application.
+	 * @return - a StartupReport with the time each phase took for each database.
+	 */
+	public static StartupReport openAll(WeakReference<Context> aContextRef, String[] databaseNames){
+		return openAll(aContextRef, databaseNames, null, false, false);
+	}
+	/**
+	 * This method copies, if needed, and opens several databases in parallel and then warms them up.
+	 * @param aContextRef - The Context with which the databases are associated.
+	 * @param databaseNames - the names of SQLite files included in the assets directory of the Android application.
+	 * @param warmUpStatements - a Map from database names to the SQL strings of the prepared statements to compile into each 
+	 * database's statement cache.  It may be null.
+	 * @param warmPageCache - <b>true</b> to read each database file once so its pages are cached by the operating system.
+	 * @param warmInBackground - <b>true</b> to return as soon as the databases are open and finish warming them up on background 
+	 * threads.  Use the StartupReport awaitWarmUp method to wait for the warm up to finish.
+	 * @return - a StartupReport with the time each phase took for each database.
+	 */
+	public static StartupReport openAll(final WeakReference<Context> aContextRef, String[] databaseNames, 
+			final Map<String,String[]> warmUpStatements, final boolean warmPageCache, boolean warmInBackground){
+		boolean warmUp = warmPageCache || (warmUpStatements != null && !warmUpStatements.isEmpty());
+		final StartupReport aReport = new StartupReport(warmUp ? databaseNames.length : 0);
+		int numThreads = Math.max(1, Math.min(databaseNames.length, Runtime.getRuntime().availableProcessors()));
+		ExecutorService aPool = Executors.newFixedThreadPool(numThreads, new ThreadFactory(){
+			public Thread newThread(Runnable aRunnable) {
+				Thread aThread = new Thread(aRunnable, "qcdbaccess-startup");
+				aThread.setDaemon(true);
+				return aThread;
+			}
+		});
+		long start = System.nanoTime();
+		try{
+			ArrayList<Future<?>> opens = new ArrayList<Future<?>>();
+			for(int i = 0; i < databaseNames.length; i++){
+				final String databaseName = databaseNames[i];
+				opens.add(aPool.submit(new Runnable(){
+					public void run() {
+						try{
+							//a database that failed to copy or open has its failure in the report already
+							if(DataAccessObject.generateDataAccessObject(aContextRef, databaseName, aReport) == null 
+									&& !aReport.getErrors().containsKey(databaseName)){
+								aReport.recordError(databaseName, "the Context is no longer available");
+							}
+						}
+						catch(Exception e){
+							aReport.recordError(databaseName, e.toString());
+						}
+					}
+				}));
+			}
+			for(int i = 0; i < opens.size(); i++){
+				try{
+					opens.get(i).get();
+				}
+				catch(ExecutionException e){
+					aReport.recordError(databaseNames[i], e.getCause().toString());
+				}
+			}
+			aReport.setTotalNanos(System.nanoTime() - start);
+			if(warmUp){
+				for(int i = 0; i < databaseNames.length; i++){
+					final String databaseName = databaseNames[i];
+					aPool.execute(new Runnable(){
+						public void run() {
+							try{
+								String[] statements = warmUpStatements == null ? null : warmUpStatements.get(databaseName);
+								DataAccessObject.warmUp(aContextRef, databaseName, statements, warmPageCache, aReport);
+							}
+							catch(Exception e){
+								aReport.recordError(databaseName, e.toString());
+							}
+							finally{
+								aReport.warmUpFinished();
+							}
+						}
+					});
+				}
+				if(!warmInBackground){
+					aReport.awaitWarmUp(Long.MAX_VALUE);
+				}
+			}
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+		finally{
+			//queued warm ups still run after shutdown
+			aPool.shutdown();
+		}
+		return aReport;
+	}
+}
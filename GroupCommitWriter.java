@@ -0,0 +1,271 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import android.content.Context;
+
+/**
+ * The single writer thread of a database in group commit mode.  Threads making autocommit writes queue them here and wait while 
+ * the writer executes all of the writes that arrive within a size or time window in one shared transaction.  Each caller is 
+ * handed its own DataAccessResult once the shared transaction has been committed.
+ * <br/>
+ * SQLite undoes the changes of a statement that fails without ending the transaction it is part of, so a failing write leaves 
+ * its neighbours alone.  The writes before a failure are committed right away and the writes after it start a new group.  If 
+ * the failure did end the transaction the writes before it are executed again one transaction at a time.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+class GroupCommitWriter implements Runnable {
+	private static final Write SHUTDOWN = new Write(null, null, null);
+	private final String databaseName;
+	private final int maxWrites;
+	private final long maxDelayNanos;
+	private final LinkedBlockingQueue<Write> queue = new LinkedBlockingQueue<Write>();
+	private final Thread writerThread;
+	private boolean closed = false;
+
+	GroupCommitWriter(String databaseName, int maxWrites, long maxDelayMillis) {
+		this.databaseName = databaseName;
+		this.maxWrites = maxWrites;
+		this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+		this.writerThread = new Thread(this, "qcdbaccess-group-commit-"+databaseName);
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+	}
+	/*
+	 * Queues a write and waits until the group it is part of has been committed or rolled back.  Returns null if the writer has 
+	 * been shut down so the caller can execute the write itself.  The queue holds at most one write per waiting thread so it 
+	 * needs no bound.
+	 */
+	DataAccessResult write(WeakReference<Context> aContextRef, String SQL, ParameterBuffer parameters){
+		Write aWrite = new Write(aContextRef, SQL, parameters);
+		synchronized(this){
+			if(closed){
+				return null;
+			}
+			queue.add(aWrite);
+		}
+		boolean interrupted = false;
+		while(true){
+			try{
+				aWrite.done.await();
+				break;
+			}
+			catch(InterruptedException e){
+				/*
+				 * the write cannot be taken back once it is queued so its result is still waited for.
+				 */
+				interrupted = true;
+			}
+		}
+		if(interrupted){
+			Thread.currentThread().interrupt();
+		}
+		return aWrite.result;
+	}
+	/*
+	 * Stops taking new writes and waits for the writes already queued to be committed.
+	 */
+	void shutdown(){
+		synchronized(this){
+			if(closed){
+				return;
+			}
+			closed = true;
+			queue.add(SHUTDOWN);
+		}
+		if(Thread.currentThread() != writerThread){
+			boolean interrupted = false;
+			while(writerThread.isAlive()){
+				try{
+					writerThread.join();
+				}
+				catch(InterruptedException e){
+					interrupted = true;
+				}
+			}
+			if(interrupted){
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	public void run() {
+		ArrayList<Write> aGroup = new ArrayList<Write>(Math.min(maxWrites, 1024));
+		boolean stopping = false;
+		while(!stopping){
+			Write aWrite = null;
+			try{
+				aWrite = queue.take();
+			}
+			catch(InterruptedException e){
+				continue;
+			}
+			if(aWrite == SHUTDOWN){
+				break;
+			}
+			aGroup.add(aWrite);
+			/*
+			 * the window opens with the first write of the group and closes when it is full or its time is up.
+			 */
+			long deadline = System.nanoTime() + maxDelayNanos;
+			while(aGroup.size() < maxWrites){
+				Write aNext = queue.poll();
+				if(aNext == null){
+					long remaining = deadline - System.nanoTime();
+					if(remaining <= 0){
+						break;
+					}
+					try{
+						aNext = queue.poll(remaining, TimeUnit.NANOSECONDS);
+					}
+					catch(InterruptedException e){
+						break;
+					}
+					if(aNext == null){
+						break;
+					}
+				}
+				if(aNext == SHUTDOWN){
+					stopping = true;
+					break;
+				}
+				aGroup.add(aNext);
+			}
+			try{
+				int next = 0;
+				while(next < aGroup.size()){
+					next = commitGroup(aGroup, next, aGroup.size());
+				}
+			}
+			finally{
+				/*
+				 * no caller is ever left waiting, even if something unexpected went wrong.
+				 */
+				for(int i = 0; i < aGroup.size(); i++){
+					aGroup.get(i).finish(null, "Error: the group commit writer for "+databaseName+" failed");
+				}
+				aGroup.clear();
+			}
+		}
+	}
+	/*
+	 * Executes the writes from first up to end in one transaction, stopping after the first one that fails.  Returns the index 
+	 * of the first write that was not executed.
+	 */
+	private int commitGroup(ArrayList<Write> aGroup, int first, int end){
+		WeakReference<Context> aContextRef = aGroup.get(first).contextRef;
+		try{
+			DataAccessObject.startTransaction(aContextRef, databaseName);
+		}
+		catch(Exception e){
+			for(int i = first; i < end; i++){
+				aGroup.get(i).finish(null, e.toString());
+			}
+			return end;
+		}
+		int failed = -1;
+		int next = first;
+		while(next < end && failed < 0){
+			Write aWrite = aGroup.get(next);
+			try{
+				aWrite.pending = DataAccessObject.transactBound(aContextRef, databaseName, aWrite.SQL, aWrite.parameters);
+				if(!"not an error".equals(aWrite.pending.getErrorDescription())){
+					failed = next;
+				}
+			}
+			catch(Exception e){
+				aWrite.pending = null;
+				aWrite.error = e.toString();
+				failed = next;
+			}
+			next++;
+		}
+		String commitError = null;
+		try{
+			DataAccessObject.endTransaction(aContextRef, databaseName, true);
+		}
+		catch(Exception e){
+			commitError = e.toString();
+		}
+		if(commitError == null){
+			for(int i = first; i < next; i++){
+				Write aWrite = aGroup.get(i);
+				aWrite.finish(aWrite.pending, aWrite.error);
+			}
+		}
+		else if(failed >= 0){
+			/*
+			 * the failure ended the shared transaction so the writes before it were rolled back with it.
+			 */
+			Write aFailed = aGroup.get(failed);
+			aFailed.finish(aFailed.pending, aFailed.error);
+			for(int i = first; i < failed; i++){
+				commitGroup(aGroup, i, i + 1);
+			}
+		}
+		else{
+			for(int i = first; i < next; i++){
+				aGroup.get(i).finish(null, "Error: unable to commit the group of writes. "+commitError);
+			}
+		}
+		return next;
+	}
+
+	private static class Write {
+		final WeakReference<Context> contextRef;
+		final String SQL;
+		final ParameterBuffer parameters;
+		final CountDownLatch done = new CountDownLatch(1);
+		DataAccessResult pending;
+		String error;
+		volatile DataAccessResult result;
+
+		Write(WeakReference<Context> contextRef, String SQL, ParameterBuffer parameters) {
+			this.contextRef = contextRef;
+			this.SQL = SQL;
+			this.parameters = parameters;
+		}
+		/*
+		 * Hands the caller its result.  Only the first call has any effect.
+		 */
+		void finish(DataAccessResult aResult, String errorDescription){
+			if(done.getCount() == 0){
+				return;
+			}
+			if(aResult == null){
+				aResult = new DataAccessResult();
+				aResult.setErrorDescription(errorDescription);
+			}
+			result = aResult;
+			done.countDown();
+		}
+	}
+}
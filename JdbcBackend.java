@@ -0,0 +1,454 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * The JdbcBackend opens SQLite database files through JDBC so the library can be used, tested and measured on a desktop or server 
+ * Java virtual machine.  An SQLite JDBC driver, such as org.xerial:sqlite-jdbc, must be on the class path.  Use it by calling 
+ * DataAccessObject setBackend and setDatabaseDirectory before any database is opened.  JDBC errors are reported as 
+ * IllegalStateExceptions whose cause is the SQLException.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public class JdbcBackend implements DatabaseBackend {
+	private final String urlPrefix;
+
+	/**
+	 * Creates a backend that uses jdbc:sqlite: URLs.
+	 */
+	public JdbcBackend() {
+		this("jdbc:sqlite:");
+	}
+	/**
+	 * Creates a backend for a different driver.
+	 * @param urlPrefix - the text put in front of a database file's path to make its JDBC URL.
+	 */
+	public JdbcBackend(String urlPrefix) {
+		this.urlPrefix = urlPrefix;
+	}
+
+	public DatabaseConnection open(String path) {
+		try{
+			return new JdbcConnection(DriverManager.getConnection(urlPrefix+path));
+		}
+		catch(SQLException e){
+			throw failure(e);
+		}
+	}
+
+	/*
+	 * open_mode 1 is SQLITE_OPEN_READONLY.  The flag can only be given when the connection is made.
+	 */
+	public DatabaseConnection openReadOnly(String path) {
+		Properties readOnly = new Properties();
+		readOnly.setProperty("open_mode", "1");
+		try{
+			return new JdbcConnection(DriverManager.getConnection(urlPrefix+path, readOnly));
+		}
+		catch(SQLException e){
+			throw failure(e);
+		}
+	}
+
+	static IllegalStateException failure(SQLException e){
+		return new IllegalStateException(e.getLocalizedMessage(), e);
+	}
+
+	static class JdbcConnection implements DatabaseConnection {
+		private final Connection aConnection;
+		private int transactionDepth = 0;
+		private boolean levelSuccessful = false;
+		private boolean allLevelsSuccessful = true;
+
+		JdbcConnection(Connection aConnection) {
+			this.aConnection = aConnection;
+		}
+
+		public void execSQL(String SQL) {
+			try{
+				Statement aStatement = aConnection.createStatement();
+				try{
+					aStatement.execute(SQL);
+				}
+				finally{
+					aStatement.close();
+				}
+			}
+			catch(SQLException e){
+				throw failure(e);
+			}
+		}
+
+		public CompiledStatement compileStatement(String SQL) {
+			try{
+				return new JdbcStatement(aConnection.prepareStatement(SQL));
+			}
+			catch(SQLException e){
+				throw failure(e);
+			}
+		}
+
+		public RowCursor query(String SQL, ParameterBuffer parameters, int fetchWindowBytes) {
+			try{
+				PreparedStatement aStatement = aConnection.prepareStatement(SQL);
+				try{
+					if(parameters != null){
+						parameters.bindQueryTo(new JdbcStatement(aStatement));
+					}
+					return new JdbcCursor(aStatement, aStatement.executeQuery());
+				}
+				catch(SQLException e){
+					aStatement.close();
+					throw e;
+				}
+				catch(RuntimeException e){
+					aStatement.close();
+					throw e;
+				}
+			}
+			catch(SQLException e){
+				throw failure(e);
+			}
+		}
+		/*
+		 * nested transactions follow the Android rules.  Only the outermost level talks to the database and the 
+		 * transaction is rolled back if any level ended without being marked successful.
+		 */
+		public void beginTransaction() {
+			try{
+				if(transactionDepth == 0){
+					aConnection.setAutoCommit(false);
+					allLevelsSuccessful = true;
+				}
+				transactionDepth++;
+				levelSuccessful = false;
+			}
+			catch(SQLException e){
+				throw failure(e);
+			}
+		}
+
+		public void setTransactionSuccessful() {
+			levelSuccessful = true;
+		}
+
+		public void endTransaction() {
+			if(transactionDepth == 0){
+				throw new IllegalStateException("no transaction is open");
+			}
+			allLevelsSuccessful &= levelSuccessful;
+			levelSuccessful = false;
+			transactionDepth--;
+			if(transactionDepth > 0){
+				return;
+			}
+			try{
+				if(allLevelsSuccessful){
+					aConnection.commit();
+				}
+				else{
+					aConnection.rollback();
+				}
+			}
+			catch(SQLException e){
+				throw failure(e);
+			}
+			finally{
+				try{
+					aConnection.setAutoCommit(true);
+				}
+				catch(SQLException e){
+					e.printStackTrace();
+				}
+			}
+		}
+
+		public boolean enableWriteAheadLogging() {
+			try{
+				Statement aStatement = aConnection.createStatement();
+				try{
+					ResultSet aResultSet = aStatement.executeQuery("PRAGMA journal_mode=WAL");
+					return aResultSet.next() && "wal".equalsIgnoreCase(aResultSet.getString(1));
+				}
+				finally{
+					aStatement.close();
+				}
+			}
+			catch(SQLException e){
+				throw failure(e);
+			}
+		}
+
+		public void close() {
+			try{
+				aConnection.close();
+			}
+			catch(SQLException e){
+				throw failure(e);
+			}
+		}
+	}
+
+	static class JdbcStatement implements CompiledStatement {
+		private final PreparedStatement aStatement;
+
+		JdbcStatement(PreparedStatement aStatement) {
+			this.aStatement = aStatement;
+		}
+
+		public void bindNull(int index) {
+			try{
+				aStatement.setNull(index, Types.NULL);
+			}
+			catch(SQLException e){
+				throw failure(e);
+			}
+		}
+
+		public void bindLong(int index, long value) {
+			try{
+				aStatement.setLong(index, value);
+			}
+			catch(SQLException e){
+				throw failure(e);
+			}
+		}
+
+		public void bindDouble(int index, double value) {
+			try{
+				aStatement.setDouble(index, value);
+			}
+			catch(SQLException e){
+				throw failure(e);
+			}
+		}
+
+		public void bindString(int index, String value) {
+			try{
+				aStatement.setString(index, value);
+			}
+			catch(SQLException e){
+				throw failure(e);
+			}
+		}
+
+		public void bindBlob(int index, byte[] value) {
+			try{
+				aStatement.setBytes(index, value);
+			}
+			catch(SQLException e){
+				throw failure(e);
+			}
+		}
+
+		public void clearBindings() {
+			try{
+				aStatement.clearParameters();
+			}
+			catch(SQLException e){
+				throw failure(e);
+			}
+		}
+
+		public void execute() {
+			try{
+				aStatement.execute();
+			}
+			catch(SQLException e){
+				throw failure(e);
+			}
+		}
+
+		public void close() {
+			try{
+				aStatement.close();
+			}
+			catch(SQLException e){
+				throw failure(e);
+			}
+		}
+	}
+
+	static class JdbcCursor implements RowCursor {
+		private final PreparedStatement aStatement;
+		private final ResultSet aResultSet;
+		private final String[] columnNames;
+		/*
+		 * the values of the current row that have been read.
+		 */
+		private final Object[] values;
+		private final boolean[] fetched;
+
+		JdbcCursor(PreparedStatement aStatement, ResultSet aResultSet) throws SQLException {
+			this.aStatement = aStatement;
+			this.aResultSet = aResultSet;
+			ResultSetMetaData metaData = aResultSet.getMetaData();
+			this.columnNames = new String[metaData.getColumnCount()];
+			for(int i = 0; i < columnNames.length; i++){
+				columnNames[i] = metaData.getColumnLabel(i + 1);
+			}
+			this.values = new Object[columnNames.length];
+			this.fetched = new boolean[columnNames.length];
+		}
+
+		private Object value(int column){
+			if(!fetched[column]){
+				try{
+					values[column] = aResultSet.getObject(column + 1);
+				}
+				catch(SQLException e){
+					throw failure(e);
+				}
+				fetched[column] = true;
+			}
+			return values[column];
+		}
+
+		public String[] getColumnNames() {
+			return columnNames;
+		}
+
+		public boolean moveToNext() {
+			Arrays.fill(fetched, false);
+			Arrays.fill(values, null);
+			try{
+				return aResultSet.next();
+			}
+			catch(SQLException e){
+				throw failure(e);
+			}
+		}
+		/*
+		 * SQLite stores any type of value in any column so each value is typed by the class the driver reads it as rather 
+		 * than by the column's declared type.  The value is read once per row and kept.
+		 */
+		public int getType(int column) {
+			Object aValue = value(column);
+			if(aValue == null){
+				return ColumnarResult.TYPE_NULL;
+			}
+			if(aValue instanceof byte[]){
+				return ColumnarResult.TYPE_BLOB;
+			}
+			if(aValue instanceof Double || aValue instanceof Float || aValue instanceof BigDecimal){
+				return ColumnarResult.TYPE_DOUBLE;
+			}
+			if(aValue instanceof Number || aValue instanceof Boolean){
+				return ColumnarResult.TYPE_LONG;
+			}
+			return ColumnarResult.TYPE_STRING;
+		}
+
+		public boolean isNull(int column) {
+			return value(column) == null;
+		}
+
+		public long getLong(int column) {
+			Object aValue = value(column);
+			if(aValue instanceof Number){
+				return ((Number)aValue).longValue();
+			}
+			try{
+				return aResultSet.getLong(column + 1);
+			}
+			catch(SQLException e){
+				throw failure(e);
+			}
+		}
+
+		public double getDouble(int column) {
+			Object aValue = value(column);
+			if(aValue instanceof Number){
+				return ((Number)aValue).doubleValue();
+			}
+			try{
+				return aResultSet.getDouble(column + 1);
+			}
+			catch(SQLException e){
+				throw failure(e);
+			}
+		}
+		/*
+		 * numbers are converted to text by the driver so they read the same as they do through the Android backend.
+		 */
+		public String getString(int column) {
+			Object aValue = value(column);
+			if(aValue == null || aValue instanceof String){
+				return (String)aValue;
+			}
+			try{
+				return aResultSet.getString(column + 1);
+			}
+			catch(SQLException e){
+				throw failure(e);
+			}
+		}
+
+		public void appendString(int column, StringBuilder aBuilder) {
+			String aValue = getString(column);
+			if(aValue != null){
+				aBuilder.append(aValue);
+			}
+		}
+
+		public byte[] getBlob(int column) {
+			Object aValue = value(column);
+			if(aValue == null || aValue instanceof byte[]){
+				return (byte[])aValue;
+			}
+			try{
+				return aResultSet.getBytes(column + 1);
+			}
+			catch(SQLException e){
+				throw failure(e);
+			}
+		}
+
+		public void close() {
+			try{
+				try{
+					aResultSet.close();
+				}
+				finally{
+					aStatement.close();
+				}
+			}
+			catch(SQLException e){
+				throw failure(e);
+			}
+		}
+	}
+}
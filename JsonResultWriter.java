@@ -0,0 +1,426 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A JsonResultWriter writes the result of a query as UTF-8 JSON in the same shape as a DataAccessResult, 
+ * {"columnNames":[...],"results":[[...],...],"errorDescription":"..."}.  Rows written by the DataAccessObject streamJson methods go 
+ * straight from the cursor into the writer's buffer.  Numbers are written as JSON numbers, text is escaped so it can be handed to 
+ * JavaScript, and blobs are written as base64 text.  The writer reuses its buffers so, once they have grown to fit the longest 
+ * value, writing a value allocates nothing.  Numbers that are not finite are written as null.
+ * <br/>
+ * A writer may be reused for many results, one at a time, by calling one of its reset methods before each.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public class JsonResultWriter {
+	private static final byte[] HEX = {'0','1','2','3','4','5','6','7','8','9','a','b','c','d','e','f'};
+	private static final byte[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes();
+	private static final byte[] NULL = {'n','u','l','l'};
+
+	private final byte[] buffer;
+	private int position;
+	private OutputStream out;
+	private ByteBuffer target;
+	private final StringBuilder text = new StringBuilder(128);
+	private final byte[] digits = new byte[20];
+	private boolean begun;
+	private int rowsWritten;
+	private long bytesWritten;
+
+	public JsonResultWriter() {
+		this(8192);
+	}
+	/**
+	 * Creates a writer.
+	 * @param bufferSize - the number of bytes collected before they are written to the OutputStream or ByteBuffer.
+	 */
+	public JsonResultWriter(int bufferSize) {
+		this.buffer = new byte[Math.max(64, bufferSize)];
+	}
+	/**
+	 * Readies the writer to write a result to a stream.  The stream is not closed by the writer.
+	 * @param out - the OutputStream to write to.
+	 * @return - this writer.
+	 */
+	public JsonResultWriter reset(OutputStream out) {
+		this.out = out;
+		this.target = null;
+		return clear();
+	}
+	/**
+	 * Readies the writer to write a result into a ByteBuffer starting at its position.  Writing fails with an IOException if the 
+	 * result does not fit in the buffer's remaining bytes.
+	 * @param target - the ByteBuffer to write into.
+	 * @return - this writer.
+	 */
+	public JsonResultWriter reset(ByteBuffer target) {
+		this.out = null;
+		this.target = target;
+		return clear();
+	}
+
+	private JsonResultWriter clear() {
+		position = 0;
+		begun = false;
+		rowsWritten = 0;
+		bytesWritten = 0;
+		return this;
+	}
+
+	public int getRowsWritten() {
+		return rowsWritten;
+	}
+	/**
+	 * Accessor for the number of bytes the writer has handed to its OutputStream or ByteBuffer since it was reset.
+	 */
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+	/**
+	 * Writes a whole DataAccessResult, reading its values from its columnar results with their native types.  Rows that were 
+	 * spilled to a file are read from the file a block at a time.
+	 * @param aResult - the DataAccessResult to write.
+	 * @throws IOException
+	 */
+	public void write(DataAccessResult aResult) throws IOException {
+		begin(aResult.getColumnNames());
+		SpilledResult aSpilledResult = aResult.getSpilledResults();
+		ColumnarResult rows = aSpilledResult == null ? aResult.getColumnarResults() : null;
+		if(aSpilledResult != null){
+			RowCursor aCursor = new SpillCursor(aSpilledResult.file());
+			try{
+				int numColumns = aSpilledResult.getColumnNames().length;
+				while(aCursor.moveToNext()){
+					writeRow(aCursor, numColumns);
+				}
+			}
+			finally{
+				aCursor.close();
+			}
+		}
+		else if(rows != null){
+			int numRows = rows.getRowCount();
+			int numColumns = rows.getColumnCount();
+			for(int row = 0; row < numRows; row++){
+				startRow();
+				for(int column = 0; column < numColumns; column++){
+					if(column > 0){
+						put((byte)',');
+					}
+					switch(rows.getType(row, column)){
+					case ColumnarResult.TYPE_LONG:
+						writeLong(rows.getLong(row, column));
+						break;
+					case ColumnarResult.TYPE_DOUBLE:
+						writeDouble(rows.getDouble(row, column));
+						break;
+					case ColumnarResult.TYPE_STRING:
+						writeString(rows.getString(row, column));
+						break;
+					case ColumnarResult.TYPE_BLOB:
+						writeBase64(rows.getBlob(row, column));
+						break;
+					default:
+						put(NULL);
+					}
+				}
+				put((byte)']');
+			}
+		}
+		end(aResult.getErrorDescription());
+	}
+	/*
+	 * Writes the column names and opens the list of rows.
+	 */
+	void begin(String[] columnNames) throws IOException {
+		begun = true;
+		put("{\"columnNames\":[");
+		if(columnNames != null){
+			for(int i = 0; i < columnNames.length; i++){
+				if(i > 0){
+					put((byte)',');
+				}
+				writeString(columnNames[i]);
+			}
+		}
+		put("],\"results\":[");
+	}
+
+	boolean hasBegun() {
+		return begun;
+	}
+	/*
+	 * Writes the current row of a cursor reading each value with the getter of its type.
+	 */
+	void writeRow(RowCursor aCursor, int numColumns) throws IOException {
+		startRow();
+		for(int column = 0; column < numColumns; column++){
+			if(column > 0){
+				put((byte)',');
+			}
+			switch(aCursor.getType(column)){
+			case ColumnarResult.TYPE_LONG:
+				writeLong(aCursor.getLong(column));
+				break;
+			case ColumnarResult.TYPE_DOUBLE:
+				writeDouble(aCursor.getDouble(column));
+				break;
+			case ColumnarResult.TYPE_STRING:
+				text.setLength(0);
+				aCursor.appendString(column, text);
+				writeString(text);
+				break;
+			case ColumnarResult.TYPE_BLOB:
+				writeBase64(aCursor.getBlob(column));
+				break;
+			default:
+				put(NULL);
+			}
+		}
+		put((byte)']');
+	}
+	/*
+	 * Closes the list of rows, writes the error description and flushes.
+	 */
+	void end(String errorDescription) throws IOException {
+		put("],\"errorDescription\":");
+		if(errorDescription == null){
+			put(NULL);
+		}
+		else{
+			writeString(errorDescription);
+		}
+		put((byte)'}');
+		flush();
+	}
+
+	private void startRow() throws IOException {
+		if(rowsWritten > 0){
+			put((byte)',');
+		}
+		rowsWritten++;
+		put((byte)'[');
+	}
+
+	private void writeLong(long value) throws IOException {
+		if(value == Long.MIN_VALUE){
+			put("-9223372036854775808");
+			return;
+		}
+		if(value < 0){
+			put((byte)'-');
+			value = -value;
+		}
+		int numDigits = 0;
+		do{
+			digits[numDigits++] = (byte)('0' + value % 10);
+			value /= 10;
+		}while(value != 0);
+		ensure(numDigits);
+		while(numDigits > 0){
+			buffer[position++] = digits[--numDigits];
+		}
+	}
+
+	private void writeDouble(double value) throws IOException {
+		if(Double.isNaN(value) || Double.isInfinite(value)){
+			put(NULL);
+			return;
+		}
+		if(value == (long)value && Math.abs(value) < 1e15){
+			writeLong((long)value);
+			put(".0");
+			return;
+		}
+		text.setLength(0);
+		text.append(value);
+		//Java writes exponents as 1.0E-5, which is also valid JSON
+		writeAscii(text);
+	}
+
+	private void writeString(CharSequence aString) throws IOException {
+		put((byte)'"');
+		int length = aString.length();
+		for(int i = 0; i < length; i++){
+			char aChar = aString.charAt(i);
+			if(aChar < 0x80){
+				if(aChar == '"' || aChar == '\\'){
+					put((byte)'\\');
+					put((byte)aChar);
+				}
+				else if(aChar >= 0x20){
+					put((byte)aChar);
+				}
+				else if(aChar == '\n'){
+					put("\\n");
+				}
+				else if(aChar == '\r'){
+					put("\\r");
+				}
+				else if(aChar == '\t'){
+					put("\\t");
+				}
+				else{
+					writeUnicodeEscape(aChar);
+				}
+			}
+			else if(aChar < 0x800){
+				ensure(2);
+				buffer[position++] = (byte)(0xc0 | (aChar >> 6));
+				buffer[position++] = (byte)(0x80 | (aChar & 0x3f));
+			}
+			else if(aChar == 0x2028 || aChar == 0x2029){
+				//line separators are valid in JSON but end a line in JavaScript source
+				writeUnicodeEscape(aChar);
+			}
+			else if(Character.isHighSurrogate(aChar) && i + 1 < length && Character.isLowSurrogate(aString.charAt(i + 1))){
+				int codePoint = Character.toCodePoint(aChar, aString.charAt(++i));
+				ensure(4);
+				buffer[position++] = (byte)(0xf0 | (codePoint >> 18));
+				buffer[position++] = (byte)(0x80 | ((codePoint >> 12) & 0x3f));
+				buffer[position++] = (byte)(0x80 | ((codePoint >> 6) & 0x3f));
+				buffer[position++] = (byte)(0x80 | (codePoint & 0x3f));
+			}
+			else if(Character.isSurrogate(aChar)){
+				//an unpaired surrogate can not be encoded as UTF-8
+				writeUnicodeEscape(aChar);
+			}
+			else{
+				ensure(3);
+				buffer[position++] = (byte)(0xe0 | (aChar >> 12));
+				buffer[position++] = (byte)(0x80 | ((aChar >> 6) & 0x3f));
+				buffer[position++] = (byte)(0x80 | (aChar & 0x3f));
+			}
+		}
+		put((byte)'"');
+	}
+
+	private void writeUnicodeEscape(char aChar) throws IOException {
+		ensure(6);
+		buffer[position++] = '\\';
+		buffer[position++] = 'u';
+		buffer[position++] = HEX[(aChar >> 12) & 0xf];
+		buffer[position++] = HEX[(aChar >> 8) & 0xf];
+		buffer[position++] = HEX[(aChar >> 4) & 0xf];
+		buffer[position++] = HEX[aChar & 0xf];
+	}
+
+	private void writeBase64(byte[] bytes) throws IOException {
+		if(bytes == null){
+			put(NULL);
+			return;
+		}
+		put((byte)'"');
+		int i = 0;
+		for(; i + 2 < bytes.length; i += 3){
+			int bits = ((bytes[i] & 0xff) << 16) | ((bytes[i + 1] & 0xff) << 8) | (bytes[i + 2] & 0xff);
+			ensure(4);
+			buffer[position++] = BASE64[bits >>> 18];
+			buffer[position++] = BASE64[(bits >>> 12) & 0x3f];
+			buffer[position++] = BASE64[(bits >>> 6) & 0x3f];
+			buffer[position++] = BASE64[bits & 0x3f];
+		}
+		int remaining = bytes.length - i;
+		if(remaining > 0){
+			int bits = (bytes[i] & 0xff) << 16;
+			if(remaining == 2){
+				bits |= (bytes[i + 1] & 0xff) << 8;
+			}
+			ensure(4);
+			buffer[position++] = BASE64[bits >>> 18];
+			buffer[position++] = BASE64[(bits >>> 12) & 0x3f];
+			buffer[position++] = remaining == 2 ? BASE64[(bits >>> 6) & 0x3f] : (byte)'=';
+			buffer[position++] = '=';
+		}
+		put((byte)'"');
+	}
+
+	private void writeAscii(CharSequence ascii) throws IOException {
+		int length = ascii.length();
+		ensure(length);
+		for(int i = 0; i < length; i++){
+			buffer[position++] = (byte)ascii.charAt(i);
+		}
+	}
+
+	private void put(String ascii) throws IOException {
+		writeAscii(ascii);
+	}
+
+	private void put(byte[] bytes) throws IOException {
+		ensure(bytes.length);
+		System.arraycopy(bytes, 0, buffer, position, bytes.length);
+		position += bytes.length;
+	}
+
+	private void put(byte aByte) throws IOException {
+		if(position == buffer.length){
+			drain();
+		}
+		buffer[position++] = aByte;
+	}
+	/*
+	 * Makes room for a run of bytes.  Runs are never longer than the 64 byte minimum buffer size.
+	 */
+	private void ensure(int numBytes) throws IOException {
+		if(position + numBytes > buffer.length){
+			drain();
+		}
+	}
+
+	private void drain() throws IOException {
+		if(position == 0){
+			return;
+		}
+		if(out != null){
+			out.write(buffer, 0, position);
+		}
+		else if(target != null){
+			if(target.remaining() < position){
+				throw new IOException("the JSON does not fit in the remaining "+target.remaining()+" bytes of the ByteBuffer");
+			}
+			target.put(buffer, 0, position);
+		}
+		else{
+			throw new IOException("the JsonResultWriter has not been reset with an OutputStream or ByteBuffer");
+		}
+		bytesWritten += position;
+		position = 0;
+	}
+	/**
+	 * Writes any buffered bytes to the OutputStream or ByteBuffer and flushes the stream.
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		drain();
+		if(out != null){
+			out.flush();
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A LatencyHistogram counts durations in buckets whose upper bounds are powers of two nanoseconds.  Recording a duration is lock 
+ * free and never allocates.  Percentiles are estimated as the upper bound of the bucket they fall in so they are accurate to 
+ * within a factor of two.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public class LatencyHistogram {
+	private static final int NUM_BUCKETS = 64;
+	private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	public void record(long nanos) {
+		if(nanos < 0){
+			nanos = 0;
+		}
+		buckets.incrementAndGet(Math.min(NUM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos)));
+		count.incrementAndGet();
+		totalNanos.addAndGet(nanos);
+		long max = maxNanos.get();
+		while(nanos > max && !maxNanos.compareAndSet(max, nanos)){
+			max = maxNanos.get();
+		}
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getTotalNanos() {
+		return totalNanos.get();
+	}
+
+	public long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	public long getMeanNanos() {
+		long aCount = count.get();
+		return aCount == 0 ? 0 : totalNanos.get() / aCount;
+	}
+	/**
+	 * Estimates a percentile of the recorded durations.
+	 * @param percentile - a value from 0 to 100, for example 99 for the 99th percentile.
+	 * @return - the upper bound, in nanoseconds, of the bucket the percentile falls in or 0 if nothing has been recorded.
+	 */
+	public long getPercentileNanos(double percentile) {
+		long aCount = count.get();
+		if(aCount == 0){
+			return 0;
+		}
+		long target = (long)Math.ceil(aCount * Math.min(100, Math.max(0, percentile)) / 100.0);
+		long seen = 0;
+		for(int i = 0; i < NUM_BUCKETS; i++){
+			seen += buckets.get(i);
+			if(seen >= target && seen > 0){
+				return i == 0 ? 0 : Math.min(1L << i, maxNanos.get());
+			}
+		}
+		return maxNanos.get();
+	}
+	/**
+	 * Accessor for the raw bucket counts.  Bucket i counts durations from 2 to the power i-1 nanoseconds up to, but not 
+	 * including, 2 to the power i nanoseconds.  Bucket 0 counts durations of 0.
+	 * @return - a copy of the counts.
+	 */
+	public long[] getBucketCounts() {
+		long[] counts = new long[NUM_BUCKETS];
+		for(int i = 0; i < NUM_BUCKETS; i++){
+			counts[i] = buckets.get(i);
+		}
+		return counts;
+	}
+
+	public void reset() {
+		for(int i = 0; i < NUM_BUCKETS; i++){
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		totalNanos.set(0);
+		maxNanos.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return "count="+getCount()+" mean="+getMeanNanos()+"ns p50="+getPercentileNanos(50)+"ns p99="+getPercentileNanos(99)
+				+"ns max="+getMaxNanos()+"ns";
+	}
+}
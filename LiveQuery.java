@@ -0,0 +1,521 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.content.Context;
+
+/**
+ * A LiveQuery is a query whose results are published to its subscribers as they change.  Instead of polling, the query is run 
+ * again only after a DataAccessObject write or transaction that changed one of the tables the query reads from has been committed.  
+ * Changes committed close together are handled by one run of the query, which starts the debounce interval after the first of 
+ * them.  Subscribers are sent the rows that were added, changed and removed since the last QueryChange they received rather 
+ * than the whole result.
+ * <br/>
+ * The query is run and subscribers are called on a single background thread shared by all LiveQueries, so subscribers should 
+ * hand any lengthy work to another thread.  A subscriber that has not requested another QueryChange misses none of the changes.  
+ * When it asks for one it is sent everything that changed since the last QueryChange it received.  If the query fails, every 
+ * subscriber is sent the error and the LiveQuery starts over with the next subscriber.
+ * <br/>
+ * Changes made other than through the DataAccessObject, for example by another process, are not seen.  A query that reads from a 
+ * view is run again after any change to its database.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public class LiveQuery implements Flow.Publisher<QueryChange> {
+	/*
+	 * the LiveQueries that have subscribers.  The change listener is only registered while there are some so writes do not 
+	 * have to track the tables they change when nothing is observing them.
+	 */
+	private static final CopyOnWriteArrayList<LiveQuery> observing = new CopyOnWriteArrayList<LiveQuery>();
+	private static final TableChangeListener changeListener = new TableChangeListener(){
+		public void tablesChanged(String databaseName, Set<String> tables) {
+			Iterator<LiveQuery> queryIt = observing.iterator();
+			while(queryIt.hasNext()){
+				LiveQuery aQuery = queryIt.next();
+				if(aQuery.dependsOn(databaseName, tables)){
+					aQuery.scheduleRefresh();
+				}
+			}
+		}
+	};
+	private static ScheduledThreadPoolExecutor scheduler;
+
+	private final WeakReference<Context> aContextRef;
+	private final String databaseName;
+	private final String SQL;
+	private final Object[] parameters;
+	private final String keyColumn;
+	private final long debounceMillis;
+	/*
+	 * the lower case names of the tables the query reads from or null if any change to the database must be treated as a 
+	 * change to the query.
+	 */
+	private volatile Set<String> tables;
+	private volatile boolean viewsChecked;
+	private boolean refreshScheduled;
+	/*
+	 * only used on the scheduler thread.
+	 */
+	private final ArrayList<LiveSubscription> subscriptions = new ArrayList<LiveSubscription>();
+	private ColumnarResult current;
+	private int keyIndex = -1;
+
+	private final Runnable refreshTask = new Runnable(){
+		public void run() {
+			refresh();
+		}
+	};
+
+	private LiveQuery(WeakReference<Context> aContextRef, String databaseName, String SQL, Object[] parameters, String keyColumn, 
+			long debounceMillis) {
+		this.aContextRef = aContextRef;
+		this.databaseName = databaseName;
+		this.SQL = SQL;
+		this.parameters = parameters == null ? null : parameters.clone();
+		this.keyColumn = keyColumn;
+		this.debounceMillis = debounceMillis;
+		this.tables = SqlTables.readTables(SQL);
+	}
+
+	static LiveQuery create(WeakReference<Context> aContextRef, String databaseName, String SQL, Object[] parameters, String keyColumn, 
+			long debounceMillis) throws DataAccessException{
+		if(SQL == null || !SqlTables.isQuery(SQL)){
+			throw new DataAccessException("Error: only a SELECT statement can be observed but was "+SQL);
+		}
+		if(debounceMillis < 0){
+			throw new DataAccessException("Error: the debounce interval must not be negative but was "+debounceMillis);
+		}
+		return new LiveQuery(aContextRef, databaseName, SQL, parameters, keyColumn, debounceMillis);
+	}
+
+	public String getDatabaseName() {
+		return databaseName;
+	}
+
+	public String getSQL() {
+		return SQL;
+	}
+
+	public String getKeyColumn() {
+		return keyColumn;
+	}
+
+	public long getDebounceMillis() {
+		return debounceMillis;
+	}
+	/**
+	 * This method adds a subscriber.  The subscriber is sent the current result of the query as its first QueryChange once it 
+	 * requests one.
+	 * @param aSubscriber - the Flow.Subscriber to send QueryChanges to.
+	 */
+	public void subscribe(Flow.Subscriber<? super QueryChange> aSubscriber) {
+		if(aSubscriber == null){
+			throw new NullPointerException("the subscriber must not be null.");
+		}
+		final LiveSubscription aSubscription = new LiveSubscription(aSubscriber);
+		scheduler().execute(new Runnable(){
+			public void run() {
+				added(aSubscription);
+			}
+		});
+	}
+	/**
+	 * This method stops the LiveQuery.  Every subscriber is told the query is complete and the query is no longer run when its 
+	 * tables change.  Subscribing again starts it over.
+	 */
+	public void close() {
+		scheduler().execute(new Runnable(){
+			public void run() {
+				ArrayList<LiveSubscription> closing = detachAll();
+				for(int i = 0; i < closing.size(); i++){
+					LiveSubscription aSubscription = closing.get(i);
+					if(!aSubscription.cancelled){
+						aSubscription.cancelled = true;
+						try{
+							aSubscription.subscriber.onComplete();
+						}
+						catch(Throwable e){
+							e.printStackTrace();
+						}
+					}
+				}
+			}
+		});
+	}
+	/*
+	 * The tables a query reads can only be compared with the tables a write changes if none of them are views.
+	 */
+	boolean dependsOn(String changedDatabase, Set<String> changedTables){
+		if(!databaseName.equals(changedDatabase)){
+			return false;
+		}
+		if(changedTables == null){
+			//a CREATE, DROP or ALTER may have added or removed a view
+			viewsChecked = false;
+			return true;
+		}
+		Set<String> readTables = tables;
+		return readTables == null || !Collections.disjoint(readTables, changedTables);
+	}
+	/*
+	 * Called on the committing thread.  A change that arrives while a run of the query is already scheduled is picked up by 
+	 * that run.  One that arrives while the query is running schedules another run.
+	 */
+	void scheduleRefresh(){
+		synchronized(this){
+			if(refreshScheduled){
+				return;
+			}
+			refreshScheduled = true;
+		}
+		scheduler().schedule(refreshTask, debounceMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private void refresh(){
+		synchronized(this){
+			refreshScheduled = false;
+		}
+		if(subscriptions.isEmpty() || !runQuery()){
+			return;
+		}
+		for(int i = 0; i < subscriptions.size(); i++){
+			deliver(subscriptions.get(i));
+		}
+	}
+
+	private void added(LiveSubscription aSubscription){
+		try{
+			aSubscription.subscriber.onSubscribe(aSubscription);
+		}
+		catch(Throwable e){
+			e.printStackTrace();
+			aSubscription.cancelled = true;
+		}
+		if(aSubscription.cancelled){
+			return;
+		}
+		subscriptions.add(aSubscription);
+		if(subscriptions.size() == 1){
+			/*
+			 * the listener is registered before the query is run so no change committed after the query reads the database 
+			 * is missed.
+			 */
+			synchronized(LiveQuery.class){
+				if(observing.isEmpty()){
+					TableChangeTracker.addListener(changeListener);
+				}
+				observing.add(this);
+			}
+		}
+		if(current == null && !runQuery()){
+			return;
+		}
+		deliver(aSubscription);
+	}
+
+	private void removed(LiveSubscription aSubscription){
+		if(subscriptions.remove(aSubscription) && subscriptions.isEmpty()){
+			detachAll();
+		}
+	}
+	/*
+	 * Removes every subscription and stops watching for changes.
+	 */
+	private ArrayList<LiveSubscription> detachAll(){
+		ArrayList<LiveSubscription> detached = new ArrayList<LiveSubscription>(subscriptions);
+		subscriptions.clear();
+		current = null;
+		synchronized(LiveQuery.class){
+			if(observing.remove(this) && observing.isEmpty()){
+				TableChangeTracker.removeListener(changeListener);
+			}
+		}
+		return detached;
+	}
+	/*
+	 * Runs the query and keeps its result.  If it fails every subscriber is sent the error.
+	 */
+	private boolean runQuery(){
+		try{
+			DataAccessResult aResult = DataAccessObject.dbAccess(aContextRef, databaseName, SQL, ParameterBuffer.of(parameters), false);
+			ColumnarResult rows = aResult == null ? null : aResult.getColumnarResults();
+			if(rows == null){
+				throw new DataAccessException("Error: unable to query "+databaseName+". "
+						+(aResult == null ? "There is no Context." : aResult.getErrorDescription()));
+			}
+			if(keyColumn != null){
+				keyIndex = Page.keyIndex(rows.getColumnNames(), keyColumn);
+			}
+			if(!viewsChecked){
+				checkForViews();
+			}
+			current = rows;
+			return true;
+		}
+		catch(Throwable e){
+			ArrayList<LiveSubscription> failed = detachAll();
+			for(int i = 0; i < failed.size(); i++){
+				LiveSubscription aSubscription = failed.get(i);
+				if(!aSubscription.cancelled){
+					aSubscription.cancelled = true;
+					try{
+						aSubscription.subscriber.onError(e);
+					}
+					catch(Throwable onErrorFailure){
+						onErrorFailure.printStackTrace();
+					}
+				}
+			}
+			return false;
+		}
+	}
+	/*
+	 * Writes change the tables a view reads from, not the view, so a query that reads from a view has to be run again after 
+	 * any change.
+	 */
+	private void checkForViews() throws DataAccessException{
+		Set<String> readTables = SqlTables.readTables(SQL);
+		try{
+			ColumnarResult views = DataAccessObject.queryOpenDatabase(databaseName, "SELECT name FROM sqlite_master WHERE type = 'view'", null);
+			if(views == null){
+				return;
+			}
+			for(int i = 0; i < views.getRowCount(); i++){
+				if(readTables.contains(views.getString(i, 0).toLowerCase())){
+					readTables = null;
+					break;
+				}
+			}
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new DataAccessException("Error: interrupted while checking "+databaseName+" for views.");
+		}
+		tables = readTables;
+		viewsChecked = true;
+	}
+	/*
+	 * Sends a subscriber what changed since the last QueryChange it received, if it has asked for one.
+	 */
+	private void deliver(LiveSubscription aSubscription){
+		ColumnarResult latest = current;
+		if(aSubscription.cancelled || latest == null || aSubscription.delivered == latest || aSubscription.demand.get() == 0){
+			return;
+		}
+		QueryChange aChange = diff(aSubscription.delivered, latest, keyIndex);
+		aSubscription.delivered = latest;
+		if(aChange.isEmpty() && !aChange.isInitial()){
+			return;
+		}
+		if(aSubscription.demand.get() != Long.MAX_VALUE){
+			aSubscription.demand.decrementAndGet();
+		}
+		try{
+			aSubscription.subscriber.onNext(aChange);
+		}
+		catch(Throwable e){
+			e.printStackTrace();
+			aSubscription.cancel();
+		}
+	}
+	/*
+	 * Compares two results of the query row by row.  Rows are matched by the key column if there is one and otherwise by all 
+	 * of their values.  A null previous result means every row is new.
+	 */
+	static QueryChange diff(ColumnarResult previous, ColumnarResult latest, int keyIndex){
+		ArrayList<Object[]> addedRows = new ArrayList<Object[]>();
+		ArrayList<Object[]> changedRows = new ArrayList<Object[]>();
+		ArrayList<Object[]> removedRows = new ArrayList<Object[]>();
+		int numRows = latest.getRowCount();
+		if(previous == null){
+			for(int i = 0; i < numRows; i++){
+				addedRows.add(rowAt(latest, i));
+			}
+		}
+		else if(keyIndex >= 0){
+			LinkedHashMap<RowValues,Object[]> previousRows = new LinkedHashMap<RowValues,Object[]>();
+			for(int i = 0; i < previous.getRowCount(); i++){
+				Object[] aRow = rowAt(previous, i);
+				previousRows.put(new RowValues(new Object[]{aRow[keyIndex]}), aRow);
+			}
+			for(int i = 0; i < numRows; i++){
+				Object[] aRow = rowAt(latest, i);
+				Object[] previousRow = previousRows.remove(new RowValues(new Object[]{aRow[keyIndex]}));
+				if(previousRow == null){
+					addedRows.add(aRow);
+				}
+				else if(!Arrays.deepEquals(previousRow, aRow)){
+					changedRows.add(aRow);
+				}
+			}
+			removedRows.addAll(previousRows.values());
+		}
+		else{
+			/*
+			 * a query may return the same row more than once so the rows are counted rather than just looked up.
+			 */
+			HashMap<RowValues,int[]> unmatched = new HashMap<RowValues,int[]>();
+			int numPrevious = previous.getRowCount();
+			RowValues[] previousRows = new RowValues[numPrevious];
+			for(int i = 0; i < numPrevious; i++){
+				previousRows[i] = new RowValues(rowAt(previous, i));
+				int[] aCount = unmatched.get(previousRows[i]);
+				if(aCount == null){
+					aCount = new int[1];
+					unmatched.put(previousRows[i], aCount);
+				}
+				aCount[0]++;
+			}
+			for(int i = 0; i < numRows; i++){
+				Object[] aRow = rowAt(latest, i);
+				int[] aCount = unmatched.get(new RowValues(aRow));
+				if(aCount != null && aCount[0] > 0){
+					aCount[0]--;
+				}
+				else{
+					addedRows.add(aRow);
+				}
+			}
+			for(int i = 0; i < numPrevious; i++){
+				int[] aCount = unmatched.get(previousRows[i]);
+				if(aCount[0] > 0){
+					aCount[0]--;
+					removedRows.add(previousRows[i].values);
+				}
+			}
+		}
+		return new QueryChange(latest.getColumnNames(), addedRows, changedRows, removedRows, latest, previous == null);
+	}
+
+	private static Object[] rowAt(ColumnarResult aResult, int row){
+		Object[] values = new Object[aResult.getColumnCount()];
+		for(int i = 0; i < values.length; i++){
+			values[i] = aResult.valueAt(row, i);
+		}
+		return values;
+	}
+
+	private static synchronized ScheduledThreadPoolExecutor scheduler(){
+		if(scheduler == null){
+			scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory(){
+				public Thread newThread(Runnable aRunnable) {
+					Thread aThread = new Thread(aRunnable, "qcdbaccess-live");
+					aThread.setDaemon(true);
+					return aThread;
+				}
+			});
+		}
+		return scheduler;
+	}
+	/*
+	 * The values of a row compared by content, including the contents of blobs.
+	 */
+	private static final class RowValues {
+		private final Object[] values;
+		private final int hash;
+
+		RowValues(Object[] values) {
+			this.values = values;
+			this.hash = Arrays.deepHashCode(values);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object anObject) {
+			return anObject instanceof RowValues && Arrays.deepEquals(values, ((RowValues)anObject).values);
+		}
+	}
+
+	private class LiveSubscription implements Flow.Subscription {
+		private final Flow.Subscriber<? super QueryChange> subscriber;
+		private final AtomicLong demand = new AtomicLong();
+		private volatile boolean cancelled;
+		/*
+		 * the result the last QueryChange sent to the subscriber was made from.  Only used on the scheduler thread.
+		 */
+		private ColumnarResult delivered;
+
+		LiveSubscription(Flow.Subscriber<? super QueryChange> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		public void request(final long n) {
+			if(cancelled){
+				return;
+			}
+			if(n <= 0){
+				cancelled = true;
+				scheduler().execute(new Runnable(){
+					public void run() {
+						removed(LiveSubscription.this);
+						subscriber.onError(new IllegalArgumentException("the number of QueryChanges requested must be positive but was "+n));
+					}
+				});
+				return;
+			}
+			long previousDemand;
+			do{
+				previousDemand = demand.get();
+			}while(!demand.compareAndSet(previousDemand, previousDemand + n < 0 ? Long.MAX_VALUE : previousDemand + n));
+			if(previousDemand == 0){
+				scheduler().execute(new Runnable(){
+					public void run() {
+						deliver(LiveSubscription.this);
+					}
+				});
+			}
+		}
+
+		public void cancel() {
+			if(cancelled){
+				return;
+			}
+			cancelled = true;
+			scheduler().execute(new Runnable(){
+				public void run() {
+					removed(LiveSubscription.this);
+				}
+			});
+		}
+	}
+}
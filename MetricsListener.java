@@ -0,0 +1,51 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+/**
+ * A MetricsListener is told about every database operation while DataAccessMetrics is enabled.  Listeners are called on the thread 
+ * that did the operation after it has finished, so they should be quick and must not make DataAccessObject calls of their own.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public interface MetricsListener {
+	/**
+	 * Called after a query, write or batch.
+	 * @param databaseName - the name of the database.
+	 * @param SQL - the SQL of the operation.
+	 * @param kind - DataAccessMetrics.QUERY, DataAccessMetrics.WRITE or DataAccessMetrics.BATCH.
+	 * @param durationNanos - the time the operation took, including lock waits.
+	 * @param lockWaitNanos - the time spent waiting for the database's lock.
+	 * @param rows - the number of rows a query returned or the number of parameter sets a batch executed.
+	 * @param blobBytes - the number of bytes of blobs read or written.
+	 */
+	public void operationCompleted(String databaseName, String SQL, int kind, long durationNanos, long lockWaitNanos, long rows, long blobBytes);
+	/**
+	 * Called after an outermost transaction ends.
+	 * @param databaseName - the name of the database.
+	 * @param durationNanos - the time from the start of the transaction to its end.
+	 * @param committed - <b>true</b> if the transaction was committed, <b>false</b> if it was rolled back.
+	 */
+	public void transactionCompleted(String databaseName, long durationNanos, boolean committed);
+}
@@ -0,0 +1,230 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+import android.content.Context;
+
+/**
+ * A Page is one page of a query read with the DataAccessObject page method.  Pages are found with an indexed seek past the key 
+ * of the last row of the previous page instead of with an OFFSET, so reading the last page of a large table takes no longer than 
+ * reading the first.  The continuation token of a page can be kept, for example across the restart of an Activity, and handed 
+ * back to the page method to read the page that follows.
+ * <br/>
+ * A page with fewer rows than the page size is the last page.  When the last page is exactly full the page after it is empty.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public class Page {
+	private final WeakReference<Context> aContextRef;
+	private final String databaseName;
+	private final String baseSQL;
+	private final Object[] parameters;
+	private final String keyColumn;
+	private final boolean descending;
+	private final int pageSize;
+	private final boolean prefetch;
+	private final DataAccessResult result;
+	private final String continuationToken;
+	private CompletableFuture<Page> nextPage;
+
+	private Page(WeakReference<Context> aContextRef, String databaseName, String baseSQL, Object[] parameters, String keyColumn, 
+			boolean descending, int pageSize, boolean prefetch, DataAccessResult result, String continuationToken) {
+		this.aContextRef = aContextRef;
+		this.databaseName = databaseName;
+		this.baseSQL = baseSQL;
+		this.parameters = parameters;
+		this.keyColumn = keyColumn;
+		this.descending = descending;
+		this.pageSize = pageSize;
+		this.prefetch = prefetch;
+		this.result = result;
+		this.continuationToken = continuationToken;
+	}
+	/*
+	 * Reads the page that follows the row the token was made from, or the first page if the token is null.
+	 */
+	static Page load(WeakReference<Context> aContextRef, String databaseName, String baseSQL, Object[] parameters, String keyColumn, 
+			boolean descending, int pageSize, String token, boolean prefetch) throws DataAccessException{
+		if(pageSize <= 0){
+			throw new DataAccessException("Error: the page size must be greater than 0 but was "+pageSize);
+		}
+		if(parameters == null){
+			parameters = new Object[0];
+		}
+		String key = DataAccessObject.quoteIdentifier(keyColumn);
+		StringBuilder aQuery = new StringBuilder("SELECT * FROM (").append(baseSQL).append(")");
+		ParameterBuffer pageParameters = ParameterBuffer.of(parameters);
+		if(token != null){
+			/*
+			 * the key is bound with the type it was read with.  Otherwise a key computed by an expression, which has no type 
+			 * affinity, would be compared as text.
+			 */
+			String value = token.substring(1);
+			try{
+				switch(token.charAt(0)){
+				case 'L':
+					pageParameters.setLong(parameters.length, Long.parseLong(value));
+					break;
+				case 'D':
+					pageParameters.setDouble(parameters.length, Double.parseDouble(value));
+					break;
+				case 'S':
+					pageParameters.setString(parameters.length, value);
+					break;
+				default:
+					throw new DataAccessException("Error: "+token+" is not a continuation token.");
+				}
+			}
+			catch(NumberFormatException e){
+				throw new DataAccessException("Error: "+token+" is not a continuation token.");
+			}
+			aQuery.append(" WHERE ").append(key).append(descending ? " < ?" : " > ?");
+		}
+		aQuery.append(" ORDER BY ").append(key).append(descending ? " DESC" : " ASC").append(" LIMIT ").append(pageSize);
+		DataAccessResult aResult = DataAccessObject.transactBound(aContextRef, databaseName, aQuery.toString(), pageParameters);
+		String aToken = null;
+		ColumnarResult rows = aResult == null ? null : aResult.getColumnarResults();
+		if(rows != null && rows.getRowCount() == pageSize){
+			aToken = tokenFor(rows, keyIndex(rows.getColumnNames(), keyColumn));
+		}
+		else if(rows == null && aResult != null && !"not an error".equals(aResult.getErrorDescription())){
+			throw new DataAccessException("Error: unable to read a page of "+databaseName+". "+aResult.getErrorDescription());
+		}
+		return new Page(aContextRef, databaseName, baseSQL, parameters, keyColumn, descending, pageSize, prefetch, aResult, aToken);
+	}
+	/*
+	 * Starts reading the next page in the background if this page was read with prefetching.  It is called as a page is handed 
+	 * to the caller and not as it is read, so a prefetched page does not prefetch the page after it before it is used.
+	 */
+	synchronized Page startPrefetch(){
+		if(prefetch && continuationToken != null && nextPage == null){
+			nextPage = AsyncDataAccessObject.loadPageAsync(aContextRef, databaseName, baseSQL, parameters, keyColumn, descending, 
+					pageSize, continuationToken, prefetch, false);
+		}
+		return this;
+	}
+
+	static int keyIndex(String[] columnNames, String keyColumn) throws DataAccessException{
+		for(int i = 0; i < columnNames.length; i++){
+			if(columnNames[i].equalsIgnoreCase(keyColumn)){
+				return i;
+			}
+		}
+		throw new DataAccessException("Error: the key column "+keyColumn+" is not one of the columns of the query.");
+	}
+
+	private static String tokenFor(ColumnarResult rows, int keyIndex) throws DataAccessException{
+		int lastRow = rows.getRowCount() - 1;
+		switch(rows.getType(lastRow, keyIndex)){
+		case ColumnarResult.TYPE_LONG:
+			return "L"+rows.getLong(lastRow, keyIndex);
+		case ColumnarResult.TYPE_DOUBLE:
+			return "D"+rows.getDouble(lastRow, keyIndex);
+		case ColumnarResult.TYPE_STRING:
+			return "S"+rows.getString(lastRow, keyIndex);
+		default:
+			throw new DataAccessException("Error: the key column "+rows.getColumnNames()[keyIndex]
+					+" must hold numbers or text that are never null.");
+		}
+	}
+	/**
+	 * Accessor for the rows of the page.
+	 * @return - A DataAccessResult object that contains the rows and information regarding any database errors generated 
+	 * during execution.
+	 */
+	public DataAccessResult getResult() {
+		return result;
+	}
+
+	public int getRowCount() {
+		ColumnarResult rows = result == null ? null : result.getColumnarResults();
+		return rows == null ? 0 : rows.getRowCount();
+	}
+
+	public boolean hasNext() {
+		return continuationToken != null;
+	}
+	/**
+	 * Accessor for the token that marks the end of this page.
+	 * @return - an opaque String to hand to the DataAccessObject page method to read the next page, or null if this is the last page.
+	 */
+	public String getContinuationToken() {
+		return continuationToken;
+	}
+	/**
+	 * Reads the page that follows this one.  If the page was read with prefetching the next page has already been started in 
+	 * the background and is waited for.
+	 * @return - the next Page or null if this is the last page.
+	 * @throws DataAccessException
+	 */
+	public Page next() throws DataAccessException {
+		if(continuationToken == null){
+			return null;
+		}
+		CompletableFuture<Page> aFuture = prefetched();
+		if(aFuture == null){
+			return load(aContextRef, databaseName, baseSQL, parameters, keyColumn, descending, pageSize, continuationToken, prefetch).startPrefetch();
+		}
+		try{
+			return aFuture.get().startPrefetch();
+		}
+		catch(InterruptedException e){
+			throw new DataAccessException("Error: interrupted while waiting for a page of "+databaseName+". "+e.getLocalizedMessage());
+		}
+		catch(ExecutionException e){
+			if(e.getCause() instanceof DataAccessException){
+				throw (DataAccessException)e.getCause();
+			}
+			throw new DataAccessException("Error: unable to read a page of "+databaseName+". "+e.getCause());
+		}
+	}
+	/**
+	 * Reads the page that follows this one on the AsyncDataAccessObject pool.
+	 * @return - A CompletableFuture for the next Page, completed with null if this is the last page.
+	 */
+	public CompletableFuture<Page> nextAsync() {
+		if(continuationToken == null){
+			return CompletableFuture.completedFuture(null);
+		}
+		CompletableFuture<Page> aFuture = prefetched();
+		if(aFuture == null){
+			return AsyncDataAccessObject.pageAsync(aContextRef, databaseName, baseSQL, parameters, keyColumn, descending, pageSize, 
+					continuationToken, prefetch);
+		}
+		return aFuture.thenApply(new Function<Page,Page>(){
+			public Page apply(Page aPage) {
+				return aPage.startPrefetch();
+			}
+		});
+	}
+
+	private synchronized CompletableFuture<Page> prefetched(){
+		return nextPage;
+	}
+}
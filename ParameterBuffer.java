@@ -0,0 +1,287 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.util.Arrays;
+
+/**
+ * A ParameterBuffer holds the values bound to the ? characters of an SQL statement.  Numbers are kept as primitives and every 
+ * value is tagged with its type, so binding a ParameterBuffer neither boxes numbers nor inspects the class of each value.  A 
+ * ParameterBuffer can be filled, executed, cleared and filled again as many times as needed.  Once its arrays have grown to 
+ * the number of parameters of a statement reusing it creates no garbage.<br/>
+ * 
+ * Positions are zero based, the same as the positions of an array of Object parameters.  Positions that have not been set 
+ * since the buffer was created or cleared are bound as null.  A ParameterBuffer is not safe to fill from more than one thread 
+ * at a time and must not be changed while a call using it is executing.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public class ParameterBuffer {
+	/*
+	 * the tag of an Object parameter of any other class.  The Object[] methods of DataAccessObject have always bound such a 
+	 * parameter of a query as its text and rejected it for a write, so it is only dealt with when the buffer is bound.
+	 */
+	private static final byte TYPE_UNSUPPORTED = -1;
+
+	private byte[] types;
+	/*
+	 * longs and the raw bits of doubles.
+	 */
+	private long[] numbers;
+	/*
+	 * Strings, byte arrays and QCBlobs.
+	 */
+	private Object[] objects;
+	private int size = 0;
+
+	public ParameterBuffer() {
+		this(8);
+	}
+	/**
+	 * Creates a buffer with room for a number of parameters.  The buffer grows if more are set.
+	 * @param capacity - the number of parameters the buffer starts with room for.
+	 */
+	public ParameterBuffer(int capacity) {
+		capacity = Math.max(1, capacity);
+		this.types = new byte[capacity];
+		this.numbers = new long[capacity];
+		this.objects = new Object[capacity];
+	}
+	/*
+	 * Converts an array of Object parameters.  The classes accepted are the ones the Object[] methods of DataAccessObject 
+	 * have always accepted.
+	 */
+	static ParameterBuffer of(Object[] parameters){
+		return new ParameterBuffer(parameters == null ? 0 : parameters.length).fill(parameters);
+	}
+	/*
+	 * Clears the buffer and sets it from an array of Object parameters.
+	 */
+	ParameterBuffer fill(Object[] parameters){
+		clear();
+		int numParams = parameters == null ? 0 : parameters.length;
+		for(int i = 0; i < numParams; i++){
+			set(i, parameters[i]);
+		}
+		return this;
+	}
+
+	public void setNull(int index) {
+		slot(index);
+		types[index] = ColumnarResult.TYPE_NULL;
+		objects[index] = null;
+	}
+
+	public void setLong(int index, long value) {
+		slot(index);
+		types[index] = ColumnarResult.TYPE_LONG;
+		numbers[index] = value;
+		objects[index] = null;
+	}
+
+	public void setDouble(int index, double value) {
+		slot(index);
+		types[index] = ColumnarResult.TYPE_DOUBLE;
+		numbers[index] = Double.doubleToRawLongBits(value);
+		objects[index] = null;
+	}
+	/**
+	 * Sets a text parameter.
+	 * @param index - the zero based position of the parameter.
+	 * @param value - the text.  A null value is bound as null.
+	 */
+	public void setString(int index, String value) {
+		setObject(index, value == null ? ColumnarResult.TYPE_NULL : ColumnarResult.TYPE_STRING, value);
+	}
+	/**
+	 * Sets a blob parameter.  The array is not copied so it must not be changed until the buffer has been used.
+	 * @param index - the zero based position of the parameter.
+	 * @param value - the bytes of the blob.  A null value is bound as null.
+	 */
+	public void setBlob(int index, byte[] value) {
+		setObject(index, value == null ? ColumnarResult.TYPE_NULL : ColumnarResult.TYPE_BLOB, value);
+	}
+
+	public void setBlob(int index, QCBlob value) {
+		setObject(index, value == null ? ColumnarResult.TYPE_NULL : ColumnarResult.TYPE_BLOB, value);
+	}
+	/**
+	 * Sets a parameter from an Object the way the Object[] methods of DataAccessObject bind it.  Strings, Doubles, Floats, 
+	 * Integers, Longs, Shorts, Bytes, byte arrays and QCBlobs are bound with their own types.  An Object of any other class, 
+	 * such as a Boolean, is bound as its text by a query and makes a write fail.
+	 * @param index - the zero based position of the parameter.
+	 * @param value - the value.  A null value is bound as null.
+	 */
+	public void set(int index, Object value) {
+		if(value == null){
+			setNull(index);
+		}
+		else if(value instanceof String){
+			setObject(index, ColumnarResult.TYPE_STRING, value);
+		}
+		else if(value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte){
+			setLong(index, ((Number)value).longValue());
+		}
+		else if(value instanceof Double || value instanceof Float){
+			setDouble(index, ((Number)value).doubleValue());
+		}
+		else if(value instanceof QCBlob || value instanceof byte[]){
+			setObject(index, ColumnarResult.TYPE_BLOB, value);
+		}
+		else{
+			setObject(index, TYPE_UNSUPPORTED, value);
+		}
+	}
+	/**
+	 * Sets every parameter back to unset so the buffer can be filled for the next statement.  The buffer keeps its capacity.
+	 */
+	public void clear() {
+		Arrays.fill(types, 0, size, (byte)ColumnarResult.TYPE_NULL);
+		Arrays.fill(objects, 0, size, null);
+		size = 0;
+	}
+	/**
+	 * Accessor for the number of parameters.
+	 * @return - one more than the highest position that has been set since the buffer was created or cleared.
+	 */
+	public int size() {
+		return size;
+	}
+	/**
+	 * Accessor for the type of a parameter.
+	 * @param index - the zero based position of the parameter.
+	 * @return - one of the ColumnarResult TYPE_ constants.
+	 */
+	public int getType(int index) {
+		if(index >= size){
+			return ColumnarResult.TYPE_NULL;
+		}
+		return types[index] == TYPE_UNSUPPORTED ? ColumnarResult.TYPE_STRING : types[index];
+	}
+
+	/**
+	 * Binds every parameter to a compiled statement using the bind method for its type.
+	 * @throws IllegalArgumentException - if a parameter was set to an Object of a class that can not be bound.
+	 */
+	void bindTo(CompiledStatement aStatement){
+		bind(aStatement, false);
+	}
+	/*
+	 * Binds the parameters of a query.  A parameter of an unsupported class is bound as its text.
+	 */
+	void bindQueryTo(CompiledStatement aStatement){
+		bind(aStatement, true);
+	}
+
+	private void bind(CompiledStatement aStatement, boolean isQuery){
+		for(int i = 0; i < size; i++){
+			switch(types[i]){
+			case ColumnarResult.TYPE_LONG:
+				aStatement.bindLong(i+1, numbers[i]);
+				break;
+			case ColumnarResult.TYPE_DOUBLE:
+				aStatement.bindDouble(i+1, Double.longBitsToDouble(numbers[i]));
+				break;
+			case ColumnarResult.TYPE_STRING:
+				aStatement.bindString(i+1, (String)objects[i]);
+				break;
+			case ColumnarResult.TYPE_BLOB:
+				aStatement.bindBlob(i+1, blobBytes(i));
+				break;
+			case ColumnarResult.TYPE_NULL:
+				aStatement.bindNull(i+1);
+				break;
+			default:
+				if(!isQuery){
+					throw unsupported(i);
+				}
+				aStatement.bindString(i+1, String.valueOf(objects[i]));
+			}
+		}
+	}
+	/*
+	 * The bytes of a blob parameter.
+	 */
+	byte[] blobBytes(int index){
+		return objects[index] instanceof QCBlob ? ((QCBlob)objects[index]).bytes() : (byte[])objects[index];
+	}
+
+	/*
+	 * The number of bytes in the blob parameters.
+	 */
+	long blobBytes(){
+		long bytes = 0;
+		for(int i = 0; i < size; i++){
+			if(types[i] == ColumnarResult.TYPE_BLOB){
+				bytes += objects[i] instanceof QCBlob ? ((QCBlob)objects[i]).length() : ((byte[])objects[i]).length;
+			}
+		}
+		return bytes;
+	}
+	/*
+	 * A copy of the parameters as Objects, used where a buffer that its owner may refill has to be remembered.
+	 */
+	Object[] toArray(){
+		Object[] values = new Object[size];
+		for(int i = 0; i < size; i++){
+			switch(types[i]){
+			case ColumnarResult.TYPE_LONG:
+				values[i] = Long.valueOf(numbers[i]);
+				break;
+			case ColumnarResult.TYPE_DOUBLE:
+				values[i] = Double.valueOf(Double.longBitsToDouble(numbers[i]));
+				break;
+			default:
+				values[i] = objects[i];
+			}
+		}
+		return values;
+	}
+
+	private IllegalArgumentException unsupported(int index){
+		return new IllegalArgumentException("Parameter "+index+" is an unknown parameter type: "+objects[index].getClass().getCanonicalName()
+				+".  Use only Strings, Doubles, Integers, Longs, byte arrays or QCBlobs as parameters.");
+	}
+
+	private void setObject(int index, int type, Object value){
+		slot(index);
+		types[index] = (byte)type;
+		objects[index] = value;
+	}
+
+	private void slot(int index){
+		if(index < 0){
+			throw new IndexOutOfBoundsException("Parameter positions start at 0, not "+index+".");
+		}
+		if(index >= types.length){
+			int capacity = Math.max(index + 1, types.length * 2);
+			types = Arrays.copyOf(types, capacity);
+			numbers = Arrays.copyOf(numbers, capacity);
+			objects = Arrays.copyOf(objects, capacity);
+		}
+		if(index >= size){
+			size = index + 1;
+		}
+	}
+}
@@ -22,17 +22,255 @@
  */
 package org.quickconnectfamily.dbaccess;
 
-public class QCBlob {
-	
-	private byte[] bytes;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
-	public byte[] bytes() {
-		// TODO Auto-generated method stub
-		return bytes;
-	}
+/**
+ * A QCBlob is a value bound to, or read from, a BLOB column.  Its bytes may be held in a byte array, in a ByteBuffer, or in a 
+ * file.  Large blobs read with the DataAccessObject readBlob method, or created from an InputStream, are kept in memory only 
+ * until they grow past the memory threshold and are then spilled to a temporary file, so reading them never needs more than a 
+ * fixed sized buffer in the heap.  A QCBlob backed by a temporary file deletes it when it is closed.<br/>
+ * 
+ * SQLite's incremental blob functions are not available through the Android database classes so a blob being written is still 
+ * read into a single byte array when it is bound.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public class QCBlob implements Closeable {
+	private static final int COPY_BUFFER_BYTES = 64 * 1024;
+	private static volatile int memoryThreshold = 256 * 1024;
+	private static volatile File spillDirectory = null;
 
+	private byte[] bytes;
+	private ByteBuffer buffer;
+	private File file;
+	private boolean temporary;
+	private long length;
+
+	/**
+	 * Creates a blob that holds a byte array without copying it.  Bind a null parameter, not a QCBlob, to store NULL.
+	 * @param bytes - the bytes of the blob.
+	 * @throws IllegalArgumentException - if bytes is null.
+	 */
 	public QCBlob(byte[] bytes) {
+		if(bytes == null){
+			throw new IllegalArgumentException("the bytes of a QCBlob can not be null");
+		}
 		this.bytes = bytes;
+		this.length = bytes.length;
+	}
+	/**
+	 * Creates a blob from the remaining bytes of a ByteBuffer without copying them.  Later changes to the buffer's position 
+	 * and limit do not affect the blob.
+	 * @param aBuffer - the ByteBuffer, which may be a direct or memory mapped buffer.
+	 */
+	public QCBlob(ByteBuffer aBuffer) {
+		this.buffer = aBuffer.slice();
+		this.length = buffer.remaining();
+	}
+	/**
+	 * Creates a blob whose bytes are the contents of a file.  The file is read when the blob is used, not now.
+	 * @param aFile - the file.
+	 */
+	public QCBlob(File aFile) {
+		this(aFile, false);
 	}
 
+	QCBlob(File aFile, boolean temporary) {
+		this.file = aFile;
+		this.temporary = temporary;
+		this.length = aFile.length();
+	}
+	/**
+	 * Creates a blob from everything an InputStream returns.  The bytes are kept in memory until there are more of them than 
+	 * the memory threshold and are then written to a temporary file.  The stream is not closed.
+	 * @param in - the InputStream to read.
+	 * @param maxBytes - the largest number of bytes the blob may hold.
+	 * @return - the QCBlob.
+	 * @throws IOException - if the stream can not be read or holds more than maxBytes.
+	 */
+	public static QCBlob fromStream(InputStream in, long maxBytes) throws IOException {
+		BlobSink aSink = new BlobSink(maxBytes);
+		try{
+			byte[] aBuffer = new byte[COPY_BUFFER_BYTES];
+			int numRead = in.read(aBuffer);
+			while(numRead >= 0){
+				aSink.write(aBuffer, 0, numRead);
+				numRead = in.read(aBuffer);
+			}
+			return aSink.toBlob();
+		}
+		catch(IOException e){
+			aSink.discard();
+			throw e;
+		}
+	}
+	/**
+	 * This method sets the number of bytes a blob created from a stream may hold in memory before it is spilled to a temporary 
+	 * file.  The default is 256 kilobytes.
+	 * @param bytes - the threshold.
+	 */
+	public static void setMemoryThreshold(int bytes){
+		memoryThreshold = Math.max(0, bytes);
+	}
+
+	static int memoryThreshold(){
+		return memoryThreshold;
+	}
+	/**
+	 * This method sets the directory temporary blob files are created in.  By default the directory named by the java.io.tmpdir 
+	 * system property is used, which on Android is the application's cache directory.
+	 * @param aDirectory - the directory.
+	 */
+	public static void setSpillDirectory(File aDirectory){
+		spillDirectory = aDirectory;
+	}
+
+	static File spillDirectory(){
+		return spillDirectory;
+	}
+
+	public long length() {
+		return length;
+	}
+	/**
+	 * Reports whether the bytes of the blob are held in a file rather than in memory.
+	 */
+	public boolean isFileBacked() {
+		return file != null;
+	}
+	/**
+	 * Accessor for the bytes of the blob as a single array.  A blob that is not held in a byte array is read into a new one each 
+	 * time this is called, so prefer openStream, writeTo or asByteBuffer for large blobs.
+	 * @return - the bytes.
+	 */
+	public byte[] bytes() {
+		if(bytes != null){
+			return bytes;
+		}
+		if(length > Integer.MAX_VALUE - 8){
+			throw new IllegalStateException("the blob of "+length+" bytes is too large for an array");
+		}
+		if(buffer != null){
+			byte[] aCopy = new byte[(int)length];
+			buffer.duplicate().get(aCopy);
+			return aCopy;
+		}
+		try{
+			byte[] aCopy = new byte[(int)length];
+			RandomAccessFile aFile = new RandomAccessFile(file, "r");
+			try{
+				aFile.readFully(aCopy);
+			}
+			finally{
+				aFile.close();
+			}
+			return aCopy;
+		}
+		catch(IOException e){
+			throw new IllegalStateException("unable to read the blob from "+file+". "+e.getLocalizedMessage(), e);
+		}
+	}
+	/**
+	 * Opens a stream that reads the bytes of the blob.
+	 * @return - a new InputStream that the caller must close.
+	 * @throws IOException
+	 */
+	public InputStream openStream() throws IOException {
+		if(bytes != null){
+			return new ByteArrayInputStream(bytes);
+		}
+		if(file != null){
+			return new FileInputStream(file);
+		}
+		final ByteBuffer aBuffer = buffer.duplicate();
+		return new InputStream(){
+			@Override
+			public int read() {
+				return aBuffer.hasRemaining() ? aBuffer.get() & 0xff : -1;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) {
+				if(!aBuffer.hasRemaining()){
+					return len == 0 ? 0 : -1;
+				}
+				len = Math.min(len, aBuffer.remaining());
+				aBuffer.get(b, off, len);
+				return len;
+			}
+
+			@Override
+			public int available() {
+				return aBuffer.remaining();
+			}
+		};
+	}
+	/**
+	 * Accessor for the bytes of the blob as a read only ByteBuffer.  A file backed blob is memory mapped so its bytes are not 
+	 * copied into the heap.
+	 * @return - the ByteBuffer.
+	 * @throws IOException
+	 */
+	public ByteBuffer asByteBuffer() throws IOException {
+		if(bytes != null){
+			return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+		}
+		if(buffer != null){
+			return buffer.asReadOnlyBuffer();
+		}
+		FileChannel aChannel = new FileInputStream(file).getChannel();
+		try{
+			return aChannel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+		}
+		finally{
+			aChannel.close();
+		}
+	}
+	/**
+	 * Writes the bytes of the blob to a stream using a fixed sized buffer.  The stream is not closed.
+	 * @param out - the OutputStream to write to.
+	 * @return - the number of bytes written.
+	 * @throws IOException
+	 */
+	public long writeTo(OutputStream out) throws IOException {
+		if(bytes != null){
+			out.write(bytes);
+			return length;
+		}
+		InputStream in = openStream();
+		try{
+			byte[] aBuffer = new byte[(int)Math.min(COPY_BUFFER_BYTES, Math.max(1, length))];
+			long written = 0;
+			int numRead = in.read(aBuffer);
+			while(numRead >= 0){
+				out.write(aBuffer, 0, numRead);
+				written += numRead;
+				numRead = in.read(aBuffer);
+			}
+			return written;
+		}
+		finally{
+			in.close();
+		}
+	}
+	/**
+	 * Deletes the temporary file of a blob that was spilled to disk.  Blobs created from the caller's own files, arrays and 
+	 * buffers are not changed.
+	 */
+	public void close() {
+		if(temporary && file != null){
+			file.delete();
+			temporary = false;
+		}
+	}
 }
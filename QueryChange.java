@@ -0,0 +1,111 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A QueryChange is one update sent by a LiveQuery to its subscribers.  It holds the rows that were added, changed and removed 
+ * since the last QueryChange the subscriber received along with the complete current result of the query.  The first 
+ * QueryChange a subscriber receives is the initial result, with every row reported as added.
+ * <br/>
+ * Each row is an array of Long, Double, String and byte array values, or nulls, in the order of the column names.  When the 
+ * LiveQuery has a key column, a row whose key is still in the result but whose other values differ is reported as changed.  
+ * Without a key column rows have no identity, so such a row is reported as removed and its new values as added.  Changes to 
+ * the order of the rows are not reported as changes.  Use the current result for the order.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public class QueryChange {
+	private final String[] columnNames;
+	private final List<Object[]> addedRows;
+	private final List<Object[]> changedRows;
+	private final List<Object[]> removedRows;
+	private final ColumnarResult currentResult;
+	private final boolean initial;
+
+	QueryChange(String[] columnNames, List<Object[]> addedRows, List<Object[]> changedRows, List<Object[]> removedRows, 
+			ColumnarResult currentResult, boolean initial) {
+		this.columnNames = columnNames;
+		this.addedRows = Collections.unmodifiableList(addedRows);
+		this.changedRows = Collections.unmodifiableList(changedRows);
+		this.removedRows = Collections.unmodifiableList(removedRows);
+		this.currentResult = currentResult;
+		this.initial = initial;
+	}
+	/**
+	 * Accessor for the field names of the query.
+	 * @return - An array of Strings containing all the field names.
+	 */
+	public String[] getColumnNames() {
+		return columnNames;
+	}
+	/**
+	 * Accessor for the rows that are in the result now but were not in it before.
+	 * @return - the added rows.
+	 */
+	public List<Object[]> getAddedRows() {
+		return addedRows;
+	}
+	/**
+	 * Accessor for the new values of the rows whose key is still in the result but whose other values changed.  It is always 
+	 * empty when the LiveQuery has no key column.
+	 * @return - the changed rows.
+	 */
+	public List<Object[]> getChangedRows() {
+		return changedRows;
+	}
+	/**
+	 * Accessor for the rows that were in the result before but are not in it now.
+	 * @return - the removed rows as they were before they were removed.
+	 */
+	public List<Object[]> getRemovedRows() {
+		return removedRows;
+	}
+	/**
+	 * Accessor for the whole result of the query after the change.  It must not be modified.
+	 * @return - the current result.
+	 */
+	public ColumnarResult getCurrentResult() {
+		return currentResult;
+	}
+	/**
+	 * Accessor for whether this is the first QueryChange a subscriber received.
+	 * @return - <b>true</b> if every row of the current result is reported as added because the subscriber had no result before.
+	 */
+	public boolean isInitial() {
+		return initial;
+	}
+
+	public boolean isEmpty() {
+		return addedRows.isEmpty() && changedRows.isEmpty() && removedRows.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return "QueryChange [added="+addedRows.size()+", changed="+changedRows.size()+", removed="+removedRows.size()
+				+", rows="+currentResult.getRowCount()+(initial ? ", initial" : "")+"]";
+	}
+}
@@ -0,0 +1,367 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The QueryResultCache keeps the results of recent queries so that running the same query with the same parameters again 
+ * does not go back to the database.  It is turned on with DataAccessObject enableResultCache.
+ * <br/>
+ * Results are discarded when they are older than the cache's time to live, when the least recently used results must make room 
+ * for new ones, and whenever a committed DataAccessObject write or transaction changes a table the query reads from.  The results 
+ * of queries that read from a view are discarded after any change to their database.  Queries with a parameter that is a QCBlob 
+ * held in a file are not cached, nor are queries that read from no table, such as SELECT last_insert_rowid(), or that call 
+ * a function whose value changes without any table changing, such as random(), changes() or the date and time functions.  Changes made to the database in any other way, such as by triggers or foreign key actions 
+ * that modify other tables, are not seen by the cache.  Use the invalidate method after such changes.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public class QueryResultCache implements TableChangeListener {
+	private static final String VIEWS_SQL = "SELECT name FROM sqlite_master WHERE type = 'view'";
+	private final long maxBytes;
+	private final long timeToLiveMillis;
+	private final LinkedHashMap<Key,Entry> entries = new LinkedHashMap<Key,Entry>(64, 0.75f, true);
+	private final HashMap<String,Long> generations = new HashMap<String,Long>();
+	/*
+	 * the lower case names of the views of each database, read when a result is first cached after the database's schema changed.
+	 */
+	private final ConcurrentHashMap<String,Set<String>> views = new ConcurrentHashMap<String,Set<String>>();
+	private long sizeBytes = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	private long expirations = 0;
+	private long invalidations = 0;
+
+	QueryResultCache(long maxBytes, long timeToLiveMillis) {
+		this.maxBytes = maxBytes;
+		this.timeToLiveMillis = timeToLiveMillis;
+	}
+	/*
+	 * Returns a fresh DataAccessResult for a cached query or null if the query is not cached.
+	 */
+	synchronized DataAccessResult get(String databaseName, String SQL, ParameterBuffer parameters){
+		Key aKey = Key.of(databaseName, SQL, parameters);
+		if(aKey == null){
+			return null;
+		}
+		Entry anEntry = entries.get(aKey);
+		if(anEntry == null){
+			misses++;
+			return null;
+		}
+		if(timeToLiveMillis > 0 && System.currentTimeMillis() - anEntry.created > timeToLiveMillis){
+			remove(aKey, anEntry);
+			expirations++;
+			misses++;
+			return null;
+		}
+		hits++;
+		DataAccessResult aResult = new DataAccessResult();
+		aResult.setColumnNames(anEntry.columnNames);
+		aResult.setColumnarResults(anEntry.results);
+		return aResult;
+	}
+	/*
+	 * The generation of a database changes every time one of its tables changes.  A query reads the generation before it 
+	 * runs and hands it to put so a result that may have been read before a change was committed is never cached.
+	 */
+	synchronized long generation(String databaseName){
+		Long aGeneration = generations.get(databaseName);
+		return aGeneration == null ? 0 : aGeneration;
+	}
+
+	/*
+	 * The connection is the one the query was read with.  It is used to find the database's views while it is still held.  The 
+	 * views are read before the cache is locked so a slow read of the schema never holds up the cache's other callers.
+	 */
+	void put(String databaseName, String SQL, ParameterBuffer parameters, DataAccessResult aResult, long generation, 
+			DatabaseConnection aConnection){
+		ColumnarResult results = aResult.getColumnarResults();
+		if(results == null || generation != generation(databaseName)){
+			return;
+		}
+		long size = results.estimatedSize() + 64L * (results.getColumnCount() + SQL.length());
+		if(size > maxBytes){
+			return;
+		}
+		Key aKey = Key.of(databaseName, SQL, parameters);
+		if(aKey == null){
+			return;
+		}
+		Set<String> tables = SqlTables.readTables(SQL);
+		if(tables.isEmpty() || SqlTables.callsVolatileFunction(SQL)){
+			/*
+			 * no table change would ever discard the result of a query that reads no table, and a volatile function's value 
+			 * changes without any table changing.
+			 */
+			return;
+		}
+		Set<String> viewNames = views.get(databaseName);
+		if(viewNames == null){
+			viewNames = readViews(aConnection);
+		}
+		synchronized(this){
+			/*
+			 * an unchanged generation also means the schema has not changed since the views were read.
+			 */
+			if(generation != generation(databaseName)){
+				return;
+			}
+			if(viewNames == null || !Collections.disjoint(viewNames, tables)){
+				/*
+				 * writes change the tables a view reads from, not the view, so the result is discarded after any change.  Without 
+				 * the view names every table may be a view.
+				 */
+				tables = null;
+			}
+			if(viewNames != null){
+				views.put(databaseName, viewNames);
+			}
+			Entry previous = entries.get(aKey);
+			if(previous != null){
+				remove(aKey, previous);
+			}
+			entries.put(aKey, new Entry(aResult.getColumnNames(), results, tables, size));
+			sizeBytes += size;
+			Iterator<Map.Entry<Key,Entry>> entryIt = entries.entrySet().iterator();
+			while(sizeBytes > maxBytes && entryIt.hasNext()){
+				Entry eldest = entryIt.next().getValue();
+				entryIt.remove();
+				sizeBytes -= eldest.size;
+				evictions++;
+			}
+		}
+	}
+	/**
+	 * Discards the cached results of every query against a database that reads from any of the given tables.
+	 * @param databaseName - the name of the database that changed.
+	 * @param tables - the lower case names of the tables that changed or null to discard all of the database's cached results.
+	 */
+	public synchronized void invalidate(String databaseName, Set<String> tables){
+		generations.put(databaseName, generation(databaseName) + 1);
+		if(tables == null){
+			//a CREATE or DROP may have added or removed a view
+			views.remove(databaseName);
+		}
+		Iterator<Map.Entry<Key,Entry>> entryIt = entries.entrySet().iterator();
+		while(entryIt.hasNext()){
+			Map.Entry<Key,Entry> anEntry = entryIt.next();
+			if(!anEntry.getKey().databaseName.equals(databaseName)){
+				continue;
+			}
+			Set<String> readTables = anEntry.getValue().tables;
+			if(tables == null || readTables == null || intersects(readTables, tables)){
+				entryIt.remove();
+				sizeBytes -= anEntry.getValue().size;
+				invalidations++;
+			}
+		}
+	}
+
+	public void tablesChanged(String databaseName, Set<String> tables) {
+		invalidate(databaseName, tables);
+	}
+	/**
+	 * Discards every cached result.
+	 */
+	public synchronized void clear(){
+		Iterator<String> databaseIt = generations.keySet().iterator();
+		while(databaseIt.hasNext()){
+			String databaseName = databaseIt.next();
+			generations.put(databaseName, generation(databaseName) + 1);
+		}
+		invalidations += entries.size();
+		entries.clear();
+		views.clear();
+		sizeBytes = 0;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+	/**
+	 * Accessor for the fraction of lookups that found a cached result.
+	 * @return - a value from 0 to 1.
+	 */
+	public synchronized double getHitRate() {
+		long lookups = hits + misses;
+		return lookups == 0 ? 0 : (double)hits / lookups;
+	}
+	/**
+	 * Accessor for the number of results discarded to keep the cache within its size.
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+	/**
+	 * Accessor for the number of results discarded because they were older than the time to live.
+	 */
+	public synchronized long getExpirations() {
+		return expirations;
+	}
+	/**
+	 * Accessor for the number of results discarded because a table they read from changed.
+	 */
+	public synchronized long getInvalidations() {
+		return invalidations;
+	}
+
+	public synchronized int getEntryCount() {
+		return entries.size();
+	}
+	/**
+	 * Accessor for the estimated number of bytes used by the cached results.
+	 */
+	public synchronized long getSizeBytes() {
+		return sizeBytes;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	private void remove(Key aKey, Entry anEntry){
+		entries.remove(aKey);
+		sizeBytes -= anEntry.size;
+	}
+
+	/*
+	 * The lower case names of the views of a database or null if they could not be read.
+	 */
+	private static Set<String> readViews(DatabaseConnection aConnection){
+		try{
+			HashSet<String> viewNames = new HashSet<String>();
+			RowCursor aCursor = aConnection.query(VIEWS_SQL, null, 0);
+			try{
+				while(aCursor.moveToNext()){
+					viewNames.add(aCursor.getString(0).toLowerCase());
+				}
+			}
+			finally{
+				aCursor.close();
+			}
+			return viewNames;
+		}
+		catch(RuntimeException e){
+			return null;
+		}
+	}
+
+	private static boolean intersects(Set<String> readTables, Set<String> changedTables){
+		Iterator<String> tableIt = changedTables.iterator();
+		while(tableIt.hasNext()){
+			if(readTables.contains(tableIt.next())){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static class Key {
+		final String databaseName;
+		final String SQL;
+		final Object[] parameters;
+		final int hash;
+
+		private Key(String databaseName, String SQL, Object[] parameters){
+			this.databaseName = databaseName;
+			this.SQL = SQL;
+			this.parameters = parameters;
+			this.hash = 31 * (31 * databaseName.hashCode() + SQL.hashCode()) + Arrays.deepHashCode(parameters);
+		}
+		/*
+		 * Returns null if the query can not be cached because a parameter is a blob held in a file, which would have to be 
+		 * read to be compared.
+		 */
+		static Key of(String databaseName, String SQL, ParameterBuffer parameters){
+			/*
+			 * the type of each parameter keeps values such as the number 1 and the text "1" apart.  Blobs are compared by 
+			 * their contents, copied so that a caller reusing its array does not change the key.
+			 */
+			Object[] values = parameters == null ? new Object[0] : parameters.toArray();
+			Object[] keyValues = new Object[values.length * 2];
+			for(int i = 0; i < values.length; i++){
+				keyValues[2 * i] = Integer.valueOf(parameters.getType(i));
+				Object value = values[i];
+				if(value instanceof QCBlob){
+					if(((QCBlob)value).isFileBacked()){
+						return null;
+					}
+					keyValues[2 * i + 1] = ((QCBlob)value).bytes().clone();
+				}
+				else if(value instanceof byte[]){
+					keyValues[2 * i + 1] = ((byte[])value).clone();
+				}
+				else{
+					keyValues[2 * i + 1] = String.valueOf(value);
+				}
+			}
+			return new Key(databaseName, SQL, keyValues);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object anObject) {
+			if(!(anObject instanceof Key)){
+				return false;
+			}
+			Key aKey = (Key)anObject;
+			return hash == aKey.hash && databaseName.equals(aKey.databaseName) && SQL.equals(aKey.SQL) 
+					&& Arrays.deepEquals(parameters, aKey.parameters);
+		}
+	}
+
+	private static class Entry {
+		final String[] columnNames;
+		final ColumnarResult results;
+		final Set<String> tables;
+		final long size;
+		final long created = System.currentTimeMillis();
+
+		Entry(String[] columnNames, ColumnarResult results, Set<String> tables, long size){
+			this.columnNames = columnNames;
+			this.results = results;
+			this.tables = tables;
+			this.size = size;
+		}
+	}
+}
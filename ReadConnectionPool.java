@@ -0,0 +1,118 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of read only connections to one database in write ahead logging mode.  Connections are opened as they are first 
+ * needed and at most maxConnections are ever open.  Idle connections are handed out most recently used first so the page caches 
+ * of a few connections stay warm when there is little concurrency.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+class ReadConnectionPool {
+	private final DatabaseBackend backend;
+	private final String path;
+	private final CheckpointPolicy policy;
+	private final Semaphore permits;
+	private final LinkedBlockingDeque<DatabaseConnection> idle = new LinkedBlockingDeque<DatabaseConnection>();
+	private final AtomicInteger commitsSinceCheckpoint = new AtomicInteger();
+	private volatile boolean closed = false;
+
+	ReadConnectionPool(DatabaseBackend backend, String path, int maxConnections, CheckpointPolicy policy) {
+		this.backend = backend;
+		this.path = path;
+		this.policy = policy;
+		this.permits = new Semaphore(maxConnections, true);
+	}
+	/*
+	 * Waits until fewer than maxConnections are in use and returns an idle connection, opening a new one if none is idle.
+	 */
+	DatabaseConnection acquire() throws InterruptedException{
+		permits.acquire();
+		if(closed){
+			permits.release();
+			throw new IllegalStateException("the database at "+path+" has been closed");
+		}
+		DatabaseConnection aConnection = idle.pollFirst();
+		if(aConnection == null){
+			try{
+				aConnection = backend.openReadOnly(path);
+			}
+			catch(RuntimeException e){
+				permits.release();
+				throw e;
+			}
+		}
+		return aConnection;
+	}
+
+	void release(DatabaseConnection aConnection){
+		if(closed){
+			aConnection.close();
+		}
+		else{
+			idle.addFirst(aConnection);
+			/*
+			 * close may have drained the idle connections between the check and the add.
+			 */
+			if(closed && idle.remove(aConnection)){
+				aConnection.close();
+			}
+		}
+		permits.release();
+	}
+
+	CheckpointPolicy policy(){
+		return policy;
+	}
+	/*
+	 * Counts a committed transaction and reports whether the policy calls for a checkpoint after it.
+	 */
+	boolean commitCheckpointDue(){
+		int every = policy.getCommitsBetweenCheckpoints();
+		if(every <= 0){
+			return false;
+		}
+		if(commitsSinceCheckpoint.incrementAndGet() >= every){
+			commitsSinceCheckpoint.set(0);
+			return true;
+		}
+		return false;
+	}
+	/*
+	 * Closes the idle connections.  Connections in use are closed as they are released.
+	 */
+	void close(){
+		closed = true;
+		DatabaseConnection aConnection = idle.pollFirst();
+		while(aConnection != null){
+			aConnection.close();
+			aConnection = idle.pollFirst();
+		}
+	}
+}
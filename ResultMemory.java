@@ -0,0 +1,284 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the memory used by query results within the budgets set with DataAccessObject setResultMemoryLimits.  Rows are 
+ * counted against the per query budget and the global budget as they are read, and a query's share of the global budget is 
+ * given back as soon as all of its rows have been read, so the global budget limits the rows of the queries running at once.  
+ * Spill files are deleted when their SpilledResult is closed or, failing that, once it has been garbage collected.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+class ResultMemory {
+	/*
+	 * memory is reserved from the global budget in steps of this size so the shared counter is not touched for every row.
+	 */
+	private static final long RESERVATION_STEP = 64 * 1024;
+	static volatile long perQueryLimit = 0;
+	static volatile long globalLimit = 0;
+	static volatile int overflowPolicy = DataAccessObject.RESULT_OVERFLOW_FAIL;
+	private static final AtomicLong inUse = new AtomicLong();
+	private static final AtomicLong peak = new AtomicLong();
+	private static final AtomicLong spilledResults = new AtomicLong();
+	private static final ReferenceQueue<Object> collected = new ReferenceQueue<Object>();
+	/*
+	 * the references must themselves be reachable until they are enqueued.
+	 */
+	private static final Set<Tracked> tracked = Collections.newSetFromMap(new ConcurrentHashMap<Tracked,Boolean>());
+
+	private ResultMemory(){}
+	/*
+	 * Reads every row of a cursor into the result, stopping early if aCancellation is not null and has been cancelled.  Returns 
+	 * the rows if they were kept in memory or null if they were spilled.
+	 */
+	static ColumnarResult materialize(RowCursor aCursor, DataAccessResult aResult, String databaseName, String SQL, Future<?> aCancellation) 
+			throws DataAccessException, IOException{
+		Materializer aMaterializer = new Materializer(aCursor.getColumnNames(), databaseName, SQL);
+		boolean finished = false;
+		try{
+			while((aCancellation == null || !aCancellation.isCancelled()) && aCursor.moveToNext()){
+				aMaterializer.appendRow(aCursor);
+			}
+			ColumnarResult results = aMaterializer.finish();
+			finished = true;
+			if(results == null){
+				aResult.setSpilledResults(aMaterializer.spilledResult());
+			}
+			return results;
+		}
+		finally{
+			if(!finished){
+				aMaterializer.abandon();
+			}
+		}
+	}
+	/*
+	 * Collects the rows of one query, counting them against the budgets.  If the rows go over a budget the query either fails 
+	 * with a DataAccessException or, under the spill policy, the rows read so far and all of the rows after them are written 
+	 * to a SpilledResult.
+	 */
+	static class Materializer {
+		private final String[] columnNames;
+		private final String description;
+		private final boolean spillable;
+		private final long queryLimit = perQueryLimit;
+		private final boolean limited = perQueryLimit > 0 || globalLimit > 0;
+		private ColumnarResult results;
+		private SpilledResult.Writer aSpill;
+		private SpilledResult aSpilledResult;
+		private DataAccessRow aSpillRow;
+		private long reserved = 0;
+
+		Materializer(String[] columnNames, String databaseName, String SQL) {
+			this(columnNames, "the result of '"+SQL+"' on "+databaseName, true);
+		}
+		/*
+		 * A Materializer that is not spillable fails under either policy.
+		 */
+		Materializer(String[] columnNames, String description, boolean spillable) {
+			this.columnNames = columnNames;
+			this.description = description;
+			this.spillable = spillable;
+			this.results = new ColumnarResult(columnNames);
+		}
+
+		void appendRow(RowCursor aCursor) throws DataAccessException, IOException{
+			if(aSpill != null){
+				if(aSpillRow == null){
+					aSpillRow = new DataAccessRow(aCursor);
+				}
+				aSpill.writeRow(aSpillRow);
+				return;
+			}
+			results.appendRow(aCursor);
+			if(!limited){
+				return;
+			}
+			long needed = results.materializedBytes();
+			if(needed <= reserved){
+				return;
+			}
+			long reservation = needed + RESERVATION_STEP;
+			if(queryLimit > 0 && reservation > queryLimit){
+				/*
+				 * never reserve past the query's own limit so going over it is noticed on the row that does so.
+				 */
+				reservation = Math.max(needed, queryLimit);
+			}
+			if((queryLimit <= 0 || needed <= queryLimit) && reserve(reservation - reserved)){
+				reserved = reservation;
+				return;
+			}
+			release(reserved);
+			reserved = 0;
+			if(!spillable || overflowPolicy != DataAccessObject.RESULT_OVERFLOW_SPILL){
+				results = null;
+				throw new DataAccessException("Error: "+description+" needs more than "+needed
+						+" bytes, which is over "+(queryLimit > 0 && needed > queryLimit ? "the per query result memory limit of "+queryLimit 
+								: "the global result memory limit of "+globalLimit)+" bytes.");
+			}
+			aSpill = new SpilledResult.Writer(columnNames);
+			aSpill.writeRows(results);
+			results = null;
+		}
+		/*
+		 * Returns the rows if they were kept in memory or null if they were spilled, in which case spilledResult gives the 
+		 * rows.
+		 */
+		ColumnarResult finish() throws IOException{
+			if(aSpill != null){
+				aSpilledResult = aSpill.finish();
+				aSpill = null;
+				track(aSpilledResult, aSpilledResult.file());
+				spilledResults.incrementAndGet();
+				return null;
+			}
+			results.finish();
+			/*
+			 * the rows have all been read so the query no longer needs its share of the global budget.
+			 */
+			release(reserved);
+			reserved = 0;
+			return results;
+		}
+		SpilledResult spilledResult(){
+			return aSpilledResult;
+		}
+		/*
+		 * Gives back the memory and deletes the spill file of a query that failed.
+		 */
+		void abandon(){
+			release(reserved);
+			reserved = 0;
+			results = null;
+			if(aSpill != null){
+				aSpill.discard();
+				aSpill = null;
+			}
+		}
+	}
+	/*
+	 * Reads all of the rows of a spilled result back into memory, counting them against the budgets.  The rows can not be 
+	 * spilled again so going over a budget fails under either policy.
+	 */
+	static ColumnarResult load(SpilledResult aSpilledResult) throws DataAccessException, IOException{
+		RowCursor aCursor = new SpillCursor(aSpilledResult.file());
+		try{
+			Materializer aMaterializer = new Materializer(aSpilledResult.getColumnNames(), "the spilled query result", false);
+			boolean finished = false;
+			try{
+				while(aCursor.moveToNext()){
+					aMaterializer.appendRow(aCursor);
+				}
+				ColumnarResult results = aMaterializer.finish();
+				finished = true;
+				return results;
+			}
+			finally{
+				if(!finished){
+					aMaterializer.abandon();
+				}
+			}
+		}
+		finally{
+			aCursor.close();
+		}
+	}
+	/*
+	 * Takes memory from the global budget.  Returns false, having taken nothing, if there is not enough left.
+	 */
+	private static boolean reserve(long bytes){
+		expunge();
+		long limit = globalLimit;
+		while(true){
+			long current = inUse.get();
+			long next = current + bytes;
+			if(limit > 0 && next > limit){
+				return false;
+			}
+			if(inUse.compareAndSet(current, next)){
+				long highest = peak.get();
+				while(next > highest && !peak.compareAndSet(highest, next)){
+					highest = peak.get();
+				}
+				return true;
+			}
+		}
+	}
+
+	private static void release(long bytes){
+		if(bytes != 0){
+			inUse.addAndGet(-bytes);
+		}
+	}
+	/*
+	 * Deletes a result's spill file once the result has been garbage collected without being closed.
+	 */
+	private static void track(SpilledResult aResult, File spillFile){
+		tracked.add(new Tracked(aResult, spillFile));
+	}
+
+	private static void expunge(){
+		Reference<? extends Object> aReference;
+		while((aReference = collected.poll()) != null){
+			Tracked aTracked = (Tracked)aReference;
+			tracked.remove(aTracked);
+			aTracked.spillFile.delete();
+		}
+	}
+
+	static long inUse(){
+		expunge();
+		return inUse.get();
+	}
+
+	static long peak(){
+		return peak.get();
+	}
+
+	static long spilledResults(){
+		return spilledResults.get();
+	}
+
+	private static class Tracked extends PhantomReference<Object> {
+		final File spillFile;
+
+		Tracked(Object aResult, File spillFile) {
+			super(aResult, collected);
+			this.spillFile = spillFile;
+		}
+	}
+}
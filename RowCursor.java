@@ -0,0 +1,63 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+/**
+ * A RowCursor steps forward through the rows of a query run by a DatabaseConnection.  Column indexes are zero based and value 
+ * types are reported with the ColumnarResult TYPE_ constants.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public interface RowCursor {
+	public String[] getColumnNames();
+	/**
+	 * Moves to the next row.
+	 * @return - <b>false</b> if there are no more rows.
+	 */
+	public boolean moveToNext();
+	/**
+	 * Accessor for the type of a value in the current row.
+	 * @return - one of the ColumnarResult TYPE_ constants.
+	 */
+	public int getType(int column);
+
+	public boolean isNull(int column);
+
+	public long getLong(int column);
+
+	public double getDouble(int column);
+
+	public String getString(int column);
+	/**
+	 * Appends a value as text to a StringBuilder.  Backends that can copy the text into a reused buffer do so, so no String is 
+	 * created for the value.
+	 * @param column - the zero based index of the column.
+	 * @param aBuilder - the StringBuilder to append to.
+	 */
+	public void appendString(int column, StringBuilder aBuilder);
+
+	public byte[] getBlob(int column);
+
+	public void close();
+}
@@ -0,0 +1,119 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * A RowIterator steps through the rows of a query returned by the DataAccessObject iterate method without reading all 
+ * of them into memory.  The database's read lock, or in write ahead logging mode one of its read only connections, is held 
+ * from the time the iterator is created until it is closed or the last row has been read, so an iterator must be used and 
+ * closed by the thread that created it.  That thread must not write to the same database while the iterator is open.  The 
+ * write would wait for the read lock forever, so it fails with a DataAccessException instead.  The same DataAccessRow object is 
+ * returned for every row.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public class RowIterator implements Iterator<DataAccessRow>, Closeable {
+	private RowCursor aCursor;
+	private Lock aReadLock;
+	private ReadConnectionPool aPool;
+	private DatabaseConnection aReader;
+	private DataAccessRow aRow;
+	private boolean advanced = false;
+	private boolean hasRow = false;
+	private boolean closed = false;
+
+	RowIterator(RowCursor aCursor, Lock aReadLock) {
+		this.aCursor = aCursor;
+		this.aReadLock = aReadLock;
+		this.aRow = new DataAccessRow(aCursor);
+	}
+
+	RowIterator(RowCursor aCursor) {
+		this.aCursor = aCursor;
+		this.aRow = new DataAccessRow(aCursor);
+	}
+
+	RowIterator(RowCursor aCursor, ReadConnectionPool aPool, DatabaseConnection aReader) {
+		this.aCursor = aCursor;
+		this.aPool = aPool;
+		this.aReader = aReader;
+		this.aRow = new DataAccessRow(aCursor);
+	}
+	/**
+	 * Accessor for the field names of the query.
+	 * @return - An array of Strings containing all the field names.
+	 */
+	public String[] getColumnNames() {
+		return aRow.getColumnNames();
+	}
+
+	public boolean hasNext() {
+		if(!advanced && !closed){
+			hasRow = aCursor.moveToNext();
+			advanced = true;
+			if(!hasRow){
+				close();
+			}
+		}
+		return hasRow && !closed;
+	}
+
+	public DataAccessRow next() {
+		if(!hasNext()){
+			throw new NoSuchElementException();
+		}
+		advanced = false;
+		aRow.advance();
+		return aRow;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException("rows can not be removed from a query");
+	}
+	/**
+	 * Closes the query and releases the database's read lock or read only connection.  Calling close more than once has no effect.
+	 */
+	public void close() {
+		if(closed){
+			return;
+		}
+		closed = true;
+		try{
+			aCursor.close();
+		}
+		finally{
+			if(aReadLock != null){
+				aReadLock.unlock();
+			}
+			else if(aPool != null){
+				aPool.release(aReader);
+			}
+		}
+	}
+}
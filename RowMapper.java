@@ -0,0 +1,40 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+/**
+ * A RowMapper turns the current row of a query into an object.  Mappers for plain Java classes and records are generated by 
+ * the RowMappers class.  A RowMapper may also be written by hand and passed to the DataAccessObject query method.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public interface RowMapper<T> {
+	/**
+	 * Creates the object for a row.
+	 * @param aRow - the current row.  The same DataAccessRow object is passed for every row so it should not be kept.
+	 * @return - the object made from the row.
+	 * @throws Exception - any exception stops the query.
+	 */
+	public T mapRow(DataAccessRow aRow) throws Exception;
+}
@@ -0,0 +1,509 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The RowMappers class generates a RowMapper for a class and the columns of a query.  The work of finding where each column goes 
+ * is done once for each class and column layout and the mapper is kept, so mapping a row only reads each value with the cursor 
+ * getter of its type and hands it to a MethodHandle.  No Strings are created for numbers and no reflection is done per row.
+ * <br/>
+ * A column is matched, ignoring case and underscores, to a public setter with one parameter or else to a field of a class that 
+ * has a constructor with no parameters.  For a record it is matched to a component and the record is built with its canonical 
+ * constructor.  Columns that match nothing are ignored.  Supported types are the primitive types other than char and their 
+ * wrappers, String, byte[], QCBlob, enums, which are read from their names, and java.util.Date, which is read from milliseconds 
+ * since 1970 or from text in SQLite's UTC "yyyy-MM-dd HH:mm:ss" format.  A null value leaves a primitive at its default.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public class RowMappers {
+	private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+	private static ConcurrentHashMap<MapperKey,RowMapper<?>> mappers = new ConcurrentHashMap<MapperKey,RowMapper<?>>();
+	private static final ThreadLocal<SimpleDateFormat[]> dateFormats = new ThreadLocal<SimpleDateFormat[]>(){
+		@Override
+		protected SimpleDateFormat[] initialValue() {
+			String[] patterns = {"yyyy-MM-dd HH:mm:ss.SSS", "yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd"};
+			SimpleDateFormat[] formats = new SimpleDateFormat[patterns.length];
+			for(int i = 0; i < patterns.length; i++){
+				formats[i] = new SimpleDateFormat(patterns[i]);
+				formats[i].setTimeZone(TimeZone.getTimeZone("UTC"));
+				formats[i].setLenient(false);
+			}
+			return formats;
+		}
+	};
+	/*
+	 * A private constructor so no one accidentally instantiates an object of this type.
+	 */
+	private RowMappers(){}
+	/**
+	 * Accessor for the mapper of a class and column layout.  The mapper is generated the first time it is asked for.
+	 * @param type - the class, or record, to create for each row.
+	 * @param columnNames - the field names of the query.
+	 * @return - the RowMapper.
+	 * @throws DataAccessException - if the class can not be created or a column matches a property of a type that is not supported.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> RowMapper<T> forClass(Class<T> type, String[] columnNames) throws DataAccessException {
+		MapperKey aKey = new MapperKey(type, columnNames);
+		RowMapper<T> aMapper = (RowMapper<T>)mappers.get(aKey);
+		if(aMapper == null){
+			aMapper = isRecord(type) ? compileRecord(type, columnNames) : compileBean(type, columnNames);
+			RowMapper<T> existing = (RowMapper<T>)mappers.putIfAbsent(aKey, aMapper);
+			if(existing != null){
+				aMapper = existing;
+			}
+		}
+		return aMapper;
+	}
+
+	private static <T> RowMapper<T> compileBean(Class<T> type, String[] columnNames) throws DataAccessException {
+		final MethodHandle aConstructor;
+		try{
+			Constructor<T> aDeclaredConstructor = type.getDeclaredConstructor();
+			makeAccessible(aDeclaredConstructor);
+			aConstructor = lookup.unreflectConstructor(aDeclaredConstructor).asType(MethodType.methodType(Object.class));
+		}
+		catch(Exception e){
+			throw new DataAccessException("Error: "+type.getName()+" needs a constructor with no parameters to be created for each row. "+e);
+		}
+		HashMap<String,Method> setters = new HashMap<String,Method>();
+		Method[] methods = type.getMethods();
+		for(int i = 0; i < methods.length; i++){
+			Method aMethod = methods[i];
+			if(aMethod.getName().startsWith("set") && aMethod.getName().length() > 3 && aMethod.getParameterTypes().length == 1 
+					&& !Modifier.isStatic(aMethod.getModifiers())){
+				setters.put(normalize(aMethod.getName().substring(3)), aMethod);
+			}
+		}
+		HashMap<String,Field> fields = new HashMap<String,Field>();
+		for(Class<?> aClass = type; aClass != null && aClass != Object.class; aClass = aClass.getSuperclass()){
+			Field[] declared = aClass.getDeclaredFields();
+			for(int i = 0; i < declared.length; i++){
+				int modifiers = declared[i].getModifiers();
+				String aName = normalize(declared[i].getName());
+				if(!Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers) && !fields.containsKey(aName)){
+					fields.put(aName, declared[i]);
+				}
+			}
+		}
+		final ColumnSetter[] columnSetters = new ColumnSetter[columnNames.length];
+		int numSetters = 0;
+		for(int i = 0; i < columnNames.length; i++){
+			String aName = normalize(columnNames[i]);
+			try{
+				MethodHandle aSetter;
+				Class<?> propertyType;
+				Method aMethod = setters.get(aName);
+				if(aMethod != null){
+					aSetter = lookup.unreflect(aMethod);
+					propertyType = aMethod.getParameterTypes()[0];
+				}
+				else{
+					Field aField = fields.get(aName);
+					if(aField == null){
+						continue;
+					}
+					makeAccessible(aField);
+					aSetter = lookup.unreflectSetter(aField);
+					propertyType = aField.getType();
+				}
+				columnSetters[numSetters++] = setterFor(i, propertyType, aSetter);
+			}
+			catch(IllegalAccessException e){
+				throw new DataAccessException("Error: the column "+columnNames[i]+" can not be set on "+type.getName()+". "+e.getLocalizedMessage());
+			}
+			catch(IllegalArgumentException e){
+				throw new DataAccessException("Error: the column "+columnNames[i]+" can not be mapped to "+type.getName()+". "+e.getLocalizedMessage());
+			}
+		}
+		final ColumnSetter[] theSetters = Arrays.copyOf(columnSetters, numSetters);
+		return new RowMapper<T>(){
+			@SuppressWarnings("unchecked")
+			public T mapRow(DataAccessRow aRow) throws Exception {
+				try{
+					Object aTarget = (Object)aConstructor.invokeExact();
+					for(int i = 0; i < theSetters.length; i++){
+						theSetters[i].set(aTarget, aRow);
+					}
+					return (T)aTarget;
+				}
+				catch(Exception e){
+					throw e;
+				}
+				catch(Throwable e){
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+	}
+
+	private static <T> RowMapper<T> compileRecord(Class<T> type, String[] columnNames) throws DataAccessException {
+		try{
+			Object[] components = (Object[])Class.class.getMethod("getRecordComponents").invoke(type);
+			Class<?>[] componentTypes = new Class<?>[components.length];
+			final ValueReader[] readers = new ValueReader[components.length];
+			final Object[] defaults = new Object[components.length];
+			for(int i = 0; i < components.length; i++){
+				Class<?> aComponentClass = components[i].getClass();
+				String aName = normalize((String)aComponentClass.getMethod("getName").invoke(components[i]));
+				componentTypes[i] = (Class<?>)aComponentClass.getMethod("getType").invoke(components[i]);
+				defaults[i] = defaultValue(componentTypes[i]);
+				for(int j = 0; j < columnNames.length; j++){
+					if(normalize(columnNames[j]).equals(aName)){
+						readers[i] = readerFor(j, componentTypes[i]);
+						break;
+					}
+				}
+			}
+			Constructor<T> aCanonicalConstructor = type.getDeclaredConstructor(componentTypes);
+			makeAccessible(aCanonicalConstructor);
+			final MethodHandle aConstructor = lookup.unreflectConstructor(aCanonicalConstructor)
+					.asSpreader(Object[].class, components.length).asType(MethodType.methodType(Object.class, Object[].class));
+			return new RowMapper<T>(){
+				@SuppressWarnings("unchecked")
+				public T mapRow(DataAccessRow aRow) throws Exception {
+					Object[] arguments = new Object[readers.length];
+					for(int i = 0; i < readers.length; i++){
+						Object aValue = readers[i] == null ? null : readers[i].read(aRow);
+						arguments[i] = aValue == null ? defaults[i] : aValue;
+					}
+					try{
+						return (T)(Object)aConstructor.invokeExact(arguments);
+					}
+					catch(Exception e){
+						throw e;
+					}
+					catch(Throwable e){
+						throw new IllegalStateException(e);
+					}
+				}
+			};
+		}
+		catch(IllegalArgumentException e){
+			throw new DataAccessException("Error: a column can not be mapped to "+type.getName()+". "+e.getLocalizedMessage());
+		}
+		catch(Exception e){
+			throw new DataAccessException("Error: unable to create "+type.getName()+" from a row. "+e);
+		}
+	}
+	/*
+	 * Numbers are read with the cursor getter of their size and passed to the setter without being boxed.  The getters return 
+	 * 0 for a null value, which is the default of a primitive, so primitives need no null check.
+	 */
+	private static ColumnSetter setterFor(int column, Class<?> type, MethodHandle aSetter){
+		if(type == long.class || type == int.class || type == short.class || type == byte.class){
+			return new LongSetter(column, MethodHandles.explicitCastArguments(aSetter, MethodType.methodType(void.class, Object.class, long.class)));
+		}
+		if(type == double.class || type == float.class){
+			return new DoubleSetter(column, MethodHandles.explicitCastArguments(aSetter, MethodType.methodType(void.class, Object.class, double.class)));
+		}
+		if(type == boolean.class){
+			return new BooleanSetter(column, aSetter.asType(MethodType.methodType(void.class, Object.class, boolean.class)));
+		}
+		return new ObjectSetter(column, readerFor(column, type), aSetter.asType(MethodType.methodType(void.class, Object.class, Object.class)));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static ValueReader readerFor(final int column, final Class<?> type){
+		/*
+		 * the String and blob getters return null for a null value themselves.
+		 */
+		boolean checkNull = !type.isPrimitive() && type != String.class && type != byte[].class;
+		if(type == String.class){
+			return new ValueReader(column, checkNull){
+				Object readValue(DataAccessRow aRow) {
+					return aRow.getString(column);
+				}
+			};
+		}
+		if(type == long.class || type == Long.class){
+			return new ValueReader(column, checkNull){
+				Object readValue(DataAccessRow aRow) {
+					return Long.valueOf(aRow.getLong(column));
+				}
+			};
+		}
+		if(type == int.class || type == Integer.class){
+			return new ValueReader(column, checkNull){
+				Object readValue(DataAccessRow aRow) {
+					return Integer.valueOf((int)aRow.getLong(column));
+				}
+			};
+		}
+		if(type == short.class || type == Short.class){
+			return new ValueReader(column, checkNull){
+				Object readValue(DataAccessRow aRow) {
+					return Short.valueOf((short)aRow.getLong(column));
+				}
+			};
+		}
+		if(type == byte.class || type == Byte.class){
+			return new ValueReader(column, checkNull){
+				Object readValue(DataAccessRow aRow) {
+					return Byte.valueOf((byte)aRow.getLong(column));
+				}
+			};
+		}
+		if(type == boolean.class || type == Boolean.class){
+			return new ValueReader(column, checkNull){
+				Object readValue(DataAccessRow aRow) {
+					return Boolean.valueOf(aRow.getLong(column) != 0);
+				}
+			};
+		}
+		if(type == double.class || type == Double.class){
+			return new ValueReader(column, checkNull){
+				Object readValue(DataAccessRow aRow) {
+					return Double.valueOf(aRow.getDouble(column));
+				}
+			};
+		}
+		if(type == float.class || type == Float.class){
+			return new ValueReader(column, checkNull){
+				Object readValue(DataAccessRow aRow) {
+					return Float.valueOf((float)aRow.getDouble(column));
+				}
+			};
+		}
+		if(type == byte[].class){
+			return new ValueReader(column, checkNull){
+				Object readValue(DataAccessRow aRow) {
+					return aRow.getBlob(column);
+				}
+			};
+		}
+		if(type == QCBlob.class){
+			return new ValueReader(column, false){
+				Object readValue(DataAccessRow aRow) {
+					byte[] aBlob = aRow.getBlob(column);
+					return aBlob == null ? null : new QCBlob(aBlob);
+				}
+			};
+		}
+		if(type == Date.class){
+			return new ValueReader(column, checkNull){
+				Object readValue(DataAccessRow aRow) throws ParseException {
+					if(aRow.getType(column) != ColumnarResult.TYPE_STRING){
+						return new Date(aRow.getLong(column));
+					}
+					return parseDate(aRow.getString(column));
+				}
+			};
+		}
+		if(type.isEnum()){
+			final Class<? extends Enum> enumType = (Class<? extends Enum>)type;
+			return new ValueReader(column, checkNull){
+				Object readValue(DataAccessRow aRow) {
+					return Enum.valueOf(enumType, aRow.getString(column));
+				}
+			};
+		}
+		throw new IllegalArgumentException(type.getName()+" is not a supported type.");
+	}
+
+	private static Date parseDate(String text) throws ParseException{
+		SimpleDateFormat[] formats = dateFormats.get();
+		ParseException lastFailure = null;
+		for(int i = 0; i < formats.length; i++){
+			try{
+				return formats[i].parse(text);
+			}
+			catch(ParseException e){
+				lastFailure = e;
+			}
+		}
+		throw lastFailure;
+	}
+
+	private static Object defaultValue(Class<?> type){
+		if(type == long.class){
+			return Long.valueOf(0);
+		}
+		if(type == int.class){
+			return Integer.valueOf(0);
+		}
+		if(type == short.class){
+			return Short.valueOf((short)0);
+		}
+		if(type == byte.class){
+			return Byte.valueOf((byte)0);
+		}
+		if(type == boolean.class){
+			return Boolean.FALSE;
+		}
+		if(type == double.class){
+			return Double.valueOf(0);
+		}
+		if(type == float.class){
+			return Float.valueOf(0);
+		}
+		return null;
+	}
+	/*
+	 * Matches column and property names ignoring case and underscores so first_name matches firstName.
+	 */
+	private static String normalize(String aName){
+		StringBuilder aBuilder = new StringBuilder(aName.length());
+		for(int i = 0; i < aName.length(); i++){
+			char aChar = aName.charAt(i);
+			if(aChar != '_'){
+				aBuilder.append(Character.toLowerCase(aChar));
+			}
+		}
+		return aBuilder.toString();
+	}
+
+	private static boolean isRecord(Class<?> type){
+		try{
+			return (Boolean)Class.class.getMethod("isRecord").invoke(type);
+		}
+		catch(Exception e){
+			//runtimes without records
+			return false;
+		}
+	}
+	/*
+	 * Members that are not public can only be used if the runtime allows it.  If it does not, unreflecting them reports why.
+	 */
+	private static void makeAccessible(java.lang.reflect.AccessibleObject aMember){
+		try{
+			aMember.setAccessible(true);
+		}
+		catch(RuntimeException e){
+			//left to fail with an IllegalAccessException
+		}
+	}
+
+	private static abstract class ValueReader {
+		final int column;
+		final boolean checkNull;
+
+		ValueReader(int column, boolean checkNull) {
+			this.column = column;
+			this.checkNull = checkNull;
+		}
+
+		Object read(DataAccessRow aRow) throws Exception {
+			return checkNull && aRow.isNull(column) ? null : readValue(aRow);
+		}
+
+		abstract Object readValue(DataAccessRow aRow) throws Exception;
+	}
+
+	private static abstract class ColumnSetter {
+		final int column;
+		final MethodHandle aSetter;
+
+		ColumnSetter(int column, MethodHandle aSetter) {
+			this.column = column;
+			this.aSetter = aSetter;
+		}
+
+		abstract void set(Object aTarget, DataAccessRow aRow) throws Throwable;
+	}
+
+	private static class LongSetter extends ColumnSetter {
+		LongSetter(int column, MethodHandle aSetter) {
+			super(column, aSetter);
+		}
+
+		void set(Object aTarget, DataAccessRow aRow) throws Throwable {
+			aSetter.invokeExact(aTarget, aRow.getLong(column));
+		}
+	}
+
+	private static class DoubleSetter extends ColumnSetter {
+		DoubleSetter(int column, MethodHandle aSetter) {
+			super(column, aSetter);
+		}
+
+		void set(Object aTarget, DataAccessRow aRow) throws Throwable {
+			aSetter.invokeExact(aTarget, aRow.getDouble(column));
+		}
+	}
+
+	private static class BooleanSetter extends ColumnSetter {
+		BooleanSetter(int column, MethodHandle aSetter) {
+			super(column, aSetter);
+		}
+
+		void set(Object aTarget, DataAccessRow aRow) throws Throwable {
+			aSetter.invokeExact(aTarget, aRow.getLong(column) != 0);
+		}
+	}
+
+	private static class ObjectSetter extends ColumnSetter {
+		private final ValueReader aReader;
+
+		ObjectSetter(int column, ValueReader aReader, MethodHandle aSetter) {
+			super(column, aSetter);
+			this.aReader = aReader;
+		}
+
+		void set(Object aTarget, DataAccessRow aRow) throws Throwable {
+			aSetter.invokeExact(aTarget, aReader.read(aRow));
+		}
+	}
+
+	private static class MapperKey {
+		private final Class<?> type;
+		private final String[] columnNames;
+		private final int hash;
+
+		MapperKey(Class<?> type, String[] columnNames) {
+			this.type = type;
+			this.columnNames = columnNames.clone();
+			this.hash = 31 * type.hashCode() + Arrays.hashCode(columnNames);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object anObject) {
+			if(!(anObject instanceof MapperKey)){
+				return false;
+			}
+			MapperKey aKey = (MapperKey)anObject;
+			return type == aKey.type && Arrays.equals(columnNames, aKey.columnNames);
+		}
+	}
+}
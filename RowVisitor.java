@@ -0,0 +1,42 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+/**
+ * A RowVisitor is handed each row of a query streamed by the DataAccessObject stream method, one at a time, as the row is 
+ * read from the database.  Returning <b>false</b> stops the query and closes it without reading any more rows.  A RowVisitor 
+ * must not write to the database it is reading from.  The query holds the database's read lock, so such a write fails with a 
+ * DataAccessException instead of waiting forever.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public interface RowVisitor {
+	/**
+	 * Called once for each row of the query in order.
+	 * @param aRow - the current row.  The same DataAccessRow object is passed for every row so it should not be kept.
+	 * @return - <b>true</b> to continue with the next row, <b>false</b> to stop the query.
+	 * @throws Exception - any exception stops the query and is reported in the error description of the DataAccessResult.
+	 */
+	public boolean visitRow(DataAccessRow aRow) throws Exception;
+}
@@ -0,0 +1,41 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+/**
+ * A ShardPartitioner decides which database file of a ShardedDatabase holds the rows for a key.  It must always choose the same 
+ * shard for the same key and number of shards, including after the application is restarted, or rows will be looked for in 
+ * the wrong file.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public interface ShardPartitioner {
+	/**
+	 * Chooses the shard for a key.
+	 * @param shardKey - the key, usually a value of the column the rows are partitioned by.
+	 * @param numShards - the number of shards of the ShardedDatabase.
+	 * @return - the zero based index of the shard, from 0 up to numShards - 1.
+	 */
+	public int shardFor(Object shardKey, int numShards);
+}
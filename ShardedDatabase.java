@@ -0,0 +1,615 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.content.Context;
+
+/**
+ * A ShardedDatabase spreads the rows of one logical database across several SQLite files, its shards, which all have the same 
+ * tables.  Each shard is an ordinary DataAccessObject database with its own lock, so writes to different shards run at the 
+ * same time and each file stays small enough to VACUUM quickly.
+ * <br/>
+ * Writes are sent to the shard a ShardPartitioner chooses for their key.  Queries are run against every shard at the same 
+ * time on a pool of threads and their results are combined in one of three ways.  query appends the rows of the shards 
+ * together, queryOrdered merges rows that each shard has already sorted into one sorted result, and queryAggregate combines 
+ * the rows of aggregate queries so that, for example, the SUM of each shard adds up to the SUM of all of them.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public class ShardedDatabase {
+	/**
+	 * queryAggregate combining for a GROUP BY column.  Rows of different shards with the same values in all of the group 
+	 * columns are combined into one row.
+	 */
+	public static final int COMBINE_GROUP = 0;
+	/**
+	 * queryAggregate combining that adds the values of the shards.  Use it for both SUM and COUNT columns.
+	 */
+	public static final int COMBINE_SUM = 1;
+	/**
+	 * queryAggregate combining that keeps the smallest value of the shards.
+	 */
+	public static final int COMBINE_MIN = 2;
+	/**
+	 * queryAggregate combining that keeps the largest value of the shards.
+	 */
+	public static final int COMBINE_MAX = 3;
+	/**
+	 * The default ShardPartitioner.  It hashes integers by their value, Strings by their characters and byte arrays by their 
+	 * bytes so a key is always sent to the same shard.
+	 */
+	public static final ShardPartitioner HASH_PARTITIONER = new ShardPartitioner(){
+		public int shardFor(Object shardKey, int numShards) {
+			long hash = 0;
+			if(shardKey instanceof Long || shardKey instanceof Integer || shardKey instanceof Short || shardKey instanceof Byte){
+				hash = ((Number)shardKey).longValue();
+			}
+			else if(shardKey instanceof byte[]){
+				hash = Arrays.hashCode((byte[])shardKey);
+			}
+			else if(shardKey instanceof QCBlob){
+				hash = Arrays.hashCode(((QCBlob)shardKey).bytes());
+			}
+			else if(shardKey != null){
+				hash = shardKey.toString().hashCode();
+			}
+			//the finalizer of MurmurHash3 spreads keys that are close together across all of the shards
+			hash ^= hash >>> 33;
+			hash *= 0xff51afd7ed558ccdL;
+			hash ^= hash >>> 33;
+			hash *= 0xc4ceb9fe1a85ec53L;
+			hash ^= hash >>> 33;
+			return (int)((hash >>> 1) % numShards);
+		}
+	};
+	private static ExecutorService defaultExecutor = null;
+	private static final AtomicInteger threadCount = new AtomicInteger();
+	private final WeakReference<Context> contextRef;
+	private final String[] shardNames;
+	private final ShardPartitioner partitioner;
+	private volatile ExecutorService executor = null;
+
+	/**
+	 * Creates a ShardedDatabase from database files that already exist or are created as they are first used.
+	 * @param aContextRef - The Context with which the databases are associated.
+	 * @param shardNames - the names of the database files of the shards.  The order of the names must never change since the 
+	 * ShardPartitioner chooses shards by their position.
+	 * @param aPartitioner - the ShardPartitioner that chooses the shard for a key or null for HASH_PARTITIONER.
+	 */
+	public ShardedDatabase(WeakReference<Context> aContextRef, String[] shardNames, ShardPartitioner aPartitioner) {
+		if(shardNames == null || shardNames.length == 0){
+			throw new IllegalArgumentException("a ShardedDatabase needs at least one shard");
+		}
+		this.contextRef = aContextRef;
+		this.shardNames = shardNames.clone();
+		this.partitioner = aPartitioner == null ? HASH_PARTITIONER : aPartitioner;
+	}
+	/**
+	 * Creates the names of the database files of a ShardedDatabase by adding the number of each shard to a base name.  For 
+	 * example a base name of events.sqlite and 3 shards gives events_0.sqlite, events_1.sqlite and events_2.sqlite.
+	 * @param baseName - the name to add the shard numbers to.
+	 * @param numShards - the number of shards.
+	 * @return - the names of the shards.
+	 */
+	public static String[] shardNames(String baseName, int numShards){
+		int extensionStart = baseName.lastIndexOf('.');
+		if(extensionStart <= 0){
+			extensionStart = baseName.length();
+		}
+		String[] names = new String[numShards];
+		for(int i = 0; i < numShards; i++){
+			names[i] = baseName.substring(0, extensionStart)+"_"+i+baseName.substring(extensionStart);
+		}
+		return names;
+	}
+	/**
+	 * This method sets the pool the queries and batches of this ShardedDatabase are run on.  By default all ShardedDatabases 
+	 * share a pool with one thread per processor.
+	 * @param anExecutor - the ExecutorService to run on or null for the shared pool.
+	 */
+	public void setExecutor(ExecutorService anExecutor){
+		executor = anExecutor;
+	}
+
+	public int getShardCount(){
+		return shardNames.length;
+	}
+
+	public String getShardName(int shard){
+		return shardNames[shard];
+	}
+	/**
+	 * Accessor for the shard the ShardPartitioner chooses for a key.
+	 * @param shardKey - the key.
+	 * @return - the zero based index of the shard.
+	 */
+	public int shardFor(Object shardKey){
+		int shard = partitioner.shardFor(shardKey, shardNames.length);
+		if(shard < 0 || shard >= shardNames.length){
+			throw new IllegalStateException("the ShardPartitioner chose shard "+shard+" of "+shardNames.length+" for "+shardKey);
+		}
+		return shard;
+	}
+	/**
+	 * This method executes a statement against the shard chosen for a key, the same way DataAccessObject transact does.  It may 
+	 * be called inside a transaction started with DataAccessObject startTransaction on that shard's database name.
+	 * @param shardKey - the key that chooses the shard.
+	 * @param SQL - An SQL string for a standard SQL statement or a prepared statement
+	 * @param parameters - An array of Objects to be bound to the ? characters in the SQL string if it is a prepared statement.  If the 
+	 * SQL string is not to be used for a prepared statement this parameter should be null.
+	 * @return - the DataAccessResult of the shard.
+	 * @throws DataAccessException
+	 */
+	public DataAccessResult transact(Object shardKey, String SQL, Object[] parameters) throws DataAccessException{
+		return DataAccessObject.transact(contextRef, shardNames[shardFor(shardKey)], SQL, parameters);
+	}
+	/**
+	 * This method executes a statement against every shard at the same time, for example to create a table or index or to delete 
+	 * rows from all of the shards.
+	 * @param SQL - An SQL string for a standard SQL statement or a prepared statement
+	 * @param parameters - An array of Objects to be bound to the ? characters in the SQL string if it is a prepared statement.  If the 
+	 * SQL string is not to be used for a prepared statement this parameter should be null.
+	 * @return - the DataAccessResult of each shard in shard order.
+	 * @throws DataAccessException
+	 */
+	public DataAccessResult[] transactAll(final String SQL, final Object[] parameters) throws DataAccessException{
+		ArrayList<Callable<DataAccessResult>> tasks = new ArrayList<Callable<DataAccessResult>>(shardNames.length);
+		for(int i = 0; i < shardNames.length; i++){
+			final String shardName = shardNames[i];
+			tasks.add(new Callable<DataAccessResult>(){
+				public DataAccessResult call() throws Exception {
+					return DataAccessObject.transact(contextRef, shardName, SQL, parameters);
+				}
+			});
+		}
+		return runOnShards(tasks).toArray(new DataAccessResult[shardNames.length]);
+	}
+	/**
+	 * This method executes one statement once for each of many sets of parameters, sending each set to the shard chosen for 
+	 * the value of its key parameter.  The sets for each shard are executed with DataAccessObject transactBatch and the shards 
+	 * are written to at the same time.
+	 * @param SQL - An SQL string for a prepared statement used to modify the database
+	 * @param parameterSets - A List of arrays of Objects.  Each array is bound to the ? characters in the SQL string and executed.
+	 * @param keyParameter - the zero based index of the parameter in each set that is the shard key.
+	 * @param chunkSize - the number of parameter sets executed in each transaction of a shard.  A value of 0 executes all of a 
+	 * shard's sets in one transaction.
+	 * @return - A BatchResult with the number of successful parameter sets of all of the shards and the failures keyed by the 
+	 * position of the parameter set in parameterSets.
+	 * @throws DataAccessException
+	 */
+	public BatchResult transactBatch(final String SQL, List<Object[]> parameterSets, int keyParameter, final int chunkSize) throws DataAccessException{
+		final ArrayList<ArrayList<Object[]>> shardSets = new ArrayList<ArrayList<Object[]>>(shardNames.length);
+		final ArrayList<ArrayList<Integer>> shardPositions = new ArrayList<ArrayList<Integer>>(shardNames.length);
+		for(int i = 0; i < shardNames.length; i++){
+			shardSets.add(new ArrayList<Object[]>());
+			shardPositions.add(new ArrayList<Integer>());
+		}
+		for(int i = 0; i < parameterSets.size(); i++){
+			Object[] aSet = parameterSets.get(i);
+			int shard = shardFor(aSet[keyParameter]);
+			shardSets.get(shard).add(aSet);
+			shardPositions.get(shard).add(i);
+		}
+		ArrayList<Callable<BatchResult>> tasks = new ArrayList<Callable<BatchResult>>(shardNames.length);
+		for(int i = 0; i < shardNames.length; i++){
+			final String shardName = shardNames[i];
+			final ArrayList<Object[]> aShardSets = shardSets.get(i);
+			tasks.add(new Callable<BatchResult>(){
+				public BatchResult call() throws Exception {
+					if(aShardSets.isEmpty()){
+						return new BatchResult();
+					}
+					return DataAccessObject.transactBatch(contextRef, shardName, SQL, aShardSets.iterator(), chunkSize);
+				}
+			});
+		}
+		List<BatchResult> shardResults = runOnShards(tasks);
+		BatchResult aResult = new BatchResult();
+		for(int i = 0; i < shardResults.size(); i++){
+			BatchResult aShardResult = shardResults.get(i);
+			aResult.addSuccesses(aShardResult.getSuccessCount());
+			Iterator<Map.Entry<Integer,String>> errorIt = aShardResult.getRowErrors().entrySet().iterator();
+			while(errorIt.hasNext()){
+				Map.Entry<Integer,String> anError = errorIt.next();
+				aResult.addRowError(shardPositions.get(i).get(anError.getKey()), anError.getValue());
+			}
+			if(!isSuccess(aShardResult)){
+				aResult.setErrorDescription(shardNames[i]+": "+aShardResult.getErrorDescription());
+			}
+		}
+		return aResult;
+	}
+	/**
+	 * This method runs a query against every shard at the same time and appends the rows of the shards together in shard order.
+	 * @param SQL - An SQL string for a standard SQL query or a prepared statement used to query the database
+	 * @param parameters - An array of Objects to be bound to the ? characters in the SQL string if it is a prepared statement.  If the 
+	 * SQL string is not to be used for a prepared statement this parameter should be null.
+	 * @return - A DataAccessResult with the rows of all of the shards.  If a shard's query fails its error, prefixed with the name 
+	 * of the shard, is the error description and the rows of the other shards are still included.
+	 * @throws DataAccessException
+	 */
+	public DataAccessResult query(String SQL, Object[] parameters) throws DataAccessException{
+		List<DataAccessResult> shardResults = queryShards(SQL, parameters);
+		ColumnarResult[] shardRows = new ColumnarResult[shardResults.size()];
+		DataAccessResult aResult = combinedResult(shardResults, shardRows);
+		ColumnarResult aCombined = new ColumnarResult(aResult.getColumnNames());
+		for(int i = 0; i < shardRows.length; i++){
+			ColumnarResult aShardRows = shardRows[i];
+			int rowCount = aShardRows == null ? 0 : aShardRows.getRowCount();
+			for(int row = 0; row < rowCount; row++){
+				aCombined.appendRow(aShardRows, row);
+			}
+		}
+		aCombined.finish();
+		aResult.setColumnarResults(aCombined);
+		return aResult;
+	}
+	/**
+	 * This method runs a query against every shard at the same time and merges the rows, which each shard must already have 
+	 * sorted with an ORDER BY clause, into one sorted result.  Values are compared the way SQLite compares them with the BINARY 
+	 * collation: NULL first, then numbers, then text, then blobs.  A LIMIT clause in the query limits the rows read from each 
+	 * shard and the limit parameter limits the merged rows.
+	 * @param SQL - An SQL string for a standard SQL query or a prepared statement used to query the database
+	 * @param parameters - An array of Objects to be bound to the ? characters in the SQL string if it is a prepared statement.  If the 
+	 * SQL string is not to be used for a prepared statement this parameter should be null.
+	 * @param sortColumns - the zero based indexes of the result columns the query is ordered by, most significant first.
+	 * @param descending - whether each sort column is ordered DESC, or null if they are all ascending.
+	 * @param limit - the most rows to return or 0 for all of them.
+	 * @return - A DataAccessResult with the merged rows of all of the shards.
+	 * @throws DataAccessException
+	 */
+	public DataAccessResult queryOrdered(String SQL, Object[] parameters, final int[] sortColumns, final boolean[] descending, int limit) throws DataAccessException{
+		List<DataAccessResult> shardResults = queryShards(SQL, parameters);
+		final ColumnarResult[] shardRows = new ColumnarResult[shardResults.size()];
+		DataAccessResult aResult = combinedResult(shardResults, shardRows);
+		ColumnarResult aCombined = new ColumnarResult(aResult.getColumnNames());
+		final int[] positions = new int[shardRows.length];
+		/*
+		 * a heap of the shards that have rows left ordered by their next row.  Ties go to the lower shard so the merge is stable.
+		 */
+		PriorityQueue<Integer> aHeap = new PriorityQueue<Integer>(Math.max(1, shardRows.length), new Comparator<Integer>(){
+			public int compare(Integer shardA, Integer shardB) {
+				for(int i = 0; i < sortColumns.length; i++){
+					int order = compareValues(shardRows[shardA], positions[shardA], shardRows[shardB], positions[shardB], sortColumns[i]);
+					if(order != 0){
+						return descending != null && descending[i] ? -order : order;
+					}
+				}
+				return shardA - shardB;
+			}
+		});
+		for(int i = 0; i < shardRows.length; i++){
+			if(shardRows[i] != null && shardRows[i].getRowCount() > 0){
+				aHeap.add(i);
+			}
+		}
+		while(!aHeap.isEmpty() && (limit <= 0 || aCombined.getRowCount() < limit)){
+			Integer aShard = aHeap.poll();
+			aCombined.appendRow(shardRows[aShard], positions[aShard]);
+			positions[aShard]++;
+			if(positions[aShard] < shardRows[aShard].getRowCount()){
+				aHeap.add(aShard);
+			}
+		}
+		aCombined.finish();
+		aResult.setColumnarResults(aCombined);
+		return aResult;
+	}
+	/**
+	 * This method runs an aggregate query against every shard at the same time and combines the rows of the shards column by 
+	 * column.  Rows with the same values in every COMBINE_GROUP column are combined into one row and the other columns are 
+	 * combined with COMBINE_SUM, COMBINE_MIN or COMBINE_MAX, ignoring NULLs the way SQL aggregates do.  COUNT columns are 
+	 * combined with COMBINE_SUM.  An average can not be combined from the averages of the shards, so query its SUM and COUNT 
+	 * and divide them.  The combined rows are in the order their groups were first seen.
+	 * @param SQL - An SQL string for a standard SQL query or a prepared statement used to query the database
+	 * @param parameters - An array of Objects to be bound to the ? characters in the SQL string if it is a prepared statement.  If the 
+	 * SQL string is not to be used for a prepared statement this parameter should be null.
+	 * @param combine - how to combine each column of the result, one of the COMBINE_ constants for every column.
+	 * @return - A DataAccessResult with the combined rows.
+	 * @throws DataAccessException
+	 */
+	public DataAccessResult queryAggregate(String SQL, Object[] parameters, int[] combine) throws DataAccessException{
+		List<DataAccessResult> shardResults = queryShards(SQL, parameters);
+		ColumnarResult[] shardRows = new ColumnarResult[shardResults.size()];
+		DataAccessResult aResult = combinedResult(shardResults, shardRows);
+		int numColumns = aResult.getColumnNames().length;
+		if(!isSuccess(aResult) && numColumns == 0){
+			/*
+			 * no shard's query worked so there are no columns to check the ways of combining them against.  The error of
+			 * the first shard is reported instead.
+			 */
+			aResult.setColumnarResults(new ColumnarResult(aResult.getColumnNames()));
+			return aResult;
+		}
+		if(combine.length != numColumns){
+			throw new DataAccessException("Error: the query has "+numColumns+" columns but "+combine.length+" ways to combine them were given.");
+		}
+		LinkedHashMap<List<Object>,Object[]> groups = new LinkedHashMap<List<Object>,Object[]>();
+		for(int i = 0; i < shardRows.length; i++){
+			ColumnarResult aShardRows = shardRows[i];
+			int rowCount = aShardRows == null ? 0 : aShardRows.getRowCount();
+			for(int row = 0; row < rowCount; row++){
+				ArrayList<Object> aKey = new ArrayList<Object>();
+				for(int column = 0; column < numColumns; column++){
+					if(combine[column] == COMBINE_GROUP){
+						Object value = aShardRows.valueAt(row, column);
+						//arrays are not equal to each other by their contents but ByteBuffers are
+						aKey.add(value instanceof byte[] ? ByteBuffer.wrap((byte[])value) : value);
+					}
+				}
+				Object[] aCombinedRow = groups.get(aKey);
+				if(aCombinedRow == null){
+					aCombinedRow = new Object[numColumns];
+					for(int column = 0; column < numColumns; column++){
+						aCombinedRow[column] = aShardRows.valueAt(row, column);
+					}
+					groups.put(aKey, aCombinedRow);
+					continue;
+				}
+				for(int column = 0; column < numColumns; column++){
+					aCombinedRow[column] = combineValues(combine[column], aCombinedRow[column], aShardRows.valueAt(row, column));
+				}
+			}
+		}
+		ColumnarResult aCombined = new ColumnarResult(aResult.getColumnNames());
+		Iterator<Object[]> rowIt = groups.values().iterator();
+		while(rowIt.hasNext()){
+			aCombined.appendValues(rowIt.next());
+		}
+		aCombined.finish();
+		aResult.setColumnarResults(aCombined);
+		return aResult;
+	}
+
+	private List<DataAccessResult> queryShards(final String SQL, final Object[] parameters) throws DataAccessException{
+		ArrayList<Callable<DataAccessResult>> tasks = new ArrayList<Callable<DataAccessResult>>(shardNames.length);
+		for(int i = 0; i < shardNames.length; i++){
+			final String shardName = shardNames[i];
+			tasks.add(new Callable<DataAccessResult>(){
+				public DataAccessResult call() throws Exception {
+					return DataAccessObject.transact(contextRef, shardName, SQL, parameters);
+				}
+			});
+		}
+		return runOnShards(tasks);
+	}
+	/*
+	 * Runs one task per shard on the pool, running the first on the calling thread since it would otherwise only wait, and 
+	 * returns their results in shard order.
+	 */
+	private <T> List<T> runOnShards(List<Callable<T>> tasks) throws DataAccessException{
+		ExecutorService anExecutor = executor;
+		if(anExecutor == null){
+			anExecutor = defaultExecutor();
+		}
+		ArrayList<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+		for(int i = 1; i < tasks.size(); i++){
+			futures.add(anExecutor.submit(tasks.get(i)));
+		}
+		ArrayList<T> results = new ArrayList<T>(tasks.size());
+		DataAccessException aFailure = null;
+		try{
+			results.add(tasks.get(0).call());
+		}
+		catch(Exception e){
+			aFailure = failure(0, e);
+		}
+		for(int i = 0; i < futures.size(); i++){
+			try{
+				results.add(futures.get(i).get());
+			}
+			catch(ExecutionException e){
+				if(aFailure == null){
+					aFailure = failure(i + 1, e.getCause());
+				}
+			}
+			catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				for(int j = i; j < futures.size(); j++){
+					futures.get(j).cancel(true);
+				}
+				throw new DataAccessException("Error: interrupted while waiting for the shards of "+shardNames[0]);
+			}
+		}
+		if(aFailure != null){
+			throw aFailure;
+		}
+		return results;
+	}
+
+	private DataAccessException failure(int shard, Throwable aCause){
+		return new DataAccessException("Error: shard "+shardNames[shard]+" failed. "+aCause.getLocalizedMessage());
+	}
+	/*
+	 * Starts the result of a scatter-gather query.  The column names come from the first shard whose query worked and the 
+	 * error description from the first shard whose query failed.
+	 */
+	private DataAccessResult combinedResult(List<DataAccessResult> shardResults, ColumnarResult[] shardRows){
+		DataAccessResult aResult = new DataAccessResult();
+		String[] columnNames = null;
+		for(int i = 0; i < shardResults.size(); i++){
+			DataAccessResult aShardResult = shardResults.get(i);
+			if(aShardResult == null){
+				continue;
+			}
+			if(isSuccess(aShardResult)){
+				shardRows[i] = aShardResult.getColumnarResults();
+				if(columnNames == null){
+					columnNames = aShardResult.getColumnNames();
+				}
+			}
+			else if(isSuccess(aResult)){
+				aResult.setErrorDescription(shardNames[i]+": "+aShardResult.getErrorDescription());
+			}
+		}
+		aResult.setColumnNames(columnNames == null ? new String[0] : columnNames);
+		return aResult;
+	}
+
+	private static boolean isSuccess(DataAccessResult aResult){
+		return "not an error".equals(aResult.getErrorDescription());
+	}
+
+	private static Object combineValues(int combine, Object soFar, Object value){
+		if(combine == COMBINE_GROUP || value == null){
+			return soFar;
+		}
+		if(soFar == null){
+			return value;
+		}
+		switch(combine){
+			case COMBINE_SUM:
+				if(soFar instanceof Long && value instanceof Long){
+					long a = (Long)soFar;
+					long b = (Long)value;
+					long sum = a + b;
+					//SQLite's SUM fails on overflow but the sum of the shards is still meaningful as a real
+					if(((a ^ sum) & (b ^ sum)) < 0){
+						return Double.valueOf((double)a + (double)b);
+					}
+					return Long.valueOf(sum);
+				}
+				return Double.valueOf(toDouble(soFar) + toDouble(value));
+			case COMBINE_MIN:
+				return compareObjects(value, soFar) < 0 ? value : soFar;
+			case COMBINE_MAX:
+				return compareObjects(value, soFar) > 0 ? value : soFar;
+			default:
+				throw new IllegalArgumentException("unknown way to combine a column: "+combine);
+		}
+	}
+
+	private static double toDouble(Object value){
+		if(value instanceof Number){
+			return ((Number)value).doubleValue();
+		}
+		try{
+			return Double.parseDouble(value.toString());
+		}
+		catch(NumberFormatException e){
+			return 0;
+		}
+	}
+
+	private static int compareValues(ColumnarResult resultA, int rowA, ColumnarResult resultB, int rowB, int column){
+		int typeA = resultA.getType(rowA, column);
+		int typeB = resultB.getType(rowB, column);
+		if(typeA == ColumnarResult.TYPE_LONG && typeB == ColumnarResult.TYPE_LONG){
+			long a = resultA.getLong(rowA, column);
+			long b = resultB.getLong(rowB, column);
+			return a < b ? -1 : (a == b ? 0 : 1);
+		}
+		return compareObjects(resultA.valueAt(rowA, column), resultB.valueAt(rowB, column));
+	}
+	/*
+	 * Compares two values the way SQLite does with the BINARY collation: NULL, then numbers, then text in UTF-8 byte order, 
+	 * then blobs byte by byte.
+	 */
+	private static int compareObjects(Object a, Object b){
+		int classA = storageClass(a);
+		int classB = storageClass(b);
+		if(classA != classB){
+			return classA - classB;
+		}
+		switch(classA){
+			case 0:
+				return 0;
+			case 1:
+				if(a instanceof Long && b instanceof Long){
+					return ((Long)a).compareTo((Long)b);
+				}
+				return Double.compare(((Number)a).doubleValue(), ((Number)b).doubleValue());
+			case 2:
+				String textA = a.toString();
+				String textB = b.toString();
+				int length = Math.min(textA.length(), textB.length());
+				for(int i = 0; i < length; i++){
+					char charA = textA.charAt(i);
+					char charB = textB.charAt(i);
+					if(charA != charB){
+						//surrogate pairs are encoded as four UTF-8 bytes so they sort after every other character
+						if(Character.isSurrogate(charA) != Character.isSurrogate(charB)){
+							return Character.isSurrogate(charA) ? 1 : -1;
+						}
+						return charA - charB;
+					}
+				}
+				return textA.length() - textB.length();
+			default:
+				byte[] bytesA = (byte[])a;
+				byte[] bytesB = (byte[])b;
+				int numBytes = Math.min(bytesA.length, bytesB.length);
+				for(int i = 0; i < numBytes; i++){
+					if(bytesA[i] != bytesB[i]){
+						return (bytesA[i] & 0xff) - (bytesB[i] & 0xff);
+					}
+				}
+				return bytesA.length - bytesB.length;
+		}
+	}
+
+	private static int storageClass(Object value){
+		if(value == null){
+			return 0;
+		}
+		if(value instanceof Number){
+			return 1;
+		}
+		if(value instanceof byte[]){
+			return 3;
+		}
+		return 2;
+	}
+
+	private synchronized static ExecutorService defaultExecutor(){
+		if(defaultExecutor == null){
+			defaultExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory(){
+				public Thread newThread(Runnable aRunnable) {
+					Thread aThread = new Thread(aRunnable, "qcdbaccess-shard-"+threadCount.getAndIncrement());
+					aThread.setDaemon(true);
+					return aThread;
+				}
+			});
+		}
+		return defaultExecutor;
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class describes one operation the SlowQueryProfiler found to be slower than its threshold.  The query plan is captured 
+ * on a background thread after the operation has finished, so it may not be available yet when the SlowQuery is first seen.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public class SlowQuery {
+	private final String databaseName;
+	private final String SQL;
+	private final String normalizedSQL;
+	private final String[] parameters;
+	private final int kind;
+	private final long durationNanos;
+	private final long lockWaitNanos;
+	private final long rows;
+	private final long timeMillis;
+	private volatile SlowQueryProfiler.Plan plan;
+
+	SlowQuery(String databaseName, String SQL, String normalizedSQL, String[] parameters, int kind, long durationNanos, 
+			long lockWaitNanos, long rows) {
+		this.databaseName = databaseName;
+		this.SQL = SQL;
+		this.normalizedSQL = normalizedSQL;
+		this.parameters = parameters;
+		this.kind = kind;
+		this.durationNanos = durationNanos;
+		this.lockWaitNanos = lockWaitNanos;
+		this.rows = rows;
+		this.timeMillis = System.currentTimeMillis();
+	}
+
+	public String getDatabaseName() {
+		return databaseName;
+	}
+
+	public String getSQL() {
+		return SQL;
+	}
+	/**
+	 * Accessor for the SQL with its literal values replaced by ? characters and its white space collapsed, so statements 
+	 * that differ only in their values can be grouped together.
+	 */
+	public String getNormalizedSQL() {
+		return normalizedSQL;
+	}
+	/**
+	 * Accessor for the parameters the operation was executed with, as text.  Blobs are described by their length.
+	 */
+	public String[] getParameters() {
+		return parameters.clone();
+	}
+	/**
+	 * Accessor for the kind of operation.
+	 * @return - DataAccessMetrics.QUERY, DataAccessMetrics.WRITE or DataAccessMetrics.BATCH.
+	 */
+	public int getKind() {
+		return kind;
+	}
+
+	public long getDurationNanos() {
+		return durationNanos;
+	}
+
+	public long getLockWaitNanos() {
+		return lockWaitNanos;
+	}
+	/**
+	 * Accessor for the number of rows a query returned or the number of parameter sets a batch executed.
+	 */
+	public long getRows() {
+		return rows;
+	}
+	/**
+	 * Accessor for the time the operation finished, in milliseconds since the epoch.
+	 */
+	public long getTimeMillis() {
+		return timeMillis;
+	}
+	/**
+	 * Reports whether the background capture of the query plan has finished, successfully or not.
+	 */
+	public boolean isPlanCaptured() {
+		return plan != null;
+	}
+	/**
+	 * Accessor for the detail lines of EXPLAIN QUERY PLAN, indented by their depth in the plan.
+	 * @return - the lines, or an empty List if the plan has not been captured or could not be.
+	 */
+	public List<String> getQueryPlan() {
+		SlowQueryProfiler.Plan aPlan = plan;
+		return aPlan == null ? Collections.<String>emptyList() : aPlan.lines;
+	}
+	/**
+	 * Accessor for the tables the plan reads every row of without using an index.
+	 */
+	public List<String> getFullScans() {
+		SlowQueryProfiler.Plan aPlan = plan;
+		return aPlan == null ? Collections.<String>emptyList() : aPlan.fullScans;
+	}
+	/**
+	 * Accessor for what the plan sorts with a temporary B-tree, such as "ORDER BY" or "GROUP BY".
+	 */
+	public List<String> getTempBTrees() {
+		SlowQueryProfiler.Plan aPlan = plan;
+		return aPlan == null ? Collections.<String>emptyList() : aPlan.tempBTrees;
+	}
+	/**
+	 * Accessor for CREATE INDEX statements that might let the full scans and sorts of the plan be avoided.  They are guesses 
+	 * made from the columns the SQL compares and sorts by and should be checked with EXPLAIN QUERY PLAN before they are used.
+	 */
+	public List<String> getIndexHints() {
+		SlowQueryProfiler.Plan aPlan = plan;
+		return aPlan == null ? Collections.<String>emptyList() : aPlan.indexHints;
+	}
+	/**
+	 * Accessor for the reason the plan could not be captured.
+	 * @return - the description of the failure, or null if there was none.
+	 */
+	public String getPlanError() {
+		SlowQueryProfiler.Plan aPlan = plan;
+		return aPlan == null ? null : aPlan.error;
+	}
+
+	void setPlan(SlowQueryProfiler.Plan aPlan) {
+		this.plan = aPlan;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder aBuilder = new StringBuilder();
+		aBuilder.append(databaseName).append(' ').append(durationNanos / 1000000.0).append(" ms, lock wait ")
+				.append(lockWaitNanos / 1000000.0).append(" ms, rows ").append(rows).append(": ").append(normalizedSQL);
+		if(parameters.length > 0){
+			aBuilder.append(" parameters: [");
+			for(int i = 0; i < parameters.length; i++){
+				aBuilder.append(i == 0 ? "" : ", ").append(parameters[i]);
+			}
+			aBuilder.append(']');
+		}
+		SlowQueryProfiler.Plan aPlan = plan;
+		if(aPlan == null){
+			aBuilder.append("\n  plan not captured yet");
+		}
+		else if(aPlan.error != null){
+			aBuilder.append("\n  plan not available: ").append(aPlan.error);
+		}
+		else{
+			for(String aLine : aPlan.lines){
+				aBuilder.append("\n  ").append(aLine);
+			}
+			for(String aTable : aPlan.fullScans){
+				aBuilder.append("\n  full table scan of ").append(aTable);
+			}
+			for(String aSort : aPlan.tempBTrees){
+				aBuilder.append("\n  temporary B-tree for ").append(aSort);
+			}
+			for(String aHint : aPlan.indexHints){
+				aBuilder.append("\n  consider: ").append(aHint);
+			}
+		}
+		return aBuilder.toString();
+	}
+}
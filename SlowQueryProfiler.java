@@ -0,0 +1,709 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The SlowQueryProfiler keeps the queries, writes and batches of the DataAccessObject that take longer than a threshold so the 
+ * SQL behind a slow screen can be found.  For each slow operation it keeps the SQL with its literal values removed, the 
+ * parameters, the number of rows and the time spent waiting for the database's lock.  The EXPLAIN QUERY PLAN of the SQL is then 
+ * captured on a background thread, full table scans and sorts done with temporary B-trees are picked out of it, and indexes that 
+ * might avoid them are suggested.  Plans are kept for the most recently seen statements so a statement that is slow again and 
+ * again is only explained once.<br/>
+ * 
+ * The slow operations are kept in a ring buffer of a fixed size, so once it is full each new slow operation replaces the oldest.  
+ * The profiler is off by default.  While it is on only operations that are slower than the threshold cost more than reading the 
+ * clock.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public class SlowQueryProfiler {
+	private static final int PLAN_CACHE_SIZE = 64;
+	/*
+	 * plans waiting to be captured beyond this many are not captured so a burst of slow operations can not queue without bound.
+	 */
+	private static final int PENDING_PLANS = 64;
+	private static final Set<String> KEYWORDS = new HashSet<String>(Arrays.asList("SELECT", "FROM", "WHERE", "JOIN", "INNER", "LEFT", 
+			"RIGHT", "FULL", "CROSS", "NATURAL", "OUTER", "ON", "USING", "GROUP", "ORDER", "BY", "LIMIT", "OFFSET", "HAVING", "UNION", 
+			"EXCEPT", "INTERSECT", "WINDOW", "SET", "VALUES", "INDEXED", "NOT", "AND", "OR", "IN", "IS", "LIKE", "GLOB", "BETWEEN", 
+			"AS", "RETURNING", "ASC", "DESC", "COLLATE", "NULL", "NULLS", "EXISTS", "CASE", "WHEN", "THEN", "ELSE", "END"));
+
+	static volatile boolean enabled = false;
+	private static volatile long thresholdNanos = 0;
+	private static SlowQuery[] slowQueries = new SlowQuery[0];
+	private static int nextSlot = 0;
+	private static int numKept = 0;
+	private static long numRecorded = 0;
+	private static ThreadPoolExecutor planner;
+	private static final LinkedHashMap<String,Plan> plans = new LinkedHashMap<String,Plan>(16, 0.75f, true){
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String,Plan> eldest) {
+			return size() > PLAN_CACHE_SIZE;
+		}
+	};
+	/*
+	 * A private constructor so no one accidentally instantiates an object of this type.
+	 */
+	private SlowQueryProfiler(){}
+	/**
+	 * This method turns the profiler on.  It may be called again to change the threshold or the number of slow operations kept.
+	 * @param thresholdMillis - operations that take at least this many milliseconds, including lock waits, are kept.
+	 * @param capacity - the number of slow operations kept.  Once there are more the oldest are discarded.
+	 */
+	public static synchronized void enable(long thresholdMillis, int capacity){
+		thresholdNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, thresholdMillis));
+		capacity = Math.max(1, capacity);
+		if(capacity != slowQueries.length){
+			List<SlowQuery> kept = getSlowQueries();
+			slowQueries = new SlowQuery[capacity];
+			nextSlot = 0;
+			numKept = 0;
+			for(int i = Math.max(0, kept.size() - capacity); i < kept.size(); i++){
+				keep(kept.get(i));
+			}
+		}
+		enabled = true;
+		DataAccessMetrics.updateTiming();
+	}
+	/**
+	 * This method turns the profiler off.  The slow operations already kept are kept until clear is called.
+	 */
+	public static synchronized void disable(){
+		enabled = false;
+		DataAccessMetrics.updateTiming();
+	}
+
+	public static boolean isEnabled(){
+		return enabled;
+	}
+
+	public static long getThresholdMillis(){
+		return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+	}
+	/**
+	 * Accessor for the slow operations that are kept.
+	 * @return - a List of the SlowQuerys, oldest first.
+	 */
+	public static synchronized List<SlowQuery> getSlowQueries(){
+		ArrayList<SlowQuery> kept = new ArrayList<SlowQuery>(numKept);
+		int first = (nextSlot - numKept + slowQueries.length) % Math.max(1, slowQueries.length);
+		for(int i = 0; i < numKept; i++){
+			kept.add(slowQueries[(first + i) % slowQueries.length]);
+		}
+		return kept;
+	}
+	/**
+	 * Accessor for the number of slow operations seen since the profiler was last cleared, including those that have since been 
+	 * discarded to make room for newer ones.
+	 */
+	public static synchronized long getSlowQueryCount(){
+		return numRecorded;
+	}
+	/**
+	 * This method discards the slow operations kept so far and the plans remembered for them.
+	 */
+	public static synchronized void clear(){
+		Arrays.fill(slowQueries, null);
+		nextSlot = 0;
+		numKept = 0;
+		numRecorded = 0;
+		synchronized(plans){
+			plans.clear();
+		}
+	}
+	/**
+	 * This method describes every slow operation that is kept, oldest first, along with its plan and index suggestions.
+	 * @return - the description, suitable for a log.
+	 */
+	public static String dump(){
+		List<SlowQuery> kept = getSlowQueries();
+		StringBuilder aBuilder = new StringBuilder();
+		aBuilder.append("SlowQueryProfiler: ").append(kept.size()).append(" of ").append(getSlowQueryCount())
+				.append(" operations slower than ").append(getThresholdMillis()).append(" ms");
+		for(SlowQuery aSlowQuery : kept){
+			aBuilder.append('\n').append(aSlowQuery);
+		}
+		return aBuilder.toString();
+	}
+	/*
+	 * Called for every timed operation while the profiler is on.
+	 */
+	static void operationCompleted(String databaseName, String SQL, ParameterBuffer parameters, int kind, long durationNanos, 
+			long lockWaitNanos, long rows){
+		if(durationNanos < thresholdNanos || SQL == null){
+			return;
+		}
+		/*
+		 * the caller may refill its ParameterBuffer as soon as the operation returns so the plan is captured with a copy.
+		 */
+		Object[] values = parameters == null ? new Object[0] : parameters.toArray();
+		String[] descriptions = new String[values.length];
+		for(int i = 0; i < values.length; i++){
+			descriptions[i] = describe(values[i]);
+		}
+		SlowQuery aSlowQuery = new SlowQuery(databaseName, SQL, normalize(SQL), descriptions, kind, durationNanos, lockWaitNanos, rows);
+		synchronized(SlowQueryProfiler.class){
+			keep(aSlowQuery);
+			numRecorded++;
+		}
+		capturePlan(aSlowQuery, ParameterBuffer.of(values));
+	}
+
+	private static void keep(SlowQuery aSlowQuery){
+		slowQueries[nextSlot] = aSlowQuery;
+		nextSlot = (nextSlot + 1) % slowQueries.length;
+		numKept = Math.min(numKept + 1, slowQueries.length);
+	}
+
+	private static String describe(Object aValue){
+		if(aValue instanceof String){
+			return "'"+aValue+"'";
+		}
+		if(aValue instanceof byte[]){
+			return "<"+((byte[])aValue).length+" byte blob>";
+		}
+		if(aValue instanceof QCBlob){
+			return "<"+((QCBlob)aValue).length()+" byte blob>";
+		}
+		return String.valueOf(aValue);
+	}
+
+	private static void capturePlan(final SlowQuery aSlowQuery, final ParameterBuffer parameters){
+		final String key = aSlowQuery.getDatabaseName()+"\n"+aSlowQuery.getNormalizedSQL();
+		synchronized(plans){
+			Plan aPlan = plans.get(key);
+			if(aPlan != null){
+				aSlowQuery.setPlan(aPlan);
+				return;
+			}
+		}
+		try{
+			planner().execute(new Runnable(){
+				public void run() {
+					Plan aPlan = null;
+					synchronized(plans){
+						aPlan = plans.get(key);
+					}
+					if(aPlan == null){
+						aPlan = explain(aSlowQuery.getDatabaseName(), aSlowQuery.getSQL(), aSlowQuery.getNormalizedSQL(), parameters);
+						if(aPlan.error == null){
+							synchronized(plans){
+								plans.put(key, aPlan);
+							}
+						}
+					}
+					aSlowQuery.setPlan(aPlan);
+				}
+			});
+		}
+		catch(RejectedExecutionException e){
+			aSlowQuery.setPlan(new Plan("too many plans were waiting to be captured."));
+		}
+	}
+
+	private static synchronized ThreadPoolExecutor planner(){
+		if(planner == null){
+			planner = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(PENDING_PLANS), new ThreadFactory(){
+				public Thread newThread(Runnable aRunnable) {
+					Thread aThread = new Thread(aRunnable, "qcdbaccess-profiler");
+					aThread.setDaemon(true);
+					return aThread;
+				}
+			});
+			planner.allowCoreThreadTimeOut(true);
+		}
+		return planner;
+	}
+	/*
+	 * Runs EXPLAIN QUERY PLAN for a statement and picks the full table scans and temporary B-trees out of it.
+	 */
+	static Plan explain(String databaseName, String SQL, String normalizedSQL, ParameterBuffer parameters){
+		try{
+			ColumnarResult aResult = DataAccessObject.queryOpenDatabase(databaseName, "EXPLAIN QUERY PLAN "+SQL, parameters);
+			if(aResult == null){
+				return new Plan("the database "+databaseName+" is not open.");
+			}
+			List<String> tokens = tokenize(normalizedSQL);
+			Map<String,String> tables = tablesOf(tokens);
+			HashMap<String,List<String>> columns = new HashMap<String,List<String>>();
+			ArrayList<String> lines = new ArrayList<String>();
+			ArrayList<String> fullScans = new ArrayList<String>();
+			ArrayList<String> tempBTrees = new ArrayList<String>();
+			HashMap<Long,Integer> depths = new HashMap<Long,Integer>();
+			int detailColumn = aResult.getColumnNames().length - 1;
+			for(int row = 0; row < aResult.getRowCount(); row++){
+				/*
+				 * the id and parent columns give the shape of the plan.  Versions of SQLite before 3.24 have no parent column 
+				 * and their plans are shown flat.
+				 */
+				Integer parentDepth = depths.get(aResult.getLong(row, 1));
+				int depth = parentDepth == null ? 0 : parentDepth + 1;
+				depths.put(aResult.getLong(row, 0), depth);
+				String detail = aResult.getString(row, detailColumn);
+				StringBuilder aLine = new StringBuilder();
+				for(int i = 0; i < depth; i++){
+					aLine.append("  ");
+				}
+				lines.add(aLine.append(detail).toString());
+				if(detail.startsWith("SCAN ") && detail.indexOf(" USING ") < 0 && detail.indexOf("VIRTUAL TABLE") < 0){
+					String name = detail.startsWith("SCAN TABLE ") ? detail.substring(11) : detail.substring(5);
+					int end = name.indexOf(' ');
+					name = end < 0 ? name : name.substring(0, end);
+					String table = tables.get(name.toLowerCase(Locale.US));
+					table = table == null ? name : table;
+					/*
+					 * subqueries and common table expressions are also scanned but have no columns of their own.
+					 */
+					if(!columnsOf(databaseName, table, columns).isEmpty() && !fullScans.contains(table)){
+						fullScans.add(table);
+					}
+				}
+				else if(detail.startsWith("USE TEMP B-TREE FOR ")){
+					tempBTrees.add(detail.substring(20));
+				}
+			}
+			ArrayList<String> hints = new ArrayList<String>();
+			ArrayList<String> targets = new ArrayList<String>(fullScans);
+			if(!tempBTrees.isEmpty() && new HashSet<String>(tables.values()).size() == 1){
+				String onlyTable = tables.values().iterator().next();
+				if(!targets.contains(onlyTable)){
+					targets.add(onlyTable);
+				}
+			}
+			for(String aTable : targets){
+				String aHint = indexHint(aTable, columnsOf(databaseName, aTable, columns), tokens, tables, tempBTrees);
+				if(aHint != null){
+					hints.add(aHint);
+				}
+			}
+			return new Plan(lines, fullScans, tempBTrees, hints);
+		}
+		catch(Exception e){
+			return new Plan(e.toString());
+		}
+	}
+
+	private static List<String> columnsOf(String databaseName, String table, Map<String,List<String>> columns) throws InterruptedException{
+		List<String> names = columns.get(table);
+		if(names == null){
+			names = new ArrayList<String>();
+			ColumnarResult aResult = DataAccessObject.queryOpenDatabase(databaseName, "PRAGMA table_info("+DataAccessObject.quoteIdentifier(table)+")", null);
+			for(int row = 0; aResult != null && row < aResult.getRowCount(); row++){
+				names.add(aResult.getString(row, 1));
+			}
+			columns.put(table, names);
+		}
+		return names;
+	}
+	/*
+	 * Suggests an index on a table made of the columns it is compared to with =, IN or IS followed by either the columns it is 
+	 * sorted or grouped by, if a temporary B-tree does that, or the first column it is compared to with a range.  Conditions 
+	 * joined by OR get no suggestion.
+	 */
+	private static String indexHint(String table, List<String> tableColumns, List<String> tokens, Map<String,String> tables, List<String> tempBTrees){
+		if(tableColumns.isEmpty()){
+			return null;
+		}
+		ArrayList<String> equalities = new ArrayList<String>();
+		ArrayList<String> ranges = new ArrayList<String>();
+		boolean inCondition = false;
+		for(int i = 0; i < tokens.size(); i++){
+			String upper = tokens.get(i).toUpperCase(Locale.US);
+			if(upper.equals("WHERE") || upper.equals("ON")){
+				inCondition = true;
+				continue;
+			}
+			if(upper.equals("GROUP") || upper.equals("ORDER") || upper.equals("LIMIT") || upper.equals("SET") || upper.equals("SELECT") 
+					|| upper.equals("FROM") || upper.equals("JOIN") || upper.equals("RETURNING") || upper.equals("VALUES")){
+				inCondition = false;
+				continue;
+			}
+			if(!inCondition){
+				continue;
+			}
+			if(upper.equals("OR")){
+				/*
+				 * the sides of an OR are searched separately so one index on all of their columns would not help.
+				 */
+				return null;
+			}
+			int afterColumn = columnEnd(tokens, i);
+			if(afterColumn < 0 || afterColumn >= tokens.size()){
+				continue;
+			}
+			String column = columnOf(tokens, i, afterColumn, table, tableColumns, tables);
+			String operator = tokens.get(afterColumn).toUpperCase(Locale.US);
+			boolean equality = operator.equals("=") || operator.equals("==") || operator.equals("IN") 
+					|| (operator.equals("IS") && afterColumn + 1 < tokens.size() && !tokens.get(afterColumn + 1).equalsIgnoreCase("NOT"));
+			boolean range = operator.equals("<") || operator.equals(">") || operator.equals("<=") || operator.equals(">=") 
+					|| operator.equals("BETWEEN") || operator.equals("LIKE") || operator.equals("GLOB");
+			if(column != null && equality && !equalities.contains(column)){
+				equalities.add(column);
+			}
+			else if(column != null && range && !ranges.contains(column)){
+				ranges.add(column);
+			}
+			if(operator.equals("=") || operator.equals("==")){
+				/*
+				 * the other side of a join condition.
+				 */
+				int otherEnd = columnEnd(tokens, afterColumn + 1);
+				if(otherEnd > 0){
+					String other = columnOf(tokens, afterColumn + 1, otherEnd, table, tableColumns, tables);
+					if(other != null && !equalities.contains(other)){
+						equalities.add(other);
+					}
+				}
+			}
+			i = afterColumn;
+		}
+		ArrayList<String> indexColumns = new ArrayList<String>(equalities);
+		List<String> sorted = null;
+		if(tempBTrees.contains("ORDER BY") || tempBTrees.contains("RIGHT PART OF ORDER BY")){
+			sorted = sortColumns(tokens, "ORDER", table, tableColumns, tables);
+		}
+		if(sorted == null && tempBTrees.contains("GROUP BY")){
+			sorted = sortColumns(tokens, "GROUP", table, tableColumns, tables);
+		}
+		if(sorted != null){
+			for(String aColumn : sorted){
+				if(!indexColumns.contains(aColumn)){
+					indexColumns.add(aColumn);
+				}
+			}
+		}
+		else if(!ranges.isEmpty() && !indexColumns.contains(ranges.get(0))){
+			indexColumns.add(ranges.get(0));
+		}
+		if(indexColumns.isEmpty()){
+			return null;
+		}
+		StringBuilder aName = new StringBuilder("idx_").append(table);
+		StringBuilder aList = new StringBuilder();
+		for(String aColumn : indexColumns){
+			aName.append('_').append(aColumn);
+			aList.append(aList.length() == 0 ? "" : ", ").append(DataAccessObject.quoteIdentifier(aColumn));
+		}
+		return "CREATE INDEX "+DataAccessObject.quoteIdentifier(aName.toString())+" ON "+DataAccessObject.quoteIdentifier(table)+"("+aList+")";
+	}
+	/*
+	 * The columns of a table listed after ORDER BY or GROUP BY, or null if something other than plain columns of the table is 
+	 * listed.
+	 */
+	private static List<String> sortColumns(List<String> tokens, String clause, String table, List<String> tableColumns, Map<String,String> tables){
+		for(int i = 0; i + 1 < tokens.size(); i++){
+			if(!tokens.get(i).equalsIgnoreCase(clause) || !tokens.get(i + 1).equalsIgnoreCase("BY")){
+				continue;
+			}
+			ArrayList<String> sorted = new ArrayList<String>();
+			int next = i + 2;
+			while(true){
+				int end = columnEnd(tokens, next);
+				String column = end < 0 ? null : columnOf(tokens, next, end, table, tableColumns, tables);
+				if(column == null){
+					return null;
+				}
+				if(!sorted.contains(column)){
+					sorted.add(column);
+				}
+				next = end;
+				while(next < tokens.size() && (tokens.get(next).equalsIgnoreCase("ASC") || tokens.get(next).equalsIgnoreCase("DESC") 
+						|| tokens.get(next).equalsIgnoreCase("NULLS") || tokens.get(next).equalsIgnoreCase("FIRST") 
+						|| tokens.get(next).equalsIgnoreCase("LAST"))){
+					next++;
+				}
+				if(next < tokens.size() && tokens.get(next).equalsIgnoreCase("COLLATE")){
+					next += 2;
+				}
+				if(next >= tokens.size() || !tokens.get(next).equals(",")){
+					return sorted;
+				}
+				next++;
+			}
+		}
+		return null;
+	}
+	/*
+	 * The position just past a column reference, a name or a qualifier, a period and a name, starting at a position.  -1 if 
+	 * there is no column reference there.
+	 */
+	private static int columnEnd(List<String> tokens, int start){
+		if(start >= tokens.size() || !isName(tokens.get(start))){
+			return -1;
+		}
+		if(start + 2 < tokens.size() && tokens.get(start + 1).equals(".") && isName(tokens.get(start + 2))){
+			return start + 3;
+		}
+		return start + 1;
+	}
+	/*
+	 * The name of the column of the table a column reference refers to, or null if it refers to another table or to no column.
+	 */
+	private static String columnOf(List<String> tokens, int start, int end, String table, List<String> tableColumns, Map<String,String> tables){
+		String name = tokens.get(end - 1);
+		if(end - start == 3){
+			String qualified = tables.get(tokens.get(start).toLowerCase(Locale.US));
+			if(qualified == null || !qualified.equalsIgnoreCase(table)){
+				return null;
+			}
+		}
+		for(String aColumn : tableColumns){
+			if(aColumn.equalsIgnoreCase(name)){
+				return aColumn;
+			}
+		}
+		return null;
+	}
+
+	private static boolean isName(String token){
+		char first = token.charAt(0);
+		return (Character.isLetter(first) || first == '_' || token.length() > 1) && !token.equals("?") 
+				&& !KEYWORDS.contains(token.toUpperCase(Locale.US)) && !isOperator(token);
+	}
+
+	private static boolean isOperator(String token){
+		return token.equals("==") || token.equals("<=") || token.equals(">=") || token.equals("!=") || token.equals("<>") || token.equals("||");
+	}
+	/*
+	 * The tables named after FROM, JOIN, UPDATE and INTO, keyed by the lower case of both their names and their aliases.
+	 */
+	private static Map<String,String> tablesOf(List<String> tokens){
+		LinkedHashMap<String,String> tables = new LinkedHashMap<String,String>();
+		for(int i = 0; i < tokens.size(); i++){
+			String upper = tokens.get(i).toUpperCase(Locale.US);
+			if(!upper.equals("FROM") && !upper.equals("JOIN") && !upper.equals("UPDATE") && !upper.equals("INTO")){
+				continue;
+			}
+			int next = i + 1;
+			while(next < tokens.size()){
+				if(tokens.get(next).equals("(")){
+					next = skipParentheses(tokens, next);
+				}
+				else if(isName(tokens.get(next))){
+					String table = tokens.get(next);
+					next++;
+					if(next + 1 < tokens.size() && tokens.get(next).equals(".") && isName(tokens.get(next + 1))){
+						table = tokens.get(next + 1);
+						next += 2;
+					}
+					tables.put(table.toLowerCase(Locale.US), table);
+					if(next + 1 < tokens.size() && tokens.get(next).equalsIgnoreCase("AS")){
+						next++;
+					}
+					if(next < tokens.size() && isName(tokens.get(next))){
+						tables.put(tokens.get(next).toLowerCase(Locale.US), table);
+						next++;
+					}
+				}
+				else{
+					break;
+				}
+				if(next >= tokens.size() || !tokens.get(next).equals(",")){
+					break;
+				}
+				next++;
+			}
+			i = next - 1;
+		}
+		return tables;
+	}
+	/*
+	 * The position just past the parenthesis that closes the one at a position, and past any alias after it.
+	 */
+	private static int skipParentheses(List<String> tokens, int start){
+		int depth = 0;
+		int next = start;
+		while(next < tokens.size()){
+			String aToken = tokens.get(next++);
+			if(aToken.equals("(")){
+				depth++;
+			}
+			else if(aToken.equals(")") && --depth == 0){
+				break;
+			}
+		}
+		if(next < tokens.size() && tokens.get(next).equalsIgnoreCase("AS")){
+			next++;
+		}
+		if(next < tokens.size() && isName(tokens.get(next))){
+			next++;
+		}
+		return next;
+	}
+	/*
+	 * Splits normalized SQL into names, with any quotes removed, ?, operators and single characters.  Unlike SqlTables 
+	 * tokenize it keeps the comparison operators and the case of names.
+	 */
+	static List<String> tokenize(String SQL){
+		ArrayList<String> tokens = new ArrayList<String>();
+		int length = SQL.length();
+		int i = 0;
+		while(i < length){
+			char c = SQL.charAt(i);
+			if(Character.isWhitespace(c)){
+				i++;
+			}
+			else if(Character.isLetterOrDigit(c) || c == '_'){
+				int end = i;
+				while(end < length && (Character.isLetterOrDigit(SQL.charAt(end)) || SQL.charAt(end) == '_' || SQL.charAt(end) == '$')){
+					end++;
+				}
+				tokens.add(SQL.substring(i, end));
+				i = end;
+			}
+			else if(c == '"' || c == '`' || c == '['){
+				int end = SqlTables.skipQuoted(SQL, i, c == '[' ? ']' : c);
+				String name = SQL.substring(i + 1, Math.max(i + 1, end - 1));
+				tokens.add(c == '[' ? name : name.replace(""+c+c, ""+c));
+				i = end;
+			}
+			else if(i + 1 < length && isOperator(SQL.substring(i, i + 2))){
+				tokens.add(SQL.substring(i, i + 2));
+				i += 2;
+			}
+			else{
+				tokens.add(String.valueOf(c));
+				i++;
+			}
+		}
+		return tokens;
+	}
+	/*
+	 * Replaces the string, number and blob literals of SQL with ?, removes comments, collapses white space and collapses lists 
+	 * of values in IN to a single ?.
+	 */
+	static String normalize(String SQL){
+		StringBuilder aBuilder = new StringBuilder(SQL.length());
+		int length = SQL.length();
+		int i = 0;
+		boolean space = false;
+		while(i < length){
+			char c = SQL.charAt(i);
+			if(Character.isWhitespace(c)){
+				space = true;
+				i++;
+				continue;
+			}
+			if(c == '-' && i + 1 < length && SQL.charAt(i + 1) == '-'){
+				while(i < length && SQL.charAt(i) != '\n'){
+					i++;
+				}
+				space = true;
+				continue;
+			}
+			if(c == '/' && i + 1 < length && SQL.charAt(i + 1) == '*'){
+				int end = SQL.indexOf("*/", i + 2);
+				i = end < 0 ? length : end + 2;
+				space = true;
+				continue;
+			}
+			if(space && aBuilder.length() > 0){
+				aBuilder.append(' ');
+			}
+			space = false;
+			if(c == '\''){
+				i = SqlTables.skipQuoted(SQL, i, '\'');
+				aBuilder.append('?');
+			}
+			else if((c == 'x' || c == 'X') && i + 1 < length && SQL.charAt(i + 1) == '\''){
+				i = SqlTables.skipQuoted(SQL, i + 1, '\'');
+				aBuilder.append('?');
+			}
+			else if(c == '"' || c == '`' || c == '['){
+				int end = SqlTables.skipQuoted(SQL, i, c == '[' ? ']' : c);
+				aBuilder.append(SQL, i, end);
+				i = end;
+			}
+			else if(Character.isDigit(c) || (c == '.' && i + 1 < length && Character.isDigit(SQL.charAt(i + 1)))){
+				i++;
+				while(i < length){
+					char d = SQL.charAt(i);
+					if(Character.isLetterOrDigit(d) || d == '.' || ((d == '+' || d == '-') && (SQL.charAt(i - 1) == 'e' || SQL.charAt(i - 1) == 'E'))){
+						i++;
+					}
+					else{
+						break;
+					}
+				}
+				aBuilder.append('?');
+			}
+			else if(Character.isLetter(c) || c == '_'){
+				int end = i;
+				while(end < length && (Character.isLetterOrDigit(SQL.charAt(end)) || SQL.charAt(end) == '_' || SQL.charAt(end) == '$')){
+					end++;
+				}
+				aBuilder.append(SQL, i, end);
+				i = end;
+			}
+			else{
+				aBuilder.append(c);
+				i++;
+			}
+		}
+		return aBuilder.toString().replaceAll("(?i)\\bIN\\s*\\(\\s*\\?(\\s*,\\s*\\?)*\\s*\\)", "IN (?)");
+	}
+	/*
+	 * What was learned from the EXPLAIN QUERY PLAN of a statement.
+	 */
+	static class Plan {
+		final List<String> lines;
+		final List<String> fullScans;
+		final List<String> tempBTrees;
+		final List<String> indexHints;
+		final String error;
+
+		Plan(List<String> lines, List<String> fullScans, List<String> tempBTrees, List<String> indexHints) {
+			this.lines = Collections.unmodifiableList(lines);
+			this.fullScans = Collections.unmodifiableList(fullScans);
+			this.tempBTrees = Collections.unmodifiableList(tempBTrees);
+			this.indexHints = Collections.unmodifiableList(indexHints);
+			this.error = null;
+		}
+
+		Plan(String error) {
+			this.lines = Collections.emptyList();
+			this.fullScans = Collections.emptyList();
+			this.tempBTrees = Collections.emptyList();
+			this.indexHints = Collections.emptyList();
+			this.error = error;
+		}
+	}
+}
@@ -0,0 +1,230 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A RowCursor over the rows of a query result that was spilled to a file in the binary row format.  One block of rows is in 
+ * memory at a time and the values of the current row are decoded only as they are asked for.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+class SpillCursor implements RowCursor {
+	private final FileInputStream anInput;
+	private final FileChannel aChannel;
+	private final String[] columnNames;
+	private final ByteBuffer aBlockHeader = ByteBuffer.allocate(BinaryRowFormat.BLOCK_HEADER_BYTES);
+	private byte[] block = new byte[0];
+	private int position;
+	private int rowsLeftInBlock = 0;
+	private boolean endOfFile = false;
+	private final int[] types;
+	private final long[] numbers;
+	private final int[] offsets;
+	private final int[] lengths;
+
+	SpillCursor(File aFile) throws IOException {
+		this.anInput = new FileInputStream(aFile);
+		this.aChannel = anInput.getChannel();
+		try{
+			this.columnNames = BinaryRowFormat.readHeader(aChannel);
+		}
+		catch(IOException e){
+			anInput.close();
+			throw e;
+		}
+		this.types = new int[columnNames.length];
+		this.numbers = new long[columnNames.length];
+		this.offsets = new int[columnNames.length];
+		this.lengths = new int[columnNames.length];
+	}
+
+	public String[] getColumnNames() {
+		return columnNames;
+	}
+
+	public boolean moveToNext() {
+		while(rowsLeftInBlock == 0){
+			if(endOfFile || !readBlock()){
+				return false;
+			}
+		}
+		for(int i = 0; i < types.length; i++){
+			int type = block[position++];
+			types[i] = type;
+			if(type == ColumnarResult.TYPE_NULL){
+				continue;
+			}
+			if(type == ColumnarResult.TYPE_DOUBLE){
+				long bits = 0;
+				for(int j = 0; j < 8; j++){
+					bits = (bits << 8) | (block[position++] & 0xff);
+				}
+				numbers[i] = bits;
+				continue;
+			}
+			long value = 0;
+			int shift = 0;
+			byte aByte;
+			do{
+				aByte = block[position++];
+				value |= (long)(aByte & 0x7f) << shift;
+				shift += 7;
+			}while((aByte & 0x80) != 0);
+			if(type == ColumnarResult.TYPE_LONG){
+				numbers[i] = (value >>> 1) ^ -(value & 1);
+			}
+			else{
+				offsets[i] = position;
+				lengths[i] = (int)value;
+				position += (int)value;
+			}
+		}
+		rowsLeftInBlock--;
+		return true;
+	}
+
+	private boolean readBlock(){
+		try{
+			aBlockHeader.clear();
+			BinaryRowFormat.readFully(aChannel, aBlockHeader);
+			int length = aBlockHeader.getInt(0);
+			if(length == 0){
+				endOfFile = true;
+				return false;
+			}
+			if(block.length < length){
+				block = new byte[length];
+			}
+			BinaryRowFormat.readFully(aChannel, ByteBuffer.wrap(block, 0, length));
+			position = 0;
+			rowsLeftInBlock = aBlockHeader.getInt(4);
+			return true;
+		}
+		catch(IOException e){
+			throw new IllegalStateException("unable to read a spilled query result. "+e.getLocalizedMessage());
+		}
+	}
+
+	public int getType(int column) {
+		return types[column];
+	}
+
+	public boolean isNull(int column) {
+		return types[column] == ColumnarResult.TYPE_NULL;
+	}
+
+	public long getLong(int column) {
+		switch(types[column]){
+			case ColumnarResult.TYPE_LONG:
+				return numbers[column];
+			case ColumnarResult.TYPE_DOUBLE:
+				return (long)Double.longBitsToDouble(numbers[column]);
+			case ColumnarResult.TYPE_NULL:
+				return 0;
+			default:
+				try{
+					return (long)Double.parseDouble(getString(column));
+				}
+				catch(NumberFormatException e){
+					return 0;
+				}
+		}
+	}
+
+	public double getDouble(int column) {
+		switch(types[column]){
+			case ColumnarResult.TYPE_LONG:
+				return numbers[column];
+			case ColumnarResult.TYPE_DOUBLE:
+				return Double.longBitsToDouble(numbers[column]);
+			case ColumnarResult.TYPE_NULL:
+				return 0;
+			default:
+				try{
+					return Double.parseDouble(getString(column));
+				}
+				catch(NumberFormatException e){
+					return 0;
+				}
+		}
+	}
+
+	public String getString(int column) {
+		switch(types[column]){
+			case ColumnarResult.TYPE_LONG:
+				return Long.toString(numbers[column]);
+			case ColumnarResult.TYPE_DOUBLE:
+				return ColumnarResult.formatDouble(Double.longBitsToDouble(numbers[column]));
+			case ColumnarResult.TYPE_NULL:
+				return null;
+			default:
+				return new String(block, offsets[column], lengths[column], StandardCharsets.UTF_8);
+		}
+	}
+
+	public void appendString(int column, StringBuilder aBuilder) {
+		switch(types[column]){
+			case ColumnarResult.TYPE_LONG:
+				aBuilder.append(numbers[column]);
+				break;
+			case ColumnarResult.TYPE_DOUBLE:
+				aBuilder.append(ColumnarResult.formatDouble(Double.longBitsToDouble(numbers[column])));
+				break;
+			case ColumnarResult.TYPE_NULL:
+				break;
+			default:
+				aBuilder.append(getString(column));
+		}
+	}
+
+	public byte[] getBlob(int column) {
+		switch(types[column]){
+			case ColumnarResult.TYPE_NULL:
+				return null;
+			case ColumnarResult.TYPE_STRING:
+			case ColumnarResult.TYPE_BLOB:
+				byte[] aBlob = new byte[lengths[column]];
+				System.arraycopy(block, offsets[column], aBlob, 0, aBlob.length);
+				return aBlob;
+			default:
+				return getString(column).getBytes(StandardCharsets.UTF_8);
+		}
+	}
+
+	public void close() {
+		try{
+			anInput.close();
+		}
+		catch(IOException e){
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * A SpilledResult holds the rows of a query that did not fit in its memory budget.  The rows are kept in a temporary file in 
+ * a compact binary row format and are read back one block at a time as they are iterated over, so a result of any size can 
+ * be used without filling the heap.  DataAccessResult getColumnarResults and getResults read all of the rows into memory 
+ * the first time they are called, so use iterate to keep the memory bounded.
+ * <br/>
+ * The file is deleted when the SpilledResult is closed or, if it is never closed, after it has been garbage collected.  The 
+ * file is written to the QCBlob spill directory.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public class SpilledResult implements Closeable {
+	private final File aFile;
+	private final String[] columnNames;
+	private final int rowCount;
+	private volatile boolean closed = false;
+
+	SpilledResult(File aFile, String[] columnNames, int rowCount) {
+		this.aFile = aFile;
+		this.columnNames = columnNames;
+		this.rowCount = rowCount;
+	}
+	/**
+	 * Accessor for the field names of the query.
+	 * @return - An array of Strings containing all the field names.
+	 */
+	public String[] getColumnNames() {
+		return columnNames;
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+	/**
+	 * Accessor for the size of the file holding the rows.
+	 * @return - the number of bytes in the file.
+	 */
+	public long getFileBytes() {
+		return aFile.length();
+	}
+	/**
+	 * Opens an iterator over the rows.  Any number of iterators may be open at once and each should be closed when it is no 
+	 * longer needed.  No database lock is held while iterating.
+	 * @return - a RowIterator that starts at the first row.
+	 * @throws DataAccessException - if the SpilledResult has been closed or its file can not be read.
+	 */
+	public RowIterator iterate() throws DataAccessException {
+		if(closed){
+			throw new DataAccessException("Error: the spilled query result has been closed.");
+		}
+		try{
+			return new RowIterator(new SpillCursor(aFile));
+		}
+		catch(IOException e){
+			throw new DataAccessException("Error: unable to read the spilled query result. "+e.getLocalizedMessage());
+		}
+	}
+	/*
+	 * Reads all of the rows into memory, counting them against the result memory budgets.
+	 */
+	ColumnarResult load() throws DataAccessException {
+		if(closed){
+			throw new DataAccessException("Error: the spilled query result has been closed.");
+		}
+		try{
+			return ResultMemory.load(this);
+		}
+		catch(IOException e){
+			throw new DataAccessException("Error: unable to read the spilled query result. "+e.getLocalizedMessage());
+		}
+	}
+	File file() {
+		return aFile;
+	}
+	/**
+	 * Deletes the file holding the rows.  Iterators that are already open may fail once it is deleted.
+	 */
+	public void close() {
+		closed = true;
+		aFile.delete();
+	}
+	/*
+	 * Writes the rows of a result that went over its memory budget to a temporary file.  The rows already read into memory are 
+	 * written first and the rest are read from the cursor.
+	 */
+	static class Writer {
+		private final File aFile;
+		private final FileOutputStream anOutput;
+		private final FileChannel aChannel;
+		private final String[] columnNames;
+		private final TransferBuffer aBlock = new TransferBuffer(BinaryRowFormat.BLOCK_BYTES + 4096);
+		private final StringBuilder text = new StringBuilder();
+		private int rowsInBlock = 0;
+		private int rowCount = 0;
+
+		Writer(String[] columnNames) throws IOException {
+			this.columnNames = columnNames;
+			this.aFile = File.createTempFile("qcresult", ".tmp", QCBlob.spillDirectory());
+			this.anOutput = new FileOutputStream(aFile);
+			this.aChannel = anOutput.getChannel();
+			BinaryRowFormat.writeHeader(aBlock, columnNames);
+			aBlock.writeTo(aChannel);
+			BinaryRowFormat.startBlock(aBlock);
+		}
+
+		void writeRows(ColumnarResult aResult) throws IOException {
+			int numRows = aResult.getRowCount();
+			for(int row = 0; row < numRows; row++){
+				BinaryRowFormat.writeRow(aBlock, aResult, row);
+				rowWritten();
+			}
+		}
+
+		void writeRow(DataAccessRow aRow) throws IOException {
+			BinaryRowFormat.writeRow(aBlock, aRow, text);
+			rowWritten();
+		}
+
+		private void rowWritten() throws IOException {
+			rowCount++;
+			rowsInBlock++;
+			if(aBlock.size() >= BinaryRowFormat.BLOCK_BYTES){
+				BinaryRowFormat.endBlock(aBlock, rowsInBlock);
+				aBlock.writeTo(aChannel);
+				BinaryRowFormat.startBlock(aBlock);
+				rowsInBlock = 0;
+			}
+		}
+
+		SpilledResult finish() throws IOException {
+			if(rowsInBlock > 0){
+				BinaryRowFormat.endBlock(aBlock, rowsInBlock);
+				aBlock.writeTo(aChannel);
+				BinaryRowFormat.startBlock(aBlock);
+			}
+			BinaryRowFormat.endBlock(aBlock, 0);
+			aBlock.writeTo(aChannel);
+			anOutput.close();
+			return new SpilledResult(aFile, columnNames, rowCount);
+		}
+		/*
+		 * Closes and deletes the file after a failure.
+		 */
+		void discard() {
+			try{
+				anOutput.close();
+			}
+			catch(IOException e){
+				e.printStackTrace();
+			}
+			aFile.delete();
+		}
+	}
+}
@@ -0,0 +1,255 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/*
+ * A small, forgiving scanner that finds the tables an SQL statement reads from or writes to.  It does not validate the 
+ * SQL.  Callers treat a null answer as 'could be any table'.
+ */
+class SqlTables {
+	private static final HashSet<String> KEYWORDS = new HashSet<String>();
+	static{
+		String[] words = {"where", "group", "order", "limit", "having", "union", "intersect", "except", "on", "using", "join", 
+				"inner", "outer", "left", "right", "cross", "natural", "full", "as", "set", "values", "select", "from", "window", 
+				"indexed", "not", "returning", "default"};
+		for(int i = 0; i < words.length; i++){
+			KEYWORDS.add(words[i]);
+		}
+	}
+
+	private static final HashSet<String> FROM_ENDS = new HashSet<String>();
+	static{
+		String[] words = {"where", "group", "order", "limit", "having", "union", "intersect", "except", "window", "returning", 
+				"select", "set", "values"};
+		for(int i = 0; i < words.length; i++){
+			FROM_ENDS.add(words[i]);
+		}
+	}
+
+	/*
+	 * SQLite functions that can return a different value each time they are called without any table changing.
+	 */
+	private static final HashSet<String> VOLATILE_FUNCTIONS = new HashSet<String>();
+	static{
+		String[] words = {"random", "randomblob", "changes", "total_changes", "last_insert_rowid", "date", "time", "datetime", 
+				"julianday", "strftime", "unixepoch", "timediff", "current_date", "current_time", "current_timestamp"};
+		for(int i = 0; i < words.length; i++){
+			VOLATILE_FUNCTIONS.add(words[i]);
+		}
+	}
+
+	private SqlTables(){}
+	/*
+	 * Only plain queries are worth caching or observing.  Statements such as PRAGMA can return different values without 
+	 * any table changing.
+	 */
+	static boolean isQuery(String SQL){
+		ArrayList<String> tokens = tokenize(SQL);
+		return !tokens.isEmpty() && (tokens.get(0).equals("select") || tokens.get(0).equals("with"));
+	}
+	/*
+	 * The names, in lower case, of every table named in a FROM clause anywhere in the statement including sub queries.
+	 */
+	static Set<String> readTables(String SQL){
+		ArrayList<String> tokens = tokenize(SQL);
+		HashSet<String> tables = new HashSet<String>();
+		//one entry per open parenthesis, true while the tokens at that depth are part of a FROM clause
+		boolean[] inFrom = new boolean[tokens.size() + 1];
+		int depth = 0;
+		int numTokens = tokens.size();
+		for(int i = 0; i < numTokens; i++){
+			String aToken = tokens.get(i);
+			if(aToken.equals("(")){
+				depth++;
+				inFrom[depth] = false;
+				continue;
+			}
+			if(aToken.equals(")")){
+				depth = Math.max(0, depth - 1);
+				continue;
+			}
+			if(aToken.equals("from")){
+				inFrom[depth] = true;
+			}
+			else if(FROM_ENDS.contains(aToken)){
+				inFrom[depth] = false;
+				continue;
+			}
+			if(!inFrom[depth] || !(aToken.equals("from") || aToken.equals("join") || aToken.equals(","))){
+				continue;
+			}
+			int j = skipQualifier(tokens, i + 1);
+			if(j < numTokens && isName(tokens.get(j))){
+				tables.add(tokens.get(j));
+			}
+		}
+		return tables;
+	}
+	/*
+	 * True if the statement calls a function whose value can change without any table changing, such as random() or 
+	 * datetime('now').  Date and time functions are counted even when they are given a fixed time since the string 
+	 * literals are not read.
+	 */
+	static boolean callsVolatileFunction(String SQL){
+		ArrayList<String> tokens = tokenize(SQL);
+		int numTokens = tokens.size();
+		for(int i = 0; i < numTokens; i++){
+			String aToken = tokens.get(i);
+			if(!VOLATILE_FUNCTIONS.contains(aToken)){
+				continue;
+			}
+			//CURRENT_TIMESTAMP and its kin are used without parentheses
+			if(aToken.startsWith("current_") || (i + 1 < numTokens && tokens.get(i + 1).equals("("))){
+				return true;
+			}
+		}
+		return false;
+	}
+	/*
+	 * The name, in lower case, of the table an INSERT, REPLACE, UPDATE or DELETE statement changes or null for any other 
+	 * kind of statement.
+	 */
+	static String writtenTable(String SQL){
+		ArrayList<String> tokens = tokenize(SQL);
+		int numTokens = tokens.size();
+		if(numTokens == 0){
+			return null;
+		}
+		String verb = tokens.get(0);
+		int i = 1;
+		if(verb.equals("insert") || verb.equals("replace")){
+			while(i < numTokens && !tokens.get(i).equals("into")){
+				i++;
+			}
+			i++;
+		}
+		else if(verb.equals("update")){
+			if(i < numTokens && tokens.get(i).equals("or")){
+				i += 2;
+			}
+		}
+		else if(verb.equals("delete")){
+			if(i < numTokens && tokens.get(i).equals("from")){
+				i++;
+			}
+		}
+		else{
+			return null;
+		}
+		i = skipQualifier(tokens, i);
+		if(i < numTokens && isName(tokens.get(i))){
+			return tokens.get(i);
+		}
+		return null;
+	}
+
+	private static int skipQualifier(ArrayList<String> tokens, int i){
+		//schema.table names the table after the dot
+		if(i + 2 < tokens.size() && tokens.get(i + 1).equals(".")){
+			return i + 2;
+		}
+		return i;
+	}
+
+	private static boolean isName(String aToken){
+		if(aToken.length() == 0 || KEYWORDS.contains(aToken)){
+			return false;
+		}
+		char first = aToken.charAt(0);
+		return Character.isLetter(first) || first == '_';
+	}
+	/*
+	 * Splits the statement into lower case words, quoted identifiers without their quotes, and the punctuation marks 
+	 * ( ) , and .  String literals, numbers, comments and other punctuation are dropped.
+	 */
+	static ArrayList<String> tokenize(String SQL){
+		ArrayList<String> tokens = new ArrayList<String>();
+		int length = SQL.length();
+		int i = 0;
+		while(i < length){
+			char c = SQL.charAt(i);
+			if(Character.isWhitespace(c)){
+				i++;
+			}
+			else if(c == '-' && i + 1 < length && SQL.charAt(i + 1) == '-'){
+				while(i < length && SQL.charAt(i) != '\n'){
+					i++;
+				}
+			}
+			else if(c == '/' && i + 1 < length && SQL.charAt(i + 1) == '*'){
+				int end = SQL.indexOf("*/", i + 2);
+				i = end < 0 ? length : end + 2;
+			}
+			else if(c == '\''){
+				i = skipQuoted(SQL, i, '\'');
+			}
+			else if(c == '"' || c == '`' || c == '['){
+				char close = c == '[' ? ']' : c;
+				int end = skipQuoted(SQL, i, close);
+				String name = SQL.substring(i + 1, Math.max(i + 1, end - 1));
+				//a leading underscore keeps quoted names that start with a digit from looking like numbers
+				tokens.add(Character.isLetter(name.length() > 0 ? name.charAt(0) : '_') ? name.toLowerCase(Locale.US) : "_"+name.toLowerCase(Locale.US));
+				i = end;
+			}
+			else if(Character.isLetterOrDigit(c) || c == '_' || c == '$'){
+				int start = i;
+				while(i < length && (Character.isLetterOrDigit(SQL.charAt(i)) || SQL.charAt(i) == '_' || SQL.charAt(i) == '$')){
+					i++;
+				}
+				tokens.add(SQL.substring(start, i).toLowerCase(Locale.US));
+			}
+			else{
+				if(c == '(' || c == ')' || c == ',' || c == '.' || c == ';'){
+					tokens.add(String.valueOf(c));
+				}
+				i++;
+			}
+		}
+		return tokens;
+	}
+
+	/*
+	 * The position just past a quoted string or name that starts at a position.
+	 */
+	static int skipQuoted(String SQL, int start, char close){
+		int i = start + 1;
+		int length = SQL.length();
+		while(i < length){
+			if(SQL.charAt(i) == close){
+				//a doubled quote is an escaped quote
+				if(close != ']' && i + 1 < length && SQL.charAt(i + 1) == close){
+					i += 2;
+					continue;
+				}
+				return i + 1;
+			}
+			i++;
+		}
+		return length;
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is a container for the timings of the startup work done by DatabaseStartup.  The time spent in each phase, copying 
+ * a database from the assets directory, opening it, and warming it up, is recorded for each database in milliseconds.  The copy 
+ * and open of a database that was already open are recorded as 0.  Warm up phases that were not asked for, and phases that 
+ * were not reached because an earlier one failed, are not recorded.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public class StartupReport {
+	public static final String PHASE_COPY = "copy";
+	public static final String PHASE_OPEN = "open";
+	public static final String PHASE_WARM_PAGE_CACHE = "warmPageCache";
+	public static final String PHASE_WARM_STATEMENTS = "warmStatements";
+
+	private final LinkedHashMap<String,LinkedHashMap<String,Long>> timings = new LinkedHashMap<String,LinkedHashMap<String,Long>>();
+	private final LinkedHashMap<String,String> errors = new LinkedHashMap<String,String>();
+	private final CountDownLatch warmUpDone;
+	private long totalMillis;
+
+	StartupReport(int numWarmUps) {
+		warmUpDone = new CountDownLatch(numWarmUps);
+	}
+
+	synchronized void record(String databaseName, String phase, long nanos){
+		LinkedHashMap<String,Long> phases = timings.get(databaseName);
+		if(phases == null){
+			phases = new LinkedHashMap<String,Long>();
+			timings.put(databaseName, phases);
+		}
+		phases.put(phase, TimeUnit.NANOSECONDS.toMillis(nanos));
+	}
+
+	synchronized void recordError(String databaseName, String errorDescription){
+		errors.put(databaseName, errorDescription);
+	}
+
+	synchronized void setTotalNanos(long nanos){
+		totalMillis = TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+
+	void warmUpFinished(){
+		warmUpDone.countDown();
+	}
+	/**
+	 * Accessor for the time a phase took for a database.
+	 * @param databaseName - the name of the database.
+	 * @param phase - one of the PHASE_ constants of this class.
+	 * @return - the number of milliseconds the phase took, 0 if it was not needed, or -1 if it was not recorded.
+	 */
+	public synchronized long getPhaseMillis(String databaseName, String phase){
+		Map<String,Long> phases = timings.get(databaseName);
+		Long millis = phases == null ? null : phases.get(phase);
+		return millis == null ? -1 : millis;
+	}
+	/**
+	 * Accessor for all of the recorded timings.
+	 * @return - A Map from each database name to a Map from phase name to milliseconds.
+	 */
+	public synchronized Map<String,Map<String,Long>> getTimings(){
+		LinkedHashMap<String,Map<String,Long>> aCopy = new LinkedHashMap<String,Map<String,Long>>();
+		for(Map.Entry<String,LinkedHashMap<String,Long>> anEntry : timings.entrySet()){
+			aCopy.put(anEntry.getKey(), Collections.unmodifiableMap(new LinkedHashMap<String,Long>(anEntry.getValue())));
+		}
+		return aCopy;
+	}
+	/**
+	 * Accessor for the errors that kept databases from being opened or warmed up.
+	 * @return - A Map from each database name to a description of its error.
+	 */
+	public synchronized Map<String,String> getErrors(){
+		return new LinkedHashMap<String,String>(errors);
+	}
+	/**
+	 * Accessor for the time taken to open all of the databases, not including background warm up.
+	 */
+	public synchronized long getTotalMillis(){
+		return totalMillis;
+	}
+	/**
+	 * This method waits for any background warm up to finish.
+	 * @param timeoutMillis - the longest time to wait.
+	 * @return - <b>true</b> if the warm up finished, <b>false</b> if the time ran out first.
+	 * @throws InterruptedException
+	 */
+	public boolean awaitWarmUp(long timeoutMillis) throws InterruptedException{
+		return warmUpDone.await(timeoutMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "StartupReport total: "+totalMillis+" ms "+timings+(errors.isEmpty() ? "" : " errors: "+errors);
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least recently used cache of compiled statements for a single database.  Statements are keyed by
+ * their SQL text so the parsing and planning done by SQLite happens only once per distinct statement instead of
+ * once per call.  A statement that is dropped from the cache while it is checked out is closed when it is released rather 
+ * than out from under its user.
+ *
+ * @author Lee S. Barney
+ *
+ */
+class StatementCache {
+	private final DatabaseConnection database;
+	private final LinkedHashMap<String,CompiledStatement> statements;
+	/*
+	 * the number of times each statement is currently checked out.
+	 */
+	private final IdentityHashMap<CompiledStatement,Integer> checkedOut = new IdentityHashMap<CompiledStatement,Integer>();
+	private int maxSize;
+
+	StatementCache(DatabaseConnection database, int maxSize) {
+		this.database = database;
+		this.maxSize = maxSize;
+		/*
+		 * access ordered so that iteration starts with the least recently used statement.
+		 */
+		this.statements = new LinkedHashMap<String,CompiledStatement>(16, 0.75f, true){
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String,CompiledStatement> eldest) {
+				if(size() > StatementCache.this.maxSize){
+					discard(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+	/*
+	 * Returns a compiled statement for the SQL with all of its bindings cleared.  If the statement has been
+	 * compiled before the cached copy is reused.
+	 */
+	synchronized CompiledStatement acquire(String SQL){
+		CompiledStatement aStatement = statements.get(SQL);
+		if(aStatement != null){
+			DataAccessObject.statementCacheHits.incrementAndGet();
+			aStatement.clearBindings();
+			checkOut(aStatement);
+			return aStatement;
+		}
+		DataAccessObject.statementCacheMisses.incrementAndGet();
+		aStatement = database.compileStatement(SQL);
+		checkOut(aStatement);
+		if(maxSize > 0){
+			statements.put(SQL, aStatement);
+		}
+		return aStatement;
+	}
+	/*
+	 * Hands a statement back after use.  Statements that were not kept because caching is turned off, or that were dropped from 
+	 * the cache while they were checked out, are closed.
+	 */
+	synchronized void release(String SQL, CompiledStatement aStatement){
+		Integer aCount = checkedOut.remove(aStatement);
+		if(aCount != null && aCount > 1){
+			checkedOut.put(aStatement, aCount - 1);
+		}
+		if(statements.get(SQL) != aStatement){
+			discard(aStatement);
+		}
+		else{
+			aStatement.clearBindings();
+		}
+	}
+
+	synchronized void setMaxSize(int maxSize){
+		this.maxSize = maxSize;
+		Iterator<CompiledStatement> statementIt = statements.values().iterator();
+		while(statements.size() > maxSize && statementIt.hasNext()){
+			CompiledStatement aStatement = statementIt.next();
+			statementIt.remove();
+			discard(aStatement);
+		}
+	}
+
+	synchronized int size(){
+		return statements.size();
+	}
+
+	synchronized void clear(){
+		Iterator<CompiledStatement> statementIt = statements.values().iterator();
+		while(statementIt.hasNext()){
+			CompiledStatement aStatement = statementIt.next();
+			statementIt.remove();
+			discard(aStatement);
+		}
+	}
+
+	private void checkOut(CompiledStatement aStatement){
+		Integer aCount = checkedOut.get(aStatement);
+		checkedOut.put(aStatement, aCount == null ? 1 : aCount + 1);
+	}
+	/*
+	 * Closes a statement that is no longer in the cache unless it is checked out, in which case release closes it.
+	 */
+	private void discard(CompiledStatement aStatement){
+		if(!checkedOut.containsKey(aStatement)){
+			aStatement.close();
+		}
+	}
+}
@@ -0,0 +1,43 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.util.Set;
+
+/**
+ * A TableChangeListener is told about the tables of a database that were changed by a committed DataAccessObject write or 
+ * transaction.  Listeners are called on the thread that committed the change, after the change is committed and before the 
+ * committing call returns, so they should do as little as possible.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public interface TableChangeListener {
+	/**
+	 * Called after a write or transaction that changed one or more tables of a database has been committed.
+	 * @param databaseName - the name of the database that was changed.
+	 * @param tables - the lower case names of the changed tables or null if the change could have affected any table, for 
+	 * example after a CREATE, DROP or ALTER statement.
+	 */
+	public void tablesChanged(String databaseName, Set<String> tables);
+}
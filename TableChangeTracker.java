@@ -0,0 +1,132 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/*
+ * Collects the tables each thread changes during its transactions and tells the registered TableChangeListeners about 
+ * them once the outermost transaction is committed.  Changes that are rolled back are never reported.  The result cache is 
+ * told before any other listener so a listener that queries the changed tables never reads a result cached before the change.
+ */
+class TableChangeTracker {
+	private static final CopyOnWriteArrayList<TableChangeListener> listeners = new CopyOnWriteArrayList<TableChangeListener>();
+	private static volatile QueryResultCache resultCache;
+	/*
+	 * the tables changed by the current thread per database.  A null set means any table may have changed.
+	 */
+	private static final ThreadLocal<HashMap<String,HashSet<String>>> pendingChanges = new ThreadLocal<HashMap<String,HashSet<String>>>(){
+		@Override
+		protected HashMap<String,HashSet<String>> initialValue() {
+			return new HashMap<String,HashSet<String>>();
+		}
+	};
+
+	private TableChangeTracker(){}
+
+	static void addListener(TableChangeListener aListener){
+		listeners.addIfAbsent(aListener);
+	}
+
+	static void removeListener(TableChangeListener aListener){
+		listeners.remove(aListener);
+	}
+
+	static void setResultCache(QueryResultCache aResultCache){
+		resultCache = aResultCache;
+	}
+
+	static boolean hasListeners(){
+		return resultCache != null || !listeners.isEmpty();
+	}
+	/*
+	 * Records that the current thread executed a write against a database.  It must be called while the thread's 
+	 * transaction on that database is open.
+	 */
+	static void recordWrite(String databaseName, String SQL){
+		HashMap<String,HashSet<String>> changes = pendingChanges.get();
+		boolean known = changes.containsKey(databaseName);
+		HashSet<String> tables = changes.get(databaseName);
+		if(known && tables == null){
+			//already marked as changing every table
+			return;
+		}
+		if(!hasListeners()){
+			/*
+			 * with nothing listening the changed table is not worked out.  The write is still recorded, as a change to any 
+			 * table, so a listener that registers before the transaction commits is told about it.
+			 */
+			changes.put(databaseName, null);
+			return;
+		}
+		String aTable = SqlTables.writtenTable(SQL);
+		if(aTable == null){
+			changes.put(databaseName, null);
+			return;
+		}
+		if(tables == null){
+			tables = new HashSet<String>();
+			changes.put(databaseName, tables);
+		}
+		tables.add(aTable);
+	}
+	/*
+	 * Called when the current thread's outermost transaction on a database ends.
+	 */
+	static void transactionEnded(String databaseName, boolean committed){
+		HashMap<String,HashSet<String>> changes = pendingChanges.get();
+		if(!changes.containsKey(databaseName)){
+			return;
+		}
+		HashSet<String> tables = changes.remove(databaseName);
+		if(committed){
+			fire(databaseName, tables);
+		}
+	}
+	/*
+	 * Tells every listener that any table of the database may have changed, for example when it is closed.
+	 */
+	static void databaseChanged(String databaseName){
+		fire(databaseName, null);
+	}
+
+	private static void fire(String databaseName, Set<String> tables){
+		QueryResultCache aResultCache = resultCache;
+		if(aResultCache != null){
+			aResultCache.invalidate(databaseName, tables);
+		}
+		Iterator<TableChangeListener> listenerIt = listeners.iterator();
+		while(listenerIt.hasNext()){
+			try{
+				listenerIt.next().tablesChanged(databaseName, tables);
+			}
+			catch(RuntimeException e){
+				e.printStackTrace();
+			}
+		}
+	}
+}
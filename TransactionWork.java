@@ -0,0 +1,45 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.lang.ref.WeakReference;
+
+import android.content.Context;
+
+/**
+ * A TransactionWork is a unit of work that AsyncDataAccessObject executes inside a single database transaction on one of its 
+ * threads.  Every DataAccessObject call made from the execute method against the transaction's database is part of the transaction.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public interface TransactionWork {
+	/**
+	 * Does the work of the transaction.  The transaction is committed when this method returns and rolled back if it throws.
+	 * @param aContextRef - the Context reference the transaction was started with.
+	 * @param databaseName - the name of the database the transaction was started on.
+	 * @return - the DataAccessResult used to complete the CompletableFuture of the transaction.
+	 * @throws Exception
+	 */
+	public DataAccessResult execute(WeakReference<Context> aContextRef, String databaseName) throws Exception;
+}
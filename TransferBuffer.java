@@ -0,0 +1,202 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A growable array of bytes that rows are encoded into by the BulkTransfer exports before the bytes are written to a FileChannel.  
+ * Text is encoded as UTF-8 straight from a CharSequence so no String or byte array is created for each value.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+class TransferBuffer {
+	private static final byte[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes();
+	private byte[] bytes;
+	private int size = 0;
+
+	TransferBuffer(int initialSize) {
+		this.bytes = new byte[initialSize];
+	}
+
+	int size(){
+		return size;
+	}
+
+	void clear(){
+		size = 0;
+	}
+
+	void put(byte aByte){
+		if(size == bytes.length){
+			grow(1);
+		}
+		bytes[size++] = aByte;
+	}
+
+	void put(byte[] someBytes, int offset, int length){
+		if(size + length > bytes.length){
+			grow(length);
+		}
+		System.arraycopy(someBytes, offset, bytes, size, length);
+		size += length;
+	}
+
+	void putInt(int value){
+		if(size + 4 > bytes.length){
+			grow(4);
+		}
+		bytes[size++] = (byte)(value >>> 24);
+		bytes[size++] = (byte)(value >>> 16);
+		bytes[size++] = (byte)(value >>> 8);
+		bytes[size++] = (byte)value;
+	}
+
+	void setInt(int position, int value){
+		bytes[position] = (byte)(value >>> 24);
+		bytes[position + 1] = (byte)(value >>> 16);
+		bytes[position + 2] = (byte)(value >>> 8);
+		bytes[position + 3] = (byte)value;
+	}
+
+	void putLong(long value){
+		putInt((int)(value >>> 32));
+		putInt((int)value);
+	}
+	/*
+	 * Writes an unsigned value seven bits at a time, low bits first, with the high bit of each byte set when more bytes follow.
+	 */
+	void putVarint(long value){
+		if(size + 10 > bytes.length){
+			grow(10);
+		}
+		while((value & ~0x7fL) != 0){
+			bytes[size++] = (byte)((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		bytes[size++] = (byte)value;
+	}
+	/*
+	 * Writes the characters from start up to end as UTF-8.  An unpaired surrogate is written as a question mark.
+	 */
+	void putUtf8(CharSequence text, int start, int end){
+		if(size + (end - start) * 3 > bytes.length){
+			grow((end - start) * 3);
+		}
+		for(int i = start; i < end; i++){
+			char aChar = text.charAt(i);
+			if(aChar < 0x80){
+				bytes[size++] = (byte)aChar;
+			}
+			else if(aChar < 0x800){
+				bytes[size++] = (byte)(0xc0 | (aChar >> 6));
+				bytes[size++] = (byte)(0x80 | (aChar & 0x3f));
+			}
+			else if(Character.isHighSurrogate(aChar) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))){
+				int codePoint = Character.toCodePoint(aChar, text.charAt(++i));
+				bytes[size++] = (byte)(0xf0 | (codePoint >> 18));
+				bytes[size++] = (byte)(0x80 | ((codePoint >> 12) & 0x3f));
+				bytes[size++] = (byte)(0x80 | ((codePoint >> 6) & 0x3f));
+				bytes[size++] = (byte)(0x80 | (codePoint & 0x3f));
+			}
+			else if(Character.isSurrogate(aChar)){
+				bytes[size++] = '?';
+			}
+			else{
+				bytes[size++] = (byte)(0xe0 | (aChar >> 12));
+				bytes[size++] = (byte)(0x80 | ((aChar >> 6) & 0x3f));
+				bytes[size++] = (byte)(0x80 | (aChar & 0x3f));
+			}
+		}
+	}
+	/*
+	 * The number of bytes putUtf8 writes for the same characters.
+	 */
+	static int utf8Length(CharSequence text){
+		int length = text.length();
+		int numBytes = 0;
+		for(int i = 0; i < length; i++){
+			char aChar = text.charAt(i);
+			if(aChar < 0x80){
+				numBytes++;
+			}
+			else if(aChar < 0x800){
+				numBytes += 2;
+			}
+			else if(Character.isHighSurrogate(aChar) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))){
+				numBytes += 4;
+				i++;
+			}
+			else if(Character.isSurrogate(aChar)){
+				numBytes++;
+			}
+			else{
+				numBytes += 3;
+			}
+		}
+		return numBytes;
+	}
+
+	void putBase64(byte[] someBytes){
+		if(size + (someBytes.length / 3 + 1) * 4 > bytes.length){
+			grow((someBytes.length / 3 + 1) * 4);
+		}
+		int i = 0;
+		for(; i + 2 < someBytes.length; i += 3){
+			int bits = ((someBytes[i] & 0xff) << 16) | ((someBytes[i + 1] & 0xff) << 8) | (someBytes[i + 2] & 0xff);
+			bytes[size++] = BASE64[bits >>> 18];
+			bytes[size++] = BASE64[(bits >>> 12) & 0x3f];
+			bytes[size++] = BASE64[(bits >>> 6) & 0x3f];
+			bytes[size++] = BASE64[bits & 0x3f];
+		}
+		int remaining = someBytes.length - i;
+		if(remaining > 0){
+			int bits = (someBytes[i] & 0xff) << 16;
+			if(remaining == 2){
+				bits |= (someBytes[i + 1] & 0xff) << 8;
+			}
+			bytes[size++] = BASE64[bits >>> 18];
+			bytes[size++] = BASE64[(bits >>> 12) & 0x3f];
+			bytes[size++] = remaining == 2 ? BASE64[(bits >>> 6) & 0x3f] : (byte)'=';
+			bytes[size++] = '=';
+		}
+	}
+	/*
+	 * Writes everything in the buffer to the channel and empties the buffer.
+	 */
+	void writeTo(FileChannel aChannel) throws IOException{
+		ByteBuffer aBuffer = ByteBuffer.wrap(bytes, 0, size);
+		while(aBuffer.hasRemaining()){
+			aChannel.write(aBuffer);
+		}
+		size = 0;
+	}
+
+	private void grow(int numBytes){
+		bytes = Arrays.copyOf(bytes, Math.max(size + numBytes, bytes.length * 2));
+	}
+}
@@ -0,0 +1,41 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+/**
+ * A TransferListener is told how a BulkTransfer import or export is progressing.  It is called on the thread that called the 
+ * BulkTransfer method, every BulkTransfer progress interval rows and once more when the transfer is complete, so it should 
+ * return quickly.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public interface TransferListener {
+	/**
+	 * Called as rows are transferred.
+	 * @param rows - the number of rows handed to the database by an import or written by an export so far.
+	 * @param bytes - the number of bytes of the file read or written so far.
+	 * @param rowsPerSecond - the average rate since the transfer started.
+	 */
+	public void progress(long rows, long bytes, double rowsPerSecond);
+}
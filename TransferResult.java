@@ -0,0 +1,69 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess;
+
+/**
+ * This class is a container, JavaBean, for information regarding the execution of a BulkTransfer import or export.  The 
+ * success count is the number of rows imported or exported and the row errors are keyed by the zero based position of the 
+ * record in the file, not counting a header row.  It also reports how many bytes of the file were read or written and how 
+ * long the transfer took.
+ * @author Lee S. Barney
+ *
+ */
+public class TransferResult extends BatchResult {
+	private static final long serialVersionUID = 1L;
+	private long bytesTransferred = 0;
+	private long elapsedNanos = 0;
+
+	public TransferResult() {
+	}
+	/**
+	 * Accessor for the number of bytes of the file that were read by an import or written by an export.
+	 * @return - the number of bytes.
+	 */
+	public long getBytesTransferred() {
+		return bytesTransferred;
+	}
+
+	void setBytesTransferred(long bytesTransferred) {
+		this.bytesTransferred = bytesTransferred;
+	}
+	/**
+	 * Accessor for how long the transfer took.
+	 * @return - the elapsed time in nanoseconds.
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	void setElapsedNanos(long elapsedNanos) {
+		this.elapsedNanos = elapsedNanos;
+	}
+	/**
+	 * Accessor for the average number of rows transferred each second.
+	 * @return - the rows per second or 0 if no time has passed.
+	 */
+	public double getRowsPerSecond() {
+		return elapsedNanos == 0 ? 0 : getSuccessCount() * 1e9 / elapsedNanos;
+	}
+}
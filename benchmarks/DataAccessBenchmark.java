@@ -0,0 +1,331 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess.benchmarks;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.quickconnectfamily.dbaccess.DataAccessException;
+import org.quickconnectfamily.dbaccess.DataAccessObject;
+import org.quickconnectfamily.dbaccess.DataAccessResult;
+import org.quickconnectfamily.dbaccess.DataAccessRow;
+import org.quickconnectfamily.dbaccess.JdbcBackend;
+import org.quickconnectfamily.dbaccess.RowVisitor;
+
+import android.content.Context;
+
+/**
+ * JMH benchmarks of the DataAccessObject hot paths run on a plain Java virtual machine with the JdbcBackend.
+ * <br/>
+ * The class path needs the library, jmh-core with jmh-generator-annprocess as an annotation processor, org.xerial:sqlite-jdbc, 
+ * and an android.jar, or any other jar providing android.content.Context, for the signatures of DataAccessObject.  Run the main 
+ * method to measure every benchmark at 1, 2, 4 and 8 threads and write the results to qcdbaccess-baseline.json, or pass a 
+ * different file name as the first argument.  The data is generated from a fixed seed so runs on the same machine are comparable.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DataAccessBenchmark {
+	private static final String DATABASE = "benchmark.sqlite";
+	private static final WeakReference<Context> NO_CONTEXT = null;
+
+	@Param({"50000"})
+	public int rowCount;
+
+	private File directory;
+	private final AtomicInteger nextId = new AtomicInteger();
+
+	@Setup(Level.Trial)
+	public void createDatabase() throws Exception {
+		directory = File.createTempFile("qcdbaccess", "");
+		directory.delete();
+		directory.mkdirs();
+		DataAccessObject.setBackend(new JdbcBackend());
+		DataAccessObject.setDatabaseDirectory(directory.getPath());
+		check(DataAccessObject.transact(NO_CONTEXT, DATABASE, 
+				"CREATE TABLE item(id INTEGER PRIMARY KEY, name TEXT, price REAL, quantity INTEGER)", null));
+		check(DataAccessObject.transact(NO_CONTEXT, DATABASE, 
+				"CREATE TABLE journal(id INTEGER PRIMARY KEY AUTOINCREMENT, item INTEGER, amount REAL)", null));
+		Random aRandom = new Random(42);
+		ArrayList<Object[]> rows = new ArrayList<Object[]>(rowCount);
+		for(int i = 0; i < rowCount; i++){
+			rows.add(new Object[]{"item "+i, aRandom.nextDouble() * 100, Integer.valueOf(aRandom.nextInt(1000))});
+		}
+		check(DataAccessObject.transactBatch(NO_CONTEXT, DATABASE, "INSERT INTO item(name, price, quantity) VALUES(?, ?, ?)", rows));
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteDatabase() {
+		DataAccessObject.closeAll();
+		File[] files = directory.listFiles();
+		for(int i = 0; files != null && i < files.length; i++){
+			files[i].delete();
+		}
+		directory.delete();
+	}
+
+	@Benchmark
+	public DataAccessResult singleRead() throws DataAccessException {
+		return DataAccessObject.transact(NO_CONTEXT, DATABASE, "SELECT id, name, price, quantity FROM item WHERE id = ?", 
+				new Object[]{Integer.valueOf(nextRowId())});
+	}
+
+	@Benchmark
+	public DataAccessResult parameterizedWrite() throws DataAccessException {
+		return DataAccessObject.transact(NO_CONTEXT, DATABASE, "INSERT INTO journal(item, amount) VALUES(?, ?)", 
+				new Object[]{Integer.valueOf(nextRowId()), Double.valueOf(1.5)});
+	}
+
+	@Benchmark
+	public DataAccessResult transaction() throws DataAccessException {
+		DataAccessObject.startTransaction(NO_CONTEXT, DATABASE);
+		DataAccessResult aResult = null;
+		boolean successful = false;
+		try{
+			for(int i = 0; i < 10; i++){
+				aResult = DataAccessObject.transact(NO_CONTEXT, DATABASE, "UPDATE item SET quantity = quantity + 1 WHERE id = ?", 
+						new Object[]{Integer.valueOf(nextRowId())});
+			}
+			successful = true;
+		}
+		finally{
+			DataAccessObject.endTransaction(NO_CONTEXT, DATABASE, successful);
+		}
+		return aResult;
+	}
+
+	@Benchmark
+	public int largeResultMaterialized() throws DataAccessException {
+		DataAccessResult aResult = DataAccessObject.transact(NO_CONTEXT, DATABASE, "SELECT id, name, price, quantity FROM item", null);
+		return aResult.getColumnarResults().getRowCount();
+	}
+
+	@Benchmark
+	public int largeResultAsStrings() throws DataAccessException {
+		DataAccessResult aResult = DataAccessObject.transact(NO_CONTEXT, DATABASE, "SELECT id, name, price, quantity FROM item", null);
+		return aResult.getResults().size();
+	}
+
+	@Benchmark
+	public void largeResultStreamed(final Blackhole aBlackhole) throws DataAccessException {
+		DataAccessObject.stream(NO_CONTEXT, DATABASE, "SELECT id, name, price, quantity FROM item", null, new RowVisitor(){
+			public boolean visitRow(DataAccessRow aRow) {
+				aBlackhole.consume(aRow.getLong(0));
+				aBlackhole.consume(aRow.getString(1));
+				aBlackhole.consume(aRow.getDouble(2));
+				aBlackhole.consume(aRow.getLong(3));
+				return true;
+			}
+		});
+	}
+
+	@Benchmark
+	public int largeResultMapped() throws DataAccessException {
+		return DataAccessObject.query(NO_CONTEXT, DATABASE, "SELECT id, name, price, quantity FROM item", null, Item.class).size();
+	}
+
+	@Benchmark
+	public long largeResultJson() throws DataAccessException {
+		CountingOutputStream out = new CountingOutputStream();
+		DataAccessObject.streamJson(NO_CONTEXT, DATABASE, "SELECT id, name, price, quantity FROM item", null, out);
+		return out.count;
+	}
+
+	static class CountingOutputStream extends OutputStream {
+		long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+
+	public static class Item {
+		public long id;
+		public String name;
+		public double price;
+		public int quantity;
+	}
+
+	/**
+	 * Holds a transaction, and so the write lock, on a second database for the whole of each measurement iteration.  Reads of 
+	 * the benchmark database must keep completing while it is held because every database is locked separately.
+	 */
+	@State(Scope.Benchmark)
+	public static class LockedDatabase {
+		static final String OTHER_DATABASE = "benchmark-other.sqlite";
+
+		final AtomicLong readsWhileLocked = new AtomicLong();
+		private CountDownLatch locked;
+		private CountDownLatch release;
+		private Thread holder;
+		private volatile boolean holding;
+		private volatile Throwable failure;
+
+		@Setup(Level.Trial)
+		public void createDatabase(DataAccessBenchmark aBenchmark) throws Exception {
+			//the benchmark's own setup has already chosen the database directory
+			check(DataAccessObject.transact(NO_CONTEXT, OTHER_DATABASE, "CREATE TABLE IF NOT EXISTS log(id INTEGER PRIMARY KEY, note TEXT)", null));
+		}
+
+		@Setup(Level.Iteration)
+		public void lockOtherDatabase() throws Exception {
+			readsWhileLocked.set(0);
+			holding = false;
+			failure = null;
+			locked = new CountDownLatch(1);
+			release = new CountDownLatch(1);
+			holder = new Thread("qcdbaccess-lock-holder"){
+				public void run() {
+					try{
+						DataAccessObject.startTransaction(NO_CONTEXT, OTHER_DATABASE);
+						try{
+							check(DataAccessObject.transact(NO_CONTEXT, OTHER_DATABASE, "INSERT INTO log(note) VALUES(?)", 
+									new Object[]{"held"}));
+							holding = DataAccessObject.isInTransaction(OTHER_DATABASE);
+							locked.countDown();
+							release.await();
+							holding = DataAccessObject.isInTransaction(OTHER_DATABASE);
+						}
+						finally{
+							DataAccessObject.endTransaction(NO_CONTEXT, OTHER_DATABASE, false);
+						}
+					}
+					catch(Throwable e){
+						failure = e;
+					}
+					finally{
+						locked.countDown();
+					}
+				}
+			};
+			holder.setDaemon(true);
+			holder.start();
+			locked.await();
+			if(!holding){
+				throw new IllegalStateException("the transaction on "+OTHER_DATABASE+" was not started. "+failure);
+			}
+		}
+
+		@TearDown(Level.Iteration)
+		public void unlockOtherDatabase() throws Exception {
+			release.countDown();
+			holder.join();
+			if(failure != null || !holding){
+				throw new IllegalStateException(OTHER_DATABASE+" was not locked for the whole iteration. "+failure);
+			}
+			if(readsWhileLocked.get() == 0){
+				throw new IllegalStateException("no read of "+DATABASE+" completed while "+OTHER_DATABASE+" was locked.");
+			}
+		}
+	}
+
+	@Benchmark
+	public DataAccessResult readWhileOtherDatabaseLocked(LockedDatabase aLockedDatabase) throws DataAccessException {
+		DataAccessResult aResult = singleRead();
+		check(aResult);
+		aLockedDatabase.readsWhileLocked.incrementAndGet();
+		return aResult;
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(3)
+	public DataAccessResult mixedRead() throws DataAccessException {
+		return singleRead();
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(1)
+	public DataAccessResult mixedWrite() throws DataAccessException {
+		return parameterizedWrite();
+	}
+
+	private int nextRowId(){
+		return 1 + (nextId.getAndIncrement() & Integer.MAX_VALUE) % rowCount;
+	}
+
+	private static void check(DataAccessResult aResult){
+		if(!"not an error".equals(aResult.getErrorDescription())){
+			throw new IllegalStateException(aResult.getErrorDescription());
+		}
+	}
+	/**
+	 * Runs every benchmark at 1, 2, 4 and 8 threads, 1 to 4 groups for the mixed benchmark, and saves the results as JSON.
+	 * @param args - an optional file name for the results.
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		String resultFile = args.length > 0 ? args[0] : "qcdbaccess-baseline.json";
+		int[] threadCounts = {1, 2, 4, 8};
+		for(int i = 0; i < threadCounts.length; i++){
+			Options someOptions = new OptionsBuilder()
+					.include(DataAccessBenchmark.class.getName())
+					.threads(threadCounts[i])
+					.threadGroups(Math.max(1, threadCounts[i] / 2))
+					.resultFormat(ResultFormatType.JSON)
+					.result(resultFile.replace(".json", "-"+threadCounts[i]+"threads.json"))
+					.build();
+			new Runner(someOptions).run();
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ Copyright (c) 2011 Lee Barney
+ Permission is hereby granted, free of charge, to any person obtaining a
+ copy of this software and associated documentation files (the "Software"),
+ to deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense,
+ and/or sell copies of the Software, and to permit persons to whom the Software
+ is furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+ */
+package org.quickconnectfamily.dbaccess.benchmarks;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.quickconnectfamily.dbaccess.DataAccessObject;
+import org.quickconnectfamily.dbaccess.DataAccessResult;
+import org.quickconnectfamily.dbaccess.DatabaseBackend;
+import org.quickconnectfamily.dbaccess.JdbcBackend;
+
+import android.content.Context;
+
+/**
+ * Checks that every database is locked separately.  A helper thread holds a transaction, and so the write lock, on one 
+ * database while the main thread reads a second one.  The read must finish before the transaction is released.
+ * <br/>
+ * It needs the same class path as DataAccessBenchmark except for JMH.  The main method exits with a status of 1 if the read 
+ * waits for the other database's lock.
+ * 
+ * @author Lee S. Barney
+ *
+ */
+public class LockIsolationCheck {
+	private static final String LOCKED_DATABASE = "locked.sqlite";
+	private static final String READ_DATABASE = "read.sqlite";
+	private static final WeakReference<Context> NO_CONTEXT = null;
+	private static final long TIMEOUT_SECONDS = 10;
+
+	public static void main(String[] args) throws Exception {
+		try{
+			check(new JdbcBackend());
+			System.out.println("a read of "+READ_DATABASE+" finished while "+LOCKED_DATABASE+" was locked.");
+		}
+		catch(IllegalStateException e){
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+	/*
+	 * Throws an IllegalStateException if the read of the second database does not finish while the first is locked.
+	 */
+	static void check(DatabaseBackend aBackend) throws Exception {
+		File directory = File.createTempFile("qcdbaccess", "");
+		directory.delete();
+		directory.mkdirs();
+		DataAccessObject.setBackend(aBackend);
+		DataAccessObject.setDatabaseDirectory(directory.getPath());
+		try{
+			check(DataAccessObject.transact(NO_CONTEXT, LOCKED_DATABASE, "CREATE TABLE log(id INTEGER PRIMARY KEY, note TEXT)", null));
+			check(DataAccessObject.transact(NO_CONTEXT, READ_DATABASE, "CREATE TABLE item(id INTEGER PRIMARY KEY, name TEXT)", null));
+			check(DataAccessObject.transact(NO_CONTEXT, READ_DATABASE, "INSERT INTO item(name) VALUES(?)", new Object[]{"an item"}));
+			readWhileLocked();
+		}
+		finally{
+			DataAccessObject.closeAll();
+			File[] files = directory.listFiles();
+			for(int i = 0; files != null && i < files.length; i++){
+				files[i].delete();
+			}
+			directory.delete();
+		}
+	}
+
+	private static void readWhileLocked() throws Exception {
+		final CountDownLatch locked = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Throwable[] failure = new Throwable[1];
+		final AtomicBoolean holding = new AtomicBoolean();
+		Thread holder = new Thread("qcdbaccess-lock-holder"){
+			public void run() {
+				try{
+					DataAccessObject.startTransaction(NO_CONTEXT, LOCKED_DATABASE);
+					try{
+						check(DataAccessObject.transact(NO_CONTEXT, LOCKED_DATABASE, "INSERT INTO log(note) VALUES(?)", new Object[]{"held"}));
+						holding.set(true);
+						locked.countDown();
+						release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+					}
+					finally{
+						holding.set(false);
+						DataAccessObject.endTransaction(NO_CONTEXT, LOCKED_DATABASE, false);
+					}
+				}
+				catch(Throwable e){
+					failure[0] = e;
+				}
+				finally{
+					locked.countDown();
+				}
+			}
+		};
+		holder.setDaemon(true);
+		holder.start();
+		locked.await();
+		/*
+		 * the holder keeps the transaction open until it is released or times out, so a read that has to wait for it 
+		 * only finishes after the holder has stopped holding it.
+		 */
+		try{
+			if(!holding.get()){
+				throw new IllegalStateException("the transaction on "+LOCKED_DATABASE+" was not started. "+failure[0]);
+			}
+			DataAccessResult aResult = DataAccessObject.transact(NO_CONTEXT, READ_DATABASE, "SELECT name FROM item", null);
+			check(aResult);
+			if(!holding.get() || aResult.getColumnarResults().getRowCount() != 1){
+				throw new IllegalStateException("the read of "+READ_DATABASE+" did not finish while "+LOCKED_DATABASE+" was locked.");
+			}
+		}
+		finally{
+			release.countDown();
+			holder.join();
+		}
+		if(failure[0] != null){
+			throw new IllegalStateException("the transaction on "+LOCKED_DATABASE+" failed. "+failure[0]);
+		}
+	}
+
+	private static void check(DataAccessResult aResult){
+		if(!"not an error".equals(aResult.getErrorDescription())){
+			throw new IllegalStateException(aResult.getErrorDescription());
+		}
+	}
+}